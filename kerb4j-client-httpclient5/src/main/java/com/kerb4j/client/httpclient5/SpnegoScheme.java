@@ -0,0 +1,204 @@
+package com.kerb4j.client.httpclient5;
+
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.common.util.NegotiateTokenDecoder;
+import org.apache.hc.client5.http.auth.AuthChallenge;
+import org.apache.hc.client5.http.auth.AuthScheme;
+import org.apache.hc.client5.http.auth.AuthenticationException;
+import org.apache.hc.client5.http.auth.CredentialsProvider;
+import org.apache.hc.client5.http.auth.MalformedChallengeException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.ietf.jgss.GSSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.security.PrivilegedActionException;
+
+/**
+ * {@code Negotiate} {@link AuthScheme} minting tokens with the {@link com.kerb4j.client.SpnegoClient} of its
+ * {@link SpnegoSchemeFactory}. Credentials come from the {@code SpnegoClient}, not from the
+ * {@link CredentialsProvider} of the client.
+ * <p>
+ * HttpClient creates an instance per authentication exchange; instances are not thread-safe. A new
+ * {@link SpnegoContext} is created for each token and disposed once the response to it has been processed, after
+ * verifying the mutual authentication token of the server if there is one.
+ *
+ * @since 0.5.1
+ */
+public class SpnegoScheme implements AuthScheme {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpnegoScheme.class);
+
+    private enum State {
+        UNINITIATED,
+        CHALLENGE_RECEIVED,
+        TOKEN_GENERATED,
+        ESTABLISHED,
+        FAILED
+    }
+
+    /**
+     * Name of the scheme; {@code StandardAuthScheme.SPNEGO} is deprecated along with HttpClient's own SPNEGO support.
+     */
+    static final String NAME = "Negotiate";
+
+    private final SpnegoSchemeFactory factory;
+
+    private boolean preemptive;
+
+    private State state = State.UNINITIATED;
+
+    private SpnegoContext context;
+
+    SpnegoScheme(SpnegoSchemeFactory factory, boolean preemptive) {
+        this.factory = factory;
+        this.preemptive = preemptive;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isConnectionBased() {
+        return factory.isConnectionBased();
+    }
+
+    @Override
+    public String getRealm() {
+        return null;
+    }
+
+    @Override
+    public void processChallenge(AuthChallenge authChallenge, HttpContext context) throws MalformedChallengeException {
+        try {
+            processChallenge(null, true, authChallenge, context);
+        } catch (AuthenticationException e) {
+            throw new MalformedChallengeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param challenged {@code true} for a {@code 401} response, {@code false} for a response which may carry the
+     *                   mutual authentication token
+     */
+    @Override
+    public void processChallenge(HttpHost host, boolean challenged, AuthChallenge authChallenge, HttpContext context)
+            throws AuthenticationException {
+        if (challenged) {
+            if (null != host) {
+                factory.negotiateRequired(host);
+            }
+            if (State.FAILED == state) {
+                return;
+            }
+            dispose();
+            if (State.TOKEN_GENERATED == state && !preemptive) {
+                LOGGER.debug("Negotiate token was rejected by {}", host);
+                state = State.FAILED;
+            } else {
+                // first challenge, a rejected preemptive token which is retried once, or an established
+                // exchange the server asks to authenticate again
+                preemptive = false;
+                state = State.CHALLENGE_RECEIVED;
+            }
+            return;
+        }
+
+        if (State.TOKEN_GENERATED != state) {
+            return;
+        }
+        try {
+            verifyMutualAuthentication(null == authChallenge ? null : authChallenge.getValue());
+            state = State.ESTABLISHED;
+        } catch (AuthenticationException e) {
+            state = State.FAILED;
+            throw e;
+        } finally {
+            dispose();
+        }
+    }
+
+    /**
+     * @return whether a token has been sent and its response has to be processed
+     */
+    @Override
+    public boolean isChallengeExpected() {
+        return State.TOKEN_GENERATED == state;
+    }
+
+    @Override
+    public boolean isChallengeComplete() {
+        return State.FAILED == state;
+    }
+
+    @Override
+    public boolean isResponseReady(HttpHost host, CredentialsProvider credentialsProvider, HttpContext context) {
+        return State.FAILED != state;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return factory.getPrincipal();
+    }
+
+    @Override
+    public String generateAuthResponse(HttpHost host, HttpRequest request, HttpContext context)
+            throws AuthenticationException {
+        if (State.FAILED == state) {
+            throw new AuthenticationException("SPNEGO authentication has failed");
+        }
+        dispose();
+        try {
+            this.context = factory.createContext(host);
+            String header = this.context.createTokenAsAuthroizationHeader();
+            state = State.TOKEN_GENERATED;
+            return header;
+        } catch (PrivilegedActionException | GSSException | IOException | RuntimeException e) {
+            dispose();
+            state = State.FAILED;
+            throw new AuthenticationException("Failed to create SPNEGO token for " + host, e);
+        }
+    }
+
+    private void verifyMutualAuthentication(String token) throws AuthenticationException {
+        if (null == token || token.isEmpty()) {
+            if (factory.isRequireMutualAuthentication()) {
+                throw new AuthenticationException("Server did not return a mutual authentication token");
+            }
+            return;
+        }
+        byte[] data;
+        try {
+            data = NegotiateTokenDecoder.decode(token, 0, token.length());
+            context.processMutualAuthorization(data, 0, data.length);
+        } catch (IllegalArgumentException | PrivilegedActionException e) {
+            throw new AuthenticationException("Mutual authentication of the server failed", e);
+        }
+        if (!context.isEstablished()) {
+            throw new AuthenticationException("Mutual authentication of the server failed");
+        }
+    }
+
+    private void dispose() {
+        if (null != context) {
+            try {
+                context.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to dispose SPNEGO context", e);
+            }
+            context = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "{" + state + "}";
+    }
+
+}
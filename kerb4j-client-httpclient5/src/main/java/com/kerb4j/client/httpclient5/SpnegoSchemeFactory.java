@@ -0,0 +1,233 @@
+package com.kerb4j.client.httpclient5;
+
+import com.kerb4j.client.SpnResolver;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import org.apache.hc.client5.http.auth.AuthChallenge;
+import org.apache.hc.client5.http.auth.AuthExchange;
+import org.apache.hc.client5.http.auth.AuthScheme;
+import org.apache.hc.client5.http.auth.AuthSchemeFactory;
+import org.apache.hc.client5.http.auth.ChallengeType;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.DefaultAuthenticationStrategy;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.ietf.jgss.GSSException;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.Principal;
+import java.security.PrivilegedActionException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates {@link SpnegoScheme}s which authenticate Apache HttpClient 5 requests with a {@link SpnegoClient}.
+ * <p>
+ * The factory remembers the routes which answered with a {@code Negotiate} challenge. Once a route is known, requests
+ * to it carry a token right away instead of being sent twice, so a keep-alive connection taken from the pool serves
+ * each request with a single round trip. Service principal names and GSS names are resolved through the
+ * {@link SpnResolver}, which caches them per host.
+ * <p>
+ * Kerberos authenticates each request on its own, so by default the scheme is not connection based and pooled
+ * connections are shared by all requests. Servers which keep the authentication for the lifetime of a connection,
+ * such as IIS with {@code authPersistNonNTLM}, can be used with {@link #setConnectionBased(boolean)}; HttpClient
+ * then binds authenticated connections to the Kerberos principal, so requests must carry it as user token of their
+ * context to reuse them.
+ * <p>
+ * {@link #configure(HttpClientBuilder)} installs the factory into a client:
+ * <pre>{@code
+ * CloseableHttpClient httpClient = new SpnegoSchemeFactory(spnegoClient).configure(HttpClients.custom()).build();
+ * }</pre>
+ *
+ * @since 0.5.1
+ */
+public class SpnegoSchemeFactory implements AuthSchemeFactory {
+
+    public static final int DEFAULT_MAXIMUM_ROUTES = 1024;
+
+    private static final String PREEMPTIVE_AUTHENTICATION = "kerb4j-spnego-preemptive";
+
+    private static final String NEGOTIATE = SpnegoScheme.NAME.toLowerCase(Locale.ROOT);
+
+    private final SpnegoClient spnegoClient;
+
+    private final SpnResolver spnResolver;
+
+    private final int maximumRoutes;
+
+    private final Set<HttpHost> negotiateRoutes = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean requireMutualAuthentication;
+
+    private volatile boolean connectionBased;
+
+    public SpnegoSchemeFactory(SpnegoClient spnegoClient) {
+        this(spnegoClient, SpnResolver.getDefault(), DEFAULT_MAXIMUM_ROUTES);
+    }
+
+    /**
+     * @param spnegoClient  client to mint {@code Negotiate} tokens with
+     * @param spnResolver   resolver mapping routes to service principal names
+     * @param maximumRoutes maximum number of routes remembered to require {@code Negotiate}
+     */
+    public SpnegoSchemeFactory(SpnegoClient spnegoClient, SpnResolver spnResolver, int maximumRoutes) {
+        if (maximumRoutes < 1) {
+            throw new IllegalArgumentException("maximumRoutes must be positive");
+        }
+        this.spnegoClient = spnegoClient;
+        this.spnResolver = spnResolver;
+        this.maximumRoutes = maximumRoutes;
+    }
+
+    /**
+     * Require every response to a token to carry a valid mutual authentication token of the server. By default the
+     * token is verified only if the server sends one.
+     */
+    public void setRequireMutualAuthentication(boolean requireMutualAuthentication) {
+        this.requireMutualAuthentication = requireMutualAuthentication;
+    }
+
+    public boolean isRequireMutualAuthentication() {
+        return requireMutualAuthentication;
+    }
+
+    /**
+     * Keep the authentication for the lifetime of the connection instead of sending a token with each request.
+     */
+    public void setConnectionBased(boolean connectionBased) {
+        this.connectionBased = connectionBased;
+    }
+
+    public boolean isConnectionBased() {
+        return connectionBased;
+    }
+
+    /**
+     * Sets the strategy selecting this factory's scheme for {@code Negotiate} challenges of the target and adds the
+     * interceptor authenticating known routes preemptively. The strategy replaces the target authentication
+     * strategy of the builder; other schemes are still selected by {@link DefaultAuthenticationStrategy}.
+     *
+     * @return the builder
+     */
+    public HttpClientBuilder configure(HttpClientBuilder builder) {
+        return builder
+                .setTargetAuthenticationStrategy(new NegotiateAuthenticationStrategy())
+                .addExecInterceptorBefore(ChainElement.PROTOCOL.name(), PREEMPTIVE_AUTHENTICATION,
+                        this::authenticatePreemptively);
+    }
+
+    @Override
+    public AuthScheme create(HttpContext context) {
+        return new SpnegoScheme(this, false);
+    }
+
+    /**
+     * @return whether the route answered with a {@code Negotiate} challenge before
+     */
+    public boolean isNegotiateRequired(HttpHost route) {
+        return negotiateRoutes.contains(route);
+    }
+
+    /**
+     * Forget which routes require {@code Negotiate}, so that the next request to each of them waits for a challenge.
+     */
+    public void clearRoutes() {
+        negotiateRoutes.clear();
+    }
+
+    void negotiateRequired(HttpHost route) {
+        if (negotiateRoutes.contains(route)) {
+            return;
+        }
+        if (negotiateRoutes.size() >= maximumRoutes) {
+            Iterator<HttpHost> iterator = negotiateRoutes.iterator();
+            while (negotiateRoutes.size() >= maximumRoutes && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        negotiateRoutes.add(route);
+    }
+
+    SpnegoContext createContext(HttpHost route)
+            throws PrivilegedActionException, GSSException, MalformedURLException {
+        URL url = new URL(route.getSchemeName(), route.getHostName(), route.getPort(), "/");
+        return spnegoClient.createContextForSPN(spnResolver.resolveSpn(url));
+    }
+
+    Principal getPrincipal() {
+        Subject subject = spnegoClient.getSubject();
+        if (null == subject) {
+            return null;
+        }
+        Iterator<KerberosPrincipal> principals = subject.getPrincipals(KerberosPrincipal.class).iterator();
+        return principals.hasNext() ? principals.next() : null;
+    }
+
+    private ClassicHttpResponse authenticatePreemptively(ClassicHttpRequest request, ExecChain.Scope scope,
+                                                         ExecChain chain) throws IOException, HttpException {
+        if (!negotiateRoutes.isEmpty()) {
+            HttpHost target = target(request, scope);
+            if (negotiateRoutes.contains(target)) {
+                AuthExchange authExchange = scope.clientContext.getAuthExchange(target);
+                if (AuthExchange.State.UNCHALLENGED == authExchange.getState()
+                        && null == authExchange.getAuthScheme()) {
+                    authExchange.select(new SpnegoScheme(this, true));
+                }
+            }
+        }
+        return chain.proceed(request, scope);
+    }
+
+    /**
+     * @return target host the way the protocol handler of HttpClient keys its authentication exchanges
+     */
+    private static HttpHost target(ClassicHttpRequest request, ExecChain.Scope scope) {
+        HttpHost routeTarget = scope.route.getTargetHost();
+        String scheme = null == request.getScheme() ? routeTarget.getSchemeName() : request.getScheme();
+        NamedEndpoint authority = null == request.getAuthority() ? routeTarget : request.getAuthority();
+        return new HttpHost(scheme, authority.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(scheme, authority));
+    }
+
+    /**
+     * Puts a {@link SpnegoScheme} first whenever the target offers {@code Negotiate}, in place of the scheme
+     * HttpClient may have registered for it.
+     */
+    private final class NegotiateAuthenticationStrategy extends DefaultAuthenticationStrategy {
+
+        @Override
+        public List<AuthScheme> select(ChallengeType challengeType, Map<String, AuthChallenge> challenges,
+                                       HttpContext context) {
+            List<AuthScheme> schemes = super.select(challengeType, challenges, context);
+            if (ChallengeType.TARGET != challengeType || !challenges.containsKey(NEGOTIATE)) {
+                return schemes;
+            }
+            List<AuthScheme> selected = new ArrayList<>(schemes.size() + 1);
+            selected.add(create(context));
+            for (AuthScheme scheme : schemes) {
+                if (!SpnegoScheme.NAME.equalsIgnoreCase(scheme.getName())) {
+                    selected.add(scheme);
+                }
+            }
+            return selected;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.kerb4j.client.httpclient5;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.common.util.Constants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpnegoSchemeFactoryTest extends KerberosSecurityTestcase {
+
+    private SpnegoClient initiator;
+    private SpnegoClient acceptor;
+    private HttpServer server;
+    private String url;
+
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+    private volatile String mutualToken;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        File clientKeytab = new File(getWorkDir(), "httpclient5-client.keytab");
+        getKdc().createAndExportPrincipals(clientKeytab, "client/localhost");
+        File serverKeytab = new File(getWorkDir(), "httpclient5-server.keytab");
+        getKdc().createAndExportPrincipals(serverKeytab, "HTTP/localhost");
+
+        initiator = SpnegoClient.loginWithKeyTab("client/localhost", clientKeytab.getAbsolutePath());
+        acceptor = SpnegoClient.loginWithKeyTab("HTTP/localhost", serverKeytab.getAbsolutePath(), true);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", this::handle);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/hello";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            String authorization = exchange.getRequestHeaders().getFirst(Constants.AUTHZ_HEADER);
+            authorizations.add(String.valueOf(authorization));
+            if (null == authorization) {
+                exchange.getResponseHeaders().add(Constants.AUTHN_HEADER, Constants.NEGOTIATE_HEADER);
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            String responseToken;
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                byte[] token = Base64.getDecoder().decode(authorization.substring(Constants.NEGOTIATE_HEADER.length() + 1));
+                byte[] accepted = acceptContext.acceptToken(token);
+                responseToken = null == mutualToken ? Base64.getEncoder().encodeToString(accepted) : mutualToken;
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add(Constants.AUTHN_HEADER, Constants.NEGOTIATE_HEADER + " " + responseToken);
+            byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        }
+    }
+
+    @Test
+    void authenticatesKnownRoutesPreemptivelyOnPooledConnection() throws Exception {
+        SpnegoSchemeFactory factory = new SpnegoSchemeFactory(initiator);
+        factory.setRequireMutualAuthentication(true);
+
+        try (CloseableHttpClient httpClient = factory.configure(HttpClients.custom()).build()) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("hello", httpClient.execute(new HttpGet(url), response -> {
+                    assertEquals(200, response.getCode());
+                    return EntityUtils.toString(response.getEntity());
+                }));
+            }
+        }
+
+        // challenged once, then a single request with a token for each call
+        assertEquals(4, authorizations.size());
+        assertEquals("null", authorizations.get(0));
+        assertEquals(4, new HashSet<>(authorizations).size());
+        assertEquals(1, new HashSet<>(clientPorts).size());
+        assertTrue(factory.isNegotiateRequired(new HttpHost("http", "localhost", server.getAddress().getPort())));
+    }
+
+    @Test
+    void rejectsInvalidMutualAuthenticationToken() throws Exception {
+        mutualToken = Base64.getEncoder().encodeToString(new byte[]{1, 2, 3, 4});
+        SpnegoSchemeFactory factory = new SpnegoSchemeFactory(initiator);
+
+        try (CloseableHttpClient httpClient = factory.configure(HttpClients.custom()).build()) {
+            assertThrows(IOException.class, () -> httpClient.execute(new HttpGet(url), response -> null));
+        }
+    }
+
+}
@@ -48,6 +48,37 @@ class JdkSpnegoClientProviderTest extends KerberosSecurityTestcase {
         }
     }
 
+    @Test
+    void acceptorCredentialIsReusedAcrossAcceptContexts() throws Exception {
+        SimpleKdcServer kdc = getKdc();
+        File workDir = getWorkDir();
+        String serverPrincipal = "HTTP/localhost";
+        File serverKeytab = new File(workDir, "jdk-reuse-server.keytab");
+        kdc.createAndExportPrincipals(serverKeytab, serverPrincipal);
+
+        String clientPrincipal = "client/localhost";
+        File clientKeytab = new File(workDir, "jdk-reuse-client.keytab");
+        kdc.createAndExportPrincipals(clientKeytab, clientPrincipal);
+
+        SpnegoClient initiator = SpnegoClient.loginWithKeyTab(clientPrincipal, clientKeytab.getAbsolutePath());
+        SpnegoClient acceptor = SpnegoClient.loginWithKeyTab(serverPrincipal, serverKeytab.getAbsolutePath(), true);
+
+        for (int i = 0; i < 3; i++) {
+            if (i == 2) {
+                acceptor.invalidateAcceptorCredential();
+            }
+            byte[] token;
+            try (SpnegoContext initiatorContext = initiator.createContextForSPN(serverPrincipal)) {
+                token = initiatorContext.createToken();
+            }
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                acceptContext.acceptToken(token);
+                assertTrue(acceptContext.isEstablished());
+                assertEquals(clientPrincipal + "@EXAMPLE.COM", acceptContext.getSrcName().toString());
+            }
+        }
+    }
+
     @Test
     void jdkProviderDoesNotSupportEnterprisePrincipalLogin() {
         UnsupportedOperationException exception = assertThrows(
@@ -0,0 +1,389 @@
+package com.kerb4j.client.kerby;
+
+import org.apache.kerby.KOptions;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.ClientUtil;
+import org.apache.kerby.kerberos.kerb.client.KrbSetting;
+import org.apache.kerby.kerberos.kerb.client.impl.AbstractInternalKrbClient;
+import org.apache.kerby.kerberos.kerb.client.impl.DefaultKrbHandler;
+import org.apache.kerby.kerberos.kerb.client.request.AsRequest;
+import org.apache.kerby.kerberos.kerb.client.request.KdcRequest;
+import org.apache.kerby.kerberos.kerb.client.request.TgsRequest;
+import org.apache.kerby.kerberos.kerb.transport.KrbNetwork;
+import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kerby client which sends each request to the KDCs of the realm in the order of the {@link KdcSelector} instead of
+ * the order Kerby lists them in, and hedges it to the next KDC if the first one is slow to answer.
+ * <p>
+ * A request which fails with a network error is sent to the next KDC, like Kerby does. An error response of a KDC
+ * ends the request. Since a Kerby request cannot be sent twice at once, each attempt builds the request anew; an
+ * attempt is tied to its position in the order of each realm it talks to.
+ * <p>
+ * Unlike {@code DefaultInternalKrbClient} this client keeps no per-request state and may be shared by several threads.
+ */
+class FailoverInternalKrbClient extends AbstractInternalKrbClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FailoverInternalKrbClient.class);
+
+    /**
+     * Maximum number of attempts of a request in flight at once.
+     */
+    private static final int MAXIMUM_HEDGED_ATTEMPTS = 2;
+
+    private static final ThreadLocal<Attempt> CURRENT_ATTEMPT = new ThreadLocal<>();
+
+    private final KdcSelector kdcSelector;
+
+    private DefaultKrbHandler krbHandler;
+
+    FailoverInternalKrbClient(KrbSetting krbSetting, KdcSelector kdcSelector) {
+        super(krbSetting);
+        this.kdcSelector = kdcSelector;
+    }
+
+    @Override
+    public void init() throws KrbException {
+        super.init();
+        krbHandler = new DefaultKrbHandler();
+        krbHandler.init(getContext());
+    }
+
+    @Override
+    public TgtTicket requestTgt(KOptions requestOptions) throws KrbException {
+        return execute(() -> super.requestTgt(requestOptions));
+    }
+
+    @Override
+    public SgtTicket requestSgt(KOptions requestOptions) throws KrbException {
+        return execute(() -> super.requestSgt(requestOptions));
+    }
+
+    @Override
+    protected TgtTicket doRequestTgt(AsRequest asRequest) throws KrbException {
+        exchange(asRequest);
+        return asRequest.getTicket();
+    }
+
+    @Override
+    protected SgtTicket doRequestSgt(TgsRequest tgsRequest) throws KrbException {
+        exchange(tgsRequest);
+        return tgsRequest.getSgt();
+    }
+
+    /**
+     * Runs a request, building and sending it again for each KDC it is sent to.
+     *
+     * @param request builds the request and sends it with {@link #doRequestTgt(AsRequest)} or
+     *                {@link #doRequestSgt(TgsRequest)}
+     */
+    <T> T execute(KdcCall<T> request) throws KrbException {
+        Plan plan = new Plan();
+        long hedgeDelay = kdcSelector.getHedgeDelay();
+        return hedgeDelay < 0 ? executeInOrder(plan, request) : executeHedged(plan, request, hedgeDelay);
+    }
+
+    private <T> T executeInOrder(Plan plan, KdcCall<T> request) throws KrbException {
+        for (int index = 0; ; index++) {
+            Attempt attempt = new Attempt(plan, index);
+            attempt.run(request);
+            if (attempt.succeeded || !attempt.networkFailure || index + 1 >= plan.size()) {
+                return attempt.get();
+            }
+        }
+    }
+
+    private <T> T executeHedged(Plan plan, KdcCall<T> request, long hedgeDelay) throws KrbException {
+        BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+        List<Attempt> inFlight = new ArrayList<>(MAXIMUM_HEDGED_ATTEMPTS);
+        launch(new Attempt(plan, 0), request, inFlight, completed);
+        int launched = 1;
+        try {
+            while (true) {
+                Attempt attempt = completed.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                if (null == attempt) {
+                    if (inFlight.size() < MAXIMUM_HEDGED_ATTEMPTS && launched < plan.size()) {
+                        LOGGER.debug("No answer from KDC within {} ms, hedging request to the next KDC", hedgeDelay);
+                        if (launch(new Attempt(plan, launched), request, inFlight, completed)) {
+                            launched++;
+                        }
+                    }
+                    continue;
+                }
+                inFlight.remove(attempt);
+                if (attempt.succeeded || !attempt.networkFailure) {
+                    abandon(inFlight);
+                    return attempt.get();
+                }
+                if (launched < plan.size()) {
+                    if (launch(new Attempt(plan, launched), request, inFlight, completed)) {
+                        launched++;
+                    }
+                } else if (inFlight.isEmpty()) {
+                    return attempt.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            abandon(inFlight);
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while waiting for the KDC", e);
+        }
+    }
+
+    /**
+     * Sends the attempt on the request executor. If the executor is busy, the attempt is sent by the calling thread
+     * when no other attempt is in flight, and is not sent otherwise, so that requests are not hedged under load.
+     *
+     * @return whether the attempt was sent
+     */
+    private <T> boolean launch(Attempt attempt, KdcCall<T> request, List<Attempt> inFlight,
+                               BlockingQueue<Attempt> completed) {
+        try {
+            kdcSelector.getRequestExecutor().execute(() -> {
+                attempt.run(request);
+                completed.add(attempt);
+            });
+        } catch (RejectedExecutionException e) {
+            if (!inFlight.isEmpty()) {
+                LOGGER.debug("All KDC request threads are busy, not hedging request");
+                return false;
+            }
+            attempt.run(request);
+            completed.add(attempt);
+        }
+        inFlight.add(attempt);
+        return true;
+    }
+
+    private void abandon(List<Attempt> attempts) {
+        for (Attempt attempt : attempts) {
+            attempt.abandon(kdcSelector, getSetting().getTimeout());
+        }
+    }
+
+    private void exchange(KdcRequest request) throws KrbException {
+        Attempt attempt = CURRENT_ATTEMPT.get();
+        if (null == attempt) {
+            throw new IllegalStateException("KDC requests must be sent by execute()");
+        }
+        String realm = getSetting().getKdcRealm();
+        if (null != request.getServerPrincipal() && null != request.getServerPrincipal().getRealm()) {
+            realm = request.getServerPrincipal().getRealm();
+        }
+        String kdc = attempt.kdc(realm);
+
+        long start = System.nanoTime();
+        KrbTransport transport;
+        try {
+            KrbNetwork network = new KrbNetwork();
+            network.setSocketTimeout(getSetting().getTimeout());
+            transport = network.connect(ClientUtil.getTransportPair(getSetting(), kdc));
+        } catch (IOException e) {
+            throw failed(attempt, kdc, start, e);
+        }
+        if (!attempt.attach(transport, kdc, start)) {
+            transport.release();
+            attempt.networkFailure = true;
+            throw new KrbException("Request to KDC " + kdc + " abandoned");
+        }
+        try {
+            request.setSessionData(transport);
+            krbHandler.handleRequest(request, false);
+            kdcSelector.answered(kdc, elapsedMillis(start));
+        } catch (KrbException e) {
+            if (!isNetworkFailure(e)) {
+                kdcSelector.answered(kdc, elapsedMillis(start));
+                throw e;
+            }
+            throw failed(attempt, kdc, start, e);
+        } finally {
+            if (attempt.detach()) {
+                transport.release();
+            }
+        }
+    }
+
+    /**
+     * Records a network error, which counts as at least the timeout. Errors of abandoned attempts are caused by
+     * abandoning them and have been recorded by {@link Attempt#abandon(KdcSelector, long)}.
+     */
+    private KrbException failed(Attempt attempt, String kdc, long start, Exception e) {
+        attempt.networkFailure = true;
+        if (!attempt.abandoned) {
+            LOGGER.debug("Request to KDC {} failed", kdc, e);
+            kdcSelector.failed(kdc, Math.max(elapsedMillis(start), getSetting().getTimeout()));
+        }
+        return new KrbException("Request to KDC " + kdc + " failed", e);
+    }
+
+    /**
+     * @return whether the KDC was not reached or did not answer, as opposed to an error response
+     */
+    private static boolean isNetworkFailure(Throwable e) {
+        for (Throwable cause = e; null != cause; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Builds and sends a request; the exchanges with the KDCs happen on the thread calling it.
+     */
+    @FunctionalInterface
+    interface KdcCall<T> {
+
+        T call() throws KrbException;
+
+    }
+
+    /**
+     * Order of the KDCs for each realm a request talks to, shared by all attempts of the request.
+     */
+    private final class Plan {
+
+        private final Map<String, List<String>> kdcs = new HashMap<>();
+
+        private int size;
+
+        private synchronized String kdc(String realm, int index) throws KrbException {
+            List<String> ordered = kdcs.get(realm);
+            if (null == ordered) {
+                List<String> configured = ClientUtil.getKDCList(realm, getSetting());
+                if (configured.isEmpty()) {
+                    throw new KrbException("No KDC configured for realm " + realm);
+                }
+                ordered = kdcSelector.order(configured);
+                kdcs.put(realm, ordered);
+                if (1 == kdcs.size()) {
+                    size = ordered.size();
+                }
+            }
+            return ordered.get(index % ordered.size());
+        }
+
+        /**
+         * @return number of KDCs of the first realm of the request, or {@code 0} before it is known
+         */
+        private synchronized int size() {
+            return size;
+        }
+
+    }
+
+    private static final class Attempt {
+
+        private final Plan plan;
+
+        private final int index;
+
+        private KrbTransport transport;
+
+        private String kdc;
+
+        private long start;
+
+        private volatile boolean abandoned;
+
+        private volatile boolean networkFailure;
+
+        private volatile boolean succeeded;
+
+        private Object result;
+
+        private KrbException failure;
+
+        private Attempt(Plan plan, int index) {
+            this.plan = plan;
+            this.index = index;
+        }
+
+        private String kdc(String realm) throws KrbException {
+            return plan.kdc(realm, index);
+        }
+
+        private <T> void run(KdcCall<T> request) {
+            CURRENT_ATTEMPT.set(this);
+            try {
+                result = request.call();
+                succeeded = true;
+            } catch (KrbException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new KrbException("Request to the KDC failed", e);
+            } finally {
+                CURRENT_ATTEMPT.remove();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T get() throws KrbException {
+            if (succeeded) {
+                return (T) result;
+            }
+            throw failure;
+        }
+
+        /**
+         * @return {@code false} if the attempt has been abandoned and the transport must not be used
+         */
+        private synchronized boolean attach(KrbTransport transport, String kdc, long start) {
+            if (abandoned) {
+                return false;
+            }
+            this.transport = transport;
+            this.kdc = kdc;
+            this.start = start;
+            return true;
+        }
+
+        /**
+         * @return {@code false} if the transport has already been released by {@link #abandon(KdcSelector, long)}
+         */
+        private synchronized boolean detach() {
+            boolean attached = null != transport;
+            transport = null;
+            return attached;
+        }
+
+        /**
+         * Stops the attempt by releasing its transport, which fails the exchange in progress, and records the time
+         * waited for the KDC so far. A KDC which has not answered within the timeout counts as failed, so that a
+         * stalled KDC is taken out of rotation even if other KDCs always answer first.
+         */
+        private synchronized void abandon(KdcSelector kdcSelector, long timeout) {
+            abandoned = true;
+            if (null != transport) {
+                long elapsed = elapsedMillis(start);
+                if (elapsed >= timeout) {
+                    kdcSelector.failed(kdc, elapsed);
+                } else {
+                    kdcSelector.abandoned(kdc, elapsed);
+                }
+                transport.release();
+                transport = null;
+            }
+        }
+
+    }
+
+}
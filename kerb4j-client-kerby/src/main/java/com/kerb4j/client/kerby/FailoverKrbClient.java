@@ -0,0 +1,60 @@
+package com.kerb4j.client.kerby;
+
+import org.apache.kerby.KOptions;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.KrbClient;
+import org.apache.kerby.kerberos.kerb.client.KrbOption;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+
+import java.io.File;
+
+/**
+ * {@link KrbClient} sending TGT and service ticket requests through a {@link FailoverInternalKrbClient}. Kerby does
+ * not allow to replace the internal client it creates, so the requests used by kerb4j are routed around it.
+ */
+final class FailoverKrbClient extends KrbClient {
+
+    private final KdcSelector kdcSelector;
+
+    private FailoverInternalKrbClient failoverClient;
+
+    FailoverKrbClient(KdcSelector kdcSelector) throws KrbException {
+        super();
+        this.kdcSelector = kdcSelector;
+    }
+
+    FailoverKrbClient(File krb5ConfigFile, KdcSelector kdcSelector) throws KrbException {
+        super(krb5ConfigFile);
+        this.kdcSelector = kdcSelector;
+    }
+
+    @Override
+    public void init() throws KrbException {
+        super.init();
+        failoverClient = new FailoverInternalKrbClient(getSetting(), kdcSelector);
+        failoverClient.init();
+    }
+
+    @Override
+    public TgtTicket requestTgt(KOptions requestOptions) throws KrbException {
+        if (null == requestOptions) {
+            throw new IllegalArgumentException("Null requestOptions specified");
+        }
+        return failoverClient.requestTgt(requestOptions);
+    }
+
+    @Override
+    public SgtTicket requestSgt(KOptions requestOptions) throws KrbException {
+        return failoverClient.requestSgt(requestOptions);
+    }
+
+    @Override
+    public SgtTicket requestSgt(TgtTicket tgt, String serverPrincipal) throws KrbException {
+        KOptions requestOptions = new KOptions();
+        requestOptions.add(KrbOption.USE_TGT, tgt);
+        requestOptions.add(KrbOption.SERVER_PRINCIPAL, serverPrincipal);
+        return requestSgt(requestOptions);
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.kerb4j.client.kerby;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Health of the KDCs the Kerby backend talks to, deciding which KDC of a realm a request goes to first and when it is
+ * hedged to another one.
+ * <p>
+ * The latency of each KDC is tracked as an exponentially weighted moving average, and requests go to the fastest KDC
+ * first. KDCs without a measurement yet come before all others, in the order Kerby lists them, so that each one gets
+ * measured; Kerby does not keep the order of the {@code kdc} entries of {@code krb5.conf}. If the first KDC has not answered within the hedge delay, the request is sent to the next one as
+ * well and the first answer wins; the other request is abandoned and its time so far counts as its latency, or as a
+ * network error if it has been waiting for longer than the KDC timeout.
+ * <p>
+ * A KDC which fails {@link #setFailureThreshold(int) several times} in a row with a network error is taken out of
+ * rotation for the {@link #setOpenDuration(long) open duration}, and only used if all other KDCs fail. After that
+ * single request is let through to it first; if it succeeds the KDC is back in rotation, otherwise it is taken out
+ * again. Error responses of a KDC, such as a wrong password, are answers and are not retried at another KDC.
+ * <p>
+ * Requests are sent by at most ten threads per processor; beyond that a request is sent by the thread asking for
+ * the ticket and is not hedged.
+ *
+ * @since 0.5.1
+ */
+public final class KdcSelector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KdcSelector.class);
+
+    public static final long DEFAULT_HEDGE_DELAY = 500;
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    public static final long DEFAULT_OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Weight of a new latency sample in the moving average.
+     */
+    static final double LATENCY_WEIGHT = 0.3;
+
+    /**
+     * Maximum number of threads sending requests to the KDCs at once.
+     */
+    static final int REQUEST_THREADS = 10 * Runtime.getRuntime().availableProcessors();
+
+    private final Map<String, KdcHealth> kdcs = new ConcurrentHashMap<>();
+
+    private final Executor requestExecutor;
+
+    private final LongSupplier clock;
+
+    private volatile long hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private volatile long openDuration = DEFAULT_OPEN_DURATION;
+
+    KdcSelector() {
+        this(createRequestExecutor(), System::currentTimeMillis);
+    }
+
+    KdcSelector(Executor requestExecutor, LongSupplier clock) {
+        this.requestExecutor = requestExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * @param hedgeDelay time in milliseconds to wait for a KDC before sending the request to the next one as well, or
+     *                   a negative value to wait for each KDC until the request times out
+     */
+    public void setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * @param failureThreshold number of network errors in a row after which a KDC is taken out of rotation
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @param openDuration time in milliseconds a failing KDC is out of rotation before a request is let through again
+     */
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * @param kdc KDC as configured in {@code krb5.conf}, e.g. {@code kdc1.example.com:88}
+     * @return moving average of the latency of the KDC in milliseconds, or {@code -1} if it has not been measured
+     */
+    public double getLatency(String kdc) {
+        KdcHealth health = kdcs.get(kdc);
+        return null == health ? -1 : health.latency();
+    }
+
+    /**
+     * @return whether the KDC has been taken out of rotation after failing
+     */
+    public boolean isOpen(String kdc) {
+        KdcHealth health = kdcs.get(kdc);
+        return null != health && health.isOpen();
+    }
+
+    /**
+     * Forget the health of all KDCs.
+     */
+    public void reset() {
+        kdcs.clear();
+    }
+
+    Executor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * @param configured KDCs of a realm as listed by Kerby
+     * @return KDCs in the order to try them: one whose open duration has passed, the KDCs in rotation by latency, and
+     * the KDCs out of rotation as last resort
+     */
+    List<String> order(List<String> configured) {
+        long now = clock.getAsLong();
+        List<String> probe = new ArrayList<>(1);
+        List<String> closed = new ArrayList<>(configured.size());
+        List<String> open = new ArrayList<>(0);
+        for (String kdc : configured) {
+            KdcHealth health = health(kdc);
+            if (!health.isOpen()) {
+                closed.add(kdc);
+            } else if (probe.isEmpty() && health.tryProbe(now, openDuration)) {
+                probe.add(kdc);
+            } else {
+                open.add(kdc);
+            }
+        }
+        closed.sort(Comparator.comparingDouble(kdc -> Math.max(0, getLatency(kdc))));
+        List<String> ordered = new ArrayList<>(configured.size());
+        ordered.addAll(probe);
+        ordered.addAll(closed);
+        ordered.addAll(open);
+        return ordered;
+    }
+
+    /**
+     * Records an answer of the KDC, successful or an error response.
+     */
+    void answered(String kdc, long latency) {
+        KdcHealth health = health(kdc);
+        health.sample(latency);
+        if (health.close()) {
+            LOGGER.info("KDC {} is back in rotation", kdc);
+        }
+    }
+
+    /**
+     * Records a request to the KDC which was abandoned after the given time because another KDC answered first.
+     */
+    void abandoned(String kdc, long elapsed) {
+        health(kdc).sample(elapsed);
+    }
+
+    /**
+     * Records a network error talking to the KDC, which counts as the given latency.
+     */
+    void failed(String kdc, long latency) {
+        KdcHealth health = health(kdc);
+        health.sample(latency);
+        if (health.fail(clock.getAsLong(), failureThreshold)) {
+            LOGGER.warn("KDC {} failed {} times in a row and is out of rotation for {} ms",
+                    kdc, failureThreshold, openDuration);
+        }
+    }
+
+    private KdcHealth health(String kdc) {
+        return kdcs.computeIfAbsent(kdc, key -> new KdcHealth());
+    }
+
+    private static Executor createRequestExecutor() {
+        return new ThreadPoolExecutor(0, REQUEST_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kerb4j-kdc-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class KdcHealth {
+
+        /**
+         * Moving average of the latency in milliseconds, negative until the first sample.
+         */
+        private double latency = -1;
+
+        private int failures;
+
+        /**
+         * Time the KDC was taken out of rotation, or {@code -1} while it is in rotation.
+         */
+        private long openedAt = -1;
+
+        /**
+         * Time a request was let through to the KDC out of rotation, or {@code -1} if none is.
+         */
+        private long probedAt = -1;
+
+        private synchronized double latency() {
+            return latency;
+        }
+
+        private synchronized boolean isOpen() {
+            return openedAt >= 0;
+        }
+
+        private synchronized void sample(long millis) {
+            latency = latency < 0 ? millis : LATENCY_WEIGHT * millis + (1 - LATENCY_WEIGHT) * latency;
+        }
+
+        /**
+         * @return whether the KDC was out of rotation before
+         */
+        private synchronized boolean close() {
+            boolean wasOpen = openedAt >= 0;
+            failures = 0;
+            openedAt = -1;
+            probedAt = -1;
+            return wasOpen;
+        }
+
+        /**
+         * @return whether the KDC has just been taken out of rotation
+         */
+        private synchronized boolean fail(long now, int failureThreshold) {
+            failures++;
+            if (probedAt >= 0 || (openedAt < 0 && failures >= failureThreshold)) {
+                boolean opened = openedAt < 0;
+                openedAt = now;
+                probedAt = -1;
+                return opened;
+            }
+            return false;
+        }
+
+        /**
+         * @return whether the open duration has passed and no other request is probing the KDC; a probe which has not
+         * come back within the open duration, e.g. because another KDC answered first, no longer counts
+         */
+        private synchronized boolean tryProbe(long now, long openDuration) {
+            if (now - openedAt < openDuration || (probedAt >= 0 && now - probedAt < openDuration)) {
+                return false;
+            }
+            probedAt = now;
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,306 @@
+package com.kerb4j.client.kerby;
+
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.Subject;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Service tickets obtained by the Kerby backend, keyed by the TGT they are obtained with and the SPN, so that only the
+ * first context for a service costs a TGS round trip to the KDC. TGTs are compared by identity: a ticket is only
+ * handed out to the credentials which have logged in and obtained that TGT, never to other credentials for the same
+ * principal name.
+ * <p>
+ * A ticket is reused until {@value #EXPIRY_MARGIN_SECONDS} seconds before it or the TGT it has been obtained with
+ * expires. Once it has entered the last fifth of its lifetime it is still handed out, but a fresh ticket is
+ * requested in the background, so request threads normally never wait for the KDC.
+ * <p>
+ * Concurrent misses for the same client and SPN share a single request to the KDC, which is made by the first of
+ * them; the others wait up to the {@link #setWaitTimeout(long) wait timeout} for it. If the wait times out they use
+ * the previous ticket as long as it has not actually expired, or fail.
+ *
+ * @since 0.5.1
+ */
+public final class KerbyServiceTicketCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KerbyServiceTicketCache.class);
+
+    private static final long EXPIRY_MARGIN_SECONDS = 30;
+
+    static final long EXPIRY_MARGIN = TimeUnit.SECONDS.toMillis(EXPIRY_MARGIN_SECONDS);
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    public static final long DEFAULT_WAIT_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Requests to the KDC in progress, joined by concurrent misses for the same key.
+     */
+    private final Map<Key, CompletableFuture<Entry>> loads = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder refreshCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final int maximumSize;
+
+    private final Executor refreshExecutor;
+
+    private final LongSupplier clock;
+
+    private volatile long waitTimeout = DEFAULT_WAIT_TIMEOUT;
+
+    KerbyServiceTicketCache() {
+        this(DEFAULT_MAXIMUM_SIZE, createRefreshExecutor(), System::currentTimeMillis);
+    }
+
+    KerbyServiceTicketCache(int maximumSize, Executor refreshExecutor, LongSupplier clock) {
+        this.maximumSize = maximumSize;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * @return subject holding the TGT and a service ticket for the SPN, from the cache or freshly obtained
+     */
+    Subject get(String clientPrincipal, TgtTicket tgt, String servicePrincipal, Loader loader) throws Exception {
+        Key key = new Key(clientPrincipal, tgt, servicePrincipal);
+        long now = clock.getAsLong();
+
+        Entry entry = entries.get(key);
+        if (null != entry && now < entry.expiresAt) {
+            hitCount.increment();
+            if (now >= entry.refreshAt) {
+                refreshAhead(key, entry, loader);
+            }
+            return entry.subject;
+        }
+
+        missCount.increment();
+        CompletableFuture<Entry> load = new CompletableFuture<>();
+        CompletableFuture<Entry> inFlight = loads.putIfAbsent(key, load);
+        if (null == inFlight) {
+            return load(key, load, loader).subject;
+        }
+        coalescedCount.increment();
+        return await(key, inFlight, entry);
+    }
+
+    /**
+     * @param waitTimeout time in milliseconds to wait for a ticket another thread is requesting from the KDC
+     */
+    public void setWaitTimeout(long waitTimeout) {
+        this.waitTimeout = waitTimeout;
+    }
+
+    public long getWaitTimeout() {
+        return waitTimeout;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of tickets replaced ahead of expiry in the background
+     */
+    public long getRefreshCount() {
+        return refreshCount.sum();
+    }
+
+    /**
+     * @return number of misses which waited for a request to the KDC made by another thread instead of making one
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private void refreshAhead(Key key, Entry entry, Loader loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture<Entry> load = new CompletableFuture<>();
+        if (null != loads.putIfAbsent(key, load)) {
+            entry.refreshing.set(false);
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(key, load, loader);
+                    refreshCount.increment();
+                } catch (Exception e) {
+                    // keep the current ticket, it is good until it expires; the next hit retries
+                    LOGGER.debug("Failed to refresh service ticket for " + key.servicePrincipal, e);
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Requests a ticket from the KDC on behalf of all threads joining the given load.
+     */
+    private Entry load(Key key, CompletableFuture<Entry> load, Loader loader) throws Exception {
+        try {
+            Entry entry = loader.load();
+            store(key, entry, clock.getAsLong());
+            load.complete(entry);
+            return entry;
+        } catch (Throwable e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    /**
+     * @param previous entry which is past its expiry margin, or {@code null}
+     */
+    private Subject await(Key key, CompletableFuture<Entry> load, Entry previous) throws Exception {
+        try {
+            return load.get(waitTimeout, TimeUnit.MILLISECONDS).subject;
+        } catch (TimeoutException e) {
+            if (null != previous && clock.getAsLong() < previous.endTime) {
+                LOGGER.debug("Timed out waiting for service ticket for " + key.servicePrincipal
+                        + ", using the previous one");
+                return previous.subject;
+            }
+            throw new TimeoutException("Timed out after " + waitTimeout + " ms waiting for service ticket for "
+                    + key.servicePrincipal);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void store(Key key, Entry entry, long now) {
+        if (now >= entry.expiresAt) {
+            return;
+        }
+        if (entries.size() >= maximumSize && !entries.containsKey(key)) {
+            evict(now);
+        }
+        entries.put(key, entry);
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> now >= entry.expiresAt);
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (entries.size() >= maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static Executor createRefreshExecutor() {
+        return new ThreadPoolExecutor(0, 2, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kerb4j-kerby-ticket-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    interface Loader {
+
+        Entry load() throws Exception;
+
+    }
+
+    static final class Entry {
+
+        private final Subject subject;
+        private final long refreshAt;
+        private final long expiresAt;
+        private final long endTime;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * @param subject   subject holding the TGT and the service ticket
+         * @param startTime start of the service ticket lifetime in milliseconds since epoch
+         * @param endTime   earlier of the service ticket and TGT end times in milliseconds since epoch
+         */
+        Entry(Subject subject, long startTime, long endTime) {
+            this.subject = subject;
+            this.endTime = endTime;
+            this.expiresAt = endTime - EXPIRY_MARGIN;
+            this.refreshAt = Math.min(endTime - (endTime - startTime) / 5, expiresAt);
+        }
+
+    }
+
+    private static final class Key {
+
+        private final String clientPrincipal;
+        private final TgtTicket tgt;
+        private final String servicePrincipal;
+
+        private Key(String clientPrincipal, TgtTicket tgt, String servicePrincipal) {
+            this.clientPrincipal = clientPrincipal;
+            this.tgt = tgt;
+            this.servicePrincipal = servicePrincipal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return tgt == key.tgt
+                    && clientPrincipal.equals(key.clientPrincipal)
+                    && servicePrincipal.equals(key.servicePrincipal);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * clientPrincipal.hashCode() + System.identityHashCode(tgt)) + servicePrincipal.hashCode();
+        }
+
+    }
+
+}
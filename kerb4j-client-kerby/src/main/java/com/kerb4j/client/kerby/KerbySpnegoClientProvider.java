@@ -2,17 +2,16 @@ package com.kerb4j.client.kerby;
 
 import com.kerb4j.client.SpnegoClient;
 import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.client.SpnResolver;
 import com.kerb4j.client.spi.JaasTicketCacheSubject;
 import com.kerb4j.client.spi.SpnegoClientBackend;
 import com.kerb4j.client.spi.SpnegoClientProvider;
 import com.kerb4j.client.spi.SubjectBasedSpnegoClientBackend;
-import com.kerb4j.common.util.SpnegoProvider;
 import org.apache.kerby.KOptions;
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.client.KrbClient;
 import org.apache.kerby.kerberos.kerb.client.KrbOption;
 import org.apache.kerby.kerberos.kerb.client.KrbSetting;
-import org.apache.kerby.kerberos.kerb.client.impl.DefaultInternalKrbClient;
 import org.apache.kerby.kerberos.kerb.client.request.AsRequestWithPasswd;
 import org.apache.kerby.kerberos.kerb.common.KrbUtil;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
@@ -41,6 +40,26 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
 
     public static final String NAME = "apache-kerby";
 
+    private static final KerbyServiceTicketCache SERVICE_TICKET_CACHE = new KerbyServiceTicketCache();
+
+    private static final KdcSelector KDC_SELECTOR = new KdcSelector();
+
+    /**
+     * @return service tickets shared by all clients created by this provider
+     * @since 0.5.1
+     */
+    public static KerbyServiceTicketCache getServiceTicketCache() {
+        return SERVICE_TICKET_CACHE;
+    }
+
+    /**
+     * @return health of the KDCs shared by all clients created by this provider, also used to tune KDC selection
+     * @since 0.5.1
+     */
+    public static KdcSelector getKdcSelector() {
+        return KDC_SELECTOR;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -99,10 +118,15 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
             this.credentials = credentials;
         }
 
+        @Override
+        protected Subject refreshSubject() throws Exception {
+            return credentials.refreshTgtSubject();
+        }
+
         @Override
         public SpnegoContext createContext(SpnegoClient spnegoClient, URL url)
                 throws PrivilegedActionException, GSSException {
-            ServiceIdentity serviceIdentity = ServiceIdentity.forUrl(url);
+            ServiceIdentity serviceIdentity = ServiceIdentity.forUrl(url, getSpnResolver());
             Subject subject = subjectForService(serviceIdentity.servicePrincipal);
             return new SpnegoContext(spnegoClient, subject, getGSSContext(subject, serviceIdentity.gssName));
         }
@@ -110,7 +134,7 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
         @Override
         public SpnegoContext createContextForSPN(SpnegoClient spnegoClient, String spn)
                 throws PrivilegedActionException, GSSException, MalformedURLException {
-            ServiceIdentity serviceIdentity = ServiceIdentity.forSpn(spn);
+            ServiceIdentity serviceIdentity = ServiceIdentity.forSpn(spn, getSpnResolver());
             Subject subject = subjectForService(serviceIdentity.servicePrincipal);
             return new SpnegoContext(spnegoClient, subject, getGSSContext(subject, serviceIdentity.gssName));
         }
@@ -125,38 +149,39 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
     }
 
     private static class KerbyCredentials {
+        private final String principal;
         private final Callable<TgtTicket> tgtRequester;
         private final Lock lock = new ReentrantLock();
-        private TgtTicket tgtTicket;
+        private volatile TgtTicket tgtTicket;
 
-        private KerbyCredentials(Callable<TgtTicket> tgtRequester) {
+        private KerbyCredentials(String principal, Callable<TgtTicket> tgtRequester) {
+            this.principal = principal;
             this.tgtRequester = tgtRequester;
         }
 
         private static KerbyCredentials withPassword(String principal, String password) {
-            return new KerbyCredentials(() -> {
-                KrbClient client = createClient();
+            return new KerbyCredentials(principal, () -> {
+                KrbClient client = sharedClient();
                 return client.requestTgt(realmQualifiedPrincipal(client, principal), password);
             });
         }
 
         private static KerbyCredentials withEnterprisePrincipal(String enterprisePrincipal, String password) {
-            return new KerbyCredentials(() -> {
+            return new KerbyCredentials(enterprisePrincipal, () -> {
                 if (isBlank(enterprisePrincipal)) {
                     throw new IllegalArgumentException("Enterprise principal must not be blank");
                 }
-                KrbClient client = createClient();
+                KrbClient client = sharedClient();
                 String realm = requiredKerberosRealm(client, enterprisePrincipal);
                 validateKdcConfig(client, realm);
-                EnterpriseInternalKrbClient enterpriseClient = new EnterpriseInternalKrbClient(client.getSetting());
-                enterpriseClient.init();
-                return enterpriseClient.requestEnterpriseTgt(enterprisePrincipal.trim(), realm, password);
+                return KrbClientCache.getEnterpriseClient()
+                        .requestEnterpriseTgt(enterprisePrincipal.trim(), realm, password);
             });
         }
 
         private static KerbyCredentials withKeyTab(String principal, File keyTabFile) {
-            return new KerbyCredentials(() -> {
-                KrbClient client = createClient();
+            return new KerbyCredentials(principal, () -> {
+                KrbClient client = sharedClient();
                 return client.requestTgt(realmQualifiedPrincipal(client, principal), keyTabFile);
             });
         }
@@ -166,15 +191,44 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
             return subjectWithTickets(tgt.getClientPrincipal(), tgt);
         }
 
+        private Subject refreshTgtSubject() throws Exception {
+            TgtTicket tgt;
+            lock.lock();
+            try {
+                tgt = tgtTicket = tgtRequester.call();
+            } finally {
+                lock.unlock();
+            }
+            return subjectWithTickets(tgt.getClientPrincipal(), tgt);
+        }
+
+        /**
+         * Service tickets are cached per TGT, which this instance has obtained with its own credentials, so another
+         * instance for the same principal, e.g. one with a wrong password, never gets a ticket without logging in.
+         */
         private Subject getServiceSubject(String servicePrincipal) throws Exception {
             TgtTicket tgt = getTgtTicket();
-            KrbClient client = createClient();
+            return SERVICE_TICKET_CACHE.get(principal, tgt, servicePrincipal,
+                    () -> requestServiceTickets(tgt, servicePrincipal));
+        }
+
+        private KerbyServiceTicketCache.Entry requestServiceTickets(TgtTicket tgt, String servicePrincipal)
+                throws Exception {
+            KrbClient client = sharedClient();
             SgtTicket sgt = client.requestSgt(tgt, servicePrincipal);
             PrincipalName clientPrincipal = sgt.getClientPrincipal() == null ? tgt.getClientPrincipal() : sgt.getClientPrincipal();
-            return subjectWithTickets(clientPrincipal, tgt, sgt);
+            EncKdcRepPart sgtPart = sgt.getEncKdcRepPart();
+            KerberosTime startTime = sgtPart.getStartTime() == null ? sgtPart.getAuthTime() : sgtPart.getStartTime();
+            long endTime = Math.min(sgtPart.getEndTime().getTime(), tgt.getEncKdcRepPart().getEndTime().getTime());
+            return new KerbyServiceTicketCache.Entry(
+                    subjectWithTickets(clientPrincipal, tgt, sgt), startTime.getTime(), endTime);
         }
 
         private TgtTicket getTgtTicket() throws Exception {
+            TgtTicket tgt = tgtTicket;
+            if (tgt != null && !isExpired(tgt)) {
+                return tgt;
+            }
             lock.lock();
             try {
                 if (tgtTicket == null || isExpired(tgtTicket)) {
@@ -287,18 +341,8 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
             return realm;
         }
 
-        private static KrbClient createClient() throws KrbException {
-            String krb5Config = System.getProperty("java.security.krb5.conf");
-            if (krb5Config != null && !krb5Config.isEmpty() && !new File(krb5Config).isFile()) {
-                throw new IllegalStateException("Kerby SPNEGO provider cannot read java.security.krb5.conf: "
-                        + krb5Config);
-            }
-            KrbClient client = krb5Config == null || krb5Config.isEmpty()
-                    ? new KrbClient()
-                    : new KrbClient(new File(krb5Config));
-            client.setAllowUdp(false);
-            client.setAllowTcp(true);
-            client.init();
+        private static KrbClient sharedClient() throws KrbException {
+            KrbClient client = KrbClientCache.get();
             validateConfiguredKdc(client);
             return client;
         }
@@ -342,9 +386,9 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
 
     }
 
-    private static class EnterpriseInternalKrbClient extends DefaultInternalKrbClient {
-        private EnterpriseInternalKrbClient(KrbSetting krbSetting) {
-            super(krbSetting);
+    static class EnterpriseInternalKrbClient extends FailoverInternalKrbClient {
+        EnterpriseInternalKrbClient(KrbSetting krbSetting, KdcSelector kdcSelector) {
+            super(krbSetting, kdcSelector);
         }
 
         private TgtTicket requestEnterpriseTgt(String enterprisePrincipal, String realm, String password)
@@ -359,11 +403,13 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
                     NameType.NT_ENTERPRISE);
             clientPrincipal.setRealm(realm);
 
-            AsRequestWithPasswd asRequest = new AsRequestWithPasswd(getContext());
-            asRequest.setClientPrincipal(clientPrincipal);
-            asRequest.setServerPrincipal(KrbUtil.makeTgsPrincipal(realm));
-            asRequest.setRequestOptions(requestOptions);
-            return doRequestTgt(asRequest);
+            return execute(() -> {
+                AsRequestWithPasswd asRequest = new AsRequestWithPasswd(getContext());
+                asRequest.setClientPrincipal(clientPrincipal);
+                asRequest.setServerPrincipal(KrbUtil.makeTgsPrincipal(realm));
+                asRequest.setRequestOptions(requestOptions);
+                return doRequestTgt(asRequest);
+            });
         }
     }
 
@@ -376,20 +422,20 @@ public class KerbySpnegoClientProvider implements SpnegoClientProvider {
             this.gssName = gssName;
         }
 
-        private static ServiceIdentity forUrl(URL url) throws GSSException {
+        private static ServiceIdentity forUrl(URL url, SpnResolver spnResolver) throws GSSException {
             String host = url.getHost();
             if (host == null || host.isEmpty()) {
                 throw new IllegalArgumentException("Cannot create Kerby SPNEGO context for URL without host: " + url);
             }
-            return forSpn("HTTP/" + host);
+            return forSpn(spnResolver.resolveSpn(url), spnResolver);
         }
 
-        private static ServiceIdentity forSpn(String spn) throws GSSException {
+        private static ServiceIdentity forSpn(String spn, SpnResolver spnResolver) throws GSSException {
             if (spn == null || spn.trim().isEmpty()) {
                 throw new IllegalArgumentException("SPN must not be blank");
             }
             String servicePrincipal = spn.trim();
-            return new ServiceIdentity(servicePrincipal, SpnegoProvider.createGSSNameForSPN(servicePrincipal));
+            return new ServiceIdentity(servicePrincipal, spnResolver.resolveGSSName(servicePrincipal));
         }
     }
 }
@@ -0,0 +1,113 @@
+package com.kerb4j.client.kerby;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.KrbClient;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Initialized {@link KrbClient} for the {@code java.security.krb5.conf} currently configured, shared by all Kerby
+ * backends. Creating a client parses the configuration and sets up the KDC transport settings, so it is only done
+ * again when the system property points to another file or the file's modification time or size has changed.
+ * <p>
+ * The client sends requests to the KDCs in the order of the {@link KdcSelector} and keeps no per-request state, so
+ * the shared instance may be used by several threads at once.
+ */
+final class KrbClientCache {
+
+    private static final AtomicReference<ConfiguredClient> CLIENT = new AtomicReference<>();
+
+    private KrbClientCache() {
+    }
+
+    static KrbClient get() throws KrbException {
+        return getConfiguredClient().client;
+    }
+
+    /**
+     * @return client for AS requests with an enterprise principal, sharing the settings of {@link #get()}
+     */
+    static KerbySpnegoClientProvider.EnterpriseInternalKrbClient getEnterpriseClient() throws KrbException {
+        return getConfiguredClient().getEnterpriseClient();
+    }
+
+    static void reset() {
+        CLIENT.set(null);
+    }
+
+    private static ConfiguredClient getConfiguredClient() throws KrbException {
+        String krb5Config = System.getProperty("java.security.krb5.conf");
+        File krb5ConfigFile = null;
+        if (krb5Config != null && !krb5Config.isEmpty()) {
+            krb5ConfigFile = new File(krb5Config);
+            if (!krb5ConfigFile.isFile()) {
+                throw new IllegalStateException("Kerby SPNEGO provider cannot read java.security.krb5.conf: "
+                        + krb5Config);
+            }
+        }
+        long lastModified = null == krb5ConfigFile ? 0 : krb5ConfigFile.lastModified();
+        long length = null == krb5ConfigFile ? 0 : krb5ConfigFile.length();
+
+        ConfiguredClient configuredClient = CLIENT.get();
+        if (null != configuredClient && configuredClient.matches(krb5ConfigFile, lastModified, length)) {
+            return configuredClient;
+        }
+
+        // Concurrent reloads may create several clients; they are equivalent and the last one is kept
+        KrbClient client = create(krb5ConfigFile, KerbySpnegoClientProvider.getKdcSelector());
+        configuredClient = new ConfiguredClient(krb5ConfigFile, lastModified, length, client);
+        CLIENT.set(configuredClient);
+        return configuredClient;
+    }
+
+    /**
+     * Creates an initialized client like the shared one, sending requests in the order of the given selector.
+     *
+     * @param krb5ConfigFile configuration to read, or {@code null} for Kerby's default
+     */
+    static KrbClient create(File krb5ConfigFile, KdcSelector kdcSelector) throws KrbException {
+        KrbClient client = null == krb5ConfigFile
+                ? new FailoverKrbClient(kdcSelector) : new FailoverKrbClient(krb5ConfigFile, kdcSelector);
+        client.setAllowUdp(false);
+        client.setAllowTcp(true);
+        client.init();
+        return client;
+    }
+
+    private static final class ConfiguredClient {
+
+        private final File krb5ConfigFile;
+        private final long lastModified;
+        private final long length;
+        private final KrbClient client;
+        private volatile KerbySpnegoClientProvider.EnterpriseInternalKrbClient enterpriseClient;
+
+        private ConfiguredClient(File krb5ConfigFile, long lastModified, long length, KrbClient client) {
+            this.krb5ConfigFile = krb5ConfigFile;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.client = client;
+        }
+
+        private boolean matches(File krb5ConfigFile, long lastModified, long length) {
+            return Objects.equals(this.krb5ConfigFile, krb5ConfigFile)
+                    && this.lastModified == lastModified
+                    && this.length == length;
+        }
+
+        private KerbySpnegoClientProvider.EnterpriseInternalKrbClient getEnterpriseClient() throws KrbException {
+            KerbySpnegoClientProvider.EnterpriseInternalKrbClient enterpriseClient = this.enterpriseClient;
+            if (null == enterpriseClient) {
+                enterpriseClient = new KerbySpnegoClientProvider.EnterpriseInternalKrbClient(
+                        client.getSetting(), KerbySpnegoClientProvider.getKdcSelector());
+                enterpriseClient.init();
+                this.enterpriseClient = enterpriseClient;
+            }
+            return enterpriseClient;
+        }
+
+    }
+
+}
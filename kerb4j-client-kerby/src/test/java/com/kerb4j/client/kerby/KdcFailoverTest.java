@@ -0,0 +1,127 @@
+package com.kerb4j.client.kerby;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import org.apache.kerby.kerberos.kerb.client.KrbClient;
+import org.apache.kerby.kerberos.kerb.server.SimpleKdcServer;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KdcFailoverTest extends KerberosSecurityTestcase {
+
+    private final List<Socket> stalledRequests = new CopyOnWriteArrayList<>();
+
+    private final KdcSelector kdcSelector = new KdcSelector();
+
+    private ServerSocket stalledKdc;
+
+    @BeforeEach
+    void startStalledKdc() throws Exception {
+        stalledKdc = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    // Accept requests and never answer them
+                    stalledRequests.add(stalledKdc.accept());
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }, "stalled-kdc");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void stopStalledKdc() throws Exception {
+        stalledKdc.close();
+        for (Socket connection : stalledRequests) {
+            connection.close();
+        }
+    }
+
+    @Test
+    void hedgesRequestsAwayFromStalledKdc() throws Exception {
+        SimpleKdcServer kdc = getKdc();
+        String realm = kdc.getKdcSetting().getKdcRealm();
+        kdc.createPrincipal("HTTP/localhost", "changeit");
+        kdc.createPrincipal("client", "changeit");
+
+        String stalled = "127.0.0.1:" + stalledKdc.getLocalPort();
+        String healthy = "localhost:" + kdcPort;
+        KrbClient client = KrbClientCache.create(writeKrb5Conf(realm, stalled, healthy), kdcSelector);
+        preferStalledKdc(stalled, healthy);
+        kdcSelector.setHedgeDelay(100);
+
+        TgtTicket tgt = client.requestTgt("client@" + realm, "changeit");
+
+        assertEquals(1, stalledRequests.size(), "first request goes to the KDC not measured yet");
+        assertTrue(kdcSelector.getLatency(stalled) >= 100, "abandoned request counts as latency");
+        assertTrue(kdcSelector.getLatency(healthy) < kdcSelector.getLatency(stalled));
+        assertEquals(List.of(healthy, stalled), kdcSelector.order(List.of(stalled, healthy)));
+
+        // Not hedged even if the first request to the faster KDC is slow
+        kdcSelector.setHedgeDelay(TimeUnit.MINUTES.toMillis(1));
+        assertNotNull(client.requestSgt(tgt, "HTTP/localhost@" + realm));
+
+        assertEquals(1, stalledRequests.size(), "later requests go to the faster KDC");
+    }
+
+    @Test
+    void failsOverWithoutHedging() throws Exception {
+        SimpleKdcServer kdc = getKdc();
+        String realm = kdc.getKdcSetting().getKdcRealm();
+        kdc.createPrincipal("client", "changeit");
+
+        String stalled = "127.0.0.1:" + stalledKdc.getLocalPort();
+        String healthy = "localhost:" + kdcPort;
+        KrbClient client = KrbClientCache.create(writeKrb5Conf(realm, stalled, healthy), kdcSelector);
+        preferStalledKdc(stalled, healthy);
+        kdcSelector.setHedgeDelay(-1);
+
+        assertNotNull(client.requestTgt("client@" + realm, "changeit"));
+
+        assertEquals(1, stalledRequests.size());
+        assertFalse(kdcSelector.isOpen(stalled));
+        assertEquals(List.of(healthy, stalled), kdcSelector.order(List.of(stalled, healthy)));
+    }
+
+    /**
+     * Kerby does not keep the order of the KDCs in krb5.conf, so the stalled KDC is sent the first request by giving
+     * the healthy one a measurement.
+     */
+    private void preferStalledKdc(String stalled, String healthy) {
+        kdcSelector.answered(healthy, 50);
+        assertEquals(List.of(stalled, healthy), kdcSelector.order(List.of(healthy, stalled)));
+    }
+
+    private File writeKrb5Conf(String realm, String... kdcs) throws IOException {
+        StringBuilder krb5Conf = new StringBuilder()
+                .append("[libdefaults]\n")
+                .append("    default_realm = ").append(realm).append('\n')
+                .append("[realms]\n")
+                .append("    ").append(realm).append(" = {\n");
+        for (String kdc : kdcs) {
+            krb5Conf.append("        kdc = ").append(kdc).append('\n');
+        }
+        krb5Conf.append("    }\n");
+        File file = new File(getWorkDir(), "kerby-failover-krb5.conf");
+        Files.write(file.toPath(), krb5Conf.toString().getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.kerb4j.client.kerby;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KdcSelectorTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final KdcSelector selector = new KdcSelector(Runnable::run, now::get);
+
+    @Test
+    void ordersKdcsByMovingAverageOfLatency() {
+        List<String> kdcs = List.of("kdc1:88", "kdc2:88", "kdc3:88");
+
+        assertEquals(kdcs, selector.order(kdcs));
+
+        selector.answered("kdc1:88", 100);
+        selector.answered("kdc2:88", 20);
+        assertEquals(List.of("kdc3:88", "kdc2:88", "kdc1:88"), selector.order(kdcs));
+
+        selector.answered("kdc3:88", 50);
+        selector.answered("kdc2:88", 200);
+        assertEquals(20 + KdcSelector.LATENCY_WEIGHT * 180, selector.getLatency("kdc2:88"), 0.001);
+        assertEquals(List.of("kdc3:88", "kdc2:88", "kdc1:88"), selector.order(kdcs));
+
+        selector.abandoned("kdc3:88", 1000);
+        assertEquals(List.of("kdc2:88", "kdc1:88", "kdc3:88"), selector.order(kdcs));
+
+        selector.reset();
+        assertEquals(-1, selector.getLatency("kdc2:88"));
+        assertEquals(kdcs, selector.order(kdcs));
+    }
+
+    @Test
+    void takesFailingKdcOutOfRotationAndProbesItAfterOpenDuration() {
+        List<String> kdcs = List.of("kdc1:88", "kdc2:88");
+        selector.setFailureThreshold(2);
+        selector.setOpenDuration(1000);
+        selector.answered("kdc2:88", 50);
+
+        selector.failed("kdc1:88", 10);
+        assertFalse(selector.isOpen("kdc1:88"));
+        selector.answered("kdc1:88", 10);
+        selector.failed("kdc1:88", 10);
+        assertFalse(selector.isOpen("kdc1:88"));
+        selector.failed("kdc1:88", 10);
+        assertTrue(selector.isOpen("kdc1:88"));
+        assertEquals(List.of("kdc2:88", "kdc1:88"), selector.order(kdcs));
+
+        now.addAndGet(1000);
+        assertEquals(List.of("kdc1:88", "kdc2:88"), selector.order(kdcs));
+        assertEquals(List.of("kdc2:88", "kdc1:88"), selector.order(kdcs), "only one request probes the KDC");
+        now.addAndGet(1000);
+        assertEquals(List.of("kdc1:88", "kdc2:88"), selector.order(kdcs), "probe without outcome expires");
+
+        selector.failed("kdc1:88", 10);
+        assertTrue(selector.isOpen("kdc1:88"));
+        now.addAndGet(999);
+        assertEquals(List.of("kdc2:88", "kdc1:88"), selector.order(kdcs));
+
+        now.addAndGet(1);
+        assertEquals(List.of("kdc1:88", "kdc2:88"), selector.order(kdcs));
+        selector.answered("kdc1:88", 10);
+        assertFalse(selector.isOpen("kdc1:88"));
+        assertEquals(List.of("kdc1:88", "kdc2:88"), selector.order(kdcs));
+    }
+
+}
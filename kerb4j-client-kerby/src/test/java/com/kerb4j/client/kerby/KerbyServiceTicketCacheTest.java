@@ -0,0 +1,186 @@
+package com.kerb4j.client.kerby;
+
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.Subject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KerbyServiceTicketCacheTest {
+
+    private static final long LIFETIME = TimeUnit.HOURS.toMillis(10);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final TgtTicket tgt = new TgtTicket(null, null, null);
+
+    // refreshes run on the calling thread, so that the test sees their outcome right away
+    private final KerbyServiceTicketCache cache = new KerbyServiceTicketCache(16, Runnable::run, now::get);
+
+    @Test
+    void reusesTicketUntilShortlyBeforeEndTime() throws Exception {
+        Subject first = cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load);
+        assertSame(first, cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+        assertNotSame(first, cache.get("client@EXAMPLE.COM", tgt, "HTTP/other", this::load));
+        assertNotSame(first, cache.get("other@EXAMPLE.COM", new TgtTicket(null, null, null), "HTTP/localhost",
+                this::load));
+        // tickets belong to the TGT they have been obtained with, not to the principal name
+        assertNotSame(first, cache.get("client@EXAMPLE.COM", new TgtTicket(null, null, null), "HTTP/localhost",
+                this::load));
+
+        assertEquals(4, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        now.addAndGet(LIFETIME - KerbyServiceTicketCache.EXPIRY_MARGIN);
+        assertNotSame(first, cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+        assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    void refreshesTicketAheadOfExpiry() throws Exception {
+        Subject first = cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load);
+
+        now.addAndGet(LIFETIME * 9 / 10);
+        // the current ticket is still handed out while the refresh takes place
+        assertSame(first, cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+        assertEquals(1, cache.getRefreshCount());
+
+        Subject refreshed = cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load);
+        assertNotSame(first, refreshed);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void keepsTicketWhenRefreshFails() throws Exception {
+        Subject first = cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load);
+
+        now.addAndGet(LIFETIME * 9 / 10);
+        assertSame(first, cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", () -> {
+            throw new IllegalStateException("KDC unavailable");
+        }));
+        assertSame(first, cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+        assertEquals(1, cache.getRefreshCount());
+    }
+
+    @Test
+    void concurrentMissesShareOneRequest() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        KerbyServiceTicketCache.Loader slowLoader = () -> {
+            loading.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return load();
+        };
+
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Subject>> subjects = new ArrayList<>();
+            subjects.add(threads.submit(() -> cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", slowLoader)));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                subjects.add(threads.submit(() -> cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", slowLoader)));
+            }
+            while (cache.getCoalescedCount() < 7) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            Subject subject = subjects.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Subject> other : subjects) {
+                assertSame(subject, other.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(8, cache.getMissCount());
+        assertEquals(7, cache.getCoalescedCount());
+    }
+
+    @Test
+    void waiterFallsBackToPreviousTicketOnTimeout() throws Exception {
+        Subject first = cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load);
+        now.addAndGet(LIFETIME - KerbyServiceTicketCache.EXPIRY_MARGIN);
+        cache.setWaitTimeout(50);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+        try {
+            Future<Subject> leader = threads.submit(() -> cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", () -> {
+                loading.countDown();
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+                return load();
+            }));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+            assertSame(first, cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+
+            now.addAndGet(KerbyServiceTicketCache.EXPIRY_MARGIN);
+            assertThrows(TimeoutException.class,
+                    () -> cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+
+            release.countDown();
+            assertNotSame(first, leader.get(10, TimeUnit.SECONDS));
+        } finally {
+            threads.shutdownNow();
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void waitersGetFailureOfSharedRequest() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<Subject> leader = threads.submit(() -> cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", () -> {
+                loading.countDown();
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+                throw new IllegalStateException("KDC unavailable");
+            }));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            Future<Subject> waiter = threads.submit(
+                    () -> cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+            while (cache.getCoalescedCount() < 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            ExecutionException leaderFailure = assertThrows(ExecutionException.class,
+                    () -> leader.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, leaderFailure.getCause());
+            ExecutionException waiterFailure = assertThrows(ExecutionException.class,
+                    () -> waiter.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, waiterFailure.getCause());
+        } finally {
+            threads.shutdownNow();
+        }
+
+        // the failure is not cached
+        assertNotNull(cache.get("client@EXAMPLE.COM", tgt, "HTTP/localhost", this::load));
+        assertEquals(1, loads.get());
+    }
+
+    private KerbyServiceTicketCache.Entry load() {
+        loads.incrementAndGet();
+        return new KerbyServiceTicketCache.Entry(new Subject(), now.get(), now.get() + LIFETIME);
+    }
+
+}
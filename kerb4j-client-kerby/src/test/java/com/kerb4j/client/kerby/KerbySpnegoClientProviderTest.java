@@ -23,6 +23,7 @@ class KerbySpnegoClientProviderTest extends KerberosSecurityTestcase {
     void resetProviderOverride() {
         System.clearProperty(SpnegoClient.SPNEGO_PROVIDER_PROPERTY);
         SpnegoClient.resetCache();
+        KerbySpnegoClientProvider.getServiceTicketCache().invalidateAll();
     }
 
     @Test
@@ -125,6 +126,58 @@ class KerbySpnegoClientProviderTest extends KerberosSecurityTestcase {
         }
     }
 
+    @Test
+    void kerbyProviderReusesServiceTicketAcrossContexts() throws Exception {
+        SimpleKdcServer kdc = getKdc();
+        String serverPrincipal = "HTTP/localhost";
+        File serverKeytab = new File(getWorkDir(), "kerby-sgt-cache-server.keytab");
+        kdc.createAndExportPrincipals(serverKeytab, serverPrincipal);
+        kdc.createPrincipal("client", "changeit");
+
+        SpnegoClient initiator = SpnegoClient.loginWithUsernamePassword("client", "changeit");
+        SpnegoClient acceptor = SpnegoClient.loginWithKeyTab(serverPrincipal, serverKeytab.getAbsolutePath(), true);
+
+        KerbyServiceTicketCache cache = KerbySpnegoClientProvider.getServiceTicketCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        for (int i = 0; i < 3; i++) {
+            byte[] token;
+            try (SpnegoContext initiatorContext = initiator.createContextForSPN(serverPrincipal)) {
+                token = initiatorContext.createToken();
+            }
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                acceptContext.acceptToken(token);
+                assertTrue(acceptContext.isEstablished());
+            }
+        }
+
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals(hits + 2, cache.getHitCount());
+    }
+
+    @Test
+    void cachedServiceTicketIsNotHandedToClientWithWrongPassword() throws Exception {
+        SimpleKdcServer kdc = getKdc();
+        String serverPrincipal = "HTTP/localhost";
+        File serverKeytab = new File(getWorkDir(), "kerby-wrong-password-server.keytab");
+        kdc.createAndExportPrincipals(serverKeytab, serverPrincipal);
+        kdc.createPrincipal("client", "changeit");
+
+        SpnegoClient initiator = SpnegoClient.loginWithUsernamePassword("client", "changeit", false);
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(serverPrincipal)) {
+            assertTrue(initiatorContext.createToken().length > 0);
+        }
+        assertEquals(1, KerbySpnegoClientProvider.getServiceTicketCache().size());
+
+        SpnegoClient impostor = SpnegoClient.loginWithUsernamePassword("client", "wrong-password", false);
+        assertThrows(Exception.class, () -> {
+            try (SpnegoContext impostorContext = impostor.createContextForSPN(serverPrincipal)) {
+                impostorContext.createToken();
+            }
+        });
+    }
+
     @Test
     void explicitOverrideCanForceJdkProviderWhenKerbyProviderIsPresent() {
         System.setProperty(SpnegoClient.SPNEGO_PROVIDER_PROPERTY, "jdk");
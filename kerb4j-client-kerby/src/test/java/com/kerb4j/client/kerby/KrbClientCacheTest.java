@@ -0,0 +1,70 @@
+package com.kerb4j.client.kerby;
+
+import org.apache.kerby.kerberos.kerb.client.KrbClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KrbClientCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String previousKrb5Config;
+
+    @BeforeEach
+    void rememberKrb5Config() {
+        previousKrb5Config = System.getProperty("java.security.krb5.conf");
+        KrbClientCache.reset();
+    }
+
+    @AfterEach
+    void restoreKrb5Config() {
+        if (null == previousKrb5Config) {
+            System.clearProperty("java.security.krb5.conf");
+        } else {
+            System.setProperty("java.security.krb5.conf", previousKrb5Config);
+        }
+        KrbClientCache.reset();
+    }
+
+    @Test
+    void reusesClientUntilKrb5ConfChanges() throws Exception {
+        File krb5Conf = writeKrb5Conf("krb5.conf", "localhost:88");
+        System.setProperty("java.security.krb5.conf", krb5Conf.getAbsolutePath());
+
+        KrbClient client = KrbClientCache.get();
+        assertSame(client, KrbClientCache.get());
+
+        writeKrb5Conf("krb5.conf", "kdc.example.com:88");
+        assertTrue(krb5Conf.setLastModified(krb5Conf.lastModified() + 1000));
+        KrbClient reloaded = KrbClientCache.get();
+        assertNotSame(client, reloaded);
+        assertEquals("kdc.example.com:88",
+                reloaded.getKrbConfig().getRealmSectionItems("EXAMPLE.COM", "kdc").get(0).toString());
+
+        File otherKrb5Conf = writeKrb5Conf("other-krb5.conf", "localhost:88");
+        System.setProperty("java.security.krb5.conf", otherKrb5Conf.getAbsolutePath());
+        assertNotSame(reloaded, KrbClientCache.get());
+    }
+
+    private File writeKrb5Conf(String name, String kdc) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.write(file, ("[libdefaults]\n"
+                + "    default_realm = EXAMPLE.COM\n"
+                + "[realms]\n"
+                + "    EXAMPLE.COM = {\n"
+                + "        kdc = " + kdc + "\n"
+                + "    }\n").getBytes(StandardCharsets.US_ASCII));
+        return file.toFile();
+    }
+
+}
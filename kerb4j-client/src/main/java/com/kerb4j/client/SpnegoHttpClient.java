@@ -0,0 +1,227 @@
+package com.kerb4j.client;
+
+import com.kerb4j.common.util.Constants;
+import com.kerb4j.common.util.SpnegoProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.PrivilegedActionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends SPNEGO authenticated requests with a {@link HttpClient}.
+ * <p>
+ * Requests go through the wrapped client as they are, so connections are pooled and HTTP/2 streams are multiplexed
+ * just like for unauthenticated requests. The {@code Negotiate} header is minted on the executor given to the
+ * constructor, or the executor of the {@link HttpClient}, since creating a context may wait for the KDC. Without
+ * either, a shared pool of at most ten threads per processor is used, which queues headers to mint beyond that.
+ * <p>
+ * By default the header is sent with the first request. In challenge mode the request is first sent without it, and
+ * sent again with a header if the server answers {@code 401} with a {@code Negotiate} challenge. If the server
+ * returns a mutual authentication token it is verified before the body handler is invoked; a response whose token
+ * fails verification completes exceptionally with an {@link IOException}.
+ * <p>
+ * Instances are thread-safe; each exchange uses its own {@link SpnegoContext}.
+ *
+ * @since 0.5.1
+ */
+public final class SpnegoHttpClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpnegoHttpClient.class);
+
+    /**
+     * Maximum number of threads minting headers when neither the constructor nor the {@link HttpClient} provide an
+     * executor, the same as Reactor's {@code boundedElastic} scheduler.
+     */
+    static final int DEFAULT_EXECUTOR_THREADS = 10 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum number of headers waiting to be minted on the default executor; requests beyond that fail.
+     */
+    static final int DEFAULT_EXECUTOR_QUEUE_CAPACITY = 100_000;
+
+    private static final ExecutorService DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    private final HttpClient httpClient;
+
+    private final SpnegoClient spnegoClient;
+
+    private final Executor executor;
+
+    private final boolean preemptive;
+
+    public SpnegoHttpClient(HttpClient httpClient, SpnegoClient spnegoClient) {
+        this(httpClient, spnegoClient, httpClient.executor().orElse(DEFAULT_EXECUTOR), true);
+    }
+
+    /**
+     * @param httpClient   client to send requests with
+     * @param spnegoClient client to mint {@code Negotiate} headers with
+     * @param executor     executor to mint headers on
+     * @param preemptive   whether to send the header with the first request instead of waiting for a challenge
+     */
+    public SpnegoHttpClient(HttpClient httpClient, SpnegoClient spnegoClient, Executor executor, boolean preemptive) {
+        this.httpClient = httpClient;
+        this.spnegoClient = spnegoClient;
+        this.executor = executor;
+        this.preemptive = preemptive;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Sends the request and waits for the response.
+     *
+     * @throws IOException if the request fails or the mutual authentication token of the server is invalid
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler)
+            throws IOException, InterruptedException {
+        try {
+            return sendAsync(request, responseBodyHandler).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Sends the request without blocking the calling thread.
+     *
+     * @return response, completed exceptionally if the request fails, the header cannot be minted or the mutual
+     * authentication token of the server is invalid; the latter is reported as an {@link UncheckedIOException}
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> responseBodyHandler) {
+        if (preemptive) {
+            return sendAuthenticated(request, responseBodyHandler);
+        }
+        Challenge challenge = new Challenge();
+        return httpClient.sendAsync(request, responseInfo -> {
+            if (401 == responseInfo.statusCode() && isNegotiateChallenge(responseInfo.headers())) {
+                challenge.received = true;
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            return responseBodyHandler.apply(responseInfo);
+        }).thenCompose(response -> challenge.received
+                ? sendAuthenticated(request, responseBodyHandler)
+                : CompletableFuture.completedFuture(response));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAuthenticated(HttpRequest request,
+                                                                     HttpResponse.BodyHandler<T> responseBodyHandler) {
+        URI uri = request.uri();
+        CompletableFuture<SpnegoContext> contextFuture;
+        try {
+            contextFuture = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return spnegoClient.createContext(uri.toURL());
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(
+                    new IOException("Too many requests waiting for a Negotiate header", e));
+        }
+
+        CompletableFuture<HttpResponse<T>> responseFuture = contextFuture.thenCompose(context -> {
+            String header;
+            try {
+                header = context.createTokenAsAuthroizationHeader();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            HttpRequest authenticated = HttpRequest.newBuilder(request, (name, value) -> true)
+                    .setHeader(Constants.AUTHZ_HEADER, header)
+                    .build();
+            return httpClient.sendAsync(authenticated, responseInfo -> {
+                verifyMutualAuthentication(context, responseInfo.headers());
+                return responseBodyHandler.apply(responseInfo);
+            });
+        });
+
+        return responseFuture.whenComplete((response, e) -> contextFuture.thenAccept(SpnegoHttpClient::close));
+    }
+
+    private static void verifyMutualAuthentication(SpnegoContext context, HttpHeaders headers) {
+        byte[] token;
+        try {
+            token = SpnegoProvider.getNegotiateToken(headers.allValues(Constants.AUTHN_HEADER));
+        } catch (IllegalArgumentException e) {
+            throw new UncheckedIOException(new IOException("Invalid mutual authentication token of the server", e));
+        }
+        if (null == token || 0 == token.length) {
+            // the server did not offer mutual authentication
+            return;
+        }
+        try {
+            context.processMutualAuthorization(token, 0, token.length);
+        } catch (PrivilegedActionException e) {
+            throw new UncheckedIOException(new IOException("Mutual authentication of the server failed", e));
+        }
+        if (!context.isEstablished()) {
+            throw new UncheckedIOException(new IOException("Mutual authentication of the server failed"));
+        }
+    }
+
+    private static boolean isNegotiateChallenge(HttpHeaders headers) {
+        for (String value : headers.allValues(Constants.AUTHN_HEADER)) {
+            if (SpnegoProvider.isNegotiateChallenge(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(DEFAULT_EXECUTOR_QUEUE_CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "kerb4j-http-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void close(SpnegoContext context) {
+        try {
+            context.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to dispose SPNEGO context", e);
+        }
+    }
+
+    private static final class Challenge {
+
+        private volatile boolean received;
+
+    }
+
+}
@@ -34,13 +34,12 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.security.PrivilegedActionException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This Class may be used by custom clients as a convenience when connecting 
@@ -57,6 +56,10 @@ import java.util.concurrent.locks.ReentrantLock;
  * Also, you must provide a keytab file, or a username and password, or allowtgtsessionkey.
  *
  * <p>
+ * An instance is not thread-safe and serves one request at a time. Instances for different requests share nothing
+ * but their {@link SpnegoClient}, so they may run concurrently without any locking between them.
+ *
+ * <p>
  * Example usage (username/password):
  * <pre>
  *     public static void main(final String[] args) throws Exception {
@@ -115,8 +118,6 @@ public final class SpnegoHttpURLConnection {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SpnegoHttpURLConnection.class);
 
-    /** GSSContext is not thread-safe. */
-    private static final Lock LOCK = new ReentrantLock();
     /**
      * @see java.net.URLConnection#getRequestProperties()
      */
@@ -158,6 +159,13 @@ public final class SpnegoHttpURLConnection {
      */
     private transient boolean reqCredDeleg = false;
 
+    /**
+     * Remembers which resources demand Negotiate. If set, a token is
+     * created only for those and other requests are sent without one first.
+     * Default is null, which sends a token with every request.
+     */
+    private transient NegotiateCapabilityCache capabilityCache = null;
+
     /**
      * Creates an instance where the LoginContext relies on a keytab 
      * file being specified by "java.security.auth.login.config" or 
@@ -257,6 +265,17 @@ public final class SpnegoHttpURLConnection {
 
         assertNotConnected();
 
+        final NegotiateCapabilityCache capabilityCache = this.capabilityCache;
+        if (null != capabilityCache && !capabilityCache.isNegotiateRequired(url)) {
+            openConnection(url, dooutput, null);
+            if (!capabilityCache.recordResponse(url, this.conn.getResponseCode(), getHeaderValues(Constants.AUTHN_HEADER))) {
+                return this.conn;
+            }
+            LOGGER.debug("{} demands Negotiate, repeating the request with a token", url);
+            discardErrorStream();
+        }
+
+        // GSSContext is not thread-safe; this context is created, used and disposed by this call only, so it needs no lock
         SpnegoContext context = spnegoClient.createContext(url);
         if (reqCredDeleg) {
             context.requestCredentialsDelegation();
@@ -264,28 +283,7 @@ public final class SpnegoHttpURLConnection {
 
         try {
 
-            this.conn = (HttpURLConnection) url.openConnection();
-            this.connected = true;
-
-            final Set<String> keys = this.requestProperties.keySet();
-            for (final String key : keys) {
-                for (String value : this.requestProperties.get(key)) {
-                    this.conn.addRequestProperty(key, value);
-                }
-            }
-
-            // TODO : re-factor to support (302) redirects
-            this.conn.setInstanceFollowRedirects(false);
-            this.conn.setRequestMethod(this.requestMethod);
-
-            this.conn.setRequestProperty(Constants.AUTHZ_HEADER, context.createTokenAsAuthroizationHeader());
-
-            if (null != dooutput && dooutput.size() > 0) {
-                this.conn.setDoOutput(true);
-                dooutput.writeTo(this.conn.getOutputStream());
-            }
-
-            this.conn.connect();
+            openConnection(url, dooutput, context.createTokenAsAuthroizationHeader());
 
             final SpnegoAuthScheme scheme = SpnegoProvider.getAuthScheme(
                     this.conn.getHeaderField(Constants.AUTHN_HEADER));
@@ -298,12 +296,7 @@ public final class SpnegoHttpURLConnection {
                 byte[] data = scheme.getToken();
 
                 if (Constants.NEGOTIATE_HEADER.equalsIgnoreCase(scheme.getScheme())) {
-                    SpnegoHttpURLConnection.LOCK.lock();
-                    try {
-                        context.processMutualAuthorization(data, 0, data.length);
-                    } finally {
-                        SpnegoHttpURLConnection.LOCK.unlock();
-                    }
+                    context.processMutualAuthorization(data, 0, data.length);
 
                 } else {
                     throw new UnsupportedOperationException("Scheme NOT Supported: "
@@ -319,6 +312,67 @@ public final class SpnegoHttpURLConnection {
         return this.conn;
     }
 
+    /**
+     * Sends the request, with the given Authorization header unless it is null.
+     */
+    private void openConnection(final URL url, final ByteArrayOutputStream dooutput, final String authorization)
+            throws IOException {
+
+        this.conn = (HttpURLConnection) url.openConnection();
+        this.connected = true;
+
+        final Set<String> keys = this.requestProperties.keySet();
+        for (final String key : keys) {
+            for (String value : this.requestProperties.get(key)) {
+                this.conn.addRequestProperty(key, value);
+            }
+        }
+
+        // TODO : re-factor to support (302) redirects
+        this.conn.setInstanceFollowRedirects(false);
+        this.conn.setRequestMethod(this.requestMethod);
+
+        if (null != authorization) {
+            this.conn.setRequestProperty(Constants.AUTHZ_HEADER, authorization);
+        }
+
+        if (null != dooutput && dooutput.size() > 0) {
+            this.conn.setDoOutput(true);
+            dooutput.writeTo(this.conn.getOutputStream());
+        }
+
+        this.conn.connect();
+    }
+
+    /**
+     * Returns all values of a response header, matching its name in any case.
+     */
+    private List<String> getHeaderValues(final String name) {
+        final List<String> values = new ArrayList<>();
+        for (int i = 0; null != this.conn.getHeaderField(i); i++) {
+            if (name.equalsIgnoreCase(this.conn.getHeaderFieldKey(i))) {
+                values.add(this.conn.getHeaderField(i));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads the body of a rejected response, so that its connection may be kept alive for the next request.
+     */
+    private void discardErrorStream() {
+        try (InputStream errorStream = this.conn.getErrorStream()) {
+            if (null != errorStream) {
+                final byte[] buffer = new byte[4096];
+                while (errorStream.read(buffer) >= 0) {
+                    // discard
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.trace("Failed to read rejected response", e);
+        }
+    }
+
     /**
      * Logout the LoginContext instance, and call dispose() on GSSCredential 
      * if autoDisposeCreds is set to true, and call dispose on the passed-in 
@@ -327,12 +381,7 @@ public final class SpnegoHttpURLConnection {
     private void dispose(final SpnegoContext context) {
         if (null != context) {
             try {
-                SpnegoHttpURLConnection.LOCK.lock();
-                try {
-                    context.close();
-                } finally {
-                    SpnegoHttpURLConnection.LOCK.unlock();
-                }
+                context.close();
             } catch (IOException gsse) {
                 LOGGER.error("call to dispose context failed.", gsse);
             }
@@ -527,6 +576,21 @@ public final class SpnegoHttpURLConnection {
         this.reqCredDeleg = requestDelegation;
     }
 
+    /**
+     * Send a token up front only to resources the given cache knows to demand
+     * Negotiate. Other requests are sent without a token first, and once more
+     * with one if the server answers with a Negotiate challenge.
+     *
+     * @param capabilityCache cache shared by the connections of an
+     * application, or null to send a token with every request
+     * @since 0.5.1
+     */
+    public void setCapabilityCache(final NegotiateCapabilityCache capabilityCache) {
+        this.assertNotConnected();
+
+        this.capabilityCache = capabilityCache;
+    }
+
     /**
      * May override the default GET method.
      *
@@ -0,0 +1,123 @@
+package com.kerb4j.client;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.common.util.Constants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SpnegoHttpClientTests extends KerberosSecurityTestcase {
+
+    private SpnegoClient initiator;
+    private SpnegoClient acceptor;
+    private HttpServer server;
+    private URI uri;
+
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private volatile String mutualToken;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        File clientKeytab = new File(getWorkDir(), "http-client-client.keytab");
+        getKdc().createAndExportPrincipals(clientKeytab, "client/localhost");
+        File serverKeytab = new File(getWorkDir(), "http-client-server.keytab");
+        getKdc().createAndExportPrincipals(serverKeytab, "HTTP/localhost");
+
+        initiator = SpnegoClient.loginWithKeyTab("client/localhost", clientKeytab.getAbsolutePath());
+        acceptor = SpnegoClient.loginWithKeyTab("HTTP/localhost", serverKeytab.getAbsolutePath(), true);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", this::handle);
+        server.start();
+        uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/hello");
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String authorization = exchange.getRequestHeaders().getFirst(Constants.AUTHZ_HEADER);
+            authorizations.add(String.valueOf(authorization));
+            if (null == authorization) {
+                exchange.getResponseHeaders().add(Constants.AUTHN_HEADER, Constants.NEGOTIATE_HEADER);
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            String responseToken;
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                byte[] token = Base64.getDecoder().decode(authorization.substring(Constants.NEGOTIATE_HEADER.length() + 1));
+                responseToken = null == mutualToken
+                        ? Base64.getEncoder().encodeToString(acceptContext.acceptToken(token))
+                        : mutualToken;
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add(Constants.AUTHN_HEADER, Constants.NEGOTIATE_HEADER + " " + responseToken);
+            byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        }
+    }
+
+    @Test
+    public void testPreemptiveRequestWithMutualAuthentication() throws Exception {
+        SpnegoHttpClient client = new SpnegoHttpClient(HttpClient.newHttpClient(), initiator);
+
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<String> response = client.sendAsync(HttpRequest.newBuilder(uri).build(),
+                    HttpResponse.BodyHandlers.ofString()).get();
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertEquals("hello", response.body());
+        }
+        Assertions.assertEquals(2, authorizations.size());
+        Assertions.assertTrue(authorizations.stream().allMatch(a -> a.startsWith(Constants.NEGOTIATE_HEADER + " ")));
+    }
+
+    @Test
+    public void testChallengeIsAnsweredWithNegotiateHeader() throws Exception {
+        SpnegoHttpClient client = new SpnegoHttpClient(HttpClient.newHttpClient(), initiator, Runnable::run, false);
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("hello", response.body());
+        Assertions.assertEquals(2, authorizations.size());
+        Assertions.assertEquals("null", authorizations.get(0));
+        Assertions.assertTrue(authorizations.get(1).startsWith(Constants.NEGOTIATE_HEADER + " "));
+    }
+
+    @Test
+    public void testInvalidMutualAuthenticationTokenIsRejected() {
+        mutualToken = Base64.getEncoder().encodeToString(new byte[]{1, 2, 3, 4});
+        SpnegoHttpClient client = new SpnegoHttpClient(HttpClient.newHttpClient(), initiator);
+
+        IOException e = Assertions.assertThrows(IOException.class, () -> client.send(
+                HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()));
+        Assertions.assertTrue(e.getMessage().contains("Mutual authentication"), e.getMessage());
+    }
+
+}
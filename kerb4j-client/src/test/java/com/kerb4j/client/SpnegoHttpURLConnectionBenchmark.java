@@ -0,0 +1,120 @@
+package com.kerb4j.client;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.common.util.Constants;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticates requests to a local HTTP server which answers with a mutual authentication token, so that every
+ * request processes the reply and disposes its context. {@link #main(String[])} runs the benchmark with 1, 2, 4 and 8
+ * threads; connections share nothing but the {@link SpnegoClient}, so throughput should grow with the thread count
+ * up to the number of cores.
+ * <p>
+ * Not executed by the build; run {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpnegoHttpURLConnectionBenchmark {
+
+    private static final String SERVER_PRINCIPAL = "HTTP/localhost";
+    private static final String CLIENT_PRINCIPAL = "client/localhost";
+
+    private final KerberosSecurityTestcase kdc = new KerberosSecurityTestcase();
+
+    private SpnegoClient initiator;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private URL url;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        kdc.startMiniKdc();
+
+        File clientKeytab = new File(kdc.getWorkDir(), "connection-benchmark-client.keytab");
+        kdc.getKdc().createAndExportPrincipals(clientKeytab, CLIENT_PRINCIPAL);
+        File serverKeytab = new File(kdc.getWorkDir(), "connection-benchmark-server.keytab");
+        kdc.getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+
+        initiator = SpnegoClient.loginWithKeyTab(CLIENT_PRINCIPAL, clientKeytab.getAbsolutePath());
+        SpnegoClient acceptor = SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        server.createContext("/", exchange -> {
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                String authorization = exchange.getRequestHeaders().getFirst(Constants.AUTHZ_HEADER);
+                byte[] token = Base64.getDecoder().decode(authorization.substring(Constants.NEGOTIATE_HEADER.length() + 1));
+                byte[] responseToken = acceptContext.acceptToken(token);
+                exchange.getResponseHeaders().add(Constants.AUTHN_HEADER,
+                        Constants.NEGOTIATE_HEADER + " " + Base64.getEncoder().encodeToString(responseToken));
+                exchange.sendResponseHeaders(200, -1);
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        kdc.stopMiniKdc();
+    }
+
+    @Benchmark
+    public boolean connect() throws Exception {
+        SpnegoHttpURLConnection spnego = new SpnegoHttpURLConnection(initiator);
+        try {
+            HttpURLConnection connection = spnego.connect(url);
+            if (200 != connection.getResponseCode() || !spnego.isContextEstablished()) {
+                throw new IllegalStateException("Mutual authentication failed: " + connection.getResponseCode());
+            }
+            return true;
+        } finally {
+            spnego.disconnect();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            new Runner(new OptionsBuilder()
+                    .include(SpnegoHttpURLConnectionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+
+}
@@ -148,6 +148,68 @@ public class SpnegoHttpURLConnectionTests extends KerberosSecurityTestcase {
     }
 
 
+    @Test
+    public void testCapabilityCache() throws Exception {
+        SimpleKdcServer kdc = getKdc();
+        File workDir = getWorkDir();
+        String host = "localhost";
+
+        String serverPrincipal = "HTTP/" + host;
+        File serverKeytab = new File(workDir, "server.keytab");
+        kdc.createAndExportPrincipals(serverKeytab, serverPrincipal);
+
+        String clientPrincipal = "client/" + host;
+        File clientKeytab = new File(workDir, "client.keytab");
+        kdc.createAndExportPrincipals(clientKeytab, clientPrincipal);
+
+        SpringApplication springApplication = new SpringApplicationBuilder(
+                WebSecurityConfigSuccessHandler.class,
+                VanillaWebConfiguration.class,
+                TestAppConfiguration.class).application();
+        context = springApplication.run(
+                "--security.basic.enabled=true",
+                "--security.user.name=username",
+                "--security.user.password=password",
+                "--serverPrincipal=" + serverPrincipal,
+                "--serverKeytab=" + serverKeytab.getAbsolutePath()
+        );
+
+        PortInitListener portInitListener = context.getBean(PortInitListener.class);
+        MatcherAssert.assertThat(portInitListener.latch.await(10, TimeUnit.SECONDS), CoreMatchers.is(true));
+        int port = portInitListener.port;
+
+        SpnegoClient spnegoClient = SpnegoClient.loginWithKeyTab(clientPrincipal, clientKeytab.getAbsolutePath());
+        NegotiateCapabilityCache capabilityCache = new NegotiateCapabilityCache();
+        URL home = new URL("http://" + host + ":" + port + "/");
+        URL hello = new URL("http://" + host + ":" + port + "/hello");
+
+        for (int i = 0; i < 2; i++) {
+            SpnegoHttpURLConnection spnego = new SpnegoHttpURLConnection(spnegoClient);
+            spnego.setCapabilityCache(capabilityCache);
+            HttpURLConnection huc = spnego.connect(home);
+            BufferedReader br = new BufferedReader(new InputStreamReader(huc.getInputStream()));
+
+            Assertions.assertEquals(200, huc.getResponseCode());
+            Assertions.assertEquals("home", br.readLine());
+            Assertions.assertFalse(spnego.isContextEstablished());
+            spnego.disconnect();
+        }
+        Assertions.assertFalse(capabilityCache.isNegotiateRequired(home));
+
+        for (int i = 0; i < 2; i++) {
+            SpnegoHttpURLConnection spnego = new SpnegoHttpURLConnection(spnegoClient);
+            spnego.setCapabilityCache(capabilityCache);
+            HttpURLConnection huc = spnego.connect(hello);
+            BufferedReader br = new BufferedReader(new InputStreamReader(huc.getInputStream()));
+
+            Assertions.assertEquals(200, huc.getResponseCode());
+            Assertions.assertEquals("hello", br.readLine());
+            spnego.disconnect();
+        }
+        Assertions.assertTrue(capabilityCache.isNegotiateRequired(hello));
+        Assertions.assertFalse(capabilityCache.isNegotiateRequired(home));
+    }
+
     protected static class PortInitListener implements ApplicationListener<ServletWebServerInitializedEvent> {
 
         public int port;
@@ -0,0 +1,290 @@
+package com.kerb4j.client;
+
+import com.kerb4j.common.util.SpnegoProvider;
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.GSSName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link SpnResolver} which caches the service principal name per host and the {@link GSSName} per SPN, so that
+ * neither is built again for each request.
+ * <p>
+ * Per host overrides take precedence, e.g. for services behind a load balancer which are registered with the name of
+ * the nodes. An override for {@code host:port} wins over one for the host alone.
+ * <p>
+ * Optionally host names are canonicalized by following DNS CNAME records, as browsers do, so that an alias resolves
+ * to the SPN of the host it points to. The first request for a host blocks on that lookup, since the alias is not the
+ * SPN to ask the KDC for; concurrent requests for the same host wait for the same lookup, which gives up after a
+ * second per DNS server without an answer. The canonical name is then cached for a TTL; once that has passed, the
+ * cached name is still used while it is looked up again in the background. If the lookup fails, the host name is used
+ * as it is.
+ *
+ * @since 0.5.1
+ */
+public class CachingSpnResolver implements SpnResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingSpnResolver.class);
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    public static final long DEFAULT_CANONICAL_NAME_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAX_CNAME_HOPS = 8;
+
+    private static final String DNS_TIMEOUT = "1000";
+
+    private static final String DNS_RETRIES = "1";
+
+    static final CachingSpnResolver DEFAULT = new CachingSpnResolver();
+
+    private final int maximumSize;
+
+    private final boolean canonicalizeHostNames;
+
+    private final long canonicalNameTtl;
+
+    private final UnaryOperator<String> canonicalNameLookup;
+
+    private final Executor lookupExecutor;
+
+    private final LongSupplier clock;
+
+    private final Map<String, String> overrides = new ConcurrentHashMap<>();
+
+    private final Map<String, HostSpn> spns = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<HostSpn>> lookups = new ConcurrentHashMap<>();
+
+    private final Map<String, GSSName> gssNames = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a resolver mapping URLs to {@code HTTP/<host>} without DNS lookups.
+     */
+    public CachingSpnResolver() {
+        this(DEFAULT_MAXIMUM_SIZE, false, DEFAULT_CANONICAL_NAME_TTL);
+    }
+
+    /**
+     * @param maximumSize           maximum number of hosts and of SPNs cached
+     * @param canonicalizeHostNames whether to follow DNS CNAME records of the host
+     * @param canonicalNameTtl      time in milliseconds a canonical name is used before it is looked up again
+     */
+    public CachingSpnResolver(int maximumSize, boolean canonicalizeHostNames, long canonicalNameTtl) {
+        this(maximumSize, canonicalizeHostNames, canonicalNameTtl, CachingSpnResolver::lookupCanonicalName,
+                createLookupExecutor(), System::currentTimeMillis);
+    }
+
+    CachingSpnResolver(int maximumSize, boolean canonicalizeHostNames, long canonicalNameTtl,
+                       UnaryOperator<String> canonicalNameLookup, Executor lookupExecutor, LongSupplier clock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.canonicalizeHostNames = canonicalizeHostNames;
+        this.canonicalNameTtl = canonicalNameTtl;
+        this.canonicalNameLookup = canonicalNameLookup;
+        this.lookupExecutor = lookupExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Use a fixed service principal name for a host.
+     *
+     * @param host host name, optionally followed by {@code :port}
+     * @param spn  service principal name, e.g. {@code HTTP/node1.example.com}
+     */
+    public void putOverride(String host, String spn) {
+        overrides.put(host, spn);
+    }
+
+    public void removeOverride(String host) {
+        overrides.remove(host);
+    }
+
+    @Override
+    public String resolveSpn(URL url) {
+        String host = url.getHost();
+        if (null == host || host.isEmpty()) {
+            throw new IllegalArgumentException("Cannot resolve SPN for URL without host: " + url);
+        }
+        if (!overrides.isEmpty()) {
+            int port = -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+            String override = overrides.get(host + ":" + port);
+            if (null == override) {
+                override = overrides.get(host);
+            }
+            if (null != override) {
+                return override;
+            }
+        }
+
+        long now = clock.getAsLong();
+        HostSpn hostSpn = spns.get(host);
+        if (null == hostSpn) {
+            hostSpn = canonicalizeHostNames ? lookUp(host) : new HostSpn("HTTP/" + host, Long.MAX_VALUE);
+            put(spns, host, hostSpn);
+        } else if (canonicalizeHostNames && now >= hostSpn.expiresAt) {
+            refreshInBackground(host, hostSpn);
+        }
+        return hostSpn.spn;
+    }
+
+    /**
+     * @return cached GSS name of the SPN; GSS names may be shared by contexts on several threads
+     */
+    @Override
+    public GSSName resolveGSSName(String spn) throws GSSException {
+        GSSName gssName = gssNames.get(spn);
+        if (null == gssName) {
+            gssName = SpnegoProvider.createGSSNameForSPN(spn);
+            put(gssNames, spn, gssName);
+        }
+        return gssName;
+    }
+
+    public void invalidateAll() {
+        spns.clear();
+        gssNames.clear();
+    }
+
+    private String spnFor(String host) {
+        return "HTTP/" + (canonicalizeHostNames ? canonicalNameLookup.apply(host) : host);
+    }
+
+    /**
+     * Looks up the SPN of a host which is not cached yet; a thread which finds a lookup of the host in progress waits
+     * for it instead of starting another one.
+     */
+    private HostSpn lookUp(String host) {
+        CompletableFuture<HostSpn> lookup = new CompletableFuture<>();
+        CompletableFuture<HostSpn> inProgress = lookups.putIfAbsent(host, lookup);
+        if (null != inProgress) {
+            return inProgress.join();
+        }
+        try {
+            HostSpn hostSpn = spns.get(host);
+            if (null == hostSpn) {
+                hostSpn = new HostSpn(spnFor(host), clock.getAsLong() + canonicalNameTtl);
+            }
+            lookup.complete(hostSpn);
+            return hostSpn;
+        } catch (RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            lookups.remove(host, lookup);
+        }
+    }
+
+    private void refreshInBackground(String host, HostSpn hostSpn) {
+        if (!hostSpn.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lookupExecutor.execute(() -> {
+                try {
+                    spns.put(host, new HostSpn(spnFor(host), clock.getAsLong() + canonicalNameTtl));
+                } finally {
+                    hostSpn.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            hostSpn.refreshing.set(false);
+        }
+    }
+
+    private <V> void put(Map<String, V> cache, String key, V value) {
+        if (cache.size() >= maximumSize) {
+            Iterator<String> iterator = cache.keySet().iterator();
+            while (cache.size() >= maximumSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        cache.put(key, value);
+    }
+
+    /**
+     * @return target of the CNAME chain of the host, or the host if it has no CNAME record or the lookup fails
+     */
+    static String lookupCanonicalName(String host) {
+        if (host.indexOf(':') >= 0 || host.chars().allMatch(c -> '.' == c || Character.isDigit(c))) {
+            // IP address literal
+            return host;
+        }
+        Hashtable<String, String> environment = new Hashtable<>();
+        environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        environment.put("com.sun.jndi.dns.timeout.initial", DNS_TIMEOUT);
+        environment.put("com.sun.jndi.dns.timeout.retries", DNS_RETRIES);
+        DirContext context = null;
+        try {
+            context = new InitialDirContext(environment);
+            String name = host;
+            for (int i = 0; i < MAX_CNAME_HOPS; i++) {
+                Attribute cname = context.getAttributes(name, new String[]{"CNAME"}).get("CNAME");
+                if (null == cname || 0 == cname.size()) {
+                    break;
+                }
+                name = cname.get(0).toString();
+                if (name.endsWith(".")) {
+                    name = name.substring(0, name.length() - 1);
+                }
+            }
+            return name;
+        } catch (NamingException | RuntimeException e) {
+            LOGGER.debug("Failed to look up CNAME of " + host + ", using it as it is", e);
+            return host;
+        } finally {
+            if (null != context) {
+                try {
+                    context.close();
+                } catch (NamingException e) {
+                    LOGGER.debug("Failed to close DNS context", e);
+                }
+            }
+        }
+    }
+
+    private static Executor createLookupExecutor() {
+        return new ThreadPoolExecutor(0, 2, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kerb4j-spn-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class HostSpn {
+
+        private final String spn;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private HostSpn(String spn, long expiresAt) {
+            this.spn = spn;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.kerb4j.client;
+
+import javax.security.auth.kerberos.KerberosKey;
+
+/**
+ * Immutable index of the long-term keys of a principal by encryption type and key version number.
+ * <p>
+ * During key rotation a keytab holds several versions of the key for the same encryption type, so keys must be
+ * looked up by both. The index is an open-addressing table of packed {@code (etype, kvno)} pairs built once per
+ * key set; the raw key material is extracted once as well, since {@link KerberosKey#getEncoded()} returns a copy
+ * on every call.
+ */
+public final class KerberosKeyIndex {
+
+    public static final KerberosKeyIndex EMPTY = new KerberosKeyIndex(new KerberosKey[0]);
+
+    private final KerberosKey[] keys;
+
+    private final long[] slots;
+
+    private final KerberosKey[] slotKeys;
+
+    private final byte[][] slotMaterial;
+
+    private final int mask;
+
+    private KerberosKeyIndex(KerberosKey[] keys) {
+        this.keys = keys;
+
+        int capacity = Integer.highestOneBit(Math.max(1, keys.length) * 2 - 1) << 1;
+        this.slots = new long[capacity];
+        this.slotKeys = new KerberosKey[capacity];
+        this.slotMaterial = new byte[capacity][];
+        this.mask = capacity - 1;
+
+        for (KerberosKey key : keys) {
+            long packed = pack(key.getKeyType(), key.getVersionNumber());
+            int slot = hash(packed) & mask;
+            while (null != slotKeys[slot] && slots[slot] != packed) {
+                slot = (slot + 1) & mask;
+            }
+            if (null == slotKeys[slot]) {
+                // the first key wins for duplicate (etype, kvno) entries, same as a linear scan would
+                slots[slot] = packed;
+                slotKeys[slot] = key;
+                slotMaterial[slot] = key.getEncoded();
+            }
+        }
+    }
+
+    /**
+     * @param keys keys of a single principal, may be {@code null}
+     * @return index over the keys; the array is kept as is and must not be modified afterwards
+     */
+    public static KerberosKeyIndex of(KerberosKey[] keys) {
+        return null == keys || keys.length == 0 ? EMPTY : new KerberosKeyIndex(keys);
+    }
+
+    /**
+     * @return all indexed keys; the array is shared and must not be modified
+     */
+    public KerberosKey[] getKeys() {
+        return keys;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * @return key with exactly the given encryption type and version or {@code null}
+     */
+    public KerberosKey get(int keyType, int kvno) {
+        int slot = find(pack(keyType, kvno));
+        return -1 == slot ? null : slotKeys[slot];
+    }
+
+    /**
+     * @return raw key material of the key with the given encryption type and version or {@code null}; the array is
+     * shared and must not be modified
+     */
+    public byte[] getEncoded(int keyType, int kvno) {
+        int slot = find(pack(keyType, kvno));
+        return -1 == slot ? null : slotMaterial[slot];
+    }
+
+    /**
+     * Look up the key a ticket has been encrypted with. Falls back to the highest version of the encryption type if
+     * the exact version is not present, since tickets don't always carry a kvno.
+     *
+     * @return matching key or {@code null} if there is no key of that encryption type
+     */
+    public KerberosKey find(int keyType, int kvno) {
+        KerberosKey key = get(keyType, kvno);
+        return null == key ? findLatest(keys, keyType) : key;
+    }
+
+    /**
+     * Same as {@link #find(int, int)} with a linear scan over the keys, for callers which hold the keys only once and
+     * would not get the cost of building an index back.
+     *
+     * @param keys keys of a single principal, may be {@code null}
+     * @return matching key or {@code null} if there is no key of that encryption type
+     * @since 0.5.1
+     */
+    public static KerberosKey find(KerberosKey[] keys, int keyType, int kvno) {
+        if (null == keys) {
+            return null;
+        }
+        for (KerberosKey key : keys) {
+            if (key.getKeyType() == keyType && key.getVersionNumber() == kvno) {
+                return key;
+            }
+        }
+        return findLatest(keys, keyType);
+    }
+
+    /**
+     * @return {@code true} if the index holds this very key
+     */
+    public boolean contains(KerberosKey key) {
+        KerberosKey indexed = get(key.getKeyType(), key.getVersionNumber());
+        return null != indexed && (indexed == key || indexed.equals(key));
+    }
+
+    private static KerberosKey findLatest(KerberosKey[] keys, int keyType) {
+        KerberosKey key = null;
+        for (KerberosKey candidate : keys) {
+            if (candidate.getKeyType() == keyType
+                    && (null == key || candidate.getVersionNumber() > key.getVersionNumber())) {
+                key = candidate;
+            }
+        }
+        return key;
+    }
+
+    private int find(long packed) {
+        for (int slot = hash(packed) & mask; null != slotKeys[slot]; slot = (slot + 1) & mask) {
+            if (slots[slot] == packed) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static long pack(int keyType, int kvno) {
+        return ((long) keyType << 32) | (kvno & 0xffffffffL);
+    }
+
+    private static int hash(long packed) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.kerb4j.client;
+
+import com.kerb4j.common.util.SpnegoProvider;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Learns which resources demand {@code Negotiate} authentication, so that clients send a token up front only where
+ * the server asks for one and leave anonymous resources without the cost of a context and a service ticket.
+ * <p>
+ * A response to a request sent without a token is recorded for the origin and path of the request, and for the
+ * directory of the path. A URL takes what is known for its own path, or else for the closest directory above it, so
+ * that e.g. {@code /api/users/2} is authenticated up front once {@code /api/users/1} answered with a {@code Negotiate}
+ * challenge. Resources nothing is known about are requested without a token first.
+ * <p>
+ * Entries expire after a TTL; the next request is then sent without a token again to find out whether the server
+ * still demands one. Instances are thread-safe and meant to be shared by all clients of an application.
+ *
+ * @since 0.5.1
+ */
+public class NegotiateCapabilityCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    public static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private static final char PATH = '=';
+
+    private static final char DIRECTORY = '*';
+
+    private final int maximumSize;
+
+    private final long ttl;
+
+    private final LongSupplier clock;
+
+    /**
+     * Keys are the origin and path of a resource prefixed with {@link #PATH}, or the origin and directory prefixed
+     * with {@link #DIRECTORY}, which keeps the root path apart from the root directory.
+     */
+    private final Map<String, Capability> capabilities = new ConcurrentHashMap<>();
+
+    public NegotiateCapabilityCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maximumSize maximum number of paths and directories remembered
+     * @param ttl         time in milliseconds a recorded response is trusted
+     */
+    public NegotiateCapabilityCache(int maximumSize, long ttl) {
+        this(maximumSize, ttl, System::currentTimeMillis);
+    }
+
+    NegotiateCapabilityCache(int maximumSize, long ttl, LongSupplier clock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * @return whether a request to the URL should carry a {@code Negotiate} token up front
+     */
+    public boolean isNegotiateRequired(URL url) {
+        String origin = origin(url);
+        String path = path(url);
+        long now = clock.getAsLong();
+
+        Capability capability = get(PATH + origin + path, now);
+        if (null != capability) {
+            return capability.negotiateRequired;
+        }
+        for (String directory = directory(path); null != directory; directory = parent(directory)) {
+            capability = get(DIRECTORY + origin + directory, now);
+            if (null != capability) {
+                return capability.negotiateRequired;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the response to a request which was sent without a token.
+     *
+     * @param statusCode               HTTP status of the response
+     * @param authenticateHeaderValues values of its {@code WWW-Authenticate} headers, may be {@code null}
+     * @return whether the server demands {@code Negotiate}, i.e. the request should be repeated with a token
+     */
+    public boolean recordResponse(URL url, int statusCode, Iterable<String> authenticateHeaderValues) {
+        boolean negotiateRequired = false;
+        if (401 == statusCode && null != authenticateHeaderValues) {
+            for (String value : authenticateHeaderValues) {
+                if (SpnegoProvider.isNegotiateChallenge(value)) {
+                    negotiateRequired = true;
+                    break;
+                }
+            }
+        }
+        record(url, negotiateRequired);
+        return negotiateRequired;
+    }
+
+    /**
+     * Records whether the resource at the URL, and by default the others in its directory, demand {@code Negotiate}.
+     */
+    public void record(URL url, boolean negotiateRequired) {
+        String origin = origin(url);
+        String path = path(url);
+        Capability capability = new Capability(negotiateRequired, clock.getAsLong() + ttl);
+        put(PATH + origin + path, capability);
+        put(DIRECTORY + origin + directory(path), capability);
+    }
+
+    public void invalidateAll() {
+        capabilities.clear();
+    }
+
+    private Capability get(String key, long now) {
+        Capability capability = capabilities.get(key);
+        if (null != capability && now >= capability.expiresAt) {
+            capabilities.remove(key, capability);
+            return null;
+        }
+        return capability;
+    }
+
+    private void put(String key, Capability capability) {
+        if (capabilities.size() >= maximumSize && !capabilities.containsKey(key)) {
+            Iterator<String> iterator = capabilities.keySet().iterator();
+            while (capabilities.size() >= maximumSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        capabilities.put(key, capability);
+    }
+
+    private static String origin(URL url) {
+        String host = url.getHost();
+        if (null == host || host.isEmpty()) {
+            throw new IllegalArgumentException("Cannot authenticate URL without host: " + url);
+        }
+        int port = -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol().toLowerCase(Locale.ROOT) + "://" + host.toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    private static String path(URL url) {
+        String path = url.getPath();
+        return null == path || path.isEmpty() ? "/" : path;
+    }
+
+    /**
+     * @return path up to and including its last {@code /}
+     */
+    private static String directory(String path) {
+        return path.substring(0, path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return directory above the directory, or {@code null} for the root
+     */
+    private static String parent(String directory) {
+        if (directory.length() <= 1) {
+            return null;
+        }
+        return directory.substring(0, directory.lastIndexOf('/', directory.length() - 2) + 1);
+    }
+
+    private static final class Capability {
+
+        private final boolean negotiateRequired;
+        private final long expiresAt;
+
+        private Capability(boolean negotiateRequired, long expiresAt) {
+            this.negotiateRequired = negotiateRequired;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.kerb4j.client;
+
+import com.kerb4j.common.util.SpnegoProvider;
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.GSSName;
+
+import java.net.URL;
+
+/**
+ * Maps the URL of an HTTP service to the service principal name the client requests a ticket for.
+ *
+ * @see CachingSpnResolver
+ * @since 0.5.1
+ */
+public interface SpnResolver {
+
+    /**
+     * @return service principal name for the service at the URL, e.g. {@code HTTP/www.example.com}
+     * @throws IllegalArgumentException if the URL has no host
+     */
+    String resolveSpn(URL url);
+
+    /**
+     * @return GSS name for a service principal name like {@code HTTP/www.example.com}
+     */
+    default GSSName resolveGSSName(String spn) throws GSSException {
+        return SpnegoProvider.createGSSNameForSPN(spn);
+    }
+
+    /**
+     * @return resolver used unless another one has been configured; it maps URLs to {@code HTTP/<host>} without
+     * DNS lookups and caches the results
+     */
+    static SpnResolver getDefault() {
+        return CachingSpnResolver.DEFAULT;
+    }
+
+}
@@ -22,7 +22,6 @@ import com.kerb4j.client.spi.JaasSubjectSupplier;
 import com.kerb4j.client.spi.SpnegoClientBackend;
 import com.kerb4j.client.spi.SpnegoClientProvider;
 import com.kerb4j.client.spi.SubjectBasedSpnegoClientBackend;
-import com.kerb4j.common.util.LRUCache;
 import org.ietf.jgss.GSSException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +33,6 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.PrivilegedActionException;
-import java.util.AbstractMap;
 import java.util.concurrent.Callable;
 
 /**
@@ -54,7 +52,7 @@ public final class SpnegoClient {
 
     public static final String SPNEGO_PROVIDER_PROPERTY = "kerb4j.spnego.provider";
 
-    private static final LRUCache<CacheKey, SpnegoClient> SPNEGO_CLIENT_CACHE = new LRUCache<>(1024);
+    private static final SpnegoClientCache SPNEGO_CLIENT_CACHE = new SpnegoClientCache();
 
     private final SpnegoClientBackend backend;
 
@@ -63,9 +61,7 @@ public final class SpnegoClient {
     }
 
     public static void resetCache() {
-        synchronized (SPNEGO_CLIENT_CACHE) {
-            SPNEGO_CLIENT_CACHE.clear();
-        }
+        SPNEGO_CLIENT_CACHE.clear();
         SpnegoClientProviderRegistry.reset();
     }
 
@@ -94,16 +90,8 @@ public final class SpnegoClient {
         if (!useCache) {
             return loginWithUsernamePasswordImpl(provider, username, password);
         }
-        CacheKey entry = CacheKey.usernamePassword(provider.getName(), username, password);
-        SpnegoClient spnegoClient;
-        synchronized (SPNEGO_CLIENT_CACHE) {
-            spnegoClient = SPNEGO_CLIENT_CACHE.get(entry);
-            if (null == spnegoClient) {
-                spnegoClient = loginWithUsernamePasswordImpl(provider, username, password);
-                SPNEGO_CLIENT_CACHE.put(entry, spnegoClient);
-            }
-        }
-        return spnegoClient;
+        return SPNEGO_CLIENT_CACHE.get("username-password", provider.getName(), username, password,
+                () -> loginWithUsernamePasswordImpl(provider, username, password));
     }
 
     private static SpnegoClient loginWithUsernamePasswordImpl(SpnegoClientProvider provider,
@@ -140,16 +128,8 @@ public final class SpnegoClient {
         if (!useCache) {
             return loginWithEnterprisePrincipalImpl(provider, enterprisePrincipal, password);
         }
-        CacheKey entry = CacheKey.enterprisePrincipal(provider.getName(), enterprisePrincipal, password);
-        SpnegoClient spnegoClient;
-        synchronized (SPNEGO_CLIENT_CACHE) {
-            spnegoClient = SPNEGO_CLIENT_CACHE.get(entry);
-            if (null == spnegoClient) {
-                spnegoClient = loginWithEnterprisePrincipalImpl(provider, enterprisePrincipal, password);
-                SPNEGO_CLIENT_CACHE.put(entry, spnegoClient);
-            }
-        }
-        return spnegoClient;
+        return SPNEGO_CLIENT_CACHE.get("enterprise-principal", provider.getName(), enterprisePrincipal, password,
+                () -> loginWithEnterprisePrincipalImpl(provider, enterprisePrincipal, password));
     }
 
     private static SpnegoClient loginWithEnterprisePrincipalImpl(SpnegoClientProvider provider,
@@ -213,6 +193,16 @@ public final class SpnegoClient {
         return backend.getKerberosKeys();
     }
 
+    /**
+     * Keys of the principal indexed by encryption type and key version number. The index is built once per subject,
+     * so looking a key up does neither read the keytab nor copy the key set.
+     *
+     * @since 0.5.1
+     */
+    public KerberosKeyIndex getKerberosKeyIndex() {
+        return backend.getKerberosKeyIndex();
+    }
+
     public SpnegoContext createContext(URL url) throws PrivilegedActionException, GSSException {
         return backend.createContext(this, url);
     }
@@ -243,6 +233,53 @@ public final class SpnegoClient {
         return backend.createAcceptContext(this);
     }
 
+    /**
+     * Drops the cached acceptor credential and key index so that the next {@link #createAcceptContext()} and
+     * {@link #getKerberosKeyIndex()} pick up a changed keytab.
+     *
+     * @since 0.5.1
+     */
+    public void invalidateAcceptorCredential() {
+        backend.invalidateAcceptorCredential();
+    }
+
+    /**
+     * Replaces the keys used by {@link #createAcceptContext()} and returned by {@link #getKerberosKeyIndex()}, e.g.
+     * with keys reloaded from a rotated keytab. Tokens are accepted with either the old or the new key set, never a
+     * mix of both.
+     *
+     * @since 0.5.1
+     */
+    public void replaceKerberosKeys(KerberosKeyIndex keyIndex) {
+        backend.replaceKerberosKeys(keyIndex);
+    }
+
+    /**
+     * Sets the resolver used by {@link #createContext(URL)} to map the URL to a service principal name and by both
+     * {@link #createContext(URL)} and {@link #createContextForSPN(String)} to obtain the GSS name of the SPN. By
+     * default {@link SpnResolver#getDefault()} is used.
+     *
+     * @since 0.5.1
+     */
+    public void setSpnResolver(SpnResolver spnResolver) {
+        backend.setSpnResolver(spnResolver);
+    }
+
+    /**
+     * Renews the TGT in the background once the given fraction of its lifetime, minus a random jitter, has passed.
+     * Requests keep using the current TGT until the new one has been obtained, so they only wait for the KDC if the
+     * TGT has expired anyway. For example {@code setTgtRefreshAhead(0.8, 0.1)} renews a 10 hour TGT after 7 to 8
+     * hours.
+     *
+     * @param lifetimeFraction fraction of the TGT lifetime after which it is renewed, between 0 and 1 exclusive
+     * @param jitter           maximum random fraction of the lifetime to renew earlier, less than
+     *                         {@code lifetimeFraction}
+     * @since 0.5.1
+     */
+    public void setTgtRefreshAhead(double lifetimeFraction, double jitter) {
+        backend.setTgtRefreshAhead(lifetimeFraction, jitter);
+    }
+
     private static final class SpnegoClientProviderRegistry {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(SpnegoClientProviderRegistry.class);
@@ -320,38 +357,4 @@ public final class SpnegoClient {
             }
         }
     }
-
-    private static final class CacheKey extends AbstractMap.SimpleEntry<String, String> {
-        private final String type;
-        private final String provider;
-
-        private CacheKey(String type, String provider, String key, String value) {
-            super(key, value);
-            this.type = type;
-            this.provider = provider;
-        }
-
-        private static CacheKey usernamePassword(String provider, String username, String password) {
-            return new CacheKey("username-password", provider, username, password);
-        }
-
-        private static CacheKey enterprisePrincipal(String provider, String enterprisePrincipal, String password) {
-            return new CacheKey("enterprise-principal", provider, enterprisePrincipal, password);
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            return super.equals(obj) && obj instanceof CacheKey
-                    && type.equals(((CacheKey) obj).type)
-                    && provider.equals(((CacheKey) obj).provider);
-        }
-
-        @Override
-        public int hashCode() {
-            int result = type.hashCode();
-            result = 31 * result + provider.hashCode();
-            result = 31 * result + super.hashCode();
-            return result;
-        }
-    }
 }
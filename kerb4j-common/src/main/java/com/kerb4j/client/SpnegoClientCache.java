@@ -0,0 +1,214 @@
+package com.kerb4j.client;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosTicket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Logged in {@link SpnegoClient}s keyed by provider, principal and password, used by the {@code useCache} login
+ * methods.
+ * <p>
+ * Logins for different keys run concurrently and concurrent logins for the same key are coalesced into one, so a
+ * slow KDC only holds up the callers waiting for the same credentials. Failed logins are not cached. An entry is kept
+ * until the TGT obtained by the login expires, so the password is checked against the KDC again afterwards.
+ * <p>
+ * Passwords are not kept in the keys; they are identified by a SHA-256 hash salted with a random per-JVM salt.
+ */
+final class SpnegoClientCache {
+
+    static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    /**
+     * Time an entry is kept if the subject of the client has no TGT to take the lifetime from.
+     */
+    static final long DEFAULT_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(1);
+
+    private static final byte[] SALT = salt();
+
+    private final Map<Key, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+
+    private final int maximumSize;
+
+    private final LongSupplier clock;
+
+    SpnegoClientCache() {
+        this(DEFAULT_MAXIMUM_SIZE, System::currentTimeMillis);
+    }
+
+    SpnegoClientCache(int maximumSize, LongSupplier clock) {
+        this.maximumSize = maximumSize;
+        this.clock = clock;
+    }
+
+    /**
+     * @return cached client for the credentials, or the client created by the loader once it has logged in
+     */
+    SpnegoClient get(String type, String provider, String principal, String password, Callable<SpnegoClient> loader) {
+        Key key = Key.of(type, provider, principal, password);
+        while (true) {
+            CompletableFuture<Entry> future = entries.get(key);
+            if (null == future) {
+                CompletableFuture<Entry> loading = new CompletableFuture<>();
+                future = entries.putIfAbsent(key, loading);
+                if (null == future) {
+                    return load(key, loading, loader);
+                }
+            }
+            Entry entry;
+            try {
+                entry = future.join();
+            } catch (CompletionException e) {
+                throw propagate(e.getCause());
+            }
+            if (clock.getAsLong() < entry.expiresAt) {
+                return entry.spnegoClient;
+            }
+            entries.remove(key, future);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private SpnegoClient load(Key key, CompletableFuture<Entry> loading, Callable<SpnegoClient> loader) {
+        Entry entry;
+        try {
+            SpnegoClient spnegoClient = loader.call();
+            // log in now, so that waiting callers share the login and failed logins are not cached
+            Subject subject = spnegoClient.getSubject();
+            entry = new Entry(spnegoClient, expiresAt(subject, clock.getAsLong()));
+        } catch (Throwable e) {
+            entries.remove(key, loading);
+            loading.completeExceptionally(e);
+            throw propagate(e);
+        }
+        if (entries.size() > maximumSize) {
+            evict(key);
+        }
+        loading.complete(entry);
+        return entry.spnegoClient;
+    }
+
+    private void evict(Key loaded) {
+        long now = clock.getAsLong();
+        entries.values().removeIf(future -> future.isDone() && !future.isCompletedExceptionally()
+                && now >= future.join().expiresAt);
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (entries.size() > maximumSize && iterator.hasNext()) {
+            if (!loaded.equals(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long expiresAt(Subject subject, long now) {
+        if (null != subject) {
+            for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+                if (ticket.getServer().getName().startsWith("krbtgt")) {
+                    synchronized (ticket) {
+                        if (null != ticket.getEndTime()) {
+                            return ticket.getEndTime().getTime();
+                        }
+                    }
+                }
+            }
+        }
+        return now + DEFAULT_TIME_TO_LIVE;
+    }
+
+    private static byte[] salt() {
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        return salt;
+    }
+
+    private static RuntimeException propagate(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new RuntimeException(e);
+    }
+
+    private static final class Entry {
+
+        private final SpnegoClient spnegoClient;
+        private final long expiresAt;
+
+        private Entry(SpnegoClient spnegoClient, long expiresAt) {
+            this.spnegoClient = spnegoClient;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final String type;
+        private final String provider;
+        private final String principal;
+        private final byte[] passwordHash;
+        private final int hashCode;
+
+        private Key(String type, String provider, String principal, byte[] passwordHash) {
+            this.type = type;
+            this.provider = provider;
+            this.principal = principal;
+            this.passwordHash = passwordHash;
+            this.hashCode = 31 * Objects.hash(type, provider, principal) + Arrays.hashCode(passwordHash);
+        }
+
+        private static Key of(String type, String provider, String principal, String password) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(SALT);
+                digest.update(String.valueOf(principal).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(password).getBytes(StandardCharsets.UTF_8));
+                return new Key(type, provider, principal, digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type.equals(key.type) && provider.equals(key.provider) && Objects.equals(principal, key.principal)
+                    && MessageDigest.isEqual(passwordHash, key.passwordHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+}
@@ -0,0 +1,258 @@
+package com.kerb4j.client;
+
+import org.ietf.jgss.GSSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.security.PrivilegedActionException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Buffer of pre-minted, single-use {@code Authorization: Negotiate} headers per target, for clients which cannot
+ * afford creating a GSS context and encrypting an authenticator on the request thread.
+ * <p>
+ * A target becomes hot on its first request, which is served by minting a header right away. From then on a
+ * background thread keeps up to {@code depth} headers minted ahead for it, refilling after each request. Headers
+ * older than {@code maxTokenAge} are never handed out, since the acceptor rejects authenticators outside of its clock
+ * skew; headers are discarded ahead of that age and replaced in the background. Targets without requests for
+ * {@value #IDLE_TIMEOUT_MINUTES} minutes are dropped.
+ * <p>
+ * Each header is handed out once. Pooled contexts don't process the mutual authentication reply of the acceptor, so
+ * the pool suits clients which only send the initial token, like {@link SpnegoClient#createAuthroizationHeader(URL)}.
+ *
+ * @since 0.5.1
+ */
+public final class SpnegoTokenPool implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpnegoTokenPool.class);
+
+    public static final int DEFAULT_DEPTH = 4;
+
+    /**
+     * Well within the default clock skew of 5 minutes accepted by Kerberos services.
+     */
+    public static final long DEFAULT_MAX_TOKEN_AGE = TimeUnit.SECONDS.toMillis(60);
+
+    private static final long IDLE_TIMEOUT_MINUTES = 5;
+
+    static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(IDLE_TIMEOUT_MINUTES);
+
+    private final SpnegoClient spnegoClient;
+
+    private final int depth;
+
+    private final long maxTokenAge;
+
+    /**
+     * Headers are discarded once they would exceed the maximum age before the next sweep.
+     */
+    private final long sweepInterval;
+
+    private final LongSupplier clock;
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder discardedCount = new LongAdder();
+
+    public SpnegoTokenPool(SpnegoClient spnegoClient) {
+        this(spnegoClient, DEFAULT_DEPTH, DEFAULT_MAX_TOKEN_AGE);
+    }
+
+    /**
+     * @param spnegoClient client to mint headers with
+     * @param depth        number of headers kept minted ahead per target
+     * @param maxTokenAge  maximum age in milliseconds of a header handed out
+     */
+    public SpnegoTokenPool(SpnegoClient spnegoClient, int depth, long maxTokenAge) {
+        this(spnegoClient, depth, maxTokenAge, System::currentTimeMillis, createExecutor());
+    }
+
+    SpnegoTokenPool(SpnegoClient spnegoClient, int depth, long maxTokenAge, LongSupplier clock,
+                    ScheduledExecutorService executor) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be positive");
+        }
+        if (maxTokenAge < 4) {
+            throw new IllegalArgumentException("maxTokenAge must be at least 4 ms");
+        }
+        this.spnegoClient = spnegoClient;
+        this.depth = depth;
+        this.maxTokenAge = maxTokenAge;
+        this.sweepInterval = maxTokenAge / 4;
+        this.clock = clock;
+        this.executor = executor;
+        executor.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@code Negotiate} header for the HTTP service at the URL
+     */
+    public String getAuthorizationHeader(URL url) throws PrivilegedActionException, GSSException, IOException {
+        // keyed by port as well, since an SpnResolver may map ports of a host to different SPNs
+        int port = -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+        return take(targets.computeIfAbsent(url.getHost() + ":" + port,
+                key -> new Target(clock.getAsLong(), () -> spnegoClient.createAuthroizationHeader(url))));
+    }
+
+    /**
+     * @return {@code Negotiate} header for the service principal
+     */
+    public String getAuthorizationHeaderForSPN(String spn) throws PrivilegedActionException, GSSException, IOException {
+        return take(targets.computeIfAbsent(spn,
+                key -> new Target(clock.getAsLong(), () -> spnegoClient.createAuthroizationHeaderForSPN(spn))));
+    }
+
+    /**
+     * @return number of headers served from the pool
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return number of headers minted on the request thread because the pool was empty
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of pooled headers dropped because they got too old
+     */
+    public long getDiscardedCount() {
+        return discardedCount.sum();
+    }
+
+    /**
+     * @return fraction of requests served from the pool, or {@code 0} if there have been no requests yet
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+        return 0 == requests ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        targets.clear();
+    }
+
+    private String take(Target target) throws PrivilegedActionException, GSSException, IOException {
+        long now = clock.getAsLong();
+        target.lastUsed = now;
+        for (PooledToken token; null != (token = target.tokens.poll()); ) {
+            if (now - token.mintedAt < maxTokenAge) {
+                hitCount.increment();
+                refill(target);
+                return token.header;
+            }
+            discardedCount.increment();
+        }
+        missCount.increment();
+        refill(target);
+        return target.minter.mint();
+    }
+
+    private void refill(Target target) {
+        if (!target.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    while (target.tokens.size() < depth && !executor.isShutdown()) {
+                        String header = target.minter.mint();
+                        target.tokens.add(new PooledToken(header, clock.getAsLong()));
+                    }
+                } catch (Exception e) {
+                    // requests fall back to minting on their thread, the next request retries
+                    LOGGER.debug("Failed to mint pooled SPNEGO token", e);
+                } finally {
+                    target.refilling.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            target.refilling.set(false);
+        }
+    }
+
+    private void sweep() {
+        long now = clock.getAsLong();
+        targets.values().removeIf(target -> now - target.lastUsed >= IDLE_TIMEOUT);
+        for (Target target : targets.values()) {
+            boolean discarded = false;
+            for (Iterator<PooledToken> iterator = target.tokens.iterator(); iterator.hasNext(); ) {
+                if (now - iterator.next().mintedAt >= maxTokenAge - sweepInterval) {
+                    iterator.remove();
+                    discardedCount.increment();
+                    discarded = true;
+                }
+            }
+            if (discarded) {
+                refill(target);
+            }
+        }
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kerb4j-token-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private interface Minter {
+
+        String mint() throws PrivilegedActionException, GSSException, IOException;
+
+    }
+
+    private static final class Target {
+
+        private final Minter minter;
+        private final Queue<PooledToken> tokens = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile long lastUsed;
+
+        private Target(long created, Minter minter) {
+            this.lastUsed = created;
+            this.minter = minter;
+        }
+
+    }
+
+    private static final class PooledToken {
+
+        private final String header;
+        private final long mintedAt;
+
+        private PooledToken(String header, long mintedAt) {
+            this.header = header;
+            this.mintedAt = mintedAt;
+        }
+
+    }
+
+}
@@ -1,7 +1,9 @@
 package com.kerb4j.client.spi;
 
+import com.kerb4j.client.KerberosKeyIndex;
 import com.kerb4j.client.SpnegoClient;
 import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.client.SpnResolver;
 import org.ietf.jgss.GSSException;
 
 import javax.security.auth.Subject;
@@ -21,10 +23,63 @@ public interface SpnegoClientBackend {
 
     KerberosKey[] getKerberosKeys();
 
+    /**
+     * @return keys of the principal indexed by encryption type and key version number
+     * @since 0.5.1
+     */
+    default KerberosKeyIndex getKerberosKeyIndex() {
+        return KerberosKeyIndex.of(getKerberosKeys());
+    }
+
     SpnegoContext createContext(SpnegoClient spnegoClient, URL url) throws PrivilegedActionException, GSSException;
 
     SpnegoContext createContextForSPN(SpnegoClient spnegoClient, String spn)
             throws PrivilegedActionException, GSSException, MalformedURLException;
 
     SpnegoContext createAcceptContext(SpnegoClient spnegoClient) throws PrivilegedActionException;
+
+    /**
+     * Drops the acceptor credential cached by {@link #createAcceptContext(SpnegoClient)} and the cached key index,
+     * e.g. after the keytab has been replaced. The next accept context creates a fresh credential.
+     *
+     * @since 0.5.1
+     */
+    default void invalidateAcceptorCredential() {
+    }
+
+    /**
+     * Replaces the keys used to accept tokens, e.g. after the keytab has been rotated. Implementations must swap the
+     * key set atomically, so that concurrent accept calls see either the old or the new keys.
+     *
+     * @param keyIndex new keys of the service principal
+     * @throws UnsupportedOperationException if the backend doesn't support replacing keys
+     * @since 0.5.1
+     */
+    default void replaceKerberosKeys(KerberosKeyIndex keyIndex) {
+        throw new UnsupportedOperationException(getImplementationName() + " backend does not support replacing keys");
+    }
+
+    /**
+     * Renews the TGT in the background once the given fraction of its lifetime has passed, minus a random jitter of
+     * up to {@code jitter}, instead of logging in again on a request thread after it has expired.
+     *
+     * @param lifetimeFraction fraction of the TGT lifetime after which it is renewed, between 0 and 1 exclusive
+     * @param jitter           maximum random fraction of the lifetime to renew earlier, less than
+     *                         {@code lifetimeFraction}
+     * @throws UnsupportedOperationException if the backend doesn't support refreshing ahead of expiry
+     * @since 0.5.1
+     */
+    default void setTgtRefreshAhead(double lifetimeFraction, double jitter) {
+        throw new UnsupportedOperationException(getImplementationName() + " backend does not support TGT refresh ahead");
+    }
+
+    /**
+     * Sets the resolver mapping URLs to service principal names and SPNs to GSS names for contexts created afterwards.
+     *
+     * @throws UnsupportedOperationException if the backend doesn't support another resolver
+     * @since 0.5.1
+     */
+    default void setSpnResolver(SpnResolver spnResolver) {
+        throw new UnsupportedOperationException(getImplementationName() + " backend does not support SPN resolvers");
+    }
 }
@@ -1,7 +1,9 @@
 package com.kerb4j.client.spi;
 
+import com.kerb4j.client.KerberosKeyIndex;
 import com.kerb4j.client.SpnegoClient;
 import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.client.SpnResolver;
 import com.kerb4j.common.util.JreVendor;
 import com.kerb4j.common.util.SpnegoProvider;
 import org.ietf.jgss.GSSContext;
@@ -21,9 +23,18 @@ import java.net.URL;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -32,11 +43,24 @@ public class SubjectBasedSpnegoClientBackend implements SpnegoClientBackend {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SubjectBasedSpnegoClientBackend.class);
 
+    /**
+     * Time to wait before trying again after a refresh ahead of expiry has failed or hasn't yielded a newer TGT.
+     */
+    private static final long REFRESH_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private static final Executor REFRESH_EXECUTOR = createRefreshExecutor();
+
     private final String implementationName;
     private final AtomicReference<SubjectTgtPair> subjectTgtPairReference = new AtomicReference<>();
     private final AtomicReference<Subject> eternalSubjectReference = new AtomicReference<>();
     private final Callable<Subject> subjectSupplier;
     private final Lock authenticateLock = new ReentrantLock();
+    private final AtomicReference<AcceptorCredential> acceptorCredentialReference = new AtomicReference<>();
+    private final AtomicReference<SubjectKeyIndex> keyIndexReference = new AtomicReference<>();
+    private volatile ReplacedKeys replacedKeys;
+    private volatile RefreshAhead refreshAhead;
+    private volatile SpnResolver spnResolver = SpnResolver.getDefault();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
 
     public SubjectBasedSpnegoClientBackend(String implementationName, Callable<Subject> subjectSupplier) {
         this.implementationName = implementationName;
@@ -55,44 +79,153 @@ public class SubjectBasedSpnegoClientBackend implements SpnegoClientBackend {
             return eternalSubject;
         }
         SubjectTgtPair subjectTgtPair = subjectTgtPairReference.get();
-        if (null == subjectTgtPair || subjectTgtPair.isExpired()) {
-            authenticateLock.lock();
-            try {
-                eternalSubject = eternalSubjectReference.get();
-                if (null != eternalSubject) {
-                    return eternalSubject;
+        if (null != subjectTgtPair) {
+            long now = System.currentTimeMillis();
+            if (now < subjectTgtPair.endTime) {
+                if (now >= subjectTgtPair.refreshAt) {
+                    refreshInBackground(subjectTgtPair);
                 }
-                subjectTgtPair = subjectTgtPairReference.get();
-                if (null == subjectTgtPair || subjectTgtPair.isExpired()) {
-                    Subject subject = subjectSupplier.call();
-                    for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
-                        if (ticket.getServer().getName().startsWith("krbtgt")) {
-                            subjectTgtPairReference.set(new SubjectTgtPair(ticket, subject));
-                            break;
-                        }
-                    }
-                    subjectTgtPair = subjectTgtPairReference.get();
-                    if (null == subjectTgtPair) {
-                        // isInitiator=false / acceptOnly subjects do not contain a TGT, so there is no expiry time
-                        // to drive refresh. Keep that subject permanently to preserve the old JDK accept-only behavior.
-                        eternalSubjectReference.set(subject);
-                        return subject;
-                    }
+                return subjectTgtPair.subject;
+            }
+        }
+        authenticateLock.lock();
+        try {
+            eternalSubject = eternalSubjectReference.get();
+            if (null != eternalSubject) {
+                return eternalSubject;
+            }
+            subjectTgtPair = subjectTgtPairReference.get();
+            if (null == subjectTgtPair || subjectTgtPair.isExpired()) {
+                Subject subject = subjectSupplier.call();
+                subjectTgtPair = SubjectTgtPair.of(subject, refreshAhead);
+                if (null == subjectTgtPair) {
+                    // isInitiator=false / acceptOnly subjects do not contain a TGT, so there is no expiry time
+                    // to drive refresh. Keep that subject permanently to preserve the old JDK accept-only behavior.
+                    eternalSubjectReference.set(subject);
+                    return subject;
                 }
-            } catch (RuntimeException e) {
-                throw e;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            } finally {
-                authenticateLock.unlock();
+                subjectTgtPairReference.set(subjectTgtPair);
+            }
+            return subjectTgtPair.subject;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            authenticateLock.unlock();
+        }
+    }
+
+    /**
+     * Once the given fraction of the TGT lifetime has passed, a new subject is obtained on a background thread, while
+     * request threads keep using the current one until the new one is ready. Each TGT gets its own random jitter
+     * subtracted from the fraction, so that a fleet of instances started at the same time doesn't hit the KDC at the
+     * same instant. Request threads only wait for a login if the TGT has expired anyway, e.g. because the KDC has been
+     * unreachable for the rest of its lifetime.
+     */
+    @Override
+    public void setTgtRefreshAhead(double lifetimeFraction, double jitter) {
+        RefreshAhead refreshAhead = new RefreshAhead(lifetimeFraction, jitter);
+        this.refreshAhead = refreshAhead;
+        authenticateLock.lock();
+        try {
+            SubjectTgtPair subjectTgtPair = subjectTgtPairReference.get();
+            if (null != subjectTgtPair) {
+                subjectTgtPairReference.set(subjectTgtPair.withRefreshAhead(refreshAhead));
+            }
+        } finally {
+            authenticateLock.unlock();
+        }
+    }
+
+    /**
+     * Obtains the subject replacing one whose TGT is about to expire. Backends which cache the TGT themselves must
+     * override this to request a new one.
+     */
+    protected Subject refreshSubject() throws Exception {
+        return subjectSupplier.call();
+    }
+
+    private void refreshInBackground(SubjectTgtPair stale) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            REFRESH_EXECUTOR.execute(() -> {
+                try {
+                    refresh(stale);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private void refresh(SubjectTgtPair stale) {
+        authenticateLock.lock();
+        try {
+            if (subjectTgtPairReference.get() != stale) {
+                return;
             }
+            SubjectTgtPair subjectTgtPair = SubjectTgtPair.of(refreshSubject(), refreshAhead);
+            if (null == subjectTgtPair || subjectTgtPair.endTime <= stale.endTime) {
+                LOGGER.debug("Refresh ahead of expiry did not yield a newer Kerberos TGT, keeping the current one");
+                stale.postponeRefresh();
+                return;
+            }
+            subjectTgtPairReference.set(subjectTgtPair);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to refresh Kerberos TGT ahead of expiry, keeping the current one", e);
+            stale.postponeRefresh();
+        } finally {
+            authenticateLock.unlock();
         }
-        return subjectTgtPair.subject;
     }
 
+    private static Executor createRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "kerb4j-tgt-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return keys from the cached {@link #getKerberosKeyIndex() key index}; the array is shared between callers and
+     * must not be modified
+     */
     @Override
     public KerberosKey[] getKerberosKeys() {
+        KerberosKeyIndex keyIndex = getKerberosKeyIndex();
+        return keyIndex.isEmpty() ? null : keyIndex.getKeys();
+    }
+
+    /**
+     * Returns the key index of the current subject. It is built once when the subject is obtained or refreshed, so
+     * request threads neither copy the key set nor read the keytab.
+     */
+    @Override
+    public KerberosKeyIndex getKerberosKeyIndex() {
+        ReplacedKeys replacedKeys = this.replacedKeys;
+        if (null != replacedKeys) {
+            return replacedKeys.keyIndex;
+        }
         Subject subject = getSubject();
+        SubjectKeyIndex subjectKeyIndex = keyIndexReference.get();
+        if (null != subjectKeyIndex && subjectKeyIndex.subject == subject) {
+            return subjectKeyIndex.keyIndex;
+        }
+        KerberosKeyIndex keyIndex = KerberosKeyIndex.of(readKerberosKeys(subject));
+        keyIndexReference.set(new SubjectKeyIndex(subject, keyIndex));
+        return keyIndex;
+    }
+
+    private static KerberosKey[] readKerberosKeys(Subject subject) {
         Set<KerberosKey> kerberosKeys = subject.getPrivateCredentials(KerberosKey.class);
         if (!kerberosKeys.isEmpty()) {
             return new ArrayList<>(kerberosKeys).toArray(new KerberosKey[kerberosKeys.size()]);
@@ -113,23 +246,79 @@ public class SubjectBasedSpnegoClientBackend implements SpnegoClientBackend {
 
     @Override
     public SpnegoContext createContext(SpnegoClient spnegoClient, URL url) throws PrivilegedActionException, GSSException {
+        SpnResolver spnResolver = this.spnResolver;
+        GSSName gssName = spnResolver.resolveGSSName(spnResolver.resolveSpn(url));
         Subject subject = getSubject();
-        return new SpnegoContext(spnegoClient, subject, getGSSContext(subject, SpnegoProvider.getServerName(url)));
+        return new SpnegoContext(spnegoClient, subject, getGSSContext(subject, gssName));
     }
 
     @Override
     public SpnegoContext createContextForSPN(SpnegoClient spnegoClient, String spn)
             throws PrivilegedActionException, GSSException, MalformedURLException {
+        GSSName gssName = spnResolver.resolveGSSName(spn);
         Subject subject = getSubject();
-        return new SpnegoContext(spnegoClient, subject, getGSSContext(subject, SpnegoProvider.createGSSNameForSPN(spn)));
+        return new SpnegoContext(spnegoClient, subject, getGSSContext(subject, gssName));
+    }
+
+    @Override
+    public void setSpnResolver(SpnResolver spnResolver) {
+        this.spnResolver = Objects.requireNonNull(spnResolver, "spnResolver must not be null");
+    }
+
+    protected SpnResolver getSpnResolver() {
+        return spnResolver;
     }
 
     @Override
     public SpnegoContext createAcceptContext(SpnegoClient spnegoClient) throws PrivilegedActionException {
-        Subject subject = getSubject();
-        return new SpnegoContext(spnegoClient, subject, Subject.doAs(subject, new PrivilegedExceptionAction<>() {
+        ReplacedKeys replacedKeys = this.replacedKeys;
+        Subject subject = null == replacedKeys ? getSubject() : replacedKeys.acceptorSubject;
+        GSSCredential credential = getAcceptorCredential(subject);
+        try {
+            return new SpnegoContext(spnegoClient, subject, SpnegoProvider.GSS_MANAGER.createContext(credential));
+        } catch (GSSException e) {
+            throw new PrivilegedActionException(e);
+        }
+    }
+
+    @Override
+    public void invalidateAcceptorCredential() {
+        acceptorCredentialReference.set(null);
+        keyIndexReference.set(null);
+    }
+
+    /**
+     * Accept contexts created afterwards use a subject holding exactly the given keys instead of the keytab of the
+     * login subject, so JGSS accepts tickets for all of them, including retired key versions still in their grace
+     * period. The login subject is still used to initiate contexts.
+     */
+    @Override
+    public void replaceKerberosKeys(KerberosKeyIndex keyIndex) {
+        Set<KerberosPrincipal> principals = new HashSet<>();
+        Set<KerberosKey> keys = new HashSet<>();
+        for (KerberosKey key : keyIndex.getKeys()) {
+            principals.add(key.getPrincipal());
+            keys.add(key);
+        }
+        replacedKeys = new ReplacedKeys(keyIndex,
+                new Subject(true, principals, Collections.emptySet(), keys));
+        acceptorCredentialReference.set(null);
+    }
+
+    /**
+     * Returns the acceptor credential for the given subject. Creating it makes JGSS scan the private credentials
+     * of the subject and read the keytab, so it is created once and reused until the subject is refreshed, the
+     * credential lifetime runs out or {@link #invalidateAcceptorCredential()} is called.
+     */
+    protected GSSCredential getAcceptorCredential(final Subject subject) throws PrivilegedActionException {
+        AcceptorCredential acceptorCredential = acceptorCredentialReference.get();
+        if (null != acceptorCredential && acceptorCredential.isValidFor(subject)) {
+            return acceptorCredential.credential;
+        }
+
+        GSSCredential credential = Subject.doAs(subject, new PrivilegedExceptionAction<GSSCredential>() {
             @Override
-            public GSSContext run() throws Exception {
+            public GSSCredential run() throws Exception {
                 final int credentialLifetime;
                 if (JreVendor.IS_IBM_JVM) {
                     credentialLifetime = GSSCredential.INDEFINITE_LIFETIME;
@@ -137,25 +326,23 @@ public class SubjectBasedSpnegoClientBackend implements SpnegoClientBackend {
                     credentialLifetime = GSSCredential.DEFAULT_LIFETIME;
                 }
 
-                GSSCredential credential = SpnegoProvider.GSS_MANAGER.createCredential(
+                return SpnegoProvider.GSS_MANAGER.createCredential(
                         null,
                         credentialLifetime,
                         SpnegoProvider.SUPPORTED_OIDS,
                         GSSCredential.ACCEPT_ONLY);
-
-                return SpnegoProvider.GSS_MANAGER.createContext(credential);
             }
-        }));
+        });
+
+        // Concurrent misses may create several credentials; any of them is good to use and the last one is kept
+        acceptorCredentialReference.set(new AcceptorCredential(subject, credential));
+        return credential;
     }
 
     protected GSSContext getGSSContext(final Subject subject, final GSSName gssName)
             throws GSSException, PrivilegedActionException {
-        try {
-            Thread.sleep(31);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-
+        // No need to space out contexts: authenticators carry a microsecond timestamp and a random confounder, and
+        // acceptor replay caches key on the encrypted authenticator, so back-to-back tokens are never replays
         return Subject.doAs(subject, new PrivilegedExceptionAction<GSSContext>() {
             @Override
             public GSSContext run() throws Exception {
@@ -181,25 +368,137 @@ public class SubjectBasedSpnegoClientBackend implements SpnegoClientBackend {
         });
     }
 
-    private static class SubjectTgtPair {
+    private static class ReplacedKeys {
+
+        private final KerberosKeyIndex keyIndex;
+        private final Subject acceptorSubject;
+
+        private ReplacedKeys(KerberosKeyIndex keyIndex, Subject acceptorSubject) {
+            this.keyIndex = keyIndex;
+            this.acceptorSubject = acceptorSubject;
+        }
+
+    }
+
+    private static class SubjectKeyIndex {
 
-        private final KerberosTicket tgt;
         private final Subject subject;
+        private final KerberosKeyIndex keyIndex;
 
-        private SubjectTgtPair(KerberosTicket tgt, Subject subject) {
-            this.tgt = tgt;
+        private SubjectKeyIndex(Subject subject, KerberosKeyIndex keyIndex) {
             this.subject = subject;
+            this.keyIndex = keyIndex;
         }
 
-        private boolean isExpired() {
+    }
+
+    private static class AcceptorCredential {
+
+        private final Subject subject;
+        private final GSSCredential credential;
+        private final long expiresAt;
+
+        private AcceptorCredential(Subject subject, GSSCredential credential) {
+            this.subject = subject;
+            this.credential = credential;
+            this.expiresAt = expiresAt(credential);
+        }
+
+        private boolean isValidFor(Subject subject) {
+            return this.subject == subject && System.currentTimeMillis() < expiresAt;
+        }
+
+        private static long expiresAt(GSSCredential credential) {
             try {
-                synchronized (tgt) {
-                    return tgt.getEndTime().before(new Date());
+                int remainingLifetime = credential.getRemainingAcceptLifetime(SpnegoProvider.KERBEROS_V5_OID);
+                if (GSSCredential.INDEFINITE_LIFETIME == remainingLifetime) {
+                    return Long.MAX_VALUE;
                 }
-            } catch (Exception e) {
-                LOGGER.error("Failed to get Kerberos ticket end time", e);
-                return true;
+                return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(remainingLifetime);
+            } catch (GSSException e) {
+                LOGGER.debug("Failed to get acceptor credential lifetime", e);
+                return Long.MAX_VALUE;
             }
         }
     }
+
+    private static class RefreshAhead {
+
+        private final double lifetimeFraction;
+        private final double jitter;
+
+        private RefreshAhead(double lifetimeFraction, double jitter) {
+            if (!(lifetimeFraction > 0 && lifetimeFraction < 1)) {
+                throw new IllegalArgumentException("lifetimeFraction must be between 0 and 1 exclusive");
+            }
+            if (!(jitter >= 0 && jitter < lifetimeFraction)) {
+                throw new IllegalArgumentException("jitter must not be negative and less than lifetimeFraction");
+            }
+            this.lifetimeFraction = lifetimeFraction;
+            this.jitter = jitter;
+        }
+
+        private long refreshAt(long startTime, long endTime) {
+            double fraction = lifetimeFraction - jitter * ThreadLocalRandom.current().nextDouble();
+            return startTime + (long) ((endTime - startTime) * fraction);
+        }
+
+    }
+
+    /**
+     * Subject with the end time of its TGT read once, so that the request path neither locks the ticket nor
+     * allocates a date to check it.
+     */
+    private static class SubjectTgtPair {
+
+        private final Subject subject;
+        private final long startTime;
+        private final long endTime;
+        private volatile long refreshAt;
+
+        private SubjectTgtPair(Subject subject, long startTime, long endTime, RefreshAhead refreshAhead) {
+            this.subject = subject;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.refreshAt = null == refreshAhead ? Long.MAX_VALUE : refreshAhead.refreshAt(startTime, endTime);
+        }
+
+        /**
+         * @return subject paired with its TGT, or {@code null} if the subject doesn't contain a TGT
+         */
+        private static SubjectTgtPair of(Subject subject, RefreshAhead refreshAhead) {
+            for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+                if (ticket.getServer().getName().startsWith("krbtgt")) {
+                    long startTime;
+                    long endTime;
+                    try {
+                        synchronized (ticket) {
+                            endTime = ticket.getEndTime().getTime();
+                            startTime = null == ticket.getStartTime()
+                                    ? ticket.getAuthTime().getTime()
+                                    : ticket.getStartTime().getTime();
+                        }
+                    } catch (Exception e) {
+                        LOGGER.error("Failed to get Kerberos ticket end time", e);
+                        endTime = 0;
+                        startTime = 0;
+                    }
+                    return new SubjectTgtPair(subject, startTime, endTime, refreshAhead);
+                }
+            }
+            return null;
+        }
+
+        private SubjectTgtPair withRefreshAhead(RefreshAhead refreshAhead) {
+            return new SubjectTgtPair(subject, startTime, endTime, refreshAhead);
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= endTime;
+        }
+
+        private void postponeRefresh() {
+            refreshAt = System.currentTimeMillis() + REFRESH_RETRY_INTERVAL;
+        }
+    }
 }
@@ -0,0 +1,196 @@
+package com.kerb4j.common.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Decodes the Base64 token of an {@code Authorization: Negotiate} header straight from the region of the
+ * container buffer it arrived in.
+ *
+ * <p>Negotiate tokens carrying a PAC are routinely 10-48 KB, so copying the header region out of the
+ * container buffer, into a {@code String} and then into a byte array before decoding is wasteful. Methods
+ * of this class skip leading and trailing whitespace of the region and decode it into a single array of the
+ * exact decoded size. The result is retained by the token objects downstream, so it is never pooled.</p>
+ *
+ * <p>The alphabet and padding rules are those of {@link java.util.Base64#getDecoder()}: padding is optional,
+ * any other character outside of the basic alphabet is rejected with {@link IllegalArgumentException}.</p>
+ */
+public final class NegotiateTokenDecoder {
+
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+    private static final int[] SEXTETS = new int[128];
+
+    static {
+        Arrays.fill(SEXTETS, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            SEXTETS[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private NegotiateTokenDecoder() {
+        // default private
+    }
+
+    /**
+     * Decodes a Base64 token from a byte buffer region such as Tomcat's {@code ByteChunk}
+     * ({@code getBuffer()}, {@code getStart()}, {@code getLength()}).
+     *
+     * @param src    buffer holding the US-ASCII header value
+     * @param offset offset of the token in {@code src}
+     * @param length length of the token region
+     * @return decoded token, empty if the region is blank
+     * @throws IllegalArgumentException if the region is not valid Base64
+     */
+    public static byte[] decode(byte[] src, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, src.length);
+
+        int from = offset;
+        int to = offset + length;
+        while (from < to && isWhitespace(src[from])) {
+            from++;
+        }
+        while (to > from && isWhitespace(src[to - 1])) {
+            to--;
+        }
+
+        int len = to - from;
+        if (len == 0) {
+            return EMPTY_BYTE_ARRAY;
+        }
+
+        int padding = 0;
+        if ('=' == src[to - 1]) {
+            padding++;
+            if (len > 1 && '=' == src[to - 2]) {
+                padding++;
+            }
+        }
+        int symbols = checkedSymbols(len, padding);
+
+        byte[] out = new byte[decodedLength(symbols)];
+        int o = 0;
+        int i = from;
+        for (int quantaEnd = from + (symbols & ~3); i < quantaEnd; i += 4) {
+            int bits = sextet(src[i]) << 18 | sextet(src[i + 1]) << 12 | sextet(src[i + 2]) << 6 | sextet(src[i + 3]);
+            o = write(out, o, bits, 3);
+        }
+        int rest = symbols & 3;
+        if (rest > 0) {
+            int bits = sextet(src[i]) << 18 | sextet(src[i + 1]) << 12 | (rest == 3 ? sextet(src[i + 2]) << 6 : 0);
+            write(out, o, bits, rest - 1);
+        }
+        return out;
+    }
+
+    /**
+     * Decodes a Base64 token from a region of a {@code CharSequence}, typically the header value returned by
+     * the Servlet or WebFlux API, without creating a substring.
+     *
+     * @param src   header value
+     * @param start index of the first character of the token region
+     * @param end   index after the last character of the token region
+     * @return decoded token, empty if the region is blank
+     * @throws IllegalArgumentException if the region is not valid Base64
+     */
+    public static byte[] decode(CharSequence src, int start, int end) {
+        Objects.checkFromToIndex(start, end, src.length());
+
+        int from = start;
+        int to = end;
+        while (from < to && isWhitespace(src.charAt(from))) {
+            from++;
+        }
+        while (to > from && isWhitespace(src.charAt(to - 1))) {
+            to--;
+        }
+
+        int len = to - from;
+        if (len == 0) {
+            return EMPTY_BYTE_ARRAY;
+        }
+
+        int padding = 0;
+        if ('=' == src.charAt(to - 1)) {
+            padding++;
+            if (len > 1 && '=' == src.charAt(to - 2)) {
+                padding++;
+            }
+        }
+        int symbols = checkedSymbols(len, padding);
+
+        byte[] out = new byte[decodedLength(symbols)];
+        int o = 0;
+        int i = from;
+        for (int quantaEnd = from + (symbols & ~3); i < quantaEnd; i += 4) {
+            int bits = sextet(src.charAt(i)) << 18 | sextet(src.charAt(i + 1)) << 12
+                    | sextet(src.charAt(i + 2)) << 6 | sextet(src.charAt(i + 3));
+            o = write(out, o, bits, 3);
+        }
+        int rest = symbols & 3;
+        if (rest > 0) {
+            int bits = sextet(src.charAt(i)) << 18 | sextet(src.charAt(i + 1)) << 12
+                    | (rest == 3 ? sextet(src.charAt(i + 2)) << 6 : 0);
+            write(out, o, bits, rest - 1);
+        }
+        return out;
+    }
+
+    /**
+     * Decodes the remaining bytes of a {@code ByteBuffer}. The position of {@code src} is not changed.
+     *
+     * @param src buffer holding the US-ASCII header value between its position and limit
+     * @return decoded token, empty if the region is blank
+     * @throws IllegalArgumentException if the region is not valid Base64
+     */
+    public static byte[] decode(ByteBuffer src) {
+        if (src.hasArray()) {
+            return decode(src.array(), src.arrayOffset() + src.position(), src.remaining());
+        }
+        byte[] copy = new byte[src.remaining()];
+        src.duplicate().get(copy);
+        return decode(copy, 0, copy.length);
+    }
+
+    private static int checkedSymbols(int len, int padding) {
+        int symbols = len - padding;
+        if ((padding > 0 && (len & 3) != 0) || (symbols & 3) == 1) {
+            throw new IllegalArgumentException("Input has wrong 4-byte ending unit");
+        }
+        return symbols;
+    }
+
+    private static int decodedLength(int symbols) {
+        int rest = symbols & 3;
+        return (symbols >> 2) * 3 + (rest == 0 ? 0 : rest - 1);
+    }
+
+    private static int write(byte[] out, int o, int bits, int count) {
+        if (bits < 0) {
+            throw new IllegalArgumentException("Illegal Base64 character");
+        }
+        out[o++] = (byte) (bits >> 16);
+        if (count > 1) {
+            out[o++] = (byte) (bits >> 8);
+        }
+        if (count > 2) {
+            out[o++] = (byte) bits;
+        }
+        return o;
+    }
+
+    private static int sextet(int c) {
+        return c >= 0 && c < 128 ? SEXTETS[c] : -1;
+    }
+
+    private static int sextet(byte b) {
+        return b >= 0 ? SEXTETS[b] : -1;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+}
@@ -106,7 +106,94 @@ public final class SpnegoProvider {
     }
 
     /**
-     * Returns the Universal Object Identifier representation of 
+     * Returns true if a WWW-Authenticate header offers the Negotiate scheme.
+     *
+     * <p>
+     * Unlike {@link #getAuthScheme(String)} this accepts a bare challenge
+     * without token, any case of the scheme name and a comma separated
+     * list of challenges for several schemes.
+     * </p>
+     *
+     * @param header ex. Negotiate or Basic realm="example", Negotiate
+     * @return true if one of the challenges is Negotiate
+     * @since 0.5.1
+     */
+    public static boolean isNegotiateChallenge(final String header) {
+        return null != header && -1 != negotiateTokenStart(header);
+    }
+
+    /**
+     * Returns the token of the Negotiate challenge in a WWW-Authenticate
+     * header, parsed like {@link #isNegotiateChallenge(String)}.
+     *
+     * @param header ex. Negotiate YIIB... or Basic realm="example", Negotiate
+     * @return decoded token, empty for a challenge without token, or null
+     * if the header offers no Negotiate challenge
+     * @throws IllegalArgumentException if the token is not valid Base64
+     * @since 0.5.1
+     */
+    public static byte[] getNegotiateToken(final String header) {
+        if (null == header) {
+            return null;
+        }
+        final int start = negotiateTokenStart(header);
+        if (-1 == start) {
+            return null;
+        }
+        final int end = header.indexOf(',', start);
+        return NegotiateTokenDecoder.decode(header, start, -1 == end ? header.length() : end);
+    }
+
+    /**
+     * Same as {@link #getNegotiateToken(String)} for all values of the
+     * WWW-Authenticate header of a response.
+     *
+     * @param headerValues header values, may be null
+     * @return decoded token of the first Negotiate challenge, empty for a
+     * challenge without token, or null if no value offers Negotiate
+     * @throws IllegalArgumentException if the token is not valid Base64
+     * @since 0.5.1
+     */
+    public static byte[] getNegotiateToken(final Iterable<String> headerValues) {
+        if (null != headerValues) {
+            for (String header : headerValues) {
+                final byte[] token = getNegotiateToken(header);
+                if (null != token) {
+                    return token;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return index of the token of the first Negotiate challenge in the
+     * header, or -1 if there is no Negotiate challenge
+     */
+    private static int negotiateTokenStart(final String header) {
+        final int length = Constants.NEGOTIATE_HEADER.length();
+        int from = 0;
+        while (from <= header.length()) {
+            int end = header.indexOf(',', from);
+            if (-1 == end) {
+                end = header.length();
+            }
+            int start = from;
+            while (start < end && Character.isWhitespace(header.charAt(start))) {
+                start++;
+            }
+            if (end - start >= length
+                    && header.regionMatches(true, start, Constants.NEGOTIATE_HEADER, 0, length)
+                    && (end - start == length || Character.isWhitespace(header.charAt(start + length)))) {
+                return start + length;
+            }
+            from = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the Universal Object Identifier representation of
      * the SPNEGO mechanism.
      *
      * @return Object Identifier of the GSS-API mechanism
@@ -0,0 +1,118 @@
+package com.kerb4j.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingSpnResolverTest {
+
+    @Test
+    void resolvesHttpSpnAndReusesGssNames() throws Exception {
+        CachingSpnResolver resolver = new CachingSpnResolver();
+
+        String spn = resolver.resolveSpn(new URL("https://www.example.com:8443/path"));
+        assertEquals("HTTP/www.example.com", spn);
+        assertSame(spn, resolver.resolveSpn(new URL("http://www.example.com/other")));
+        assertSame(resolver.resolveGSSName(spn), resolver.resolveGSSName(spn));
+        assertEquals("HTTP@www.example.com", resolver.resolveGSSName(spn).toString());
+
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolveSpn(new URL("file:///tmp/x")));
+    }
+
+    @Test
+    void appliesHostAndPortOverrides() throws Exception {
+        CachingSpnResolver resolver = new CachingSpnResolver();
+        resolver.putOverride("lb.example.com", "HTTP/node.example.com");
+        resolver.putOverride("lb.example.com:8443", "HTTP/admin.example.com");
+
+        assertEquals("HTTP/node.example.com", resolver.resolveSpn(new URL("https://lb.example.com/")));
+        assertEquals("HTTP/admin.example.com", resolver.resolveSpn(new URL("https://lb.example.com:8443/")));
+        assertEquals("HTTP/other.example.com", resolver.resolveSpn(new URL("https://other.example.com/")));
+
+        resolver.removeOverride("lb.example.com");
+        assertEquals("HTTP/lb.example.com", resolver.resolveSpn(new URL("https://lb.example.com/")));
+    }
+
+    @Test
+    void canonicalizesHostNamesAndRefreshesThemInBackgroundAfterTtl() throws Exception {
+        AtomicReference<String> canonicalName = new AtomicReference<>("node1.example.com");
+        List<String> lookups = new ArrayList<>();
+        List<Runnable> pendingRefreshes = new ArrayList<>();
+        AtomicLong now = new AtomicLong();
+        CachingSpnResolver resolver = new CachingSpnResolver(16, true, 1_000, host -> {
+            lookups.add(host);
+            return canonicalName.get();
+        }, pendingRefreshes::add, now::get);
+
+        URL url = new URL("https://alias.example.com/");
+        assertEquals("HTTP/node1.example.com", resolver.resolveSpn(url));
+        assertEquals("HTTP/node1.example.com", resolver.resolveSpn(url));
+        assertEquals(1, lookups.size());
+
+        canonicalName.set("node2.example.com");
+        now.addAndGet(1_000);
+        // the stale name is used while it is looked up again, only once
+        assertEquals("HTTP/node1.example.com", resolver.resolveSpn(url));
+        assertEquals("HTTP/node1.example.com", resolver.resolveSpn(url));
+        assertEquals(1, pendingRefreshes.size());
+
+        pendingRefreshes.get(0).run();
+        assertEquals("HTTP/node2.example.com", resolver.resolveSpn(url));
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    void looksUpEachHostOnceForConcurrentRequests() throws Exception {
+        CountDownLatch lookupStarted = new CountDownLatch(1);
+        CountDownLatch lookupFinished = new CountDownLatch(1);
+        AtomicInteger lookups = new AtomicInteger();
+        CachingSpnResolver resolver = new CachingSpnResolver(16, true, 1_000, host -> {
+            lookups.incrementAndGet();
+            lookupStarted.countDown();
+            try {
+                lookupFinished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "node1.example.com";
+        }, Runnable::run, System::currentTimeMillis);
+
+        URL url = new URL("https://alias.example.com/");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> spns = new ArrayList<>();
+            spns.add(executor.submit(() -> resolver.resolveSpn(url)));
+            assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                spns.add(executor.submit(() -> resolver.resolveSpn(url)));
+            }
+            Thread.sleep(100);
+            lookupFinished.countDown();
+            for (Future<String> spn : spns) {
+                assertEquals("HTTP/node1.example.com", spn.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void keepsHostNameIfItHasNoCanonicalName() {
+        assertEquals("127.0.0.1", CachingSpnResolver.lookupCanonicalName("127.0.0.1"));
+        assertEquals("::1", CachingSpnResolver.lookupCanonicalName("::1"));
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.kerb4j.client;
+
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.kerberos.KerberosKey;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KerberosKeyIndexTest {
+
+    private static final KerberosPrincipal PRINCIPAL = new KerberosPrincipal("HTTP/localhost@EXAMPLE.COM");
+
+    private static final int AES128 = 17;
+
+    private static final int AES256 = 18;
+
+    @Test
+    void testLookupByEtypeAndKvno() {
+        KerberosKey aes256v1 = key(AES256, 1, (byte) 1);
+        KerberosKey aes256v2 = key(AES256, 2, (byte) 2);
+        KerberosKey aes128v2 = key(AES128, 2, (byte) 3);
+
+        KerberosKeyIndex keyIndex = KerberosKeyIndex.of(new KerberosKey[]{aes256v1, aes256v2, aes128v2});
+
+        assertSame(aes256v1, keyIndex.get(AES256, 1));
+        assertSame(aes256v2, keyIndex.get(AES256, 2));
+        assertSame(aes128v2, keyIndex.get(AES128, 2));
+        assertNull(keyIndex.get(AES128, 1));
+
+        assertArrayEquals(aes256v1.getEncoded(), keyIndex.getEncoded(AES256, 1));
+        assertArrayEquals(aes256v2.getEncoded(), keyIndex.getEncoded(AES256, 2));
+        assertNull(keyIndex.getEncoded(AES128, 1));
+
+        assertTrue(keyIndex.contains(aes256v1));
+        assertFalse(keyIndex.contains(key(AES256, 1, (byte) 9)));
+    }
+
+    @Test
+    void testFindFallsBackToHighestKvno() {
+        KerberosKey aes256v3 = key(AES256, 3, (byte) 1);
+        KerberosKey aes256v5 = key(AES256, 5, (byte) 2);
+
+        KerberosKeyIndex keyIndex = KerberosKeyIndex.of(new KerberosKey[]{aes256v5, aes256v3});
+
+        assertSame(aes256v3, keyIndex.find(AES256, 3));
+        assertSame(aes256v5, keyIndex.find(AES256, 0));
+        assertNull(keyIndex.find(AES128, 3));
+
+        KerberosKey[] keys = keyIndex.getKeys();
+        assertSame(aes256v3, KerberosKeyIndex.find(keys, AES256, 3));
+        assertSame(aes256v5, KerberosKeyIndex.find(keys, AES256, 0));
+        assertNull(KerberosKeyIndex.find(keys, AES128, 3));
+        assertNull(KerberosKeyIndex.find(null, AES256, 3));
+    }
+
+    @Test
+    void testEmpty() {
+        assertSame(KerberosKeyIndex.EMPTY, KerberosKeyIndex.of(null));
+        assertSame(KerberosKeyIndex.EMPTY, KerberosKeyIndex.of(new KerberosKey[0]));
+        assertTrue(KerberosKeyIndex.EMPTY.isEmpty());
+        assertNull(KerberosKeyIndex.EMPTY.find(AES256, 1));
+    }
+
+    private static KerberosKey key(int keyType, int kvno, byte fill) {
+        byte[] material = new byte[keyType == AES256 ? 32 : 16];
+        Arrays.fill(material, fill);
+        return new KerberosKey(PRINCIPAL, material, keyType, kvno);
+    }
+
+}
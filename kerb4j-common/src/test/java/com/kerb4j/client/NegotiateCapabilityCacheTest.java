@@ -0,0 +1,85 @@
+package com.kerb4j.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegotiateCapabilityCacheTest {
+
+    @Test
+    void learnsFromChallengesPerPathAndDirectory() throws Exception {
+        NegotiateCapabilityCache cache = new NegotiateCapabilityCache();
+
+        assertFalse(cache.isNegotiateRequired(new URL("http://example.com/api/users/1")));
+        assertTrue(cache.recordResponse(new URL("http://example.com/api/users/1"), 401,
+                List.of("Basic realm=\"example\", Negotiate")));
+        assertFalse(cache.recordResponse(new URL("http://example.com/api/public"), 200, null));
+
+        assertTrue(cache.isNegotiateRequired(new URL("http://example.com/api/users/1")));
+        assertTrue(cache.isNegotiateRequired(new URL("HTTP://EXAMPLE.COM:80/api/users/2")));
+        assertTrue(cache.isNegotiateRequired(new URL("http://example.com/api/users/2/roles")));
+        assertFalse(cache.isNegotiateRequired(new URL("http://example.com/api/public")));
+        assertFalse(cache.isNegotiateRequired(new URL("http://example.com/api/other")));
+        assertFalse(cache.isNegotiateRequired(new URL("https://example.com/api/users/1")));
+        assertFalse(cache.isNegotiateRequired(new URL("http://example.com:8080/api/users/1")));
+
+        cache.invalidateAll();
+        assertFalse(cache.isNegotiateRequired(new URL("http://example.com/api/users/1")));
+    }
+
+    @Test
+    void keepsRootPathApartFromRootDirectory() throws Exception {
+        NegotiateCapabilityCache cache = new NegotiateCapabilityCache();
+
+        cache.record(new URL("http://example.com/"), false);
+        cache.record(new URL("http://example.com/hello"), true);
+
+        assertFalse(cache.isNegotiateRequired(new URL("http://example.com")));
+        assertTrue(cache.isNegotiateRequired(new URL("http://example.com/hello")));
+        assertTrue(cache.isNegotiateRequired(new URL("http://example.com/other")));
+    }
+
+    @Test
+    void ignoresOtherChallengesAndStatuses() throws Exception {
+        NegotiateCapabilityCache cache = new NegotiateCapabilityCache();
+        URL url = new URL("http://example.com/hello");
+
+        assertFalse(cache.recordResponse(url, 401, List.of("Basic realm=\"example\"", "NegotiateX")));
+        assertFalse(cache.recordResponse(url, 403, List.of("Negotiate")));
+        assertTrue(cache.recordResponse(url, 401, List.of("Basic realm=\"example\"", "negotiate")));
+        assertTrue(cache.isNegotiateRequired(url));
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() throws Exception {
+        AtomicLong now = new AtomicLong();
+        NegotiateCapabilityCache cache = new NegotiateCapabilityCache(16, 1_000, now::get);
+        URL url = new URL("http://example.com/hello");
+
+        cache.record(url, true);
+        now.addAndGet(999);
+        assertTrue(cache.isNegotiateRequired(url));
+        now.addAndGet(1);
+        assertFalse(cache.isNegotiateRequired(url));
+    }
+
+    @Test
+    void evictsEntriesBeyondMaximumSize() throws Exception {
+        NegotiateCapabilityCache cache = new NegotiateCapabilityCache(4, 1_000);
+        for (int i = 0; i < 10; i++) {
+            cache.record(new URL("http://host" + i + ".example.com/a/b"), true);
+        }
+        int known = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.isNegotiateRequired(new URL("http://host" + i + ".example.com/a/b"))) {
+                known++;
+            }
+        }
+        assertTrue(known >= 1 && known <= 4, "known " + known);
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.kerb4j.client;
+
+import com.kerb4j.client.spi.SpnegoClientBackend;
+import com.kerb4j.client.spi.SubjectBasedSpnegoClientBackend;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpnegoClientCacheTest {
+
+    @Test
+    void coalescesConcurrentLoginsAndDoesNotBlockOtherUsers() throws Exception {
+        SpnegoClientCache cache = new SpnegoClientCache();
+        CountDownLatch releaseSlowLogin = new CountDownLatch(1);
+        AtomicInteger slowLogins = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Callable<SpnegoClient> slowLoader = loader(() -> {
+                slowLogins.incrementAndGet();
+                assertTrue(releaseSlowLogin.await(10, TimeUnit.SECONDS));
+                return subjectWithTgt(System.currentTimeMillis() + 60_000);
+            });
+            Future<?>[] slowUsers = new Future<?>[4];
+            for (int i = 0; i < slowUsers.length; i++) {
+                slowUsers[i] = executor.submit(() -> cache.get("username-password", "test", "slow", "secret", slowLoader));
+            }
+
+            // another user logs in while the slow login is still waiting for the KDC
+            SpnegoClient fast = executor.submit(() -> cache.get("username-password", "test", "fast", "secret",
+                    loader(() -> subjectWithTgt(System.currentTimeMillis() + 60_000)))).get(5, TimeUnit.SECONDS);
+            assertNotNull(fast);
+
+            releaseSlowLogin.countDown();
+            Object slow = slowUsers[0].get(10, TimeUnit.SECONDS);
+            for (Future<?> slowUser : slowUsers) {
+                assertSame(slow, slowUser.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, slowLogins.get());
+            assertEquals(2, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void doesNotCacheFailedLoginsAndKeysOnPassword() throws Exception {
+        SpnegoClientCache cache = new SpnegoClientCache();
+        AtomicInteger logins = new AtomicInteger();
+        Callable<SpnegoClient> failing = loader(() -> {
+            logins.incrementAndGet();
+            throw new IllegalStateException("Pre-authentication information was invalid");
+        });
+
+        assertThrows(IllegalStateException.class, () -> cache.get("username-password", "test", "user", "wrong", failing));
+        assertThrows(IllegalStateException.class, () -> cache.get("username-password", "test", "user", "wrong", failing));
+        assertEquals(2, logins.get());
+        assertEquals(0, cache.size());
+
+        SpnegoClient right = cache.get("username-password", "test", "user", "right",
+                loader(() -> subjectWithTgt(System.currentTimeMillis() + 60_000)));
+        assertSame(right, cache.get("username-password", "test", "user", "right", failing));
+        assertThrows(IllegalStateException.class, () -> cache.get("username-password", "test", "user", "other", failing));
+    }
+
+    @Test
+    void expiresEntriesWithTheirTgtAndEvictsBeyondMaximumSize() throws Exception {
+        AtomicLong now = new AtomicLong(1_000_000);
+        SpnegoClientCache cache = new SpnegoClientCache(2, now::get);
+        Callable<SpnegoClient> loader = loader(() -> subjectWithTgt(now.get() + 10_000));
+
+        SpnegoClient first = cache.get("username-password", "test", "user", "secret", loader);
+        now.addAndGet(9_999);
+        assertSame(first, cache.get("username-password", "test", "user", "secret", loader));
+        now.addAndGet(1);
+        assertNotSame(first, cache.get("username-password", "test", "user", "secret", loader));
+
+        cache.get("username-password", "test", "user2", "secret", loader);
+        cache.get("username-password", "test", "user3", "secret", loader);
+        assertEquals(2, cache.size());
+    }
+
+    private static Callable<SpnegoClient> loader(Callable<Subject> subjectSupplier) {
+        return () -> spnegoClient(new SubjectBasedSpnegoClientBackend("test", subjectSupplier));
+    }
+
+    private static SpnegoClient spnegoClient(SpnegoClientBackend backend) throws Exception {
+        Constructor<SpnegoClient> constructor = SpnegoClient.class.getDeclaredConstructor(SpnegoClientBackend.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(backend);
+    }
+
+    private static Subject subjectWithTgt(long endTime) {
+        KerberosPrincipal client = new KerberosPrincipal("client@EXAMPLE.COM");
+        Date start = new Date(endTime - 60_000);
+        KerberosTicket tgt = new KerberosTicket(new byte[]{1}, client,
+                new KerberosPrincipal("krbtgt/EXAMPLE.COM@EXAMPLE.COM"), new byte[16], 17,
+                new boolean[32], start, start, new Date(endTime), null, null);
+        return new Subject(false, Collections.singleton(client), Collections.emptySet(), Collections.singleton(tgt));
+    }
+
+}
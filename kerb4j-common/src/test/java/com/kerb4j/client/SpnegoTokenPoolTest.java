@@ -0,0 +1,127 @@
+package com.kerb4j.client;
+
+import com.kerb4j.client.spi.SpnegoClientBackend;
+import org.ietf.jgss.GSSContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosKey;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpnegoTokenPoolTest {
+
+    private final AtomicInteger minted = new AtomicInteger();
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void servesSingleUseHeadersMintedAhead() throws Exception {
+        SpnegoTokenPool pool = new SpnegoTokenPool(spnegoClient(), 3, 60_000, now::get, executor);
+
+        Set<String> headers = new HashSet<>();
+        assertTrue(headers.add(pool.getAuthorizationHeaderForSPN("HTTP/localhost")));
+        assertEquals(1, pool.getMissCount());
+
+        awaitMinted(4);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(headers.add(pool.getAuthorizationHeaderForSPN("HTTP/localhost")));
+        }
+        assertEquals(3, pool.getHitCount());
+        assertEquals(0.75, pool.getHitRate());
+        assertTrue(headers.iterator().next().startsWith("Negotiate "));
+    }
+
+    @Test
+    void discardsHeadersOlderThanMaximumAge() throws Exception {
+        SpnegoTokenPool pool = new SpnegoTokenPool(spnegoClient(), 2, 60_000, now::get, executor);
+
+        pool.getAuthorizationHeader(new URL("http://localhost/"));
+        awaitMinted(3);
+
+        now.addAndGet(60_000);
+        pool.getAuthorizationHeader(new URL("http://localhost/other"));
+        assertEquals(0, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(2, pool.getDiscardedCount());
+    }
+
+    private void awaitMinted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (minted.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, minted.get());
+        // let the refill add the last token to the pool
+        Thread.sleep(50);
+    }
+
+    private SpnegoClient spnegoClient() throws Exception {
+        Constructor<SpnegoClient> constructor = SpnegoClient.class.getDeclaredConstructor(SpnegoClientBackend.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(new MintingBackend());
+    }
+
+    private GSSContext gssContext() {
+        return (GSSContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{GSSContext.class},
+                (proxy, method, args) -> {
+                    if ("initSecContext".equals(method.getName())) {
+                        return ByteBuffer.allocate(4).putInt(minted.incrementAndGet()).array();
+                    }
+                    return boolean.class == method.getReturnType() ? Boolean.FALSE
+                            : int.class == method.getReturnType() ? 0 : null;
+                });
+    }
+
+    private class MintingBackend implements SpnegoClientBackend {
+
+        @Override
+        public String getImplementationName() {
+            return "test";
+        }
+
+        @Override
+        public Subject getSubject() {
+            return new Subject();
+        }
+
+        @Override
+        public KerberosKey[] getKerberosKeys() {
+            return null;
+        }
+
+        @Override
+        public SpnegoContext createContext(SpnegoClient spnegoClient, URL url) {
+            return new SpnegoContext(spnegoClient, new Subject(), gssContext());
+        }
+
+        @Override
+        public SpnegoContext createContextForSPN(SpnegoClient spnegoClient, String spn) {
+            return new SpnegoContext(spnegoClient, new Subject(), gssContext());
+        }
+
+        @Override
+        public SpnegoContext createAcceptContext(SpnegoClient spnegoClient) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.kerb4j.client.spi;
+
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubjectBasedSpnegoClientBackendTest {
+
+    @Test
+    void refreshesTgtInBackgroundAndKeepsStaleSubjectUntilReady() throws Exception {
+        CountDownLatch releaseRefresh = new CountDownLatch(1);
+        AtomicInteger logins = new AtomicInteger();
+        SubjectBasedSpnegoClientBackend backend = new SubjectBasedSpnegoClientBackend("test", () -> {
+            if (logins.incrementAndGet() > 1) {
+                assertTrue(releaseRefresh.await(10, TimeUnit.SECONDS));
+            }
+            return subjectWithTgt(2_000);
+        });
+        backend.setTgtRefreshAhead(0.25, 0);
+
+        Subject stale = backend.getSubject();
+        Thread.sleep(700);
+
+        // the refresh is blocked in the KDC login, request threads still get the current subject right away
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertSame(stale, backend.getSubject());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+
+        releaseRefresh.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (backend.getSubject() == stale && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotSame(stale, backend.getSubject());
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    void logsInOnRequestThreadOnlyAfterExpiryWithoutRefreshAhead() throws Exception {
+        AtomicInteger logins = new AtomicInteger();
+        SubjectBasedSpnegoClientBackend backend = new SubjectBasedSpnegoClientBackend("test", () -> {
+            logins.incrementAndGet();
+            return subjectWithTgt(300);
+        });
+
+        Subject first = backend.getSubject();
+        assertSame(first, backend.getSubject());
+        assertEquals(1, logins.get());
+
+        Thread.sleep(400);
+        assertNotSame(first, backend.getSubject());
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    void rejectsInvalidRefreshAheadFraction() {
+        SubjectBasedSpnegoClientBackend backend = new SubjectBasedSpnegoClientBackend("test", Subject::new);
+        assertThrows(IllegalArgumentException.class, () -> backend.setTgtRefreshAhead(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> backend.setTgtRefreshAhead(0.5, 0.5));
+    }
+
+    private static Subject subjectWithTgt(long lifetime) {
+        KerberosPrincipal client = new KerberosPrincipal("client@EXAMPLE.COM");
+        Date now = new Date();
+        KerberosTicket tgt = new KerberosTicket(new byte[]{1}, client,
+                new KerberosPrincipal("krbtgt/EXAMPLE.COM@EXAMPLE.COM"), new byte[16], 17,
+                new boolean[32], now, now, new Date(now.getTime() + lifetime), null, null);
+        return new Subject(false, Collections.singleton(client), Collections.emptySet(), Collections.singleton(tgt));
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.kerb4j.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegotiateTokenDecoderTest {
+
+    @Test
+    void testDecodeMatchesJdkDecoder() {
+        Random random = new Random(42);
+        for (int size = 0; size < 64; size++) {
+            byte[] token = new byte[size];
+            random.nextBytes(token);
+            String encoded = Base64.getEncoder().encodeToString(token);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(token);
+
+            String header = "Negotiate " + encoded + " ";
+            byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+
+            assertArrayEquals(token, NegotiateTokenDecoder.decode(header, 10, header.length()));
+            assertArrayEquals(token, NegotiateTokenDecoder.decode(headerBytes, 10, headerBytes.length - 10));
+            assertArrayEquals(token, NegotiateTokenDecoder.decode(unpadded, 0, unpadded.length()));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(headerBytes.length).put(headerBytes).flip().position(10);
+            assertArrayEquals(token, NegotiateTokenDecoder.decode(direct));
+            assertEquals(10, direct.position());
+            assertArrayEquals(token, NegotiateTokenDecoder.decode(ByteBuffer.wrap(headerBytes, 10, headerBytes.length - 10)));
+        }
+    }
+
+    @Test
+    void testBlankRegionIsEmpty() {
+        assertEquals(0, NegotiateTokenDecoder.decode("Negotiate   ", 9, 12).length);
+        assertEquals(0, NegotiateTokenDecoder.decode(new byte[0], 0, 0).length);
+    }
+
+    @Test
+    void testInvalidInputIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> NegotiateTokenDecoder.decode("YW*j", 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> NegotiateTokenDecoder.decode("YW Jj", 0, 5));
+        assertThrows(IllegalArgumentException.class, () -> NegotiateTokenDecoder.decode("YWJjZ", 0, 5));
+        assertThrows(IllegalArgumentException.class, () -> NegotiateTokenDecoder.decode("YW=", 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> NegotiateTokenDecoder.decode("Y===", 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> NegotiateTokenDecoder.decode("YWJé", 0, 4));
+        byte[] nonAscii = {'Y', 'W', 'J', (byte) 0xe9};
+        assertThrows(IllegalArgumentException.class, () -> NegotiateTokenDecoder.decode(nonAscii, 0, 4));
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.kerb4j.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpnegoProviderTest {
+
+    private static final byte[] TOKEN = "token".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void testIsNegotiateChallenge() {
+        assertTrue(SpnegoProvider.isNegotiateChallenge("Negotiate"));
+        assertTrue(SpnegoProvider.isNegotiateChallenge("negotiate dG9rZW4="));
+        assertTrue(SpnegoProvider.isNegotiateChallenge("Basic realm=\"example\", Negotiate"));
+        assertTrue(SpnegoProvider.isNegotiateChallenge("Negotiate !invalid!"));
+
+        assertFalse(SpnegoProvider.isNegotiateChallenge(null));
+        assertFalse(SpnegoProvider.isNegotiateChallenge(""));
+        assertFalse(SpnegoProvider.isNegotiateChallenge("Basic realm=\"example\""));
+        assertFalse(SpnegoProvider.isNegotiateChallenge("NegotiateX"));
+    }
+
+    @Test
+    void testGetNegotiateToken() {
+        assertArrayEquals(TOKEN, SpnegoProvider.getNegotiateToken("Negotiate dG9rZW4="));
+        assertArrayEquals(TOKEN, SpnegoProvider.getNegotiateToken("Basic realm=\"example\", NEGOTIATE dG9rZW4 , Digest"));
+        assertArrayEquals(new byte[0], SpnegoProvider.getNegotiateToken("Negotiate"));
+        assertNull(SpnegoProvider.getNegotiateToken("Basic realm=\"example\""));
+        assertNull(SpnegoProvider.getNegotiateToken((String) null));
+        assertThrows(IllegalArgumentException.class, () -> SpnegoProvider.getNegotiateToken("Negotiate !invalid!"));
+
+        assertArrayEquals(TOKEN, SpnegoProvider.getNegotiateToken(Arrays.asList("Basic", "Negotiate dG9rZW4=")));
+        assertNull(SpnegoProvider.getNegotiateToken(Collections.singletonList("Basic")));
+        assertNull(SpnegoProvider.getNegotiateToken((Iterable<String>) null));
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.kerb4j.server;
 
 import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
@@ -33,6 +34,18 @@ public interface MultiPrincipalManager {
      */
     @Nullable SpnegoClient getSpnegoClientForSpn(@Nullable String spn);
 
+    /**
+     * Get the {@link SpnegoClient} for an already parsed incoming token.
+     *
+     * @param negotiation the parsed token; may be {@code null} when the token could not be parsed
+     * @return the {@link SpnegoClient} selected for the token's target SPN, or {@code null} if no principal
+     * is configured for it
+     * @see #getSpnegoClientForSpn(String)
+     */
+    default @Nullable SpnegoClient getSpnegoClient(@Nullable SpnegoNegotiation negotiation) {
+        return getSpnegoClientForSpn(null == negotiation ? null : negotiation.getServerPrincipalName());
+    }
+
     /**
      * Check whether this manager has a principal configured for the given SPN.
      *
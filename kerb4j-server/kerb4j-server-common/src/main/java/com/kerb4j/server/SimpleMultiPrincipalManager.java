@@ -1,12 +1,17 @@
 package com.kerb4j.server;
 
 import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.server.keytab.KeytabWatcher;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -19,6 +24,8 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
 
     private final Map<String, SpnegoClient> spnegoClients = new ConcurrentHashMap<>();
     private volatile @Nullable SpnegoClient defaultSpnegoClient;
+    private final List<KeytabPrincipal> keytabPrincipals = new ArrayList<>();
+    private @Nullable KeytabWatcher keytabWatcher;
 
     /**
      * Add a principal with its keytab file path using accept-only mode.
@@ -38,7 +45,9 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
      * @param acceptOnly     {@code true} to configure the client in accept-only mode
      */
     public void addPrincipal(String principal, String keyTabLocation, boolean acceptOnly) {
-        addSpnegoClient(principal, createSpnegoClient(principal, keyTabLocation, acceptOnly));
+        SpnegoClient spnegoClient = createSpnegoClient(principal, keyTabLocation, acceptOnly);
+        addSpnegoClient(principal, spnegoClient);
+        watchKeytab(principal, keyTabLocation, spnegoClient);
     }
 
     /**
@@ -80,7 +89,9 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
      * @param acceptOnly     {@code true} to configure the client in accept-only mode
      */
     public void addDefaultPrincipal(String principal, String keyTabLocation, boolean acceptOnly) {
-        addDefaultSpnegoClient(createSpnegoClient(principal, keyTabLocation, acceptOnly));
+        SpnegoClient spnegoClient = createSpnegoClient(principal, keyTabLocation, acceptOnly);
+        addDefaultSpnegoClient(spnegoClient);
+        watchKeytab(principal, keyTabLocation, spnegoClient);
     }
 
     /**
@@ -178,6 +189,23 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
         return addPrincipalsFromKeytab(resolveKeyTabPath(keyTab), acceptOnly);
     }
 
+    /**
+     * Reload the keytabs of principals added from keytab files when they are rotated, without a restart. Applies to
+     * principals added both before and after this call; prebuilt clients are not watched.
+     *
+     * @param keytabWatcher the watcher to register the keytabs with
+     * @since 0.5.1
+     */
+    public synchronized void setKeytabWatcher(KeytabWatcher keytabWatcher) {
+        if (keytabWatcher == null) {
+            throw new IllegalArgumentException("Keytab watcher must not be null");
+        }
+        this.keytabWatcher = keytabWatcher;
+        for (KeytabPrincipal keytabPrincipal : keytabPrincipals) {
+            watch(keytabWatcher, keytabPrincipal);
+        }
+    }
+
     @Override
     public @Nullable SpnegoClient getSpnegoClientForSpn(@Nullable String spn) {
         if (spn == null) {
@@ -217,10 +245,42 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
         }
     }
 
+    private synchronized void watchKeytab(String principal, String keyTabLocation, SpnegoClient spnegoClient) {
+        KeytabPrincipal keytabPrincipal = new KeytabPrincipal(principal, keyTabLocation, spnegoClient);
+        keytabPrincipals.add(keytabPrincipal);
+        KeytabWatcher keytabWatcher = this.keytabWatcher;
+        if (keytabWatcher != null) {
+            watch(keytabWatcher, keytabPrincipal);
+        }
+    }
+
+    private static void watch(KeytabWatcher keytabWatcher, KeytabPrincipal keytabPrincipal) {
+        try {
+            keytabWatcher.watch(Paths.get(keytabPrincipal.keyTabLocation), keytabPrincipal.principal,
+                    keytabPrincipal.spnegoClient);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to watch keytab: " + keytabPrincipal.keyTabLocation, e);
+        }
+    }
+
     private static String resolveKeyTabPath(File keyTab) {
         if (keyTab == null) {
             throw new IllegalArgumentException("Key tab file must not be null");
         }
         return keyTab.getAbsolutePath();
     }
+
+    private static final class KeytabPrincipal {
+
+        private final String principal;
+        private final String keyTabLocation;
+        private final SpnegoClient spnegoClient;
+
+        private KeytabPrincipal(String principal, String keyTabLocation, SpnegoClient spnegoClient) {
+            this.principal = principal;
+            this.keyTabLocation = keyTabLocation;
+            this.spnegoClient = spnegoClient;
+        }
+
+    }
 }
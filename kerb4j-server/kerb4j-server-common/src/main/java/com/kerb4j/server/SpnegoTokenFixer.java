@@ -1,7 +1,5 @@
 package com.kerb4j.server;
 
-import java.util.LinkedHashMap;
-
 /**
  * This class implements a hack around an incompatibility between the
  * SPNEGO implementation in Windows and the SPNEGO implementation in Java 8
@@ -14,23 +12,79 @@ import java.util.LinkedHashMap;
  * <p>
  * This hack works by re-ordering the list of mechTypes in the NegTokenInit
  * token.
+ * <p>
+ * The token is walked once at byte level: mechType OIDs are compared by their
+ * DER encoding and the Kerberos mechType is rotated to the head of the list in
+ * place, so no heap allocation happens. The same pass checks the DER framing of
+ * the token and reports it as a {@link Verdict}, which lets callers reject
+ * obviously broken tokens before they reach JGSS.
  */
 public class SpnegoTokenFixer {
 
-    private final byte[] token;
-    private int pos = 0;
+    /**
+     * Result of {@link #inspect(byte[])} and {@link #validateAndFix(byte[])}.
+     */
+    public enum Verdict {
+
+        /**
+         * DER framing is consistent and the token does not need to be re-ordered.
+         */
+        WELL_FORMED,
+
+        /**
+         * DER framing is consistent and the Kerberos mechType is not the first one in the mechTypes list.
+         * {@link #validateAndFix(byte[])} has already re-ordered the token when it returns this verdict.
+         */
+        NEEDS_REORDER,
+
+        /**
+         * DER framing is broken; the token has not been modified and should be rejected.
+         */
+        MALFORMED
+
+    }
+
+    // 1.3.6.1.5.5.2
+    private static final byte[] SPNEGO_OID = {0x2b, 0x06, 0x01, 0x05, 0x05, 0x02};
+
+    // 1.2.840.113554.1.2.2
+    private static final byte[] KERBEROS_OID = {0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x12, 0x01, 0x02, 0x02};
+
+    private static final int ANY_TAG = -1;
+
+    private static final long INVALID = -1;
 
-    private SpnegoTokenFixer(byte[] token) {
-        this.token = token;
+    private SpnegoTokenFixer() {
     }
 
+    /**
+     * Fixes the token in-place, see {@link #validateAndFix(byte[])}.
+     */
     public static void fix(byte[] token) {
-        SpnegoTokenFixer fixer = new SpnegoTokenFixer(token);
-        fixer.fix();
+        scan(token, true);
     }
 
-    // Fixes the token in-place
-    private void fix() {
+    /**
+     * Validates the framing of the token and fixes it in-place if required.
+     *
+     * @param token Base64 decoded value of the {@code Authorization: Negotiate} header
+     * @return {@link Verdict#NEEDS_REORDER} if the token has been re-ordered, otherwise verdict of the framing check
+     */
+    public static Verdict validateAndFix(byte[] token) {
+        return scan(token, true);
+    }
+
+    /**
+     * Validates the framing of the token without modifying it.
+     *
+     * @param token Base64 decoded value of the {@code Authorization: Negotiate} header
+     * @return verdict of the framing check
+     */
+    public static Verdict inspect(byte[] token) {
+        return scan(token, false);
+    }
+
+    private static Verdict scan(byte[] token, boolean reorder) {
         /*
          * Useful references:
          * http://tools.ietf.org/html/rfc4121#page-5
@@ -38,112 +92,146 @@ public class SpnegoTokenFixer {
          * https://msdn.microsoft.com/en-us/library/ms995330.aspx
          */
 
-        // Scan until we find the mech types list. If we find anything
-        // unexpected, abort the fix process.
-        if (!tag(0x60)) return;
-        if (!length()) return;
-        if (!oid("1.3.6.1.5.5.2")) return;
-        if (!tag(0xa0)) return;
-        if (!length()) return;
-        if (!tag(0x30)) return;
-        if (!length()) return;
-        if (!tag(0xa0)) return;
-        lengthAsInt();
-        if (!tag(0x30)) return;
+        int end = token.length;
+
+        long gssToken = element(token, 0x60, 0, end);
+        if (INVALID == gssToken || end(gssToken) != end) {
+            // Subsequent legs of the negotiation carry a bare NegTokenResp
+            long negTokenResp = element(token, 0xa1, 0, end);
+            return INVALID != negTokenResp && end(negTokenResp) == end ? Verdict.WELL_FORMED : Verdict.MALFORMED;
+        }
+
+        long thisMech = element(token, 0x06, start(gssToken), end);
+        if (INVALID == thisMech) {
+            return Verdict.MALFORMED;
+        }
+        if (!contentEquals(token, thisMech, SPNEGO_OID)) {
+            // Raw mechanism token, there is no mechTypes list to re-order
+            return Verdict.WELL_FORMED;
+        }
+
+        long negTokenInit = element(token, 0xa0, end(thisMech), end);
+        if (INVALID == negTokenInit || end(negTokenInit) != end) {
+            return Verdict.MALFORMED;
+        }
+        long sequence = element(token, 0x30, start(negTokenInit), end);
+        if (INVALID == sequence || end(sequence) != end) {
+            return Verdict.MALFORMED;
+        }
+        long mechTypesField = element(token, 0xa0, start(sequence), end);
+        if (INVALID == mechTypesField) {
+            return Verdict.MALFORMED;
+        }
+        long mechTypes = element(token, 0x30, start(mechTypesField), end(mechTypesField));
+        if (INVALID == mechTypes || end(mechTypes) != end(mechTypesField)) {
+            return Verdict.MALFORMED;
+        }
+
         // Now at the start of the mechType list.
-        // Read the mechTypes into an ordered set
-        int mechTypesLen = lengthAsInt();
-        int mechTypesStart = pos;
-        LinkedHashMap<String, int[]> mechTypeEntries = new LinkedHashMap<>();
-        while (pos < mechTypesStart + mechTypesLen) {
-            int[] value = new int[2];
-            value[0] = pos;
-            String key = oidAsString();
-            value[1] = pos - value[0];
-            mechTypeEntries.put(key, value);
-        }
-        // Now construct the re-ordered mechType list
-        byte[] replacement = new byte[mechTypesLen];
-        int replacementPos = 0;
-
-        int[] first = mechTypeEntries.remove("1.2.840.113554.1.2.2");
-        if (first != null) {
-            System.arraycopy(token, first[0], replacement, replacementPos, first[1]);
-            replacementPos += first[1];
-        }
-        for (int[] markers : mechTypeEntries.values()) {
-            System.arraycopy(token, markers[0], replacement, replacementPos, markers[1]);
-            replacementPos += markers[1];
-        }
-
-        // Finally, replace the original mechType list with the re-ordered
-        // one.
-        System.arraycopy(replacement, 0, token, mechTypesStart, mechTypesLen);
-    }
+        int kerberosStart = -1;
+        int kerberosEnd = -1;
+        for (int pos = start(mechTypes); pos < end(mechTypes); ) {
+            long mechType = element(token, 0x06, pos, end(mechTypes));
+            if (INVALID == mechType) {
+                return Verdict.MALFORMED;
+            }
+            if (-1 == kerberosStart && contentEquals(token, mechType, KERBEROS_OID)) {
+                kerberosStart = pos;
+                kerberosEnd = end(mechType);
+            }
+            pos = end(mechType);
+        }
 
+        // The remaining NegTokenInit fields (reqFlags, mechToken, mechListMIC) must fill the sequence exactly
+        for (int pos = end(mechTypesField); pos < end; ) {
+            long field = element(token, ANY_TAG, pos, end);
+            if (INVALID == field) {
+                return Verdict.MALFORMED;
+            }
+            pos = end(field);
+        }
 
-    private boolean tag(int expected) {
-        return (token[pos++] & 0xFF) == expected;
-    }
+        if (-1 == kerberosStart || kerberosStart == start(mechTypes)) {
+            return Verdict.WELL_FORMED;
+        }
 
+        if (reorder) {
+            // Rotate [preceding mechTypes][Kerberos] into [Kerberos][preceding mechTypes]
+            reverse(token, start(mechTypes), kerberosStart);
+            reverse(token, kerberosStart, kerberosEnd);
+            reverse(token, start(mechTypes), kerberosEnd);
+        }
 
-    private boolean length() {
-        // No need to retain the length - just need to consume it and make
-        // sure it is valid.
-        int len = lengthAsInt();
-        return pos + len == token.length;
+        return Verdict.NEEDS_REORDER;
     }
 
+    /**
+     * Reads the identifier and length octets of a DER element.
+     *
+     * @return contents offset in the upper and contents end in the lower 32 bits, or {@link #INVALID} if the element
+     * does not have the expected tag or does not fit before {@code end}
+     */
+    private static long element(byte[] token, int expectedTag, int pos, int end) {
+        if (pos >= end) {
+            return INVALID;
+        }
+
+        int tag = token[pos++] & 0xFF;
+        if (ANY_TAG == expectedTag ? 0x1F == (tag & 0x1F) : tag != expectedTag) {
+            return INVALID;
+        }
 
-    private int lengthAsInt() {
+        if (pos >= end) {
+            return INVALID;
+        }
         int len = token[pos++] & 0xFF;
         if (len > 127) {
             int bytes = len - 128;
+            if (bytes == 0 || bytes > 3 || end - pos < bytes) {
+                return INVALID;
+            }
             len = 0;
             for (int i = 0; i < bytes; i++) {
                 len = len << 8;
                 len = len + (token[pos++] & 0xff);
             }
         }
-        return len;
-    }
 
+        if (len > end - pos) {
+            return INVALID;
+        }
 
-    private boolean oid(String expected) {
-        return expected.equals(oidAsString());
+        return ((long) pos << 32) | (pos + len);
     }
 
+    private static int start(long element) {
+        return (int) (element >>> 32);
+    }
 
-    private String oidAsString() {
-        if (!tag(0x06)) return null;
-        StringBuilder result = new StringBuilder();
-        int len = lengthAsInt();
-        // First byte is special case
-        int v = token[pos++] & 0xFF;
-        int c2 = v % 40;
-        int c1 = (v - c2) / 40;
-        result.append(c1);
-        result.append('.');
-        result.append(c2);
-        int c = 0;
-        boolean write = false;
-        for (int i = 1; i < len; i++) {
-            int b = token[pos++] & 0xFF;
-            if (b > 127) {
-                b -= 128;
-            } else {
-                write = true;
-            }
-            c = c << 7;
-            c += b;
-            if (write) {
-                result.append('.');
-                result.append(c);
-                c = 0;
-                write = false;
+    private static int end(long element) {
+        return (int) element;
+    }
+
+    private static boolean contentEquals(byte[] token, long element, byte[] expected) {
+        int start = start(element);
+        int end = end(element);
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (token[start + i] != expected[i]) {
+                return false;
             }
         }
-        return result.toString();
+        return true;
+    }
+
+    private static void reverse(byte[] token, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            byte b = token[i];
+            token[i] = token[j];
+            token[j] = b;
+        }
     }
 
 }
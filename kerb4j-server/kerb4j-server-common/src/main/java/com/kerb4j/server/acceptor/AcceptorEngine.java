@@ -0,0 +1,35 @@
+package com.kerb4j.server.acceptor;
+
+/**
+ * Implementation used on the server side to accept incoming SPNEGO tokens.
+ */
+public enum AcceptorEngine {
+
+    /**
+     * JGSS via {@link com.kerb4j.client.SpnegoContext#acceptToken(byte[])}. Supports credential delegation.
+     */
+    JGSS,
+
+    /**
+     * {@link KerbyAcceptor}: the ticket and authenticator are decrypted once with the service keys and the PAC is
+     * taken from the same decrypted ticket. Credential delegation is not supported.
+     */
+    KERBY;
+
+    /**
+     * Case-insensitive lookup used by string based configuration such as Tomcat valve attributes.
+     *
+     * @param name {@code jgss} or {@code kerby}
+     * @return matching engine
+     * @throws IllegalArgumentException if the name doesn't match any engine
+     */
+    public static AcceptorEngine fromName(String name) {
+        for (AcceptorEngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(name.trim())) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("Unknown acceptor engine: " + name);
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.kerb4j.server.acceptor;
+
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.pac.Pac;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import com.kerb4j.server.ticket.DecryptedTicket;
+import org.apache.kerby.kerberos.kerb.type.ap.Authenticator;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import javax.security.auth.kerberos.KerberosKey;
+
+/**
+ * Outcome of {@link KerbyAcceptor#accept(SpnegoNegotiation, KerberosKey[])}.
+ */
+@NullMarked
+public final class KerbyAcceptResult {
+
+    private final SpnegoNegotiation negotiation;
+    private final String clientPrincipalName;
+    private final DecryptedTicket decryptedTicket;
+    private final Authenticator authenticator;
+    private final byte[] responseToken;
+    private final boolean mutualAuthentication;
+
+    KerbyAcceptResult(SpnegoNegotiation negotiation,
+                      String clientPrincipalName,
+                      DecryptedTicket decryptedTicket,
+                      Authenticator authenticator,
+                      byte[] responseToken,
+                      boolean mutualAuthentication) {
+        this.negotiation = negotiation;
+        this.clientPrincipalName = clientPrincipalName;
+        this.decryptedTicket = decryptedTicket;
+        this.authenticator = authenticator;
+        this.responseToken = responseToken;
+        this.mutualAuthentication = mutualAuthentication;
+    }
+
+    public SpnegoNegotiation getNegotiation() {
+        return negotiation;
+    }
+
+    /**
+     * @return authenticated client principal in {@code name@REALM} form, same as the JGSS source name
+     */
+    public String getClientPrincipalName() {
+        return clientPrincipalName;
+    }
+
+    public EncTicketPart getEncTicketPart() {
+        return decryptedTicket.getEncTicketPart();
+    }
+
+    public Authenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    /**
+     * @return service key the ticket has been decrypted with
+     */
+    public KerberosKey getKerberosKey() {
+        return decryptedTicket.getKerberosKey();
+    }
+
+    public EncryptionKey getSessionKey() {
+        return decryptedTicket.getSessionKey();
+    }
+
+    /**
+     * @return SPNEGO {@code NegTokenResp} to be sent back in the {@code WWW-Authenticate: Negotiate} header; carries
+     * the AP-REP if the client has asked for mutual authentication
+     */
+    public byte[] getResponseToken() {
+        return responseToken;
+    }
+
+    public boolean isMutualAuthentication() {
+        return mutualAuthentication;
+    }
+
+    /**
+     * @return PAC from the already decrypted ticket or {@code null} if the ticket doesn't carry one
+     */
+    public @Nullable Pac getPac() throws Kerb4JException {
+        return decryptedTicket.getPac();
+    }
+
+}
@@ -0,0 +1,372 @@
+package com.kerb4j.server.acceptor;
+
+import com.kerb4j.client.KerberosKeyIndex;
+import com.kerb4j.common.util.SpnegoProvider;
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import com.kerb4j.server.replay.InMemoryReplayCache;
+import com.kerb4j.server.replay.ReplayCache;
+import com.kerb4j.server.ticket.DecryptedTicket;
+import com.kerb4j.server.ticket.DecryptedTicketCache;
+import org.apache.kerby.kerberos.kerb.KrbCodec;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.ap.ApOption;
+import org.apache.kerby.kerberos.kerb.type.ap.ApOptions;
+import org.apache.kerby.kerberos.kerb.type.ap.ApRep;
+import org.apache.kerby.kerberos.kerb.type.ap.ApReq;
+import org.apache.kerby.kerberos.kerb.type.ap.Authenticator;
+import org.apache.kerby.kerberos.kerb.type.ap.EncAPRepPart;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSum;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptedData;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
+import org.apache.kerby.kerberos.kerb.type.ticket.Ticket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TicketFlag;
+import org.apache.kerby.kerberos.kerb.type.ticket.TicketFlags;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import javax.security.auth.kerberos.KerberosKey;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts SPNEGO init tokens with Kerby instead of JGSS.
+ * <p>
+ * The ticket is decrypted once with the matching service key (or taken from a {@link DecryptedTicketCache}), the
+ * authenticator with the ticket session key on every request. The ticket must be issued for the principal of that
+ * key; ticket validity, authenticator clock skew and replay are checked, and an AP-REP is only built when the client
+ * has asked for mutual authentication. The GSS-API checksum of the authenticator (RFC 4121 section 4.1.1) must be
+ * present and well-formed; the channel bindings it carries are not checked since the acceptor has none, as with MIT
+ * Kerberos, and its flags are ignored. The decrypted ticket is returned in the {@link KerbyAcceptResult}, so the PAC
+ * is extracted without a second decryption. No {@code Subject.doAs}, {@code GSSCredential} or {@code GSSContext} is
+ * involved.
+ * <p>
+ * Limitations compared to JGSS: credential delegation is not supported, and the preferred mechType of the client
+ * must be Kerberos because no {@code mechListMIC} is produced.
+ * <p>
+ * Instances are thread safe; share one instance (and thus one {@link ReplayCache}) per acceptor.
+ */
+@NullMarked
+public class KerbyAcceptor {
+
+    public static final long DEFAULT_CLOCK_SKEW = TimeUnit.MINUTES.toMillis(5);
+
+    // 1.2.840.113554.1.2.2
+    private static final byte[] KERBEROS_OID = {0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x12, 0x01, 0x02, 0x02};
+
+    // 1.2.840.48018.1.2.2
+    private static final byte[] LEGACY_KERBEROS_OID = {0x2a, (byte) 0x86, 0x48, (byte) 0x82, (byte) 0xf7, 0x12, 0x01, 0x02, 0x02};
+
+    // negState accept-completed
+    private static final byte[] ACCEPT_COMPLETED = {(byte) 0xa0, 0x03, 0x0a, 0x01, 0x00};
+
+    // TOK_ID of a Kerberos AP-REP GSS-API token
+    private static final byte[] AP_REP_TOKEN_ID = {0x02, 0x00};
+
+    // Checksum type of the GSS-API authenticator checksum
+    private static final int GSS_CHECKSUM_TYPE = 0x8003;
+
+    // Length of the channel bindings hash carried by the GSS-API authenticator checksum
+    private static final int GSS_CHECKSUM_BINDINGS_LENGTH = 16;
+
+    private static final int GSS_C_DELEG_FLAG = 1;
+
+    private static final SecureRandom SEQUENCE_NUMBERS = new SecureRandom();
+
+    private final ReplayCache replayCache;
+
+    private final long clockSkew;
+
+    private final @Nullable DecryptedTicketCache decryptedTicketCache;
+
+    public KerbyAcceptor() {
+        this(new InMemoryReplayCache(), DEFAULT_CLOCK_SKEW);
+    }
+
+    /**
+     * @param replayCache cache of already accepted authenticators
+     * @param clockSkew   maximum allowed difference between client and server clocks in milliseconds
+     */
+    public KerbyAcceptor(ReplayCache replayCache, long clockSkew) {
+        this(replayCache, clockSkew, null);
+    }
+
+    /**
+     * @param replayCache          cache of already accepted authenticators
+     * @param clockSkew            maximum allowed difference between client and server clocks in milliseconds
+     * @param decryptedTicketCache cache of decrypted service tickets or {@code null} to decrypt every ticket
+     * @since 0.5.1
+     */
+    public KerbyAcceptor(ReplayCache replayCache, long clockSkew, @Nullable DecryptedTicketCache decryptedTicketCache) {
+        this.replayCache = replayCache;
+        this.clockSkew = clockSkew;
+        this.decryptedTicketCache = decryptedTicketCache;
+    }
+
+    /**
+     * Validate the AP-REQ carried by the SPNEGO init token.
+     *
+     * @param negotiation  parsed SPNEGO init token
+     * @param kerberosKeys keys of the service principal the token was issued for
+     * @return authenticated client, decrypted ticket and response token
+     * @throws Kerb4JException if the token cannot be accepted
+     */
+    public KerbyAcceptResult accept(SpnegoNegotiation negotiation, KerberosKey[] kerberosKeys) throws Kerb4JException {
+        DecryptedTicketCache decryptedTicketCache = this.decryptedTicketCache;
+        return accept(negotiation, () -> null == decryptedTicketCache
+                ? DecryptedTicket.decrypt(negotiation, kerberosKeys)
+                : decryptedTicketCache.getOrDecrypt(negotiation, kerberosKeys));
+    }
+
+    /**
+     * Same as {@link #accept(SpnegoNegotiation, KerberosKey[])} with the service keys taken from an index, e.g.
+     * {@link com.kerb4j.client.SpnegoClient#getKerberosKeyIndex()}.
+     *
+     * @since 0.5.1
+     */
+    public KerbyAcceptResult accept(SpnegoNegotiation negotiation, KerberosKeyIndex keyIndex) throws Kerb4JException {
+        DecryptedTicketCache decryptedTicketCache = this.decryptedTicketCache;
+        return accept(negotiation, () -> null == decryptedTicketCache
+                ? DecryptedTicket.decrypt(negotiation, keyIndex)
+                : decryptedTicketCache.getOrDecrypt(negotiation, keyIndex));
+    }
+
+    private KerbyAcceptResult accept(SpnegoNegotiation negotiation, Decryption decryption) throws Kerb4JException {
+
+        String preferredMechanism = negotiation.getPreferredMechanism();
+        if (null == preferredMechanism) {
+            throw new Kerb4JException("kerberos.mechanism.unsupported", null, null);
+        }
+
+        ApReq apReq = negotiation.getApRequest();
+
+        @SuppressWarnings("NullableProblems") @Nullable EncryptedData encryptedAuthenticator = apReq.getEncryptedAuthenticator();
+        if (null == encryptedAuthenticator) {
+            throw new Kerb4JException("kerberos.ticket.malformed", null, null);
+        }
+
+        DecryptedTicket decryptedTicket = decryption.decrypt();
+        checkServicePrincipal(apReq.getTicket(), decryptedTicket.getKerberosKey());
+        EncTicketPart encTicketPart = decryptedTicket.getEncTicketPart();
+
+        Authenticator authenticator;
+        try {
+            authenticator = KrbCodec.decode(
+                    EncryptionHandler.decrypt(encryptedAuthenticator, encTicketPart.getKey(), KeyUsage.AP_REQ_AUTH),
+                    Authenticator.class
+            );
+        } catch (KrbException e) {
+            throw new Kerb4JException("kerberos.decrypt.fail",
+                    new Object[]{encryptedAuthenticator.getEType().getName()}, e);
+        }
+
+        long now = System.currentTimeMillis();
+        checkTicket(encTicketPart, now);
+        checkAuthenticator(authenticator, encTicketPart, now);
+
+        if (!replayCache.add(encryptedAuthenticator.getCipher(), authenticator.getCtime().getTime() + clockSkew)) {
+            throw new Kerb4JException("kerberos.authenticator.replay", null, null);
+        }
+
+        @SuppressWarnings("NullableProblems") @Nullable ApOptions apOptions = apReq.getApOptions();
+        boolean mutualAuthentication = null != apOptions && apOptions.isFlagSet(ApOption.MUTUAL_REQUIRED);
+
+        byte[] supportedMech = SpnegoProvider.LEGACY_KERBEROS_MECHANISM.equals(preferredMechanism)
+                ? LEGACY_KERBEROS_OID : KERBEROS_OID;
+        byte[] responseToken = negTokenResp(supportedMech,
+                mutualAuthentication ? apRepToken(authenticator, encTicketPart.getKey()) : null);
+
+        return new KerbyAcceptResult(
+                negotiation,
+                principalName(encTicketPart.getCname(), encTicketPart.getCrealm()),
+                decryptedTicket,
+                authenticator,
+                responseToken,
+                mutualAuthentication
+        );
+    }
+
+    /**
+     * Keys are selected by etype and version only, and the service principal of a ticket is not encrypted, so it is
+     * compared with the principal of the key the ticket has been decrypted with.
+     */
+    private static void checkServicePrincipal(Ticket ticket, KerberosKey kerberosKey) throws Kerb4JException {
+        @SuppressWarnings("NullableProblems") @Nullable PrincipalName sname = ticket.getSname();
+        @SuppressWarnings("NullableProblems") @Nullable String realm = ticket.getRealm();
+        if (null == sname || null == realm || realm.isEmpty()
+                || !principalName(sname, realm).equals(kerberosKey.getPrincipal().getName())) {
+            throw new Kerb4JException("kerberos.ticket.principal", null, null);
+        }
+    }
+
+    private void checkTicket(EncTicketPart encTicketPart, long now) throws Kerb4JException {
+        @SuppressWarnings("NullableProblems") @Nullable TicketFlags flags = encTicketPart.getFlags();
+        if (null != flags && flags.isFlagSet(TicketFlag.INVALID)) {
+            throw new Kerb4JException("kerberos.ticket.notyetvalid", null, null);
+        }
+
+        @SuppressWarnings("NullableProblems") @Nullable KerberosTime startTime = encTicketPart.getStartTime();
+        if (null == startTime) {
+            startTime = encTicketPart.getAuthTime();
+        }
+        if (null != startTime && startTime.getTime() - clockSkew > now) {
+            throw new Kerb4JException("kerberos.ticket.notyetvalid", null, null);
+        }
+
+        @SuppressWarnings("NullableProblems") @Nullable KerberosTime endTime = encTicketPart.getEndTime();
+        if (null == endTime || endTime.getTime() + clockSkew < now) {
+            throw new Kerb4JException("kerberos.ticket.expired", null, null);
+        }
+    }
+
+    private void checkAuthenticator(Authenticator authenticator, EncTicketPart encTicketPart, long now)
+            throws Kerb4JException {
+        @SuppressWarnings("NullableProblems") @Nullable KerberosTime ctime = authenticator.getCtime();
+        if (null == ctime || Math.abs(now - ctime.getTime()) > clockSkew) {
+            throw new Kerb4JException("kerberos.authenticator.skew", null, null);
+        }
+
+        if (!Objects.equals(authenticator.getCrealm(), encTicketPart.getCrealm())
+                || !sameNameStrings(authenticator.getCname(), encTicketPart.getCname())) {
+            throw new Kerb4JException("kerberos.authenticator.mismatch", null, null);
+        }
+
+        checkChecksum(authenticator);
+    }
+
+    /**
+     * Check the layout of the GSS-API checksum: the length and hash of the channel bindings, the flags and, if
+     * credentials are delegated, the length of the delegated KRB-CRED.
+     */
+    static void checkChecksum(Authenticator authenticator) throws Kerb4JException {
+        @SuppressWarnings("NullableProblems") @Nullable CheckSum checksum = authenticator.getCksum();
+        if (null == checksum || GSS_CHECKSUM_TYPE != GssChecksum.typeOf(checksum)) {
+            throw new Kerb4JException("kerberos.authenticator.checksum", null, null);
+        }
+        @SuppressWarnings("NullableProblems") byte @Nullable [] value = checksum.getChecksum();
+        int flagsOffset = 4 + GSS_CHECKSUM_BINDINGS_LENGTH;
+        if (null == value || value.length < flagsOffset + 4
+                || GSS_CHECKSUM_BINDINGS_LENGTH != littleEndian(value, 0, 4)) {
+            throw new Kerb4JException("kerberos.authenticator.checksum", null, null);
+        }
+        int delegationOffset = flagsOffset + 4;
+        if (0 != (littleEndian(value, flagsOffset, 4) & GSS_C_DELEG_FLAG)
+                && (value.length < delegationOffset + 4
+                || value.length < delegationOffset + 4 + littleEndian(value, delegationOffset + 2, 2))) {
+            throw new Kerb4JException("kerberos.authenticator.checksum", null, null);
+        }
+    }
+
+    private static int littleEndian(byte[] bytes, int offset, int length) {
+        int value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = value << 8 | bytes[offset + i] & 0xff;
+        }
+        return value;
+    }
+
+    private static boolean sameNameStrings(@Nullable PrincipalName first, @Nullable PrincipalName second) {
+        return null != first && null != second && Objects.equals(first.getNameStrings(), second.getNameStrings());
+    }
+
+    private static String principalName(PrincipalName principalName, String realm) {
+        List<String> nameStrings = principalName.getNameStrings();
+        String name = String.join("/", nameStrings);
+        return null == realm || realm.isEmpty() ? name : name + "@" + realm;
+    }
+
+    /**
+     * Build a GSS-API Kerberos token wrapping an AP-REP (RFC 4121 section 4.1).
+     */
+    private static byte[] apRepToken(Authenticator authenticator, EncryptionKey sessionKey) throws Kerb4JException {
+        try {
+            EncAPRepPart encApRepPart = new EncAPRepPart();
+            encApRepPart.setCtime(authenticator.getCtime());
+            encApRepPart.setCusec(authenticator.getCusec());
+            encApRepPart.setSeqNumber(SEQUENCE_NUMBERS.nextInt() & 0x3fffffff);
+
+            ApRep apRep = new ApRep();
+            apRep.setEncryptedEncPart(EncryptionHandler.encrypt(
+                    KrbCodec.encode(encApRepPart), sessionKey, KeyUsage.AP_REP_ENCPART));
+
+            return tlv(0x60, tlv(0x06, KERBEROS_OID), AP_REP_TOKEN_ID, KrbCodec.encode(apRep));
+        } catch (KrbException e) {
+            throw new Kerb4JException("kerberos.reply.fail", null, e);
+        }
+    }
+
+    /**
+     * Build a SPNEGO {@code NegTokenResp} with {@code negState} accept-completed (RFC 4178 section 4.2.2).
+     */
+    private static byte[] negTokenResp(byte[] supportedMech, byte @Nullable [] responseToken) {
+        byte[] supportedMechField = tlv(0xa1, tlv(0x06, supportedMech));
+        byte[] sequence = null == responseToken
+                ? tlv(0x30, ACCEPT_COMPLETED, supportedMechField)
+                : tlv(0x30, ACCEPT_COMPLETED, supportedMechField, tlv(0xa2, tlv(0x04, responseToken)));
+        return tlv(0xa1, sequence);
+    }
+
+    private static byte[] tlv(int tag, byte[]... contents) {
+        int length = 0;
+        for (byte[] content : contents) {
+            length += content.length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+        out.write(tag);
+        if (length < 0x80) {
+            out.write(length);
+        } else if (length < 0x100) {
+            out.write(0x81);
+            out.write(length);
+        } else if (length < 0x10000) {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length);
+        } else {
+            out.write(0x83);
+            out.write(length >> 16);
+            out.write(length >> 8);
+            out.write(length);
+        }
+        for (byte[] content : contents) {
+            out.write(content, 0, content.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Exposes the raw checksum type, which {@link CheckSum#getCksumtype()} maps to {@code NONE} for types unknown to
+     * Kerby such as the GSS-API one.
+     */
+    private static final class GssChecksum extends CheckSum {
+
+        private static int typeOf(CheckSum checksum) throws Kerb4JException {
+            GssChecksum gssChecksum = new GssChecksum();
+            try {
+                gssChecksum.decode(KrbCodec.encode(checksum));
+            } catch (IOException | KrbException e) {
+                throw new Kerb4JException("kerberos.authenticator.checksum", null, e);
+            }
+            Integer type = gssChecksum.getFieldAsInteger(CheckSumField.CKSUM_TYPE);
+            return null == type ? 0 : type;
+        }
+
+    }
+
+    private interface Decryption {
+
+        DecryptedTicket decrypt() throws Kerb4JException;
+
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.kerb4j.server.cluster;
+
+import com.kerb4j.server.replay.ReplayCache;
+import com.kerb4j.server.ticket.DecryptedTicket;
+import com.kerb4j.server.ticket.DecryptedTicketCache;
+import org.apache.kerby.kerberos.kerb.KrbCodec;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.kerberos.KerberosKey;
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shares replay detection and decrypted tickets between the nodes accepting tickets for the same service principals.
+ * <p>
+ * Lookups never leave the node: accepted authenticators are checked against the local near-cache
+ * ({@link ReplayCache}) and tickets are looked up in the local, bounded {@link DecryptedTicketCache}. Entries produced
+ * locally are queued and published to the other nodes in batches by a background thread, and entries received from
+ * the other nodes are added to the near-caches. Replay detection across nodes is therefore eventually consistent: a
+ * replay reaching another node within the publishing delay, typically a few milliseconds, is not detected.
+ * <p>
+ * Use the instance as the {@link ReplayCache} of the acceptor and pass the same {@link DecryptedTicketCache} to it.
+ */
+@NullMarked
+public class ClusterCache implements ReplayCache, DecryptedTicketCache.Listener, ClusterTransport.Listener, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterCache.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final ClusterTransport transport;
+    private final ReplayCache nearCache;
+    private final @Nullable DecryptedTicketCache decryptedTicketCache;
+    private final Supplier<KerberosKey[]> kerberosKeys;
+
+    private final BlockingQueue<ClusterEvent> queue;
+    private final Thread publisher;
+    private volatile boolean closed;
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder receivedCount = new LongAdder();
+
+    /**
+     * @param transport            transport to the other nodes
+     * @param nearCache            local replay cache
+     * @param decryptedTicketCache local ticket cache to share, or {@code null} to only share replay detection
+     * @param kerberosKeys         keys of the service principals accepted by this node; tickets received from other
+     *                             nodes are only cached if a key of the same principal, etype and version as the one
+     *                             they were decrypted with is available
+     */
+    public ClusterCache(ClusterTransport transport,
+                        ReplayCache nearCache,
+                        @Nullable DecryptedTicketCache decryptedTicketCache,
+                        Supplier<KerberosKey[]> kerberosKeys) {
+        this.transport = transport;
+        this.nearCache = nearCache;
+        this.decryptedTicketCache = decryptedTicketCache;
+        this.kerberosKeys = kerberosKeys;
+        this.queue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+        this.publisher = new Thread(this::publish, "kerb4j-cluster-publisher");
+        this.publisher.setDaemon(true);
+    }
+
+    /**
+     * Start the transport and the publishing thread.
+     *
+     * @throws IOException if the transport cannot be started
+     */
+    public void start() throws IOException {
+        transport.start(this);
+        if (null != decryptedTicketCache) {
+            decryptedTicketCache.setListener(this);
+        }
+        publisher.start();
+    }
+
+    @Override
+    public boolean add(byte[] authenticator, long expiresAt) {
+        // Nodes exchange digests, so the near-cache is keyed by the digest for local and remote entries alike
+        byte[] digest = digest(authenticator);
+        if (!nearCache.add(digest, expiresAt)) {
+            return false;
+        }
+        enqueue(ClusterEvent.authenticator(digest, expiresAt));
+        return true;
+    }
+
+    @Override
+    public void onDecrypted(byte[] ticketCipherDigest, DecryptedTicket decryptedTicket) {
+        KerberosKey kerberosKey = decryptedTicket.getKerberosKey();
+        try {
+            enqueue(ClusterEvent.ticket(
+                    ticketCipherDigest,
+                    decryptedTicket.getExpiresAt(),
+                    kerberosKey.getPrincipal().getName(),
+                    kerberosKey.getKeyType(),
+                    kerberosKey.getVersionNumber(),
+                    KrbCodec.encode(decryptedTicket.getEncTicketPart())
+            ));
+        } catch (KrbException e) {
+            LOGGER.debug("Failed to encode decrypted ticket", e);
+        }
+    }
+
+    @Override
+    public void onEvents(List<ClusterEvent> events) {
+        receivedCount.add(events.size());
+        long now = System.currentTimeMillis();
+        for (ClusterEvent event : events) {
+            if (event.getExpiresAt() <= now) {
+                continue;
+            }
+            switch (event.getType()) {
+                case AUTHENTICATOR:
+                    nearCache.add(event.getDigest(), event.getExpiresAt());
+                    break;
+                case TICKET:
+                    onTicket(event);
+                    break;
+            }
+        }
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    /**
+     * @return number of events which haven't been published because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        publisher.interrupt();
+        if (null != decryptedTicketCache) {
+            decryptedTicketCache.setListener(null);
+        }
+        transport.close();
+    }
+
+    /**
+     * Stores a shared ticket under the local key it has been decrypted with. The principal is compared as well since
+     * keys of different principals may share etype and version, and a ticket must not be served for another one.
+     */
+    private void onTicket(ClusterEvent event) {
+        DecryptedTicketCache decryptedTicketCache = this.decryptedTicketCache;
+        if (null == decryptedTicketCache) {
+            return;
+        }
+        for (KerberosKey kerberosKey : kerberosKeys.get()) {
+            if (kerberosKey.getKeyType() == event.getKeyType() && kerberosKey.getVersionNumber() == event.getKvno()
+                    && kerberosKey.getPrincipal().getName().equals(event.getServicePrincipal())) {
+                try {
+                    EncTicketPart encTicketPart = KrbCodec.decode(event.getEncTicketPart(), EncTicketPart.class);
+                    decryptedTicketCache.put(event.getDigest(), encTicketPart, kerberosKey);
+                } catch (KrbException e) {
+                    LOGGER.debug("Failed to decode shared ticket", e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void enqueue(ClusterEvent event) {
+        if (!queue.offer(event)) {
+            droppedCount.increment();
+        }
+    }
+
+    /**
+     * Events queued while the previous batch was being written are sent together in the next one.
+     */
+    private void publish() {
+        List<ClusterEvent> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                ClusterEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (null == first) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                transport.publish(batch);
+                publishedCount.add(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to publish " + batch.size() + " cluster events", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private static byte[] digest(byte[] authenticator) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(authenticator);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.kerb4j.server.cluster;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Entry exchanged between cluster nodes: either an accepted authenticator or a decrypted service ticket.
+ */
+@NullMarked
+public final class ClusterEvent {
+
+    public enum Type {
+
+        /**
+         * Digest of an accepted authenticator, to be added to the replay caches of the other nodes.
+         */
+        AUTHENTICATOR,
+
+        /**
+         * DER encoded ticket enc-part keyed by the digest of the ticket cipher.
+         */
+        TICKET
+
+    }
+
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+    private final Type type;
+    private final byte[] digest;
+    private final long expiresAt;
+    private final String servicePrincipal;
+    private final int keyType;
+    private final int kvno;
+    private final byte[] encTicketPart;
+
+    private ClusterEvent(Type type, byte[] digest, long expiresAt, String servicePrincipal, int keyType, int kvno,
+                         byte[] encTicketPart) {
+        this.type = type;
+        this.digest = digest;
+        this.expiresAt = expiresAt;
+        this.servicePrincipal = servicePrincipal;
+        this.keyType = keyType;
+        this.kvno = kvno;
+        this.encTicketPart = encTicketPart;
+    }
+
+    public static ClusterEvent authenticator(byte[] digest, long expiresAt) {
+        return new ClusterEvent(Type.AUTHENTICATOR, digest, expiresAt, "", 0, 0, EMPTY_BYTE_ARRAY);
+    }
+
+    public static ClusterEvent ticket(byte[] digest, long expiresAt, String servicePrincipal, int keyType, int kvno,
+                                      byte[] encTicketPart) {
+        return new ClusterEvent(Type.TICKET, digest, expiresAt, servicePrincipal, keyType, kvno, encTicketPart);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return SHA-256 digest of the authenticator or of the ticket cipher
+     */
+    public byte[] getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return time in milliseconds since epoch after which the entry may be forgotten
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return name and realm of the service principal the ticket has been decrypted for, e.g.
+     * {@code HTTP/www.example.com@EXAMPLE.COM}; empty for authenticators
+     */
+    public String getServicePrincipal() {
+        return servicePrincipal;
+    }
+
+    /**
+     * @return encryption type of the service key the ticket has been decrypted with; {@code 0} for authenticators
+     */
+    public int getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * @return version of the service key the ticket has been decrypted with; {@code 0} for authenticators
+     */
+    public int getKvno() {
+        return kvno;
+    }
+
+    /**
+     * @return DER encoded ticket enc-part; empty for authenticators
+     */
+    public byte[] getEncTicketPart() {
+        return encTicketPart;
+    }
+
+}
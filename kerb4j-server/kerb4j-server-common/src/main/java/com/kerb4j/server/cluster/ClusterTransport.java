@@ -0,0 +1,42 @@
+package com.kerb4j.server.cluster;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * SPI exchanging {@link ClusterEvent}s between the nodes accepting tickets for the same service principals.
+ * <p>
+ * {@link ClusterCache} calls {@link #publish(List)} from a single background thread with batches of events, so
+ * implementations don't need to batch or buffer themselves. Delivery is best effort: a batch which cannot be sent is
+ * dropped. The events carry session keys, so implementations must protect them in transit.
+ *
+ * @see TcpClusterTransport
+ */
+@NullMarked
+public interface ClusterTransport extends Closeable {
+
+    /**
+     * Start receiving events from the other nodes.
+     *
+     * @param listener receives batches of events published by the other nodes
+     * @throws IOException if the transport cannot be started
+     */
+    void start(Listener listener) throws IOException;
+
+    /**
+     * Send a batch of locally produced events to the other nodes.
+     *
+     * @param events events in the order they were produced
+     */
+    void publish(List<ClusterEvent> events);
+
+    interface Listener {
+
+        void onEvents(List<ClusterEvent> events);
+
+    }
+
+}
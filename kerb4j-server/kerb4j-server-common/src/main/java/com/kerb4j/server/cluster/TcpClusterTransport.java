@@ -0,0 +1,454 @@
+package com.kerb4j.server.cluster;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference {@link ClusterTransport}: every node listens on a TCP port and pushes its batches to all configured
+ * peers, so no external store is required. Batches are sealed with AES-GCM under a key derived from a secret shared
+ * by all nodes; batches which fail authentication are discarded and the connection is closed.
+ * <p>
+ * Batches are split into frames of at most 64 KB, which is also the most a node reads from a connection before it is
+ * authenticated. A node accepts a limited number of connections, each read by its own thread, and closes connections
+ * which send nothing or stall in the middle of a frame.
+ * <p>
+ * Each peer is written to by its own thread from a short queue, so a slow or stalled peer does not hold up the
+ * others: batches for it are dropped while its queue is full, and its connection is closed if a write has not completed
+ * within a few seconds. Peers which cannot be reached are reconnected on the next frame. The transport is meant for a
+ * handful of nodes; each node keeps one outgoing connection per peer.
+ */
+@NullMarked
+public class TcpClusterTransport implements ClusterTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpClusterTransport.class);
+
+    static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_BITS = 128;
+
+    static final int MAX_PAYLOAD_LENGTH = MAX_FRAME_LENGTH - IV_LENGTH - TAG_BITS / 8;
+
+    static final int MAX_INBOUND_CONNECTIONS = 32;
+
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    /**
+     * Time in milliseconds a connection may take to send its first frame or the rest of a frame once started.
+     */
+    private static final int READ_TIMEOUT = 10_000;
+
+    /**
+     * Time in milliseconds an authenticated connection may stay idle between frames.
+     */
+    private static final int IDLE_TIMEOUT = 300_000;
+
+    /**
+     * Number of batches queued for a peer before further batches are dropped.
+     */
+    private static final int PEER_QUEUE_CAPACITY = 4;
+
+    private static final long WRITE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Time after which an idle outgoing connection is replaced before the peer closes it.
+     */
+    private static final long RECONNECT_AFTER = TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT / 2);
+
+    private static final SecureRandom IVS = new SecureRandom();
+
+    private final InetSocketAddress bindAddress;
+
+    private final SecretKeySpec key;
+
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+
+    private final Set<Socket> inboundSockets = ConcurrentHashMap.newKeySet();
+
+    private @Nullable ServerSocket serverSocket;
+
+    private volatile boolean closed;
+
+    /**
+     * @param bindAddress  address to receive batches from the other nodes on; port {@code 0} picks a free port
+     * @param peers        addresses of the other nodes
+     * @param sharedSecret secret configured on all nodes of the cluster
+     */
+    public TcpClusterTransport(InetSocketAddress bindAddress, List<InetSocketAddress> peers, byte[] sharedSecret) {
+        this.bindAddress = bindAddress;
+        this.key = new SecretKeySpec(sha256(sharedSecret), "AES");
+        for (InetSocketAddress peer : peers) {
+            addPeer(peer);
+        }
+    }
+
+    public void addPeer(InetSocketAddress address) {
+        Peer peer = new Peer(address);
+        peers.add(peer);
+        peer.start();
+    }
+
+    /**
+     * @return address the transport listens on, available once started
+     */
+    public @Nullable InetSocketAddress getLocalAddress() {
+        ServerSocket serverSocket = this.serverSocket;
+        return null == serverSocket ? null : (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    @Override
+    public void start(Listener listener) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(bindAddress);
+        this.serverSocket = serverSocket;
+
+        Thread acceptor = new Thread(() -> accept(serverSocket, listener), "kerb4j-cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Queues the batch for each peer and returns without waiting for it to be written.
+     */
+    @Override
+    public void publish(List<ClusterEvent> events) {
+        List<byte[]> frames;
+        try {
+            frames = frames(events);
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.warn("Failed to encode cluster events", e);
+            return;
+        }
+        for (Peer peer : peers) {
+            peer.offer(frames);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        ServerSocket serverSocket = this.serverSocket;
+        if (null != serverSocket) {
+            serverSocket.close();
+        }
+        for (Socket socket : inboundSockets) {
+            socket.close();
+        }
+        for (Peer peer : peers) {
+            peer.close();
+        }
+    }
+
+    private void accept(ServerSocket serverSocket, Listener listener) {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (inboundSockets.size() >= MAX_INBOUND_CONNECTIONS) {
+                    LOGGER.debug("Rejecting cluster connection from " + socket.getRemoteSocketAddress()
+                            + ", already " + MAX_INBOUND_CONNECTIONS + " connections open");
+                    socket.close();
+                    continue;
+                }
+                socket.setSoTimeout(READ_TIMEOUT);
+                inboundSockets.add(socket);
+                Thread reader = new Thread(() -> read(socket, listener), "kerb4j-cluster-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("Failed to accept cluster connection", e);
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket, Listener listener) {
+        try (Socket ignored = socket;
+             DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            while (!closed) {
+                int length = in.readInt();
+                if (length <= IV_LENGTH || length > MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid cluster frame length " + length);
+                }
+                socket.setSoTimeout(READ_TIMEOUT);
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                List<ClusterEvent> events = decode(open(frame));
+                // Authenticated peers keep their connection open between batches
+                socket.setSoTimeout(IDLE_TIMEOUT);
+                listener.onEvents(events);
+            }
+        } catch (EOFException | SocketException | SocketTimeoutException e) {
+            LOGGER.debug("Cluster connection from " + socket.getRemoteSocketAddress() + " closed", e);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            LOGGER.warn("Dropping cluster connection from " + socket.getRemoteSocketAddress(), e);
+        } finally {
+            inboundSockets.remove(socket);
+        }
+    }
+
+    /**
+     * Splits the batch into sealed frames of at most {@link #MAX_FRAME_LENGTH} bytes. An event which does not fit
+     * into a frame on its own is dropped.
+     */
+    List<byte[]> frames(List<ClusterEvent> events) throws IOException, GeneralSecurityException {
+        List<byte[]> frames = new ArrayList<>(1);
+        int from = 0;
+        int payloadLength = Integer.BYTES;
+        for (int i = 0; i < events.size(); i++) {
+            int eventLength = encodedLength(events.get(i));
+            if (payloadLength + eventLength <= MAX_PAYLOAD_LENGTH) {
+                payloadLength += eventLength;
+                continue;
+            }
+            if (from < i) {
+                frames.add(seal(encode(events.subList(from, i))));
+            }
+            if (Integer.BYTES + eventLength > MAX_PAYLOAD_LENGTH) {
+                LOGGER.warn("Not publishing cluster event of " + eventLength + " bytes, larger than a frame");
+                from = i + 1;
+                payloadLength = Integer.BYTES;
+            } else {
+                from = i;
+                payloadLength = Integer.BYTES + eventLength;
+            }
+        }
+        if (from < events.size()) {
+            frames.add(seal(encode(events.subList(from, events.size()))));
+        }
+        return frames;
+    }
+
+    private byte[] seal(byte[] payload) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        IVS.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        byte[] frame = new byte[IV_LENGTH + cipher.getOutputSize(payload.length)];
+        System.arraycopy(iv, 0, frame, 0, IV_LENGTH);
+        cipher.doFinal(payload, 0, payload.length, frame, IV_LENGTH);
+        return frame;
+    }
+
+    private byte[] open(byte[] frame) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, frame, 0, IV_LENGTH));
+        return cipher.doFinal(frame, IV_LENGTH, frame.length - IV_LENGTH);
+    }
+
+    static byte[] encode(List<ClusterEvent> events) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(events.size());
+        for (ClusterEvent event : events) {
+            out.writeByte(event.getType().ordinal());
+            out.writeShort(event.getDigest().length);
+            out.write(event.getDigest());
+            out.writeLong(event.getExpiresAt());
+            if (ClusterEvent.Type.TICKET == event.getType()) {
+                byte[] servicePrincipal = event.getServicePrincipal().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(servicePrincipal.length);
+                out.write(servicePrincipal);
+                out.writeInt(event.getKeyType());
+                out.writeInt(event.getKvno());
+                out.writeInt(event.getEncTicketPart().length);
+                out.write(event.getEncTicketPart());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int encodedLength(ClusterEvent event) {
+        int length = Byte.BYTES + Short.BYTES + event.getDigest().length + Long.BYTES;
+        if (ClusterEvent.Type.TICKET == event.getType()) {
+            length += Short.BYTES + event.getServicePrincipal().getBytes(StandardCharsets.UTF_8).length
+                    + 3 * Integer.BYTES + event.getEncTicketPart().length;
+        }
+        return length;
+    }
+
+    static List<ClusterEvent> decode(byte[] payload) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int count = in.getInt();
+        List<ClusterEvent> events = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            ClusterEvent.Type[] types = ClusterEvent.Type.values();
+            int type = in.get();
+            if (type < 0 || type >= types.length) {
+                throw new IOException("Unknown cluster event type " + type);
+            }
+            byte[] digest = new byte[in.getShort() & 0xffff];
+            in.get(digest);
+            long expiresAt = in.getLong();
+            if (ClusterEvent.Type.TICKET == types[type]) {
+                byte[] servicePrincipal = new byte[in.getShort() & 0xffff];
+                in.get(servicePrincipal);
+                int keyType = in.getInt();
+                int kvno = in.getInt();
+                byte[] encTicketPart = new byte[in.getInt()];
+                in.get(encTicketPart);
+                events.add(ClusterEvent.ticket(digest, expiresAt, new String(servicePrincipal, StandardCharsets.UTF_8),
+                        keyType, kvno, encTicketPart));
+            } else {
+                events.add(ClusterEvent.authenticator(digest, expiresAt));
+            }
+        }
+        return events;
+    }
+
+    private static byte[] sha256(byte[] secret) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(secret);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Outgoing connection to a peer, written by its own thread.
+     */
+    private static final class Peer {
+
+        private final InetSocketAddress address;
+
+        private final BlockingQueue<List<byte[]>> batches = new ArrayBlockingQueue<>(PEER_QUEUE_CAPACITY);
+
+        private final Thread sender;
+
+        private volatile @Nullable Socket socket;
+
+        /**
+         * Time the write in progress has started at, or {@code -1} if none is.
+         */
+        private volatile long writingSince = -1;
+
+        private @Nullable DataOutputStream out;
+
+        private long lastWrittenAt;
+
+        private Peer(InetSocketAddress address) {
+            this.address = address;
+            this.sender = new Thread(this::send, "kerb4j-cluster-sender");
+            this.sender.setDaemon(true);
+        }
+
+        private void start() {
+            sender.start();
+        }
+
+        /**
+         * Queues the frames of a batch, or drops them if the queue is full. A full queue behind a write which has not
+         * completed within the write timeout means the peer stopped reading, and its connection is closed.
+         */
+        private void offer(List<byte[]> frames) {
+            if (batches.offer(frames)) {
+                return;
+            }
+            LOGGER.debug("Dropping cluster events for " + address + ", the peer is not keeping up");
+            long writingSince = this.writingSince;
+            if (writingSince >= 0 && System.nanoTime() - writingSince > WRITE_TIMEOUT) {
+                LOGGER.warn("Cluster peer " + address + " stopped reading, closing the connection");
+                closeSocket();
+            }
+        }
+
+        private void close() {
+            sender.interrupt();
+            closeSocket();
+        }
+
+        private void send() {
+            try {
+                while (true) {
+                    for (byte[] frame : batches.take()) {
+                        write(frame);
+                    }
+                }
+            } catch (InterruptedException e) {
+                disconnect();
+            }
+        }
+
+        private void write(byte[] frame) {
+            try {
+                DataOutputStream out = this.out;
+                if (null != out && System.nanoTime() - lastWrittenAt > RECONNECT_AFTER) {
+                    disconnect();
+                    out = null;
+                }
+                if (null == out) {
+                    Socket socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(address, CONNECT_TIMEOUT);
+                    this.socket = socket;
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    this.out = out;
+                }
+                writingSince = System.nanoTime();
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+                lastWrittenAt = System.nanoTime();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to send cluster events to " + address, e);
+                disconnect();
+            } finally {
+                writingSince = -1;
+            }
+        }
+
+        private void disconnect() {
+            closeSocket();
+            this.socket = null;
+            this.out = null;
+        }
+
+        /**
+         * Closes the connection, which also fails a write in progress on the sender thread.
+         */
+        private void closeSocket() {
+            Socket socket = this.socket;
+            if (null != socket) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,354 @@
+package com.kerb4j.server.keytab;
+
+import com.kerb4j.client.KerberosKeyIndex;
+import com.kerb4j.client.SpnegoClient;
+import org.apache.kerby.kerberos.kerb.keytab.Keytab;
+import org.apache.kerby.kerberos.kerb.keytab.KeytabEntry;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.kerberos.KerberosKey;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reloads rotated keytabs without restarting the JVM.
+ * <p>
+ * A single daemon thread watches the directories of the registered keytabs. Once a keytab has changed and its
+ * modification time and size have been stable for the debounce period, it is parsed on that thread and the new key
+ * set is handed to the {@link SpnegoClient} with {@link SpnegoClient#replaceKerberosKeys(KerberosKeyIndex)}, which
+ * swaps it in atomically. Request threads never wait for a reload and never see a partially loaded key set.
+ * <p>
+ * Key versions which have disappeared from the keytab stay valid for a grace period, since clients keep using
+ * service tickets issued for the old key until the tickets expire. Keytabs which cannot be parsed or don't contain
+ * keys for the principal are ignored and the previous keys stay in use.
+ *
+ * @since 0.5.1
+ */
+@NullMarked
+public class KeytabWatcher implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeytabWatcher.class);
+
+    public static final long DEFAULT_DEBOUNCE = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * Default lifetime of a service ticket issued by Active Directory and MIT KDCs.
+     */
+    public static final long DEFAULT_GRACE_PERIOD = TimeUnit.HOURS.toMillis(10);
+
+    private static final long MAX_TICK = 1000;
+
+    private final long debounce;
+
+    private final long gracePeriod;
+
+    private final WatchService watchService;
+
+    private final Set<Path> directories = new HashSet<>();
+
+    private final List<WatchedKeytab> keytabs = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong reloadCount = new AtomicLong();
+
+    private @Nullable Thread thread;
+
+    private volatile boolean closed;
+
+    public KeytabWatcher() throws IOException {
+        this(DEFAULT_DEBOUNCE, DEFAULT_GRACE_PERIOD);
+    }
+
+    /**
+     * @param debounce    time in milliseconds a changed keytab must stay unchanged before it is reloaded
+     * @param gracePeriod time in milliseconds keys removed from a keytab are still accepted
+     */
+    public KeytabWatcher(long debounce, long gracePeriod) throws IOException {
+        if (debounce < 0 || gracePeriod < 0) {
+            throw new IllegalArgumentException("debounce and grace period must not be negative");
+        }
+        this.debounce = debounce;
+        this.gracePeriod = gracePeriod;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Start watching a keytab. The keytab is parsed right away to remember the keys which are retired by the next
+     * rotation; the client keeps using its own keys until then.
+     *
+     * @param keyTabLocation keytab the client has been logged in with
+     * @param principal      service principal whose keys are taken from the keytab
+     * @param spnegoClient   client to update
+     * @throws IOException if the keytab cannot be read or its directory cannot be watched
+     */
+    public synchronized void watch(Path keyTabLocation, String principal, SpnegoClient spnegoClient)
+            throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Keytab watcher has been closed");
+        }
+        Path file = keyTabLocation.toAbsolutePath().normalize();
+        Path directory = Objects.requireNonNull(file.getParent(), "keytab must be a file");
+
+        WatchedKeytab keytab = new WatchedKeytab(file, principal, spnegoClient);
+        keytab.loaded = FileState.of(file);
+        keytab.current = loadKeys(file, principal);
+
+        if (directories.add(directory)) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        keytabs.add(keytab);
+
+        if (null == thread) {
+            Thread thread = new Thread(this::run, "kerb4j-keytab-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * @return number of keytab reloads which have replaced the keys of a client
+     */
+    public long getReloadCount() {
+        return reloadCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+    private void run() {
+        long tick = Math.max(10, Math.min(debounce, MAX_TICK) / 2);
+        try {
+            while (!closed) {
+                WatchKey watchKey = watchService.poll(tick, TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                while (null != watchKey) {
+                    Path directory = (Path) watchKey.watchable();
+                    for (WatchEvent<?> event : watchKey.pollEvents()) {
+                        Path changed = StandardWatchEventKinds.OVERFLOW == event.kind()
+                                ? null
+                                : directory.resolve((Path) event.context());
+                        for (WatchedKeytab keytab : keytabs) {
+                            if (null == changed ? directory.equals(keytab.file.getParent()) : changed.equals(keytab.file)) {
+                                keytab.touch(now);
+                            }
+                        }
+                    }
+                    watchKey.reset();
+                    watchKey = watchService.poll();
+                }
+                for (WatchedKeytab keytab : keytabs) {
+                    keytab.poll(now);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<KerberosKey> loadKeys(Path file, String principal) throws IOException {
+        Keytab keytab = Keytab.loadKeytab(file.toFile());
+        KerberosPrincipal kerberosPrincipal = new KerberosPrincipal(principal);
+        List<KerberosKey> keys = new ArrayList<>();
+        for (PrincipalName principalName : keytab.getPrincipals()) {
+            if (principal.equals(principalName.getName()) || kerberosPrincipal.getName().equals(principalName.getName())) {
+                for (KeytabEntry entry : keytab.getKeytabEntries(principalName)) {
+                    EncryptionKey key = entry.getKey();
+                    keys.add(new KerberosKey(kerberosPrincipal,
+                            key.getKeyData(), key.getKeyType().getValue(), entry.getKvno()));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Accessed by the watcher thread only, apart from the initial state set in {@link #watch}.
+     */
+    private final class WatchedKeytab {
+
+        private final Path file;
+        private final String principal;
+        private final SpnegoClient spnegoClient;
+
+        private @Nullable FileState loaded;
+        private List<KerberosKey> current = new ArrayList<>();
+        private final List<RetiredKey> retired = new ArrayList<>();
+
+        private @Nullable FileState pending;
+        private long pendingSince;
+
+        private WatchedKeytab(Path file, String principal, SpnegoClient spnegoClient) {
+            this.file = file;
+            this.principal = principal;
+            this.spnegoClient = spnegoClient;
+        }
+
+        private void touch(long now) {
+            pending = FileState.of(file);
+            pendingSince = now;
+        }
+
+        private void poll(long now) {
+            if (0 != pendingSince && now - pendingSince >= debounce) {
+                FileState state = FileState.of(file);
+                if (null == state) {
+                    // removed or in the middle of being replaced; wait for it to be created again
+                    pendingSince = 0;
+                } else if (!state.equals(pending)) {
+                    // still being written
+                    pending = state;
+                    pendingSince = now;
+                } else {
+                    pendingSince = 0;
+                    if (!state.equals(loaded)) {
+                        reload(state, now);
+                    }
+                }
+            }
+
+            boolean expired = false;
+            for (Iterator<RetiredKey> iterator = retired.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().retiredUntil <= now) {
+                    iterator.remove();
+                    expired = true;
+                }
+            }
+            if (expired) {
+                replaceKeys();
+            }
+        }
+
+        private void reload(FileState state, long now) {
+            List<KerberosKey> keys;
+            try {
+                keys = loadKeys(file, principal);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to reload keytab " + file + ", keeping the previous keys", e);
+                return;
+            }
+            if (keys.isEmpty()) {
+                LOGGER.warn("Reloaded keytab " + file + " has no keys for " + principal + ", keeping the previous keys");
+                return;
+            }
+
+            KerberosKeyIndex reloaded = KerberosKeyIndex.of(keys.toArray(new KerberosKey[0]));
+            retired.removeIf(retiredKey -> null != reloaded.get(
+                    retiredKey.key.getKeyType(), retiredKey.key.getVersionNumber()));
+            for (KerberosKey key : current) {
+                if (null == reloaded.get(key.getKeyType(), key.getVersionNumber())) {
+                    retired.add(new RetiredKey(key, now + gracePeriod));
+                }
+            }
+            current = keys;
+            loaded = state;
+
+            replaceKeys();
+            reloadCount.incrementAndGet();
+            LOGGER.info("Reloaded keytab " + file + " for " + principal + ", " + retired.size() + " retired keys");
+        }
+
+        private void replaceKeys() {
+            KerberosKey[] keys = new KerberosKey[current.size() + retired.size()];
+            int i = 0;
+            // current keys first, so they win over retired keys with the same version
+            for (KerberosKey key : current) {
+                keys[i++] = key;
+            }
+            for (RetiredKey retiredKey : retired) {
+                keys[i++] = retiredKey.key;
+            }
+            spnegoClient.replaceKerberosKeys(KerberosKeyIndex.of(keys));
+        }
+
+    }
+
+    private static final class RetiredKey {
+
+        private final KerberosKey key;
+        private final long retiredUntil;
+
+        private RetiredKey(KerberosKey key, long retiredUntil) {
+            this.key = key;
+            this.retiredUntil = retiredUntil;
+        }
+
+    }
+
+    /**
+     * Modification time, size and file key of a keytab; a keytab replaced by a rename gets a new file key even if
+     * time and size happen to match.
+     */
+    private static final class FileState {
+
+        private final long lastModified;
+        private final long size;
+        private final @Nullable Object fileKey;
+
+        private FileState(long lastModified, long size, @Nullable Object fileKey) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.fileKey = fileKey;
+        }
+
+        private static @Nullable FileState of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileState(attributes.lastModifiedTime().toMillis(), attributes.size(), attributes.fileKey());
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                LOGGER.debug("Failed to read attributes of " + file, e);
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FileState)) {
+                return false;
+            }
+            FileState that = (FileState) o;
+            return lastModified == that.lastModified && size == that.size && Objects.equals(fileKey, that.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModified, size, fileKey);
+        }
+
+    }
+
+}
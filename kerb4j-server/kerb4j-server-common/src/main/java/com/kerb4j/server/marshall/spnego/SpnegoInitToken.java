@@ -105,7 +105,11 @@ public class SpnegoInitToken extends KrbSequenceType {
      * @throws Kerb4JException if the token cannot be parsed
      */
     public @Nullable String getServerPrincipalName() throws Kerb4JException {
-        return getSpnegoKerberosMechToken().getServerPrincipalName();
+        byte[] mechToken = getMechToken();
+        if (null == mechToken) {
+            throw new Kerb4JException("kerberos.token.empty", null, null);
+        }
+        return new SpnegoTicketScanner().scanMechToken(mechToken).getServerPrincipalName();
     }
 
     public List<String> getMechTypes() {
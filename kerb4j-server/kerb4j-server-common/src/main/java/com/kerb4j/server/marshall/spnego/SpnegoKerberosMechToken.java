@@ -1,5 +1,6 @@
 package com.kerb4j.server.marshall.spnego;
 
+import com.kerb4j.client.KerberosKeyIndex;
 import com.kerb4j.common.util.SpnegoProvider;
 import com.kerb4j.server.marshall.Kerb4JException;
 import com.kerb4j.server.marshall.pac.Pac;
@@ -107,6 +108,16 @@ public class SpnegoKerberosMechToken {
 
     }
 
+    /**
+     * Look up the key by encryption type and key version number, so that the right key is picked while several
+     * versions coexist during key rotation.
+     *
+     * @since 0.5.1
+     */
+    public @Nullable KerberosKey getKerberosKey(EncryptionType eType, int kvno, KerberosKey[] kerberosKeys) {
+        return KerberosKeyIndex.find(kerberosKeys, eType.getValue(), kvno);
+    }
+
     public EncTicketPart getEncryptedTicketPart(byte[] cipher, KerberosKey kerberosKey) throws KrbException {
 
         byte[] decrypt = EncryptionHandler.getEncHandler(kerberosKey.getKeyType()).decrypt(
@@ -172,39 +183,83 @@ public class SpnegoKerberosMechToken {
 
     public @Nullable Pac getPac(KerberosKey[] kerberosKeys) throws KrbException, Kerb4JException {
 
-        @SuppressWarnings("NullableProblems") @Nullable Ticket ticket = getApRequest().getTicket();
+        @Nullable EncryptedData encryptedData = getEncryptedTicket();
 
-        if (null == ticket) {
+        if (null == encryptedData) {
             return null;
         } else {
-            @SuppressWarnings("NullableProblems") @Nullable EncryptedData encryptedData = ticket.getEncryptedEncPart();
+            KerberosKey kerberosKey = getKerberosKey(encryptedData.getEType(), encryptedData.getKvno(), kerberosKeys);
 
-            if (null == encryptedData) {
-                return null;
+            if (null == kerberosKey) {
+                return null; // TODO: maybe add logging here there and everywhere
             } else {
-                KerberosKey kerberosKey = getKerberosKey(encryptedData.getEType(), kerberosKeys);
+                return getPac(getEncryptedTicketPart(encryptedData.getCipher(), kerberosKey), kerberosKey);
+            }
+
+        }
 
-                if (null == kerberosKey) {
-                    return null; // TODO: maybe add logging here there and everywhere
-                } else {
-                    EncTicketPart tgsRep = getEncryptedTicketPart(encryptedData.getCipher(), kerberosKey);
+    }
 
-                    @SuppressWarnings("NullableProblems") @Nullable AuthorizationData authorizationData = tgsRep.getAuthorizationData();
-                    if (null == authorizationData) {
-                        return null;
-                    } else {
-                        List<AuthorizationDataEntry> authorizationDataEntries = authorizationData.getElements();
-                        return extractPac(authorizationDataEntries, kerberosKey);
-                    }
-                }
+    /**
+     * Same as {@link #getPac(KerberosKey[])} with the key and its material taken from an index, e.g.
+     * {@link com.kerb4j.client.SpnegoClient#getKerberosKeyIndex()}.
+     *
+     * @since 0.5.1
+     */
+    public @Nullable Pac getPac(KerberosKeyIndex keyIndex) throws KrbException, Kerb4JException {
 
+        @Nullable EncryptedData encryptedData = getEncryptedTicket();
+
+        if (null == encryptedData) {
+            return null;
+        } else {
+            KerberosKey kerberosKey = keyIndex.find(encryptedData.getEType().getValue(), encryptedData.getKvno());
+
+            if (null == kerberosKey) {
+                return null;
+            } else {
+                byte[] decrypt = EncryptionHandler.getEncHandler(kerberosKey.getKeyType()).decrypt(
+                        encryptedData.getCipher(),
+                        keyIndex.getEncoded(kerberosKey.getKeyType(), kerberosKey.getVersionNumber()),
+                        KeyUsage.KDC_REP_TICKET.getValue()
+                );
+                return getPac(KrbCodec.decode(decrypt, EncTicketPart.class), kerberosKey);
             }
 
         }
 
     }
 
-    private @Nullable Pac extractPac(List<AuthorizationDataEntry> authorizationDataEntries, KerberosKey kerberosKey) throws Kerb4JException {
+    private @Nullable EncryptedData getEncryptedTicket() {
+        @SuppressWarnings("NullableProblems") @Nullable Ticket ticket = getApRequest().getTicket();
+        return null == ticket ? null : ticket.getEncryptedEncPart();
+    }
+
+    /**
+     * Extract the PAC from an already decrypted ticket.
+     *
+     * @param encTicketPart decrypted ticket enc-part
+     * @param kerberosKey   service key the ticket was decrypted with; used to verify the PAC server signature
+     * @return PAC or {@code null} if the ticket doesn't carry one
+     */
+    public @Nullable Pac getPac(EncTicketPart encTicketPart, KerberosKey kerberosKey) throws Kerb4JException {
+        return extractPac(encTicketPart, kerberosKey);
+    }
+
+    /**
+     * Same as {@link #getPac(EncTicketPart, KerberosKey)} for callers which only hold the decrypted ticket.
+     */
+    public static @Nullable Pac extractPac(EncTicketPart encTicketPart, KerberosKey kerberosKey) throws Kerb4JException {
+        @SuppressWarnings("NullableProblems") @Nullable AuthorizationData authorizationData = encTicketPart.getAuthorizationData();
+        if (null == authorizationData) {
+            return null;
+        } else {
+            List<AuthorizationDataEntry> authorizationDataEntries = authorizationData.getElements();
+            return extractPac(authorizationDataEntries, kerberosKey);
+        }
+    }
+
+    private static @Nullable Pac extractPac(List<AuthorizationDataEntry> authorizationDataEntries, KerberosKey kerberosKey) throws Kerb4JException {
 
         for (AuthorizationDataEntry authorizationDataEntry : authorizationDataEntries) {
             switch (authorizationDataEntry.getAuthzType()) {
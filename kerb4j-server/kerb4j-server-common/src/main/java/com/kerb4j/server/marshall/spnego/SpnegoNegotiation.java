@@ -0,0 +1,176 @@
+package com.kerb4j.server.marshall.spnego;
+
+import com.kerb4j.client.KerberosKeyIndex;
+import com.kerb4j.common.util.SpnegoProvider;
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.pac.Pac;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.type.ap.ApReq;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import javax.security.auth.kerberos.KerberosKey;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Result of parsing an incoming SPNEGO init token once.
+ * <p>
+ * The routing fields - target SPN, ticket etype and kvno - are located eagerly with {@link SpnegoTicketScanner},
+ * without decoding the token into an ASN.1 object tree. The Kerberos mech token and its {@link ApReq} are only
+ * decoded on first use (PAC extraction), and then shared by every later step of the same request.
+ * <p>
+ * Instances are immutable and may be shared between threads; values computed on first use are published through
+ * volatile fields, and computing one twice under contention is harmless. Decrypting the ticket is left to the caller,
+ * e.g. {@link com.kerb4j.server.ticket.DecryptedTicket}, which keeps the decrypted ticket and its session key out of
+ * the negotiation. The token array is referenced, not copied, and must not be modified after parsing.
+ */
+@NullMarked
+public final class SpnegoNegotiation {
+
+    // 1.2.840.113554.1.2.2
+    private static final byte[] KERBEROS_OID = {0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x12, 0x01, 0x02, 0x02};
+
+    // 1.2.840.48018.1.2.2
+    private static final byte[] LEGACY_KERBEROS_OID = {0x2a, (byte) 0x86, 0x48, (byte) 0x82, (byte) 0xf7, 0x12, 0x01, 0x02, 0x02};
+
+    private final byte[] token;
+    private final int mechTokenOffset;
+    private final int mechTokenLength;
+    private final @Nullable String serverPrincipalName;
+    private final @Nullable EncryptionType encryptionType;
+    private final int kvno;
+    private final int cipherOffset;
+    private final int cipherLength;
+    private final @Nullable String preferredMechanism;
+
+    private volatile byte @Nullable [] mechToken;
+    private volatile byte @Nullable [] ticketCipherDigest;
+    private volatile @Nullable SpnegoKerberosMechToken kerberosMechToken;
+
+    private SpnegoNegotiation(byte[] token, SpnegoTicketScanner scanner) {
+        this.token = token;
+        this.mechTokenOffset = scanner.getMechTokenOffset();
+        this.mechTokenLength = scanner.getMechTokenLength();
+        this.serverPrincipalName = scanner.getServerPrincipalName();
+        this.encryptionType = scanner.getEncryptionType();
+        this.kvno = scanner.getKvno();
+        this.cipherOffset = scanner.getCipherOffset();
+        this.cipherLength = scanner.getCipherLength();
+        if (scanner.isPreferredMechType(KERBEROS_OID)) {
+            this.preferredMechanism = SpnegoProvider.KERBEROS_MECHANISM;
+        } else if (scanner.isPreferredMechType(LEGACY_KERBEROS_OID)) {
+            this.preferredMechanism = SpnegoProvider.LEGACY_KERBEROS_MECHANISM;
+        } else {
+            this.preferredMechanism = null;
+        }
+    }
+
+    /**
+     * Parse a SPNEGO init token.
+     *
+     * @param token Base64 decoded value of the {@code Authorization: Negotiate} header
+     * @return parsed negotiation
+     * @throws Kerb4JException if the token is not a well-formed SPNEGO init token carrying a Kerberos AP-REQ
+     */
+    public static SpnegoNegotiation parse(byte[] token) throws Kerb4JException {
+        return new SpnegoNegotiation(token, new SpnegoTicketScanner().scan(token));
+    }
+
+    /**
+     * @return Kerberos mech token carried inside the SPNEGO init token
+     */
+    public byte[] getMechToken() {
+        byte[] mechToken = this.mechToken;
+        if (null == mechToken) {
+            mechToken = Arrays.copyOfRange(token, mechTokenOffset, mechTokenOffset + mechTokenLength);
+            this.mechToken = mechToken;
+        }
+        return mechToken;
+    }
+
+    /**
+     * @return fully decoded Kerberos mech token; decoded on first call
+     * @throws Kerb4JException if the AP-REQ cannot be decoded
+     */
+    public SpnegoKerberosMechToken getKerberosMechToken() throws Kerb4JException {
+        SpnegoKerberosMechToken kerberosMechToken = this.kerberosMechToken;
+        if (null == kerberosMechToken) {
+            kerberosMechToken = new SpnegoKerberosMechToken(getMechToken());
+            this.kerberosMechToken = kerberosMechToken;
+        }
+        return kerberosMechToken;
+    }
+
+    public ApReq getApRequest() throws Kerb4JException {
+        return getKerberosMechToken().getApRequest();
+    }
+
+    /**
+     * @return canonical target SPN including realm, see {@link SpnegoKerberosMechToken#getServerPrincipalName()}
+     */
+    public @Nullable String getServerPrincipalName() {
+        return serverPrincipalName;
+    }
+
+    /**
+     * @return encryption type of the service ticket enc-part
+     */
+    public @Nullable EncryptionType getEncryptionType() {
+        return encryptionType;
+    }
+
+    /**
+     * @return key version number of the service ticket enc-part or {@code 0} if absent
+     */
+    public int getKvno() {
+        return kvno;
+    }
+
+    /**
+     * @return SHA-256 digest of the service ticket cipher; identifies the ticket across requests since only the
+     * authenticator changes when a client reuses its service ticket
+     */
+    public byte[] getTicketCipherDigest() {
+        byte[] ticketCipherDigest = this.ticketCipherDigest;
+        if (null == ticketCipherDigest) {
+            try {
+                MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+                messageDigest.update(token, cipherOffset, cipherLength);
+                ticketCipherDigest = messageDigest.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            this.ticketCipherDigest = ticketCipherDigest;
+        }
+        return ticketCipherDigest;
+    }
+
+    /**
+     * @return {@link SpnegoProvider#KERBEROS_MECHANISM} or {@link SpnegoProvider#LEGACY_KERBEROS_MECHANISM} if the
+     * first mechType proposed by the client is Kerberos, otherwise {@code null}
+     */
+    public @Nullable String getPreferredMechanism() {
+        return preferredMechanism;
+    }
+
+    /**
+     * Decrypt the ticket and extract its PAC. Callers which have already decrypted the ticket should take the PAC from
+     * the {@link com.kerb4j.server.ticket.DecryptedTicket} instead.
+     */
+    public @Nullable Pac getPac(KerberosKey[] kerberosKeys) throws KrbException, Kerb4JException {
+        return getKerberosMechToken().getPac(kerberosKeys);
+    }
+
+    /**
+     * Same as {@link #getPac(KerberosKey[])} with the service keys taken from an index.
+     *
+     * @since 0.5.1
+     */
+    public @Nullable Pac getPac(KerberosKeyIndex keyIndex) throws KrbException, Kerb4JException {
+        return getKerberosMechToken().getPac(keyIndex);
+    }
+
+}
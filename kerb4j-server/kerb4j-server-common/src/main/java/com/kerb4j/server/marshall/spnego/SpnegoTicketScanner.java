@@ -0,0 +1,539 @@
+package com.kerb4j.server.marshall.spnego;
+
+import com.kerb4j.server.marshall.Kerb4JException;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Forward-only DER cursor which locates the routing fields of a SPNEGO init token (or a bare Kerberos GSS-API
+ * mech token) without building an ASN.1 object tree.
+ * <p>
+ * Only the unencrypted ticket metadata is visited: {@code ticket.realm}, {@code ticket.sname},
+ * {@code ticket.enc-part.etype}, {@code ticket.enc-part.kvno} and {@code ticket.enc-part.cipher}. Every other
+ * element is skipped by its length. Results are recorded as offsets into the scanned array, so a scan does not
+ * allocate; strings are only materialized by {@link #getRealm()} and {@link #getServerPrincipalName()}.
+ * <p>
+ * The scanner keeps a reference to the last scanned array and may be reused for the next token, but it is not
+ * thread safe.
+ *
+ * <pre>
+ * NegotiationToken ::= [APPLICATION 0] { thisMech OID(1.3.6.1.5.5.2), [0] NegTokenInit SEQUENCE {
+ *     [0] mechTypes, [1] reqFlags, [2] mechToken OCTET STRING, [3] mechListMIC } }
+ * mechToken ::= [APPLICATION 0] { thisMech OID(1.2.840.113554.1.2.2), TOK_ID 01 00, AP-REQ }
+ * AP-REQ    ::= [APPLICATION 14] SEQUENCE { [0] pvno, [1] msg-type, [2] ap-options, [3] ticket, [4] authenticator }
+ * Ticket    ::= [APPLICATION 1] SEQUENCE { [0] tkt-vno, [1] realm, [2] sname, [3] enc-part }
+ * </pre>
+ */
+@NullMarked
+public final class SpnegoTicketScanner {
+
+    // 1.3.6.1.5.5.2
+    private static final byte[] SPNEGO_OID = {0x2b, 0x06, 0x01, 0x05, 0x05, 0x02};
+
+    // 1.2.840.113554.1.2.2
+    private static final byte[] KERBEROS_OID = {0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x12, 0x01, 0x02, 0x02};
+
+    private static final int APPLICATION_0 = 0x60;
+    private static final int APPLICATION_1 = 0x61;
+    private static final int APPLICATION_14 = 0x6e;
+    private static final int SEQUENCE = 0x30;
+    private static final int INTEGER = 0x02;
+    private static final int OCTET_STRING = 0x04;
+    private static final int OBJECT_IDENTIFIER = 0x06;
+    private static final int GENERAL_STRING = 0x1b;
+
+    private static final int CONTEXT_0 = 0xa0;
+    private static final int CONTEXT_1 = 0xa1;
+    private static final int CONTEXT_2 = 0xa2;
+    private static final int CONTEXT_3 = 0xa3;
+
+    private byte @Nullable [] buffer;
+    private int position;
+
+    private int mechTypeOffset;
+    private int mechTypeLength;
+
+    private int mechTokenOffset;
+    private int mechTokenLength;
+
+    private int realmOffset;
+    private int realmLength;
+
+    private int nameType;
+    private int nameCount;
+    private int[] nameOffsets = new int[4];
+    private int[] nameLengths = new int[4];
+
+    private int encryptionType;
+    private int kvno;
+    private int cipherOffset;
+    private int cipherLength;
+
+    /**
+     * Scan a SPNEGO init token.
+     *
+     * @param token Base64 decoded value of the {@code Authorization: Negotiate} header
+     * @return this scanner
+     * @throws Kerb4JException if the token is not a well-formed SPNEGO init token carrying a Kerberos AP-REQ
+     */
+    public SpnegoTicketScanner scan(byte[] token) throws Kerb4JException {
+        return scan(token, 0, token.length);
+    }
+
+    /**
+     * Scan a SPNEGO init token located in the given slice of {@code token}.
+     *
+     * @see #scan(byte[])
+     */
+    public SpnegoTicketScanner scan(byte[] token, int offset, int length) throws Kerb4JException {
+        Objects.checkFromIndexSize(offset, length, token.length);
+        reset(token, offset);
+
+        if (length <= 0) {
+            throw new Kerb4JException("spnego.token.empty", null, null);
+        }
+
+        if ((byte) APPLICATION_0 != token[offset]) {
+            throw new Kerb4JException("spnego.token.invalid", new Object[]{token[offset]}, null);
+        }
+
+        int end = offset + length;
+        int gssEnd = enter(APPLICATION_0, end, "spnego.token.malformed");
+        if (!readObjectIdentifier(SPNEGO_OID, gssEnd, "spnego.token.malformed")) {
+            throw new Kerb4JException("spnego.token.invalid", null, null);
+        }
+
+        int negTokenInitEnd = enter(CONTEXT_0, gssEnd, "spnego.token.malformed");
+        int sequenceEnd = enter(SEQUENCE, negTokenInitEnd, "spnego.token.malformed");
+        while (position < sequenceEnd) {
+            int tag = token[position] & 0xff;
+            if (CONTEXT_0 == tag) {
+                int fieldEnd = enter(CONTEXT_0, sequenceEnd, "spnego.token.malformed");
+                int mechTypesEnd = enter(SEQUENCE, fieldEnd, "spnego.token.malformed");
+                if (position < mechTypesEnd) {
+                    int oidEnd = enter(OBJECT_IDENTIFIER, mechTypesEnd, "spnego.token.malformed");
+                    mechTypeOffset = position;
+                    mechTypeLength = oidEnd - position;
+                }
+                position = fieldEnd;
+            } else if (CONTEXT_2 == tag) {
+                int fieldEnd = enter(CONTEXT_2, sequenceEnd, "spnego.token.malformed");
+                int octetsEnd = enter(OCTET_STRING, fieldEnd, "spnego.token.malformed");
+                mechTokenOffset = position;
+                mechTokenLength = octetsEnd - position;
+                break;
+            } else {
+                skip(sequenceEnd, "spnego.token.malformed");
+            }
+        }
+
+        if (mechTokenLength <= 0) {
+            throw new Kerb4JException("kerberos.token.empty", null, null);
+        }
+
+        scanKerberosToken(mechTokenOffset + mechTokenLength);
+        return this;
+    }
+
+    /**
+     * Scan a Kerberos GSS-API mech token, i.e. the value of the {@code mechToken} field of a SPNEGO init token.
+     *
+     * @param mechToken Kerberos mech token
+     * @return this scanner
+     * @throws Kerb4JException if the token is not a well-formed Kerberos AP-REQ token
+     */
+    public SpnegoTicketScanner scanMechToken(byte[] mechToken) throws Kerb4JException {
+        return scanMechToken(mechToken, 0, mechToken.length);
+    }
+
+    /**
+     * Scan a Kerberos GSS-API mech token located in the given slice of {@code mechToken}.
+     *
+     * @see #scanMechToken(byte[])
+     */
+    public SpnegoTicketScanner scanMechToken(byte[] mechToken, int offset, int length) throws Kerb4JException {
+        Objects.checkFromIndexSize(offset, length, mechToken.length);
+        reset(mechToken, offset);
+
+        if (length <= 0) {
+            throw new Kerb4JException("kerberos.token.empty", null, null);
+        }
+
+        mechTokenOffset = offset;
+        mechTokenLength = length;
+        scanKerberosToken(offset + length);
+        return this;
+    }
+
+    private void scanKerberosToken(int end) throws Kerb4JException {
+        byte[] token = buffer();
+
+        int gssEnd = enter(APPLICATION_0, end, "kerberos.token.malformed");
+        if (!readObjectIdentifier(KERBEROS_OID, gssEnd, "kerberos.token.malformed")) {
+            throw new Kerb4JException("kerberos.token.malformed", null, null);
+        }
+
+        if (gssEnd - position < 2 || 0x01 != token[position] || 0x00 != token[position + 1]) {
+            throw new Kerb4JException("kerberos.token.malformed", null, null);
+        }
+        position += 2;
+
+        int apReqEnd = enter(APPLICATION_14, gssEnd, "kerberos.request.invalid");
+        int sequenceEnd = enter(SEQUENCE, apReqEnd, "kerberos.token.malformed");
+        while (position < sequenceEnd) {
+            if (CONTEXT_3 == (token[position] & 0xff)) {
+                int fieldEnd = enter(CONTEXT_3, sequenceEnd, "kerberos.token.malformed");
+                scanTicket(fieldEnd);
+                return;
+            }
+            skip(sequenceEnd, "kerberos.token.malformed");
+        }
+
+        throw new Kerb4JException("kerberos.ticket.empty", null, null);
+    }
+
+    private void scanTicket(int end) throws Kerb4JException {
+        byte[] token = buffer();
+
+        int ticketEnd = enter(APPLICATION_1, end, "kerberos.ticket.invalid");
+        int sequenceEnd = enter(SEQUENCE, ticketEnd, "kerberos.ticket.malformed");
+        while (position < sequenceEnd) {
+            switch (token[position] & 0xff) {
+                case CONTEXT_1: {
+                    int fieldEnd = enter(CONTEXT_1, sequenceEnd, "kerberos.ticket.malformed");
+                    int stringEnd = enter(GENERAL_STRING, fieldEnd, "kerberos.ticket.malformed");
+                    realmOffset = position;
+                    realmLength = stringEnd - position;
+                    position = fieldEnd;
+                    break;
+                }
+                case CONTEXT_2: {
+                    int fieldEnd = enter(CONTEXT_2, sequenceEnd, "kerberos.ticket.malformed");
+                    scanPrincipalName(fieldEnd);
+                    position = fieldEnd;
+                    break;
+                }
+                case CONTEXT_3: {
+                    int fieldEnd = enter(CONTEXT_3, sequenceEnd, "kerberos.ticket.malformed");
+                    scanEncryptedData(fieldEnd);
+                    position = fieldEnd;
+                    break;
+                }
+                default:
+                    skip(sequenceEnd, "kerberos.ticket.malformed");
+            }
+        }
+    }
+
+    private void scanPrincipalName(int end) throws Kerb4JException {
+        byte[] token = buffer();
+
+        int sequenceEnd = enter(SEQUENCE, end, "kerberos.field.malformed");
+        while (position < sequenceEnd) {
+            switch (token[position] & 0xff) {
+                case CONTEXT_0: {
+                    int fieldEnd = enter(CONTEXT_0, sequenceEnd, "kerberos.field.malformed");
+                    nameType = readInteger(fieldEnd);
+                    position = fieldEnd;
+                    break;
+                }
+                case CONTEXT_1: {
+                    int fieldEnd = enter(CONTEXT_1, sequenceEnd, "kerberos.field.malformed");
+                    int namesEnd = enter(SEQUENCE, fieldEnd, "kerberos.field.malformed");
+                    while (position < namesEnd) {
+                        int stringEnd = enter(GENERAL_STRING, namesEnd, "kerberos.field.malformed");
+                        addNameComponent(position, stringEnd - position);
+                        position = stringEnd;
+                    }
+                    position = fieldEnd;
+                    break;
+                }
+                default:
+                    skip(sequenceEnd, "kerberos.field.malformed");
+            }
+        }
+    }
+
+    private void scanEncryptedData(int end) throws Kerb4JException {
+        byte[] token = buffer();
+
+        int sequenceEnd = enter(SEQUENCE, end, "kerberos.field.malformed");
+        while (position < sequenceEnd) {
+            switch (token[position] & 0xff) {
+                case CONTEXT_0: {
+                    int fieldEnd = enter(CONTEXT_0, sequenceEnd, "kerberos.field.malformed");
+                    encryptionType = readInteger(fieldEnd);
+                    position = fieldEnd;
+                    break;
+                }
+                case CONTEXT_1: {
+                    int fieldEnd = enter(CONTEXT_1, sequenceEnd, "kerberos.field.malformed");
+                    kvno = readInteger(fieldEnd);
+                    position = fieldEnd;
+                    break;
+                }
+                case CONTEXT_2: {
+                    int fieldEnd = enter(CONTEXT_2, sequenceEnd, "kerberos.field.malformed");
+                    int octetsEnd = enter(OCTET_STRING, fieldEnd, "kerberos.field.malformed");
+                    cipherOffset = position;
+                    cipherLength = octetsEnd - position;
+                    position = fieldEnd;
+                    break;
+                }
+                default:
+                    skip(sequenceEnd, "kerberos.field.malformed");
+            }
+        }
+    }
+
+    private void reset(byte[] token, int offset) {
+        buffer = token;
+        position = offset;
+        mechTypeOffset = -1;
+        mechTypeLength = 0;
+        mechTokenOffset = -1;
+        mechTokenLength = 0;
+        realmOffset = -1;
+        realmLength = 0;
+        nameType = 0;
+        nameCount = 0;
+        encryptionType = 0;
+        kvno = 0;
+        cipherOffset = -1;
+        cipherLength = 0;
+    }
+
+    private byte[] buffer() {
+        byte[] token = buffer;
+        if (null == token) {
+            throw new IllegalStateException("No token has been scanned");
+        }
+        return token;
+    }
+
+    private void addNameComponent(int offset, int length) {
+        if (nameCount == nameOffsets.length) {
+            nameOffsets = Arrays.copyOf(nameOffsets, nameCount * 2);
+            nameLengths = Arrays.copyOf(nameLengths, nameCount * 2);
+        }
+        nameOffsets[nameCount] = offset;
+        nameLengths[nameCount] = length;
+        nameCount++;
+    }
+
+    /**
+     * Consume the identifier and length octets of an element with the given tag.
+     *
+     * @return end offset (exclusive) of the element contents; {@link #position} points at the first contents octet
+     */
+    private int enter(int tag, int end, String errorKey) throws Kerb4JException {
+        byte[] token = buffer();
+        if (position >= end || tag != (token[position] & 0xff)) {
+            throw new Kerb4JException(errorKey, null, null);
+        }
+        position++;
+        int length = readLength(end, errorKey);
+        return position + length;
+    }
+
+    private void skip(int end, String errorKey) throws Kerb4JException {
+        byte[] token = buffer();
+        if (position >= end || 0x1f == (token[position] & 0x1f)) {
+            // high tag numbers do not occur in any of the structures above
+            throw new Kerb4JException(errorKey, null, null);
+        }
+        position++;
+        int length = readLength(end, errorKey);
+        position += length;
+    }
+
+    private int readLength(int end, String errorKey) throws Kerb4JException {
+        byte[] token = buffer();
+        if (position >= end) {
+            throw new Kerb4JException(errorKey, null, null);
+        }
+
+        int first = token[position++] & 0xff;
+        int length;
+        if (first < 0x80) {
+            length = first;
+        } else {
+            int octets = first & 0x7f;
+            // DER forbids the indefinite form (0x80); three length octets (16 MiB) are more than any header can carry
+            if (0 == octets || octets > 3 || end - position < octets) {
+                throw new Kerb4JException(errorKey, null, null);
+            }
+            length = 0;
+            for (int i = 0; i < octets; i++) {
+                length = (length << 8) | (token[position++] & 0xff);
+            }
+        }
+
+        if (length > end - position) {
+            throw new Kerb4JException(errorKey, null, null);
+        }
+        return length;
+    }
+
+    private boolean readObjectIdentifier(byte[] expected, int end, String errorKey) throws Kerb4JException {
+        byte[] token = buffer();
+        int oidEnd = enter(OBJECT_IDENTIFIER, end, errorKey);
+        boolean matches = Arrays.equals(token, position, oidEnd, expected, 0, expected.length);
+        position = oidEnd;
+        return matches;
+    }
+
+    private int readInteger(int end) throws Kerb4JException {
+        byte[] token = buffer();
+        int integerEnd = enter(INTEGER, end, "kerberos.field.malformed");
+        int length = integerEnd - position;
+        // UInt32 values such as kvno may take five octets with a leading zero
+        if (length < 1 || length > 5) {
+            throw new Kerb4JException("kerberos.field.malformed", null, null);
+        }
+        long value = token[position];
+        for (int i = position + 1; i < integerEnd; i++) {
+            value = (value << 8) | (token[i] & 0xff);
+        }
+        position = integerEnd;
+        return (int) value;
+    }
+
+    /**
+     * @return offset of the contents of the first (preferred) mechType OID in the scanned array or {@code -1} if
+     * absent; always {@code -1} after {@link #scanMechToken(byte[])}
+     */
+    public int getMechTypeOffset() {
+        return mechTypeOffset;
+    }
+
+    public int getMechTypeLength() {
+        return mechTypeLength;
+    }
+
+    /**
+     * @return {@code true} if the first (preferred) mechType of the SPNEGO init token has the given DER encoding
+     */
+    public boolean isPreferredMechType(byte[] oid) {
+        return mechTypeOffset >= 0
+                && Arrays.equals(buffer(), mechTypeOffset, mechTypeOffset + mechTypeLength, oid, 0, oid.length);
+    }
+
+    /**
+     * @return offset of the Kerberos mech token contents in the scanned array
+     */
+    public int getMechTokenOffset() {
+        return mechTokenOffset;
+    }
+
+    public int getMechTokenLength() {
+        return mechTokenLength;
+    }
+
+    /**
+     * @return offset of the ticket realm in the scanned array or {@code -1} if the ticket carries no realm
+     */
+    public int getRealmOffset() {
+        return realmOffset;
+    }
+
+    public int getRealmLength() {
+        return realmLength;
+    }
+
+    /**
+     * @return name-type of the ticket sname
+     */
+    public int getNameType() {
+        return nameType;
+    }
+
+    /**
+     * @return number of name-string components of the ticket sname
+     */
+    public int getNameCount() {
+        return nameCount;
+    }
+
+    public int getNameOffset(int index) {
+        Objects.checkIndex(index, nameCount);
+        return nameOffsets[index];
+    }
+
+    public int getNameLength(int index) {
+        Objects.checkIndex(index, nameCount);
+        return nameLengths[index];
+    }
+
+    /**
+     * @return raw etype value of the ticket enc-part or {@code 0} if absent
+     */
+    public int getEncryptionTypeValue() {
+        return encryptionType;
+    }
+
+    /**
+     * @return encryption type of the ticket enc-part or {@code null} if absent
+     */
+    public @Nullable EncryptionType getEncryptionType() {
+        return 0 == encryptionType ? null : EncryptionType.fromValue(encryptionType);
+    }
+
+    /**
+     * @return key version number of the ticket enc-part or {@code 0} if absent
+     */
+    public int getKvno() {
+        return kvno;
+    }
+
+    /**
+     * @return offset of the ticket enc-part cipher in the scanned array or {@code -1} if absent
+     */
+    public int getCipherOffset() {
+        return cipherOffset;
+    }
+
+    public int getCipherLength() {
+        return cipherLength;
+    }
+
+    public @Nullable String getRealm() {
+        return realmLength <= 0 ? null : new String(buffer(), realmOffset, realmLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same value as {@link SpnegoKerberosMechToken#getServerPrincipalName()}: non-empty sname components joined
+     * with {@code /} and suffixed with {@code @REALM} from the ticket.
+     *
+     * @return the canonical server principal name including realm or {@code null} if the ticket has no sname
+     */
+    public @Nullable String getServerPrincipalName() {
+        byte[] token = buffer();
+
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = 0; i < nameCount; i++) {
+            if (nameLengths[i] > 0) {
+                if (sb.length() > 0) {
+                    sb.append('/');
+                }
+                sb.append(new String(token, nameOffsets[i], nameLengths[i], StandardCharsets.UTF_8));
+            }
+        }
+
+        if (sb.length() == 0) {
+            return null;
+        }
+
+        if (realmLength > 0 && sb.indexOf("@") < 0) {
+            sb.append('@').append(new String(token, realmOffset, realmLength, StandardCharsets.UTF_8));
+        }
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.kerb4j.server.replay;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ReplayCache} for a single JVM. Authenticators are stored as SHA-256 digests together with their expiry;
+ * expired entries are pruned every {@value #PRUNE_INTERVAL} additions.
+ */
+@NullMarked
+public class InMemoryReplayCache implements ReplayCache {
+
+    private static final int PRUNE_INTERVAL = 1024;
+
+    private final ConcurrentHashMap<ByteBuffer, Long> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger additions = new AtomicInteger();
+
+    @Override
+    public boolean add(byte[] authenticator, long expiresAt) {
+        long now = System.currentTimeMillis();
+
+        if (additions.incrementAndGet() % PRUNE_INTERVAL == 0) {
+            entries.values().removeIf(entryExpiresAt -> entryExpiresAt < now);
+        }
+
+        ByteBuffer tag = ByteBuffer.wrap(digest(authenticator));
+        Long previous = entries.putIfAbsent(tag, expiresAt);
+        if (null == previous) {
+            return true;
+        }
+        // Entry is outside of the clock skew and waits for pruning - authenticator would be rejected as too old anyway
+        return previous < now && entries.replace(tag, previous, expiresAt);
+    }
+
+    /**
+     * @return number of remembered authenticators including expired ones which have not been pruned yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static byte[] digest(byte[] authenticator) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(authenticator);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
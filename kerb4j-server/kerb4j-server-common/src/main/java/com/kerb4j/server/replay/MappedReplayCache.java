@@ -0,0 +1,219 @@
+package com.kerb4j.server.replay;
+
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link ReplayCache} backed by a memory-mapped file, so that several JVMs accepting tickets for the same service
+ * principal on one host share replay detection. Put the file on a RAM backed file system such as {@code /dev/shm}.
+ * <p>
+ * The file holds an open-addressing table of 64-bit slots. Each slot packs the expiry of an entry, rounded up to a
+ * {@value #BUCKET_MILLIS} ms time bucket, in the upper {@value #EPOCH_BITS} bits and {@value #TAG_BITS} bits of the
+ * SHA-256 digest of the authenticator in the lower bits, so an entry is written with a single compare-and-set and
+ * no lock is taken after the file has been opened. Slots whose time bucket has passed are free for reuse; there is
+ * no separate expiry sweep.
+ * <p>
+ * The table is split into stripes of {@value #STRIPE_SLOTS} slots and an authenticator is only ever probed within
+ * the stripe selected by its digest. A live entry is never replaced: if all slots of a stripe are alive, the
+ * authenticator cannot be recorded and is rejected as if it were a replay, so size the table well above the number of
+ * authenticators accepted per clock skew window.
+ */
+@NullMarked
+public class MappedReplayCache implements ReplayCache, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedReplayCache.class);
+
+    static final int STRIPE_SLOTS = 64;
+
+    private static final long BUCKET_MILLIS = 1000;
+
+    private static final int EPOCH_BITS = 24;
+
+    private static final int TAG_BITS = 64 - EPOCH_BITS;
+
+    private static final long TAG_MASK = (1L << TAG_BITS) - 1;
+
+    private static final long EPOCH_MASK = (1L << EPOCH_BITS) - 1;
+
+    // "K4JRC001"
+    private static final long MAGIC = 0x4b344a5243303031L;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+
+    private static final int SLOTS_OFFSET = 8;
+
+    private static final int MAX_ATTEMPTS = 8;
+
+    private static final VarHandle SLOT = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int slots;
+
+    private final int stripeMask;
+
+    /**
+     * Open or create the cache file.
+     *
+     * @param file  cache file shared by all JVMs of the service
+     * @param slots number of slots, rounded up to a power of two; must match the size used by the other JVMs
+     * @throws IOException if the file cannot be mapped or was created with a different number of slots
+     */
+    public MappedReplayCache(Path file, int slots) throws IOException {
+        if (slots <= 0 || slots > 1 << 28) {
+            throw new IllegalArgumentException("slots must be between 1 and 2^28");
+        }
+        this.slots = Math.max(STRIPE_SLOTS, Integer.highestOneBit(slots - 1) << 1);
+        this.stripeMask = this.slots / STRIPE_SLOTS - 1;
+
+        long size = HEADER_SIZE + (long) this.slots * Long.BYTES;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            try (FileLock ignored = channel.lock()) {
+                if (channel.size() == 0) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+                    header.putLong(MAGIC_OFFSET, MAGIC).putInt(SLOTS_OFFSET, this.slots);
+                    channel.write(header, 0);
+                    channel.write(ByteBuffer.allocate(1), size - 1);
+                } else if (channel.size() != size) {
+                    throw new IOException("Replay cache " + file + " has been created with a different layout");
+                }
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                this.buffer.order(ByteOrder.nativeOrder());
+            }
+            if (buffer.getLong(MAGIC_OFFSET) != MAGIC || buffer.getInt(SLOTS_OFFSET) != this.slots) {
+                throw new IOException("Replay cache " + file + " has been created with a different layout");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean add(byte[] authenticator, long expiresAt) {
+        return add(authenticator, expiresAt, System.currentTimeMillis());
+    }
+
+    boolean add(byte[] authenticator, long expiresAt, long now) {
+        ByteBuffer digest = ByteBuffer.wrap(digest(authenticator));
+        long tag = digest.getLong(0) & TAG_MASK;
+        if (0 == tag) {
+            // zero marks an empty slot
+            tag = 1;
+        }
+        int stripe = (int) digest.getLong(Long.BYTES) & stripeMask;
+        int base = HEADER_SIZE + stripe * STRIPE_SLOTS * Long.BYTES;
+        int start = (int) tag & (STRIPE_SLOTS - 1);
+
+        long nowEpoch = (now / BUCKET_MILLIS) & EPOCH_MASK;
+        long entry = (Math.max(ceilDiv(expiresAt, BUCKET_MILLIS), now / BUCKET_MILLIS) & EPOCH_MASK) << TAG_BITS | tag;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int freeIndex = -1;
+            long freeValue = 0;
+
+            for (int i = 0; i < STRIPE_SLOTS; i++) {
+                int index = base + ((start + i) & (STRIPE_SLOTS - 1)) * Long.BYTES;
+                long value = (long) SLOT.getVolatile(buffer, index);
+                if (0 != value) {
+                    long remaining = remaining(value, nowEpoch);
+                    if (remaining >= 0) {
+                        if ((value & TAG_MASK) == tag) {
+                            return false;
+                        }
+                        continue;
+                    }
+                }
+                if (-1 == freeIndex) {
+                    freeIndex = index;
+                    freeValue = value;
+                }
+            }
+
+            if (-1 == freeIndex) {
+                // Forgetting a live authenticator would let its replay through, so fail closed
+                LOGGER.warn("Replay cache stripe is full, rejecting authenticator; increase the number of slots");
+                return false;
+            }
+            if (SLOT.compareAndSet(buffer, freeIndex, freeValue, entry)) {
+                return !containsOther(base, freeIndex, tag, nowEpoch);
+            }
+        }
+
+        // The stripe is contended beyond reason; err on the safe side
+        return false;
+    }
+
+    /**
+     * @return total number of slots in the table
+     */
+    public int capacity() {
+        return slots;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Two JVMs may insert the same authenticator into different free slots concurrently. Each of them looks for a
+     * live duplicate after its own insert; with sequentially consistent slot access at most one of them misses the
+     * other, so a replay is never accepted twice.
+     */
+    private boolean containsOther(int base, int ownIndex, long tag, long nowEpoch) {
+        for (int i = 0; i < STRIPE_SLOTS; i++) {
+            int index = base + i * Long.BYTES;
+            if (index == ownIndex) {
+                continue;
+            }
+            long value = (long) SLOT.getVolatile(buffer, index);
+            if (0 != value && (value & TAG_MASK) == tag && remaining(value, nowEpoch) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of buckets until the entry expires, negative if it has expired; computed modulo the epoch range
+     */
+    private static long remaining(long value, long nowEpoch) {
+        long delta = ((value >>> TAG_BITS) - nowEpoch) & EPOCH_MASK;
+        return delta < (1L << (EPOCH_BITS - 1)) ? delta : delta - (1L << EPOCH_BITS);
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private static byte[] digest(byte[] authenticator) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(authenticator);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.kerb4j.server.replay;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Remembers Kerberos authenticators which have already been accepted so that a captured
+ * {@code Authorization: Negotiate} header cannot be replayed within the clock skew window.
+ */
+@NullMarked
+public interface ReplayCache {
+
+    /**
+     * Atomically check and record an authenticator.
+     *
+     * @param authenticator encrypted authenticator of the AP-REQ; it is unique for every authenticator the client
+     *                      creates, so it can be used as the replay tag as is
+     * @param expiresAt     time in milliseconds since epoch after which the authenticator is outside of the clock
+     *                      skew and the entry may be forgotten
+     * @return {@code true} if the authenticator is seen for the first time, {@code false} if it is a replay or cannot
+     * be recorded, e.g. because the cache is full
+     */
+    boolean add(byte[] authenticator, long expiresAt);
+
+}
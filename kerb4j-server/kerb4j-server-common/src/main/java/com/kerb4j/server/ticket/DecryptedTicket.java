@@ -0,0 +1,145 @@
+package com.kerb4j.server.ticket;
+
+import com.kerb4j.client.KerberosKeyIndex;
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.pac.Pac;
+import com.kerb4j.server.marshall.spnego.SpnegoKerberosMechToken;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import org.apache.kerby.kerberos.kerb.KrbCodec;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptedData;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
+import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
+import org.apache.kerby.kerberos.kerb.type.ticket.Ticket;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import javax.security.auth.kerberos.KerberosKey;
+
+/**
+ * Service ticket enc-part decrypted with the service key, together with the PAC parsed from it on first use.
+ * Instances are immutable apart from the memoized PAC and may be shared between requests presenting the same ticket.
+ */
+@NullMarked
+public final class DecryptedTicket {
+
+    private final EncTicketPart encTicketPart;
+    private final KerberosKey kerberosKey;
+    private final long expiresAt;
+
+    private volatile boolean pacExtracted;
+    private volatile @Nullable Pac pac;
+
+    DecryptedTicket(EncTicketPart encTicketPart, KerberosKey kerberosKey) {
+        this.encTicketPart = encTicketPart;
+        this.kerberosKey = kerberosKey;
+        @SuppressWarnings("NullableProblems") @Nullable KerberosTime endTime = encTicketPart.getEndTime();
+        this.expiresAt = null == endTime ? 0 : endTime.getTime();
+    }
+
+    /**
+     * Decrypt the service ticket carried by the negotiation.
+     *
+     * @param negotiation  parsed SPNEGO init token
+     * @param kerberosKeys keys of the service principal; the key matching the ticket etype and kvno is used
+     * @return decrypted ticket
+     * @throws Kerb4JException if no matching key is available or the ticket cannot be decrypted
+     */
+    public static DecryptedTicket decrypt(SpnegoNegotiation negotiation, KerberosKey[] kerberosKeys)
+            throws Kerb4JException {
+        EncryptedData encryptedTicket = getEncryptedTicket(negotiation);
+        EncryptionType encryptionType = encryptedTicket.getEType();
+        @Nullable KerberosKey kerberosKey =
+                KerberosKeyIndex.find(kerberosKeys, encryptionType.getValue(), encryptedTicket.getKvno());
+        if (null == kerberosKey) {
+            throw new Kerb4JException("kerberos.key.notfound", new Object[]{encryptionType.getName()}, null);
+        }
+        return decrypt(encryptedTicket, kerberosKey, kerberosKey.getEncoded());
+    }
+
+    /**
+     * Same as {@link #decrypt(SpnegoNegotiation, KerberosKey[])} with the key looked up by etype and kvno in the
+     * index, using the key material decoded when the index was built.
+     *
+     * @since 0.5.1
+     */
+    public static DecryptedTicket decrypt(SpnegoNegotiation negotiation, KerberosKeyIndex keyIndex)
+            throws Kerb4JException {
+        EncryptedData encryptedTicket = getEncryptedTicket(negotiation);
+        EncryptionType encryptionType = encryptedTicket.getEType();
+        @Nullable KerberosKey kerberosKey = keyIndex.find(encryptionType.getValue(), encryptedTicket.getKvno());
+        if (null == kerberosKey) {
+            throw new Kerb4JException("kerberos.key.notfound", new Object[]{encryptionType.getName()}, null);
+        }
+        return decrypt(encryptedTicket, kerberosKey,
+                keyIndex.getEncoded(kerberosKey.getKeyType(), kerberosKey.getVersionNumber()));
+    }
+
+    private static EncryptedData getEncryptedTicket(SpnegoNegotiation negotiation) throws Kerb4JException {
+        @SuppressWarnings("NullableProblems") @Nullable Ticket ticket = negotiation.getApRequest().getTicket();
+        if (null == ticket) {
+            throw new Kerb4JException("kerberos.ticket.empty", null, null);
+        }
+
+        @SuppressWarnings("NullableProblems") @Nullable EncryptedData encryptedTicket = ticket.getEncryptedEncPart();
+        if (null == encryptedTicket) {
+            throw new Kerb4JException("kerberos.ticket.malformed", null, null);
+        }
+        return encryptedTicket;
+    }
+
+    private static DecryptedTicket decrypt(EncryptedData encryptedTicket, KerberosKey kerberosKey, byte[] keyMaterial)
+            throws Kerb4JException {
+        EncTicketPart encTicketPart;
+        try {
+            EncryptionKey encryptionKey = new EncryptionKey(kerberosKey.getKeyType(), keyMaterial,
+                    kerberosKey.getVersionNumber());
+            encTicketPart = KrbCodec.decode(
+                    EncryptionHandler.decrypt(encryptedTicket, encryptionKey, KeyUsage.KDC_REP_TICKET),
+                    EncTicketPart.class
+            );
+        } catch (KrbException e) {
+            throw new Kerb4JException("kerberos.decrypt.fail", new Object[]{encryptedTicket.getEType().getName()}, e);
+        }
+
+        return new DecryptedTicket(encTicketPart, kerberosKey);
+    }
+
+    public EncTicketPart getEncTicketPart() {
+        return encTicketPart;
+    }
+
+    /**
+     * @return service key the ticket has been decrypted with
+     */
+    public KerberosKey getKerberosKey() {
+        return kerberosKey;
+    }
+
+    public EncryptionKey getSessionKey() {
+        return encTicketPart.getKey();
+    }
+
+    /**
+     * @return ticket end time in milliseconds since epoch
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return PAC carried by the ticket or {@code null}; parsed and verified on first call
+     */
+    public @Nullable Pac getPac() throws Kerb4JException {
+        if (!pacExtracted) {
+            pac = SpnegoKerberosMechToken.extractPac(encTicketPart, kerberosKey);
+            pacExtracted = true;
+        }
+        return pac;
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.kerb4j.server.ticket;
+
+import com.kerb4j.client.KerberosKeyIndex;
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.pac.Pac;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import javax.security.auth.kerberos.KerberosKey;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of decrypted service tickets keyed by the SHA-256 digest of the ticket cipher.
+ * <p>
+ * Clients reuse a service ticket for hours and only create a new authenticator per request, so the ticket enc-part
+ * and its PAC are decrypted and parsed once and then shared. Entries expire at the ticket end time. The cache only
+ * saves the ticket decryption: authenticators must still be decrypted and replay-checked on every request, which is
+ * what {@link com.kerb4j.server.acceptor.KerbyAcceptor} does.
+ * <p>
+ * When the cache is full, expired entries are dropped first and then arbitrary ones until it is a sixteenth below its
+ * maximum size, so that the entries are only scanned once every so many new tickets; there is no LRU ordering. While
+ * one thread evicts, tickets stored by others may briefly exceed the maximum size.
+ */
+@NullMarked
+public class DecryptedTicketCache {
+
+    /**
+     * Notified about tickets decrypted locally, e.g. to share them with other nodes.
+     */
+    public interface Listener {
+
+        void onDecrypted(byte[] ticketCipherDigest, DecryptedTicket decryptedTicket);
+
+    }
+
+    private interface Decryption {
+
+        DecryptedTicket decrypt() throws Kerb4JException;
+
+    }
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private final ConcurrentHashMap<ByteBuffer, DecryptedTicket> entries = new ConcurrentHashMap<>();
+
+    private final int maximumSize;
+
+    /**
+     * Size the cache is evicted down to once it exceeds the maximum size.
+     */
+    private final int evictedSize;
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private volatile @Nullable Listener listener;
+
+    public DecryptedTicketCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize maximum number of cached tickets
+     */
+    public DecryptedTicketCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.evictedSize = maximumSize - maximumSize / 16;
+    }
+
+    /**
+     * Return the cached ticket or decrypt and cache it.
+     *
+     * @param negotiation  parsed SPNEGO init token
+     * @param kerberosKeys keys of the service principal
+     * @return decrypted ticket
+     * @throws Kerb4JException if the ticket cannot be decrypted
+     */
+    public DecryptedTicket getOrDecrypt(SpnegoNegotiation negotiation, KerberosKey[] kerberosKeys)
+            throws Kerb4JException {
+        return getOrDecrypt(negotiation, key -> contains(kerberosKeys, key),
+                () -> DecryptedTicket.decrypt(negotiation, kerberosKeys));
+    }
+
+    /**
+     * Same as {@link #getOrDecrypt(SpnegoNegotiation, KerberosKey[])} with the service keys taken from an index.
+     *
+     * @since 0.5.1
+     */
+    public DecryptedTicket getOrDecrypt(SpnegoNegotiation negotiation, KerberosKeyIndex keyIndex)
+            throws Kerb4JException {
+        return getOrDecrypt(negotiation, keyIndex::contains, () -> DecryptedTicket.decrypt(negotiation, keyIndex));
+    }
+
+    private DecryptedTicket getOrDecrypt(SpnegoNegotiation negotiation, Predicate<KerberosKey> holdsKey,
+                                         Decryption decryption) throws Kerb4JException {
+        ByteBuffer tag = ByteBuffer.wrap(negotiation.getTicketCipherDigest());
+        long now = System.currentTimeMillis();
+
+        DecryptedTicket decryptedTicket = entries.get(tag);
+        if (null != decryptedTicket) {
+            // Cached tickets are only served to callers holding the key they were decrypted with, so that a ticket
+            // cached for one service principal is never accepted on behalf of another one or after key removal
+            if (decryptedTicket.getExpiresAt() > now && holdsKey.test(decryptedTicket.getKerberosKey())) {
+                hitCount.increment();
+                return decryptedTicket;
+            }
+            entries.remove(tag, decryptedTicket);
+        }
+
+        missCount.increment();
+        decryptedTicket = decryption.decrypt();
+        if (decryptedTicket.getExpiresAt() > now) {
+            store(tag, decryptedTicket, now);
+            Listener listener = this.listener;
+            if (null != listener) {
+                listener.onDecrypted(tag.array(), decryptedTicket);
+            }
+        }
+        return decryptedTicket;
+    }
+
+    /**
+     * Add a ticket decrypted elsewhere, e.g. by another cluster node. The {@link Listener} is not notified.
+     *
+     * @param ticketCipherDigest see {@link SpnegoNegotiation#getTicketCipherDigest()}
+     * @param encTicketPart      decrypted ticket enc-part
+     * @param kerberosKey        service key the ticket has been decrypted with
+     * @since 0.5.1
+     */
+    public void put(byte[] ticketCipherDigest, EncTicketPart encTicketPart, KerberosKey kerberosKey) {
+        DecryptedTicket decryptedTicket = new DecryptedTicket(encTicketPart, kerberosKey);
+        long now = System.currentTimeMillis();
+        if (decryptedTicket.getExpiresAt() > now) {
+            store(ByteBuffer.wrap(ticketCipherDigest), decryptedTicket, now);
+        }
+    }
+
+    /**
+     * @param listener notified after a ticket has been decrypted and cached, or {@code null}
+     * @since 0.5.1
+     */
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return PAC of the ticket carried by the negotiation, see {@link #getOrDecrypt(SpnegoNegotiation, KerberosKey[])}
+     */
+    public @Nullable Pac getPac(SpnegoNegotiation negotiation, KerberosKey[] kerberosKeys) throws Kerb4JException {
+        return getOrDecrypt(negotiation, kerberosKeys).getPac();
+    }
+
+    /**
+     * @since 0.5.1
+     */
+    public @Nullable Pac getPac(SpnegoNegotiation negotiation, KerberosKeyIndex keyIndex) throws Kerb4JException {
+        return getOrDecrypt(negotiation, keyIndex).getPac();
+    }
+
+    private static boolean contains(KerberosKey[] kerberosKeys, KerberosKey kerberosKey) {
+        for (KerberosKey candidate : kerberosKeys) {
+            if (candidate == kerberosKey || candidate.equals(kerberosKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of cached tickets including expired ones which have not been evicted yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private void store(ByteBuffer tag, DecryptedTicket decryptedTicket, long now) {
+        entries.put(tag, decryptedTicket);
+        if (entries.size() > maximumSize && evicting.compareAndSet(false, true)) {
+            try {
+                evict(now);
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(decryptedTicket -> decryptedTicket.getExpiresAt() <= now);
+        Iterator<ByteBuffer> iterator = entries.keySet().iterator();
+        while (entries.size() > evictedSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.kerb4j.server;
+
+import com.kerb4j.common.util.SpnegoProvider;
+import com.kerb4j.server.marshall.spnego.SpnegoInitToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpnegoTokenFixerTest {
+
+    @Test
+    void testInspectDoesNotModifyToken() throws Exception {
+        byte[] token = readResource("aes256-spnego-data");
+        byte[] copy = token.clone();
+
+        assertEquals(SpnegoTokenFixer.Verdict.NEEDS_REORDER, SpnegoTokenFixer.inspect(token));
+        assertArrayEquals(copy, token);
+    }
+
+    @Test
+    void testValidateAndFixMovesKerberosMechTypeFirst() throws Exception {
+        byte[] token = readResource("aes256-spnego-data");
+        SpnegoInitToken original = new SpnegoInitToken(token.clone());
+        List<String> originalMechTypes = original.getMechTypes();
+        assertNotEquals(SpnegoProvider.KERBEROS_MECHANISM, originalMechTypes.get(0));
+
+        assertEquals(SpnegoTokenFixer.Verdict.NEEDS_REORDER, SpnegoTokenFixer.validateAndFix(token));
+
+        SpnegoInitToken fixed = new SpnegoInitToken(token);
+        List<String> fixedMechTypes = fixed.getMechTypes();
+        assertEquals(SpnegoProvider.KERBEROS_MECHANISM, fixedMechTypes.get(0));
+        assertEquals(originalMechTypes.size(), fixedMechTypes.size());
+        assertTrue(fixedMechTypes.containsAll(originalMechTypes));
+        assertArrayEquals(original.getMechToken(), fixed.getMechToken());
+
+        assertEquals(SpnegoTokenFixer.Verdict.WELL_FORMED, SpnegoTokenFixer.validateAndFix(token));
+    }
+
+    @Test
+    void testMalformedTokens() throws Exception {
+        byte[] token = readResource("aes256-spnego-data");
+
+        assertEquals(SpnegoTokenFixer.Verdict.MALFORMED, SpnegoTokenFixer.inspect(new byte[0]));
+        assertEquals(SpnegoTokenFixer.Verdict.MALFORMED, SpnegoTokenFixer.inspect(new byte[]{0x4e, 0x54, 0x4c, 0x4d}));
+        assertEquals(SpnegoTokenFixer.Verdict.MALFORMED, SpnegoTokenFixer.inspect(Arrays.copyOf(token, token.length - 1)));
+        assertEquals(SpnegoTokenFixer.Verdict.MALFORMED, SpnegoTokenFixer.inspect(Arrays.copyOf(token, token.length + 1)));
+
+        byte[] truncated = Arrays.copyOf(token, 40);
+        assertEquals(SpnegoTokenFixer.Verdict.MALFORMED, SpnegoTokenFixer.validateAndFix(truncated));
+        assertArrayEquals(Arrays.copyOf(token, 40), truncated);
+    }
+
+    @Test
+    void testNegTokenRespIsWellFormed() {
+        // NegTokenResp { negState accept-completed }
+        byte[] negTokenResp = {(byte) 0xa1, 0x07, 0x30, 0x05, (byte) 0xa0, 0x03, 0x0a, 0x01, 0x00};
+        assertEquals(SpnegoTokenFixer.Verdict.WELL_FORMED, SpnegoTokenFixer.validateAndFix(negTokenResp));
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream is = SpnegoTokenFixerTest.class.getClassLoader().getResourceAsStream(name)) {
+            assertNotNull(is, name);
+            return is.readAllBytes();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.kerb4j.server.acceptor;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares accepting a SPNEGO token via JGSS ({@link SpnegoContext#acceptToken(byte[])} plus PAC extraction) with
+ * {@link KerbyAcceptor}. Each invocation gets a freshly minted token since both engines reject replays.
+ * <p>
+ * Not executed by the build; run {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AcceptorEngineBenchmark {
+
+    private static final String SERVER_PRINCIPAL = "HTTP/localhost";
+    private static final String CLIENT_PRINCIPAL = "client/localhost";
+
+    private final KerberosSecurityTestcase kdc = new KerberosSecurityTestcase();
+
+    private final KerbyAcceptor kerbyAcceptor = new KerbyAcceptor();
+
+    private SpnegoClient initiator;
+    private SpnegoClient acceptor;
+
+    private byte[] token;
+
+    @Setup(Level.Trial)
+    public void startKdc() throws Exception {
+        kdc.startMiniKdc();
+
+        File clientKeytab = new File(kdc.getWorkDir(), "benchmark-client.keytab");
+        kdc.getKdc().createAndExportPrincipals(clientKeytab, CLIENT_PRINCIPAL);
+        File serverKeytab = new File(kdc.getWorkDir(), "benchmark-server.keytab");
+        kdc.getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+
+        initiator = SpnegoClient.loginWithKeyTab(CLIENT_PRINCIPAL, clientKeytab.getAbsolutePath());
+        acceptor = SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+    }
+
+    @Setup(Level.Invocation)
+    public void mintToken() throws Exception {
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            token = initiatorContext.createToken();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopKdc() throws Exception {
+        kdc.stopMiniKdc();
+    }
+
+    @Benchmark
+    public Object jgss() throws Exception {
+        SpnegoNegotiation negotiation = SpnegoNegotiation.parse(token);
+        try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+            acceptContext.acceptToken(token);
+            return negotiation.getPac(acceptor.getKerberosKeys());
+        }
+    }
+
+    @Benchmark
+    public Object kerby() throws Exception {
+        return kerbyAcceptor.accept(SpnegoNegotiation.parse(token), acceptor.getKerberosKeys()).getPac();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(AcceptorEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.kerb4j.server.acceptor;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import org.apache.kerby.kerberos.kerb.server.SimpleKdcServer;
+import org.apache.kerby.kerberos.kerb.type.ap.Authenticator;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSum;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.kerberos.KerberosKey;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KerbyAcceptorTest extends KerberosSecurityTestcase {
+
+    private static final String SERVER_PRINCIPAL = "HTTP/localhost";
+    private static final String CLIENT_PRINCIPAL = "client/localhost";
+
+    @Test
+    void acceptsTokenAndCompletesMutualAuthentication() throws Exception {
+        SpnegoClient initiator = initiator();
+        SpnegoClient acceptor = acceptor();
+
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            byte[] token = initiatorContext.createToken();
+
+            SpnegoNegotiation negotiation = SpnegoNegotiation.parse(token);
+            KerbyAcceptResult result = new KerbyAcceptor().accept(negotiation, acceptor.getKerberosKeys());
+
+            assertEquals(CLIENT_PRINCIPAL + "@EXAMPLE.COM", result.getClientPrincipalName());
+            assertTrue(result.isMutualAuthentication());
+            assertEquals(CLIENT_PRINCIPAL, String.join("/", result.getEncTicketPart().getCname().getNameStrings()));
+
+            byte[] responseToken = result.getResponseToken();
+            initiatorContext.processMutualAuthorization(responseToken, 0, responseToken.length);
+            assertTrue(initiatorContext.isEstablished());
+        }
+    }
+
+    @Test
+    void rejectsReplayedToken() throws Exception {
+        SpnegoClient initiator = initiator();
+        SpnegoClient acceptor = acceptor();
+
+        byte[] token;
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            token = initiatorContext.createToken();
+        }
+
+        KerbyAcceptor kerbyAcceptor = new KerbyAcceptor();
+        kerbyAcceptor.accept(SpnegoNegotiation.parse(token), acceptor.getKerberosKeys());
+
+        Kerb4JException e = assertThrows(Kerb4JException.class,
+                () -> kerbyAcceptor.accept(SpnegoNegotiation.parse(token), acceptor.getKerberosKeys()));
+        assertTrue(e.getMessage().contains("already been used"));
+    }
+
+    @Test
+    void rejectsTokenForAnotherService() throws Exception {
+        SpnegoClient initiator = initiator();
+        acceptor();
+        SimpleKdcServer kdc = getKdc();
+        File otherKeytab = new File(getWorkDir(), "kerby-acceptor-other.keytab");
+        kdc.createAndExportPrincipals(otherKeytab, "HTTP/other");
+        SpnegoClient other = SpnegoClient.loginWithKeyTab("HTTP/other", otherKeytab.getAbsolutePath(), true);
+
+        byte[] token;
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            token = initiatorContext.createToken();
+        }
+
+        assertThrows(Kerb4JException.class,
+                () -> new KerbyAcceptor().accept(SpnegoNegotiation.parse(token), other.getKerberosKeys()));
+    }
+
+    @Test
+    void rejectsTicketIssuedForAnotherPrincipalOfTheSameKey() throws Exception {
+        SpnegoClient initiator = initiator();
+        SpnegoClient acceptor = acceptor();
+
+        byte[] token;
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            token = initiatorContext.createToken();
+        }
+
+        // Keys with the same etype, version and even key material, but of another principal
+        KerberosPrincipal other = new KerberosPrincipal("HTTP/other@EXAMPLE.COM");
+        KerberosKey[] otherKeys = Stream.of(acceptor.getKerberosKeys())
+                .map(key -> new KerberosKey(other, key.getEncoded(), key.getKeyType(), key.getVersionNumber()))
+                .toArray(KerberosKey[]::new);
+
+        Kerb4JException e = assertThrows(Kerb4JException.class,
+                () -> new KerbyAcceptor().accept(SpnegoNegotiation.parse(token), otherKeys));
+        assertTrue(e.getMessage().contains("another service principal"));
+    }
+
+    @Test
+    void acceptsTokensMintedConcurrentlyWithoutReplayErrors() throws Exception {
+        SpnegoClient initiator = initiator();
+        SpnegoClient acceptor = acceptor();
+        KerbyAcceptor kerbyAcceptor = new KerbyAcceptor();
+
+        int threads = 4;
+        int tokensPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < tokensPerThread; j++) {
+                        byte[] token;
+                        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+                            token = initiatorContext.createToken();
+                        }
+                        kerbyAcceptor.accept(SpnegoNegotiation.parse(token), acceptor.getKerberosKeyIndex());
+                        try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                            acceptContext.acceptToken(token);
+                            assertNotNull(acceptContext.getSrcName());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsAuthenticatorWithoutGssChecksum() throws Exception {
+        KerbyAcceptor.checkChecksum(authenticator(0x8003, gssChecksum(0)));
+        KerbyAcceptor.checkChecksum(authenticator(0x8003, Arrays.copyOf(gssChecksum(1), 28 + 4)));
+
+        assertThrows(Kerb4JException.class, () -> KerbyAcceptor.checkChecksum(new Authenticator()));
+        assertThrows(Kerb4JException.class, () -> KerbyAcceptor.checkChecksum(
+                authenticator(CheckSumType.HMAC_SHA1_96_AES128.getValue(), gssChecksum(0))));
+        assertThrows(Kerb4JException.class, () -> KerbyAcceptor.checkChecksum(
+                authenticator(0x8003, Arrays.copyOf(gssChecksum(0), 20))));
+
+        byte[] wrongBindingsLength = gssChecksum(0);
+        wrongBindingsLength[0] = 8;
+        assertThrows(Kerb4JException.class, () -> KerbyAcceptor.checkChecksum(
+                authenticator(0x8003, wrongBindingsLength)));
+
+        byte[] truncatedDelegation = Arrays.copyOf(gssChecksum(1), 28 + 4);
+        truncatedDelegation[26] = 8;
+        assertThrows(Kerb4JException.class, () -> KerbyAcceptor.checkChecksum(
+                authenticator(0x8003, truncatedDelegation)));
+    }
+
+    /**
+     * Decodes the checksum since {@link CheckSum#CheckSum(int, byte[])} drops types unknown to Kerby.
+     */
+    private static Authenticator authenticator(int checksumType, byte[] checksum) throws IOException {
+        byte[] type = BigInteger.valueOf(checksumType).toByteArray();
+        ByteArrayOutputStream der = new ByteArrayOutputStream();
+        der.write(new byte[]{0x30, (byte) (2 + 2 + type.length + 2 + 2 + checksum.length)});
+        der.write(new byte[]{(byte) 0xa0, (byte) (2 + type.length), 0x02, (byte) type.length});
+        der.write(type);
+        der.write(new byte[]{(byte) 0xa1, (byte) (2 + checksum.length), 0x04, (byte) checksum.length});
+        der.write(checksum);
+        CheckSum cksum = new CheckSum();
+        cksum.decode(der.toByteArray());
+
+        Authenticator authenticator = new Authenticator();
+        authenticator.setCksum(cksum);
+        return authenticator;
+    }
+
+    /**
+     * @return GSS-API checksum with empty channel bindings and the given flags, without delegated credentials
+     */
+    private static byte[] gssChecksum(int flags) {
+        byte[] checksum = new byte[28];
+        checksum[0] = 16;
+        checksum[20] = (byte) flags;
+        return checksum;
+    }
+
+    private SpnegoClient initiator() throws Exception {
+        File clientKeytab = new File(getWorkDir(), "kerby-acceptor-client.keytab");
+        getKdc().createAndExportPrincipals(clientKeytab, CLIENT_PRINCIPAL);
+        return SpnegoClient.loginWithKeyTab(CLIENT_PRINCIPAL, clientKeytab.getAbsolutePath());
+    }
+
+    private SpnegoClient acceptor() throws Exception {
+        File serverKeytab = new File(getWorkDir(), "kerby-acceptor-server.keytab");
+        getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+        return SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.kerb4j.server.acceptor;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mints SPNEGO tokens for one service from several threads sharing a {@link SpnegoClient}. {@code mintAndAccept}
+ * also passes every token through the JGSS and the Kerby acceptor, whose replay caches fail the benchmark if two
+ * tokens minted back to back are ever taken for a replay.
+ * <p>
+ * Not executed by the build; run {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenMintingBenchmark {
+
+    private static final String SERVER_PRINCIPAL = "HTTP/localhost";
+    private static final String CLIENT_PRINCIPAL = "client/localhost";
+
+    private final KerberosSecurityTestcase kdc = new KerberosSecurityTestcase();
+
+    private final KerbyAcceptor kerbyAcceptor = new KerbyAcceptor();
+
+    private SpnegoClient initiator;
+    private SpnegoClient acceptor;
+
+    @Setup(Level.Trial)
+    public void startKdc() throws Exception {
+        kdc.startMiniKdc();
+
+        File clientKeytab = new File(kdc.getWorkDir(), "minting-benchmark-client.keytab");
+        kdc.getKdc().createAndExportPrincipals(clientKeytab, CLIENT_PRINCIPAL);
+        File serverKeytab = new File(kdc.getWorkDir(), "minting-benchmark-server.keytab");
+        kdc.getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+
+        initiator = SpnegoClient.loginWithKeyTab(CLIENT_PRINCIPAL, clientKeytab.getAbsolutePath());
+        acceptor = SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopKdc() throws Exception {
+        kdc.stopMiniKdc();
+    }
+
+    @Benchmark
+    public byte[] mint() throws Exception {
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            return initiatorContext.createToken();
+        }
+    }
+
+    @Benchmark
+    public Object mintAndAccept() throws Exception {
+        byte[] token = mint();
+        try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+            acceptContext.acceptToken(token);
+        }
+        return kerbyAcceptor.accept(SpnegoNegotiation.parse(token), acceptor.getKerberosKeyIndex());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(TokenMintingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.kerb4j.server.cluster;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.server.acceptor.KerbyAcceptor;
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import com.kerb4j.server.replay.InMemoryReplayCache;
+import com.kerb4j.server.ticket.DecryptedTicketCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.kerberos.KerberosKey;
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterCacheTest extends KerberosSecurityTestcase {
+
+    private static final String SERVER_PRINCIPAL = "HTTP/localhost";
+    private static final String CLIENT_PRINCIPAL = "client/localhost";
+
+    private static final byte[] SECRET = "cluster-secret".getBytes(StandardCharsets.UTF_8);
+
+    private final List<ClusterCache> nodes = new ArrayList<>();
+
+    @AfterEach
+    void closeNodes() throws Exception {
+        for (ClusterCache node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    void replayOnAnotherNodeIsDetected() throws Exception {
+        Node first = node(SECRET, null, () -> new KerberosKey[0]);
+        Node second = node(SECRET, null, () -> new KerberosKey[0]);
+        connect(first, second);
+
+        byte[] authenticator = "authenticator".getBytes(StandardCharsets.UTF_8);
+        long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+
+        assertTrue(first.cache.add(authenticator, expiresAt));
+        awaitTrue(() -> second.cache.getReceivedCount() == 1);
+        assertFalse(second.cache.add(authenticator, expiresAt));
+        assertFalse(first.cache.add(authenticator, expiresAt));
+    }
+
+    @Test
+    void batchesFromNodesWithAnotherSecretAreIgnored() throws Exception {
+        Node first = node(SECRET, null, () -> new KerberosKey[0]);
+        Node second = node("another-secret".getBytes(StandardCharsets.UTF_8), null, () -> new KerberosKey[0]);
+        connect(first, second);
+
+        byte[] authenticator = "authenticator".getBytes(StandardCharsets.UTF_8);
+        long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+
+        assertTrue(first.cache.add(authenticator, expiresAt));
+        awaitTrue(() -> first.cache.getPublishedCount() == 1);
+        Thread.sleep(200);
+        assertEquals(0, second.cache.getReceivedCount());
+        assertTrue(second.cache.add(authenticator, expiresAt));
+    }
+
+    @Test
+    void decryptedTicketIsSharedWithOtherNodes() throws Exception {
+        File clientKeytab = new File(getWorkDir(), "cluster-client.keytab");
+        getKdc().createAndExportPrincipals(clientKeytab, CLIENT_PRINCIPAL);
+        File serverKeytab = new File(getWorkDir(), "cluster-server.keytab");
+        getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+
+        SpnegoClient initiator = SpnegoClient.loginWithKeyTab(CLIENT_PRINCIPAL, clientKeytab.getAbsolutePath());
+        SpnegoClient acceptor = SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+
+        Node first = node(SECRET, new DecryptedTicketCache(16), acceptor::getKerberosKeys);
+        Node second = node(SECRET, new DecryptedTicketCache(16), acceptor::getKerberosKeys);
+        connect(first, second);
+
+        KerbyAcceptor firstAcceptor = first.acceptor();
+        KerbyAcceptor secondAcceptor = second.acceptor();
+
+        byte[] token = createToken(initiator);
+        firstAcceptor.accept(SpnegoNegotiation.parse(token), acceptor.getKerberosKeys());
+        awaitTrue(() -> second.ticketCache.size() == 1);
+
+        // Same ticket with a new authenticator is served from the shared ticket on the second node
+        secondAcceptor.accept(SpnegoNegotiation.parse(createToken(initiator)), acceptor.getKerberosKeys());
+        assertEquals(1, second.ticketCache.getHitCount());
+        assertEquals(0, second.ticketCache.getMissCount());
+
+        // Replay of the first token on the second node is rejected
+        assertThrows(Kerb4JException.class,
+                () -> secondAcceptor.accept(SpnegoNegotiation.parse(token), acceptor.getKerberosKeys()));
+    }
+
+    @Test
+    void sharedTicketIsOnlyStoredUnderKeyOfItsPrincipal() throws Exception {
+        File clientKeytab = new File(getWorkDir(), "cluster-client.keytab");
+        getKdc().createAndExportPrincipals(clientKeytab, CLIENT_PRINCIPAL);
+        File serverKeytab = new File(getWorkDir(), "cluster-server.keytab");
+        getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+        File otherKeytab = new File(getWorkDir(), "cluster-other.keytab");
+        getKdc().createAndExportPrincipals(otherKeytab, "HTTP/other");
+
+        SpnegoClient initiator = SpnegoClient.loginWithKeyTab(CLIENT_PRINCIPAL, clientKeytab.getAbsolutePath());
+        SpnegoClient acceptor = SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+        SpnegoClient other = SpnegoClient.loginWithKeyTab("HTTP/other", otherKeytab.getAbsolutePath(), true);
+
+        KerberosKey[] acceptorKeys = acceptor.getKerberosKeys();
+        KerberosKey[] otherKeys = other.getKerberosKeys();
+        assertEquals(acceptorKeys[0].getKeyType(), otherKeys[0].getKeyType());
+        assertEquals(acceptorKeys[0].getVersionNumber(), otherKeys[0].getVersionNumber());
+        // Keys of the other principal come first, so matching on etype and version alone would pick them
+        KerberosKey[] allKeys = Stream.concat(Stream.of(otherKeys), Stream.of(acceptorKeys))
+                .toArray(KerberosKey[]::new);
+
+        Node first = node(SECRET, new DecryptedTicketCache(16), () -> acceptorKeys);
+        Node both = node(SECRET, new DecryptedTicketCache(16), () -> allKeys);
+        Node otherOnly = node(SECRET, new DecryptedTicketCache(16), () -> otherKeys);
+        connect(first, both);
+        connect(first, otherOnly);
+
+        first.acceptor().accept(SpnegoNegotiation.parse(createToken(initiator)), acceptorKeys);
+        // The authenticator and the ticket
+        awaitTrue(() -> both.ticketCache.size() == 1 && otherOnly.cache.getReceivedCount() == 2);
+        assertEquals(0, otherOnly.ticketCache.size());
+
+        both.acceptor().accept(SpnegoNegotiation.parse(createToken(initiator)), acceptorKeys);
+        assertEquals(1, both.ticketCache.getHitCount());
+    }
+
+    private Node node(byte[] secret, DecryptedTicketCache ticketCache, Supplier<KerberosKey[]> keys) throws Exception {
+        TcpClusterTransport transport = new TcpClusterTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Collections.emptyList(), secret);
+        ClusterCache cache = new ClusterCache(transport, new InMemoryReplayCache(), ticketCache, keys);
+        cache.start();
+        nodes.add(cache);
+        return new Node(transport, cache, ticketCache);
+    }
+
+    private static void connect(Node first, Node second) {
+        first.transport.addPeer(second.transport.getLocalAddress());
+        second.transport.addPeer(first.transport.getLocalAddress());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] createToken(SpnegoClient initiator) throws Exception {
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            return initiatorContext.createToken();
+        }
+    }
+
+    private static final class Node {
+
+        private final TcpClusterTransport transport;
+        private final ClusterCache cache;
+        private final DecryptedTicketCache ticketCache;
+
+        private Node(TcpClusterTransport transport, ClusterCache cache, DecryptedTicketCache ticketCache) {
+            this.transport = transport;
+            this.cache = cache;
+            this.ticketCache = ticketCache;
+        }
+
+        private KerbyAcceptor acceptor() {
+            return new KerbyAcceptor(cache, KerbyAcceptor.DEFAULT_CLOCK_SKEW, ticketCache);
+        }
+
+    }
+
+}
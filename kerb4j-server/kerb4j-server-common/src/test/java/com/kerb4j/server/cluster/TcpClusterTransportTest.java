@@ -0,0 +1,178 @@
+package com.kerb4j.server.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TcpClusterTransportTest {
+
+    private static final byte[] SECRET = "cluster-secret".getBytes(StandardCharsets.UTF_8);
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void splitsLargeBatchesIntoFrames() throws Exception {
+        List<ClusterEvent> received = new CopyOnWriteArrayList<>();
+        AtomicInteger batches = new AtomicInteger();
+        TcpClusterTransport receiver = transport();
+        receiver.start(events -> {
+            batches.incrementAndGet();
+            received.addAll(events);
+        });
+        TcpClusterTransport sender = transport();
+        sender.addPeer(receiver.getLocalAddress());
+
+        List<ClusterEvent> events = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            events.add(ticket(i));
+        }
+        List<byte[]> frames = sender.frames(events);
+        assertTrue(frames.size() > 1);
+        for (byte[] frame : frames) {
+            assertTrue(frame.length <= TcpClusterTransport.MAX_FRAME_LENGTH);
+        }
+
+        sender.publish(events);
+        awaitTrue(() -> received.size() == events.size());
+        assertEquals(frames.size(), batches.get());
+        assertArrayEquals(digest(1023), received.get(1023).getDigest());
+    }
+
+    @Test
+    void closesConnectionAnnouncingOversizedFrame() throws Exception {
+        TcpClusterTransport receiver = transport();
+        receiver.start(events -> fail("no events expected"));
+
+        try (Socket socket = new Socket()) {
+            socket.connect(receiver.getLocalAddress());
+            socket.setSoTimeout(5000);
+            new DataOutputStream(socket.getOutputStream()).writeInt(TcpClusterTransport.MAX_FRAME_LENGTH + 1);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void limitsInboundConnections() throws Exception {
+        TcpClusterTransport receiver = transport();
+        receiver.start(events -> fail("no events expected"));
+
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < TcpClusterTransport.MAX_INBOUND_CONNECTIONS; i++) {
+                Socket socket = new Socket();
+                sockets.add(socket);
+                socket.connect(receiver.getLocalAddress());
+            }
+            try (Socket rejected = new Socket()) {
+                rejected.connect(receiver.getLocalAddress());
+                rejected.setSoTimeout(5000);
+                assertEquals(-1, rejected.getInputStream().read());
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    void stalledPeerDoesNotHoldUpOtherPeers() throws Exception {
+        List<Socket> stalledConnections = new CopyOnWriteArrayList<>();
+        ServerSocket stalledPeer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        resources.add(stalledPeer);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    // Accept connections and never read from them
+                    stalledConnections.add(stalledPeer.accept());
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        resources.add(() -> {
+            for (Socket socket : stalledConnections) {
+                socket.close();
+            }
+        });
+
+        List<ClusterEvent> received = new CopyOnWriteArrayList<>();
+        TcpClusterTransport receiver = transport();
+        receiver.start(received::addAll);
+
+        TcpClusterTransport sender = new TcpClusterTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                List.of((InetSocketAddress) stalledPeer.getLocalSocketAddress(), receiver.getLocalAddress()), SECRET);
+
+        List<ClusterEvent> batch = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            batch.add(ticket(i));
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            // Far more than the socket buffers of the stalled peer take
+            for (int i = 0; i < 500; i++) {
+                sender.publish(batch);
+            }
+        });
+
+        byte[] marker = digest(-1);
+        List<ClusterEvent> markerBatch = Collections.singletonList(ClusterEvent.authenticator(marker, Long.MAX_VALUE));
+        awaitTrue(() -> {
+            sender.publish(markerBatch);
+            return received.stream().anyMatch(event -> Arrays.equals(marker, event.getDigest()));
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), sender::close);
+    }
+
+    private TcpClusterTransport transport() {
+        TcpClusterTransport transport = new TcpClusterTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Collections.emptyList(), SECRET);
+        resources.add(transport);
+        return transport;
+    }
+
+    private static byte[] digest(int i) {
+        return ByteBuffer.allocate(32).putInt(i).array();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static ClusterEvent ticket(int i) {
+        return ClusterEvent.ticket(digest(i), Long.MAX_VALUE, "HTTP/localhost@EXAMPLE.COM", 18, 1, new byte[1024]);
+    }
+
+}
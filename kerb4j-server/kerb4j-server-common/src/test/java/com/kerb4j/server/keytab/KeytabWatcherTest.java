@@ -0,0 +1,128 @@
+package com.kerb4j.server.keytab;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.KerberosKeyIndex;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.server.acceptor.KerbyAcceptor;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.kerberos.KerberosKey;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeytabWatcherTest extends KerberosSecurityTestcase {
+
+    private static final String SERVER_PRINCIPAL = "HTTP/localhost";
+    private static final String CLIENT_PRINCIPAL = "client/localhost";
+
+    @Test
+    void reloadsRotatedKeytabAndKeepsOldKeysDuringGracePeriod() throws Exception {
+        File clientKeytab = newKeytab("keytab-watcher-client.keytab");
+        File serverKeytab = newKeytab("keytab-watcher-server.keytab");
+        getKdc().createAndExportPrincipals(clientKeytab, CLIENT_PRINCIPAL);
+        getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+
+        SpnegoClient acceptor = SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+        int oldKvno = acceptor.getKerberosKeys()[0].getVersionNumber();
+
+        byte[] oldToken = createToken(clientKeytab);
+
+        try (KeytabWatcher watcher = new KeytabWatcher(100, 60_000)) {
+            watcher.watch(serverKeytab.toPath(), SERVER_PRINCIPAL + "@EXAMPLE.COM", acceptor);
+
+            rotate(serverKeytab);
+            awaitReloads(watcher, 1);
+
+            KerberosKeyIndex keyIndex = acceptor.getKerberosKeyIndex();
+            assertTrue(hasKvno(keyIndex, oldKvno));
+            assertTrue(hasKvno(keyIndex, oldKvno + 1));
+
+            byte[] newToken = createToken(clientKeytab);
+
+            // both the JGSS and the Kerby acceptor take the swapped key set
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                acceptContext.acceptToken(oldToken);
+                assertNotNull(acceptContext.getSrcName());
+            }
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                acceptContext.acceptToken(newToken);
+                assertNotNull(acceptContext.getSrcName());
+            }
+            assertEquals(CLIENT_PRINCIPAL + "@EXAMPLE.COM", new KerbyAcceptor()
+                    .accept(SpnegoNegotiation.parse(newToken), keyIndex).getClientPrincipalName());
+        }
+    }
+
+    @Test
+    void dropsRetiredKeysAfterGracePeriod() throws Exception {
+        File serverKeytab = newKeytab("keytab-watcher-grace.keytab");
+        getKdc().createAndExportPrincipals(serverKeytab, SERVER_PRINCIPAL);
+
+        SpnegoClient acceptor = SpnegoClient.loginWithKeyTab(SERVER_PRINCIPAL, serverKeytab.getAbsolutePath(), true);
+        int oldKvno = acceptor.getKerberosKeys()[0].getVersionNumber();
+
+        try (KeytabWatcher watcher = new KeytabWatcher(100, 200)) {
+            watcher.watch(serverKeytab.toPath(), SERVER_PRINCIPAL + "@EXAMPLE.COM", acceptor);
+
+            rotate(serverKeytab);
+            awaitReloads(watcher, 1);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (hasKvno(acceptor.getKerberosKeyIndex(), oldKvno) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertFalse(hasKvno(acceptor.getKerberosKeyIndex(), oldKvno));
+            assertTrue(hasKvno(acceptor.getKerberosKeyIndex(), oldKvno + 1));
+        }
+    }
+
+    private byte[] createToken(File clientKeytab) throws Exception {
+        SpnegoClient initiator = SpnegoClient.loginWithKeyTab(CLIENT_PRINCIPAL, clientKeytab.getAbsolutePath());
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            return initiatorContext.createToken();
+        }
+    }
+
+    /**
+     * Generate new keys and replace the keytab the way deployment tooling does, with an atomic rename.
+     */
+    private void rotate(File keytab) throws Exception {
+        getKdc().getKadmin().updateKeys(SERVER_PRINCIPAL + "@EXAMPLE.COM");
+        File rotated = newKeytab(keytab.getName() + ".new");
+        getKdc().getKadmin().exportKeytab(rotated, SERVER_PRINCIPAL + "@EXAMPLE.COM");
+        Files.move(rotated.toPath(), keytab.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Kerby appends to existing keytabs on export, so start from scratch.
+     */
+    private File newKeytab(String name) throws Exception {
+        File keytab = new File(getWorkDir(), name);
+        Files.deleteIfExists(keytab.toPath());
+        return keytab;
+    }
+
+    private static void awaitReloads(KeytabWatcher watcher, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (watcher.getReloadCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, watcher.getReloadCount());
+    }
+
+    private static boolean hasKvno(KerberosKeyIndex keyIndex, int kvno) {
+        for (KerberosKey key : keyIndex.getKeys()) {
+            if (key.getVersionNumber() == kvno) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
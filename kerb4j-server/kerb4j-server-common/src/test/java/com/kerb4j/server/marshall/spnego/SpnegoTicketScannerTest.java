@@ -0,0 +1,89 @@
+package com.kerb4j.server.marshall.spnego;
+
+import com.kerb4j.server.marshall.Kerb4JException;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptedData;
+import org.apache.kerby.kerberos.kerb.type.ticket.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link SpnegoTicketScanner} against the full Kerby decoding of the same tokens.
+ */
+public class SpnegoTicketScannerTest {
+
+    private static final String[] TOKENS = {
+            "rc4-spnego-data", "des-spnego-data", "aes128-spnego-data", "aes256-spnego-data"
+    };
+
+    @Test
+    public void testScanMatchesAsn1Decoding() throws Exception {
+        for (String resource : TOKENS) {
+            byte[] token = readResource(resource);
+
+            SpnegoInitToken spnegoInitToken = new SpnegoInitToken(token);
+            SpnegoKerberosMechToken mechToken = spnegoInitToken.getSpnegoKerberosMechToken();
+            Ticket ticket = mechToken.getApRequest().getTicket();
+            EncryptedData encryptedData = ticket.getEncryptedEncPart();
+
+            SpnegoTicketScanner scanner = new SpnegoTicketScanner().scan(token);
+
+            assertArrayEquals(spnegoInitToken.getMechToken(), Arrays.copyOfRange(token,
+                    scanner.getMechTokenOffset(), scanner.getMechTokenOffset() + scanner.getMechTokenLength()), resource);
+            assertEquals(mechToken.getServerPrincipalName(), scanner.getServerPrincipalName(), resource);
+            assertEquals(ticket.getRealm(), scanner.getRealm(), resource);
+            assertEquals(ticket.getSname().getNameType().getValue(), scanner.getNameType(), resource);
+            assertEquals(encryptedData.getEType(), scanner.getEncryptionType(), resource);
+            assertEquals(encryptedData.getKvno(), scanner.getKvno(), resource);
+            assertArrayEquals(encryptedData.getCipher(), Arrays.copyOfRange(token,
+                    scanner.getCipherOffset(), scanner.getCipherOffset() + scanner.getCipherLength()), resource);
+
+            SpnegoTicketScanner mechTokenScanner = new SpnegoTicketScanner().scanMechToken(spnegoInitToken.getMechToken());
+            assertEquals(scanner.getServerPrincipalName(), mechTokenScanner.getServerPrincipalName(), resource);
+            assertEquals(scanner.getKvno(), mechTokenScanner.getKvno(), resource);
+        }
+    }
+
+    @Test
+    public void testScanSlice() throws Exception {
+        byte[] token = readResource("aes256-spnego-data");
+        byte[] padded = new byte[token.length + 10];
+        System.arraycopy(token, 0, padded, 7, token.length);
+
+        SpnegoTicketScanner scanner = new SpnegoTicketScanner();
+        String expected = scanner.scan(token).getServerPrincipalName();
+
+        assertEquals(expected, scanner.scan(padded, 7, token.length).getServerPrincipalName());
+        assertEquals(7 + new SpnegoTicketScanner().scan(token).getMechTokenOffset(), scanner.getMechTokenOffset());
+    }
+
+    @Test
+    public void testTruncatedTokenThrowsKerb4JException() throws Exception {
+        byte[] token = readResource("aes256-spnego-data");
+        SpnegoTicketScanner scanner = new SpnegoTicketScanner();
+        for (int length = 0; length < token.length; length += 7) {
+            int truncated = length;
+            assertThrows(Kerb4JException.class, () -> scanner.scan(token, 0, truncated), "length " + truncated);
+        }
+    }
+
+    @Test
+    public void testInvalidTokenThrowsKerb4JException() {
+        SpnegoTicketScanner scanner = new SpnegoTicketScanner();
+        assertThrows(Kerb4JException.class, () -> scanner.scan(new byte[]{0x30, 0x00}));
+        assertThrows(Kerb4JException.class, () -> scanner.scan(new byte[]{0x60, (byte) 0x80, 0x06, 0x00}));
+        assertThrows(Kerb4JException.class, () -> scanner.scanMechToken(new byte[]{0x60, 0x02, 0x06, 0x00}));
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream is = SpnegoTicketScannerTest.class.getClassLoader().getResourceAsStream(name)) {
+            assertNotNull(is, name);
+            return is.readAllBytes();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.kerb4j.server.replay;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedReplayCacheTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static final long SKEW = TimeUnit.MINUTES.toMillis(5);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void detectsReplay() throws Exception {
+        try (MappedReplayCache cache = new MappedReplayCache(tempDir.resolve("rcache"), 1024)) {
+            assertTrue(cache.add(authenticator(1), NOW + SKEW, NOW));
+            assertTrue(cache.add(authenticator(2), NOW + SKEW, NOW));
+            assertFalse(cache.add(authenticator(1), NOW + SKEW, NOW + 1000));
+        }
+    }
+
+    @Test
+    void forgetsExpiredAuthenticators() throws Exception {
+        try (MappedReplayCache cache = new MappedReplayCache(tempDir.resolve("rcache"), 1024)) {
+            assertTrue(cache.add(authenticator(1), NOW + SKEW, NOW));
+            assertFalse(cache.add(authenticator(1), NOW + SKEW, NOW + SKEW - 1));
+            assertTrue(cache.add(authenticator(1), NOW + 3 * SKEW, NOW + SKEW + 1000));
+        }
+    }
+
+    @Test
+    void isSharedBetweenInstancesMappingTheSameFile() throws Exception {
+        Path file = tempDir.resolve("rcache");
+        try (MappedReplayCache first = new MappedReplayCache(file, 1024);
+             MappedReplayCache second = new MappedReplayCache(file, 1024)) {
+            assertTrue(first.add(authenticator(1), NOW + SKEW, NOW));
+            assertFalse(second.add(authenticator(1), NOW + SKEW, NOW));
+        }
+    }
+
+    @Test
+    void rejectsFileWithDifferentLayout() throws Exception {
+        Path file = tempDir.resolve("rcache");
+        try (MappedReplayCache ignored = new MappedReplayCache(file, 1024)) {
+            assertThrows(IOException.class, () -> new MappedReplayCache(file, 4096));
+        }
+    }
+
+    @Test
+    void rejectsAuthenticatorsWhenStripeIsFull() throws Exception {
+        try (MappedReplayCache cache = new MappedReplayCache(tempDir.resolve("rcache"), 1)) {
+            assertEquals(MappedReplayCache.STRIPE_SLOTS, cache.capacity());
+            for (int i = 0; i < MappedReplayCache.STRIPE_SLOTS; i++) {
+                assertTrue(cache.add(authenticator(i), NOW + SKEW + i * 1000L, NOW));
+            }
+            assertFalse(cache.add(authenticator(1000), NOW + SKEW, NOW), "no live entry is evicted");
+            for (int i = 0; i < MappedReplayCache.STRIPE_SLOTS; i++) {
+                assertFalse(cache.add(authenticator(i), NOW + SKEW, NOW), "replay of authenticator " + i);
+            }
+
+            // once the entry closest to expiry has expired its slot is free again
+            assertTrue(cache.add(authenticator(1000), NOW + 2 * SKEW, NOW + SKEW + 1000));
+            assertFalse(cache.add(authenticator(1), NOW + SKEW, NOW + SKEW + 1000));
+        }
+    }
+
+    @Test
+    void acceptsConcurrentDuplicatesOnlyOnce() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (MappedReplayCache cache = new MappedReplayCache(tempDir.resolve("rcache"), 1 << 12)) {
+            for (int round = 0; round < 200; round++) {
+                byte[] authenticator = authenticator(round);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return cache.add(authenticator, NOW + SKEW, NOW);
+                    }));
+                }
+                start.countDown();
+                int accepted = 0;
+                for (Future<Boolean> result : results) {
+                    accepted += result.get() ? 1 : 0;
+                }
+                assertTrue(accepted <= 1, "authenticator accepted " + accepted + " times");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] authenticator(int i) {
+        return ByteBuffer.allocate(64).putInt(0, i).array();
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.kerb4j.server.replay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput of the replay caches with unique authenticators. The target is 100k inserts per second per host;
+ * the table of {@link MappedReplayCache} is sized to hold a five minute clock skew window at that rate.
+ * <p>
+ * Not executed by the build; run {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ReplayCacheBenchmark {
+
+    private static final long SKEW = TimeUnit.MINUTES.toMillis(5);
+
+    @Param({"mapped", "in-memory"})
+    public String implementation;
+
+    private Path file;
+
+    private ReplayCache replayCache;
+
+    @Setup
+    public void open() throws Exception {
+        file = Files.createTempFile("kerb4j-replay", ".rcache");
+        Files.delete(file);
+        replayCache = "mapped".equals(implementation)
+                ? new MappedReplayCache(file, 1 << 26)
+                : new InMemoryReplayCache();
+    }
+
+    @TearDown
+    public void close() throws Exception {
+        if (replayCache instanceof MappedReplayCache) {
+            ((MappedReplayCache) replayCache).close();
+        }
+        Files.deleteIfExists(file);
+    }
+
+    @State(Scope.Thread)
+    public static class Authenticator {
+
+        private final ByteBuffer authenticator = ByteBuffer.allocate(96);
+
+        private long counter = ThreadLocalRandom.current().nextLong();
+
+        byte[] next() {
+            authenticator.putLong(0, counter++);
+            return authenticator.array();
+        }
+
+    }
+
+    @Benchmark
+    public boolean add(Authenticator authenticator) {
+        return replayCache.add(authenticator.next(), System.currentTimeMillis() + SKEW);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ReplayCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
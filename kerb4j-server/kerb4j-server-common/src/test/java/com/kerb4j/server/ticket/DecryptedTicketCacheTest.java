@@ -0,0 +1,142 @@
+package com.kerb4j.server.ticket;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.server.acceptor.KerbyAcceptor;
+import com.kerb4j.server.marshall.Kerb4JException;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import com.kerb4j.server.replay.InMemoryReplayCache;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.kerberos.KerberosKey;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecryptedTicketCacheTest extends KerberosSecurityTestcase {
+
+    private static final String SERVER_PRINCIPAL = "HTTP/localhost";
+    private static final String CLIENT_PRINCIPAL = "client/localhost";
+
+    @Test
+    void reusesTicketAcrossAuthenticators() throws Exception {
+        SpnegoClient initiator = login(CLIENT_PRINCIPAL, "ticket-cache-client.keytab", false);
+        SpnegoClient acceptor = login(SERVER_PRINCIPAL, "ticket-cache-server.keytab", true);
+
+        SpnegoNegotiation first = SpnegoNegotiation.parse(createToken(initiator));
+        SpnegoNegotiation second = SpnegoNegotiation.parse(createToken(initiator));
+        assertArrayEquals(first.getTicketCipherDigest(), second.getTicketCipherDigest());
+
+        DecryptedTicketCache cache = new DecryptedTicketCache(16);
+        DecryptedTicket decryptedTicket = cache.getOrDecrypt(first, acceptor.getKerberosKeys());
+
+        assertSame(decryptedTicket, cache.getOrDecrypt(second, acceptor.getKerberosKeys()));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void acceptorStillVerifiesEveryAuthenticator() throws Exception {
+        SpnegoClient initiator = login(CLIENT_PRINCIPAL, "ticket-cache-client.keytab", false);
+        SpnegoClient acceptor = login(SERVER_PRINCIPAL, "ticket-cache-server.keytab", true);
+
+        DecryptedTicketCache cache = new DecryptedTicketCache(16);
+        KerbyAcceptor kerbyAcceptor = new KerbyAcceptor(new InMemoryReplayCache(), KerbyAcceptor.DEFAULT_CLOCK_SKEW, cache);
+
+        byte[] first = createToken(initiator);
+        byte[] second = createToken(initiator);
+
+        kerbyAcceptor.accept(SpnegoNegotiation.parse(first), acceptor.getKerberosKeys());
+        assertEquals(CLIENT_PRINCIPAL + "@EXAMPLE.COM",
+                kerbyAcceptor.accept(SpnegoNegotiation.parse(second), acceptor.getKerberosKeys()).getClientPrincipalName());
+        assertEquals(1, cache.getHitCount());
+
+        // Cached ticket doesn't bypass the replay check
+        assertThrows(Kerb4JException.class,
+                () -> kerbyAcceptor.accept(SpnegoNegotiation.parse(second), acceptor.getKerberosKeys()));
+    }
+
+    @Test
+    void cachedTicketIsNotServedForOtherKeys() throws Exception {
+        SpnegoClient initiator = login(CLIENT_PRINCIPAL, "ticket-cache-client.keytab", false);
+        SpnegoClient acceptor = login(SERVER_PRINCIPAL, "ticket-cache-server.keytab", true);
+        SpnegoClient other = login("HTTP/other", "ticket-cache-other.keytab", true);
+
+        DecryptedTicketCache cache = new DecryptedTicketCache(16);
+        cache.getOrDecrypt(SpnegoNegotiation.parse(createToken(initiator)), acceptor.getKerberosKeys());
+
+        KerberosKey[] otherKeys = other.getKerberosKeys();
+        SpnegoNegotiation negotiation = SpnegoNegotiation.parse(createToken(initiator));
+        assertThrows(Kerb4JException.class, () -> cache.getOrDecrypt(negotiation, otherKeys));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void evictsWhenFull() throws Exception {
+        SpnegoClient acceptor = login(SERVER_PRINCIPAL, "ticket-cache-server.keytab", true);
+
+        DecryptedTicketCache cache = new DecryptedTicketCache(1);
+        for (String clientPrincipal : new String[]{"first/localhost", "second/localhost"}) {
+            SpnegoClient initiator = login(clientPrincipal, clientPrincipal.replace('/', '-') + ".keytab", false);
+            cache.getOrDecrypt(SpnegoNegotiation.parse(createToken(initiator)), acceptor.getKerberosKeys());
+        }
+
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void evictsBelowMaximumSizeSoThatLaterTicketsDoNotScanTheCache() {
+        DecryptedTicketCache cache = new DecryptedTicketCache(32);
+        KerberosKey kerberosKey = new KerberosKey(new KerberosPrincipal(SERVER_PRINCIPAL + "@EXAMPLE.COM"),
+                new byte[16], EncryptionType.AES128_CTS_HMAC_SHA1_96.getValue(), 1);
+        EncTicketPart expired = encTicketPart(System.currentTimeMillis() - 60_000);
+        EncTicketPart valid = encTicketPart(System.currentTimeMillis() + 60_000);
+
+        for (int i = 0; i < 32; i++) {
+            cache.put(digest(i), i < 4 ? expired : valid, kerberosKey);
+        }
+        assertEquals(28, cache.size(), "expired tickets are not stored");
+        for (int i = 32; i < 36; i++) {
+            cache.put(digest(i), valid, kerberosKey);
+        }
+        assertEquals(32, cache.size());
+
+        cache.put(digest(36), valid, kerberosKey);
+        assertEquals(30, cache.size());
+        cache.put(digest(37), valid, kerberosKey);
+        cache.put(digest(38), valid, kerberosKey);
+        assertEquals(32, cache.size());
+    }
+
+    private static EncTicketPart encTicketPart(long endTime) {
+        EncTicketPart encTicketPart = new EncTicketPart();
+        encTicketPart.setEndTime(new KerberosTime(endTime));
+        return encTicketPart;
+    }
+
+    private static byte[] digest(int i) {
+        byte[] digest = new byte[32];
+        digest[0] = (byte) i;
+        return digest;
+    }
+
+    private SpnegoClient login(String principal, String keytabName, boolean acceptOnly) throws Exception {
+        File keytab = new File(getWorkDir(), keytabName);
+        getKdc().createAndExportPrincipals(keytab, principal);
+        return SpnegoClient.loginWithKeyTab(principal, keytab.getAbsolutePath(), acceptOnly);
+    }
+
+    private static byte[] createToken(SpnegoClient initiator) throws Exception {
+        try (SpnegoContext initiatorContext = initiator.createContextForSPN(SERVER_PRINCIPAL)) {
+            return initiatorContext.createToken();
+        }
+    }
+
+}
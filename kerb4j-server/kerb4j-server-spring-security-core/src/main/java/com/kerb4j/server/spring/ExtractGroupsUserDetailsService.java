@@ -5,8 +5,8 @@ import com.kerb4j.server.marshall.Kerb4JException;
 import com.kerb4j.server.marshall.pac.Pac;
 import com.kerb4j.server.marshall.pac.PacLogonInfo;
 import com.kerb4j.server.marshall.pac.PacSid;
-import com.kerb4j.server.marshall.spnego.SpnegoInitToken;
-import com.kerb4j.server.marshall.spnego.SpnegoKerberosMechToken;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import com.kerb4j.server.ticket.DecryptedTicketCache;
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.AuthenticationUserDetailsService;
@@ -22,6 +22,8 @@ public class ExtractGroupsUserDetailsService implements AuthenticationUserDetail
 
     private SpnegoClient spnegoClient;
 
+    private DecryptedTicketCache decryptedTicketCache;
+
     public ExtractGroupsUserDetailsService() {
     }
 
@@ -32,9 +34,13 @@ public class ExtractGroupsUserDetailsService implements AuthenticationUserDetail
     @Override
     public UserDetails loadUserDetails(SpnegoAuthenticationToken token) throws UsernameNotFoundException {
         try {
-            SpnegoInitToken spnegoInitToken = new SpnegoInitToken(token.getToken());
-            SpnegoKerberosMechToken spnegoKerberosMechToken = spnegoInitToken.getSpnegoKerberosMechToken();
-            Pac pac = spnegoKerberosMechToken.getPac(token.getKerberosKeys());
+            SpnegoNegotiation negotiation = token.getNegotiation();
+            if (null == negotiation) {
+                negotiation = SpnegoNegotiation.parse(token.getToken());
+            }
+            Pac pac = null == decryptedTicketCache
+                    ? negotiation.getPac(token.getKerberosKeyIndex())
+                    : decryptedTicketCache.getPac(negotiation, token.getKerberosKeyIndex());
             List<SimpleGrantedAuthority> roles;
             if (null == pac) {
                 roles = Collections.emptyList();
@@ -57,4 +63,14 @@ public class ExtractGroupsUserDetailsService implements AuthenticationUserDetail
         this.spnegoClient = spnegoClient;
     }
 
+    /**
+     * Reuse the decrypted ticket and parsed PAC across requests presenting the same service ticket.
+     *
+     * @param decryptedTicketCache ticket cache or {@code null} to decrypt the ticket on every request
+     * @since 0.5.1
+     */
+    public void setDecryptedTicketCache(DecryptedTicketCache decryptedTicketCache) {
+        this.decryptedTicketCache = decryptedTicketCache;
+    }
+
 }
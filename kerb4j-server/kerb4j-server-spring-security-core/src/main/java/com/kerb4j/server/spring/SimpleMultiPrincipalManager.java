@@ -2,13 +2,17 @@ package com.kerb4j.server.spring;
 
 import com.kerb4j.client.SpnegoClient;
 import com.kerb4j.server.MultiPrincipalManager;
+import com.kerb4j.server.keytab.KeytabWatcher;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,6 +33,8 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
 
     private final Map<String, SpnegoClient> spnegoClients = new ConcurrentHashMap<>();
     private volatile @Nullable SpnegoClient defaultSpnegoClient;
+    private final List<KeytabPrincipal> keytabPrincipals = new ArrayList<>();
+    private @Nullable KeytabWatcher keytabWatcher;
 
     /**
      * Add a principal with its keytab resource.
@@ -40,7 +46,10 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
      *                                  or if the resource cannot be resolved to a local file
      */
     public void addPrincipal(String principal, Resource keyTabLocation, boolean acceptOnly) {
-        spnegoClients.put(principal, createSpnegoClient(principal, keyTabLocation, acceptOnly));
+        String keyTabPath = resolveKeyTabPath(principal, keyTabLocation);
+        SpnegoClient spnegoClient = createSpnegoClient(principal, keyTabPath, acceptOnly);
+        spnegoClients.put(principal, spnegoClient);
+        watchKeytab(principal, keyTabPath, spnegoClient);
     }
 
     /**
@@ -61,7 +70,10 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
      * @param acceptOnly     {@code true} to configure the client in accept-only mode
      */
     public void addDefaultPrincipal(String principal, Resource keyTabLocation, boolean acceptOnly) {
-        defaultSpnegoClient = createSpnegoClient(principal, keyTabLocation, acceptOnly);
+        String keyTabPath = resolveKeyTabPath(principal, keyTabLocation);
+        SpnegoClient spnegoClient = createSpnegoClient(principal, keyTabPath, acceptOnly);
+        defaultSpnegoClient = spnegoClient;
+        watchKeytab(principal, keyTabPath, spnegoClient);
     }
 
     /**
@@ -74,6 +86,23 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
         addDefaultPrincipal(principal, keyTabLocation, true);
     }
 
+    /**
+     * Reload the keytabs of all configured principals when they are rotated, without a restart. Applies to
+     * principals added both before and after this call.
+     *
+     * @param keytabWatcher the watcher to register the keytabs with
+     * @since 0.5.1
+     */
+    public synchronized void setKeytabWatcher(KeytabWatcher keytabWatcher) {
+        if (keytabWatcher == null) {
+            throw new IllegalArgumentException("Keytab watcher must not be null");
+        }
+        this.keytabWatcher = keytabWatcher;
+        for (KeytabPrincipal keytabPrincipal : keytabPrincipals) {
+            watch(keytabWatcher, keytabPrincipal);
+        }
+    }
+
     @Override
     public @Nullable SpnegoClient getSpnegoClientForSpn(@Nullable String spn) {
         if (null == spn) {
@@ -98,21 +127,41 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
         return defaultSpnegoClient;
     }
 
-    private static SpnegoClient createSpnegoClient(String principal, Resource keyTabLocation, boolean acceptOnly) {
+    private synchronized void watchKeytab(String principal, String keyTabPath, SpnegoClient spnegoClient) {
+        KeytabPrincipal keytabPrincipal = new KeytabPrincipal(principal, keyTabPath, spnegoClient);
+        keytabPrincipals.add(keytabPrincipal);
+        KeytabWatcher keytabWatcher = this.keytabWatcher;
+        if (null != keytabWatcher) {
+            watch(keytabWatcher, keytabPrincipal);
+        }
+    }
+
+    private static void watch(KeytabWatcher keytabWatcher, KeytabPrincipal keytabPrincipal) {
+        try {
+            keytabWatcher.watch(Paths.get(keytabPrincipal.keyTabPath), keytabPrincipal.principal,
+                    keytabPrincipal.spnegoClient);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to watch keytab: " + keytabPrincipal.keyTabPath, e);
+        }
+    }
+
+    private static String resolveKeyTabPath(String principal, Resource keyTabLocation) {
         if (principal == null || principal.trim().isEmpty()) {
             throw new IllegalArgumentException("Principal name must not be null or empty");
         }
         if (keyTabLocation == null) {
             throw new IllegalArgumentException("Key tab location must not be null");
         }
-        String keyTabPath;
         try {
-            keyTabPath = keyTabLocation.getFile().getAbsolutePath();
+            return keyTabLocation.getFile().getAbsolutePath();
         } catch (IOException e) {
             throw new IllegalArgumentException(
                     "Key tab location must be a local file resource (classpath resources inside JARs are not supported): "
                             + keyTabLocation, e);
         }
+    }
+
+    private static SpnegoClient createSpnegoClient(String principal, String keyTabPath, boolean acceptOnly) {
         try {
             return SpnegoClient.loginWithKeyTab(principal, keyTabPath, acceptOnly);
         } catch (Exception e) {
@@ -120,4 +169,18 @@ public class SimpleMultiPrincipalManager implements MultiPrincipalManager {
                     "Failed to initialize principal: " + principal + " with keytab: " + keyTabPath, e);
         }
     }
+
+    private static final class KeytabPrincipal {
+
+        private final String principal;
+        private final String keyTabPath;
+        private final SpnegoClient spnegoClient;
+
+        private KeytabPrincipal(String principal, String keyTabPath, SpnegoClient spnegoClient) {
+            this.principal = principal;
+            this.keyTabPath = keyTabPath;
+            this.spnegoClient = spnegoClient;
+        }
+
+    }
 }
@@ -116,7 +116,8 @@ public class SpnegoAuthenticationProvider implements AuthenticationProvider, Ini
         }
 
         // TODO: make name "normalization" optional; probably take from UsernamePasswordAuthenticationToken if available
-        SpnegoAuthenticationToken responseAuth = new SpnegoAuthenticationToken(userDetails.getAuthorities(), ticketValidation.getToken(), canonicalName, ticketValidation.responseToken(), ticketValidation.getSubject(), ticketValidation.getKerberosKeys(), ticketValidation.getEtype());
+        // The parsed token is not needed once the roles have been extracted and is not kept in the security context
+        SpnegoAuthenticationToken responseAuth = new SpnegoAuthenticationToken(userDetails.getAuthorities(), ticketValidation.getToken(), canonicalName, ticketValidation.responseToken(), ticketValidation.getSubject(), ticketValidation.getKerberosKeyIndex(), ticketValidation.getEtype(), null);
         responseAuth.setDetails(authentication.getDetails());
 
         return responseAuth;
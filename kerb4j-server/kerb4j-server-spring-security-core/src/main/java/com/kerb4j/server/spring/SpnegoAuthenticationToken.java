@@ -1,5 +1,7 @@
 package com.kerb4j.server.spring;
 
+import com.kerb4j.client.KerberosKeyIndex;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
 import org.springframework.security.core.GrantedAuthority;
 
 import javax.security.auth.Subject;
@@ -18,8 +20,12 @@ public class SpnegoAuthenticationToken extends SpnegoRequestToken {
     private final Subject subject;
     private final KerberosKey[] kerberosKeys;
 
+    private final transient KerberosKeyIndex kerberosKeyIndex;
+
     private final String etype;
 
+    private final transient SpnegoNegotiation negotiation;
+
     // TODO: should contain everything for delegated auhentication
 
     public SpnegoAuthenticationToken(
@@ -30,12 +36,30 @@ public class SpnegoAuthenticationToken extends SpnegoRequestToken {
             Subject subject,
             KerberosKey[] kerberosKeys,
             String etype) {
+        this(authorities, spnegoInitToken, username, responseToken, subject, KerberosKeyIndex.of(kerberosKeys), etype,
+                null);
+    }
+
+    /**
+     * @since 0.5.1
+     */
+    public SpnegoAuthenticationToken(
+            Collection<? extends GrantedAuthority> authorities,
+            byte[] spnegoInitToken,
+            String username,
+            byte[] responseToken,
+            Subject subject,
+            KerberosKeyIndex kerberosKeyIndex,
+            String etype,
+            SpnegoNegotiation negotiation) {
         super(authorities, spnegoInitToken);
         this.username = username;
         this.responseToken = responseToken;
         this.subject = subject;
-        this.kerberosKeys = kerberosKeys;
+        this.kerberosKeys = kerberosKeyIndex.getKeys();
+        this.kerberosKeyIndex = kerberosKeyIndex;
         this.etype = etype;
+        this.negotiation = negotiation;
     }
 
     public SpnegoAuthenticationToken(
@@ -45,12 +69,28 @@ public class SpnegoAuthenticationToken extends SpnegoRequestToken {
             Subject subject,
             KerberosKey[] kerberosKeys,
             String etype) {
+        this(token, username, responseToken, subject, KerberosKeyIndex.of(kerberosKeys), etype, null);
+    }
+
+    /**
+     * @since 0.5.1
+     */
+    public SpnegoAuthenticationToken(
+            byte[] token,
+            String username,
+            byte[] responseToken,
+            Subject subject,
+            KerberosKeyIndex kerberosKeyIndex,
+            String etype,
+            SpnegoNegotiation negotiation) {
         super(token);
         this.username = username;
         this.responseToken = responseToken;
         this.subject = subject;
-        this.kerberosKeys = kerberosKeys;
+        this.kerberosKeys = kerberosKeyIndex.getKeys();
+        this.kerberosKeyIndex = kerberosKeyIndex;
         this.etype = etype;
+        this.negotiation = negotiation;
     }
 
     public String username() {
@@ -105,6 +145,17 @@ public class SpnegoAuthenticationToken extends SpnegoRequestToken {
         return kerberosKeys;
     }
 
+    /**
+     * @return keys of {@link #getKerberosKeys()} indexed by etype and kvno, as held by the {@link
+     * com.kerb4j.client.SpnegoClient} which validated the ticket
+     * @since 0.5.1
+     */
+    public KerberosKeyIndex getKerberosKeyIndex() {
+        KerberosKeyIndex kerberosKeyIndex = this.kerberosKeyIndex;
+        // The index is not serialized
+        return null == kerberosKeyIndex ? KerberosKeyIndex.of(kerberosKeys) : kerberosKeyIndex;
+    }
+
     /**
      * @since 0.1.3
      */
@@ -112,4 +163,16 @@ public class SpnegoAuthenticationToken extends SpnegoRequestToken {
         return etype;
     }
 
+    /**
+     * Returns the SPNEGO token as parsed during ticket validation, so that later steps (e.g. PAC extraction) do not
+     * need to parse it again.
+     *
+     * @return parsed token, or {@code null} if it was not available to the validator or on the token returned once
+     * authentication has completed
+     * @since 0.5.1
+     */
+    public SpnegoNegotiation getNegotiation() {
+        return negotiation;
+    }
+
 }
@@ -1,14 +1,21 @@
 package com.kerb4j.server.spring.jaas.sun;
 
+import com.kerb4j.client.KerberosKeyIndex;
 import com.kerb4j.client.SpnegoClient;
 import com.kerb4j.client.SpnegoContext;
 import com.kerb4j.server.MultiPrincipalManager;
 import com.kerb4j.server.SpnegoTokenFixer;
+import com.kerb4j.server.acceptor.AcceptorEngine;
+import com.kerb4j.server.acceptor.KerbyAcceptResult;
+import com.kerb4j.server.acceptor.KerbyAcceptor;
+import com.kerb4j.server.keytab.KeytabWatcher;
 import com.kerb4j.server.marshall.Kerb4JException;
-import com.kerb4j.server.marshall.spnego.SpnegoInitToken;
-import com.kerb4j.server.marshall.spnego.SpnegoKerberosMechToken;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import com.kerb4j.server.replay.InMemoryReplayCache;
+import com.kerb4j.server.replay.ReplayCache;
 import com.kerb4j.server.spring.KerberosTicketValidator;
 import com.kerb4j.server.spring.SpnegoAuthenticationToken;
+import com.kerb4j.server.ticket.DecryptedTicketCache;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
@@ -24,6 +31,7 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.security.PrivilegedActionException;
 
 /**
@@ -53,18 +61,36 @@ public class SunJaasKerberosTicketValidator implements KerberosTicketValidator,
 
     private boolean holdOnToGSSContext;
 
+    private AcceptorEngine acceptorEngine = AcceptorEngine.JGSS;
+
+    private ReplayCache replayCache = new InMemoryReplayCache();
+
+    private @Nullable DecryptedTicketCache decryptedTicketCache;
+
+    private @Nullable KeytabWatcher keytabWatcher;
+
+    private KerbyAcceptor kerbyAcceptor = new KerbyAcceptor(replayCache, KerbyAcceptor.DEFAULT_CLOCK_SKEW);
+
 
     @Override
     public SpnegoAuthenticationToken validateTicket(byte[] token) {
 
-        SpnegoTokenFixer.fix(token);
+        if (SpnegoTokenFixer.Verdict.MALFORMED == SpnegoTokenFixer.validateAndFix(token)) {
+            throw new BadCredentialsException("Kerberos validation not successful: malformed SPNEGO token");
+        }
+
+        SpnegoNegotiation negotiation = parseNegotiation(token);
 
         try {
-            SpnegoClient clientToUse = resolveSpnegoClient(token);
+            SpnegoClient clientToUse = resolveSpnegoClient(negotiation);
             if (clientToUse == null) {
                 throw new BadCredentialsException("Kerberos validation not successful");
             }
 
+            if (AcceptorEngine.KERBY == acceptorEngine) {
+                return validateTicketWithKerby(token, negotiation, clientToUse);
+            }
+
             SpnegoContext acceptContext = clientToUse.createAcceptContext();
             byte[] responseToken = acceptContext.acceptToken(token);
             GSSName srcName = acceptContext.getSrcName();
@@ -77,23 +103,16 @@ public class SunJaasKerberosTicketValidator implements KerberosTicketValidator,
                 acceptContext.close();
             }
 
-            EncryptionType encryptionType = null;
-
-            try {
-                SpnegoInitToken spnegoInitToken = new SpnegoInitToken(token);
-                SpnegoKerberosMechToken spnegoKerberosMechToken = spnegoInitToken.getSpnegoKerberosMechToken();
-                encryptionType = spnegoKerberosMechToken.getApRequest().getTicket().getEncryptedEncPart().getEType();
-            } catch (Kerb4JException e) {
-                LOG.error("Failed to extract etype from spnego token", e);
-            }
+            EncryptionType encryptionType = null == negotiation ? null : negotiation.getEncryptionType();
 
             return new SpnegoAuthenticationToken(
                     token,
                     srcName.toString(),
                     responseToken,
                     clientToUse.getSubject(),
-                    clientToUse.getKerberosKeys(),
-                    null == encryptionType ? null : encryptionType.getName()
+                    clientToUse.getKerberosKeyIndex(),
+                    null == encryptionType ? null : encryptionType.getName(),
+                    negotiation
             );
             // TODO: check that it doesn't involve network
 
@@ -103,6 +122,32 @@ public class SunJaasKerberosTicketValidator implements KerberosTicketValidator,
 
     }
 
+    private SpnegoAuthenticationToken validateTicketWithKerby(byte[] token,
+                                                             @Nullable SpnegoNegotiation negotiation,
+                                                             SpnegoClient clientToUse) {
+        if (null == negotiation) {
+            throw new BadCredentialsException("Kerberos validation not successful: unsupported SPNEGO token");
+        }
+
+        try {
+            KerberosKeyIndex keyIndex = clientToUse.getKerberosKeyIndex();
+            KerbyAcceptResult result = kerbyAcceptor.accept(negotiation, keyIndex);
+            EncryptionType encryptionType = negotiation.getEncryptionType();
+
+            return new SpnegoAuthenticationToken(
+                    token,
+                    result.getClientPrincipalName(),
+                    result.getResponseToken(),
+                    clientToUse.getSubject(),
+                    keyIndex,
+                    null == encryptionType ? null : encryptionType.getName(),
+                    negotiation
+            );
+        } catch (Kerb4JException e) {
+            throw new BadCredentialsException("Kerberos validation not successful", e);
+        }
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         boolean hasMultiPrincipal = multiPrincipalManager != null;
@@ -137,7 +182,11 @@ public class SunJaasKerberosTicketValidator implements KerberosTicketValidator,
                     keyTabLocationAsString = keyTabLocationAsString.substring(5);
                 }
 
-                spnegoClient = SpnegoClient.loginWithKeyTab(configuredServicePrincipal, keyTabLocationAsString, acceptOnly);
+                SpnegoClient keyTabClient = SpnegoClient.loginWithKeyTab(configuredServicePrincipal, keyTabLocationAsString, acceptOnly);
+                if (null != keytabWatcher) {
+                    keytabWatcher.watch(Paths.get(keyTabLocationAsString), configuredServicePrincipal, keyTabClient);
+                }
+                spnegoClient = keyTabClient;
             } else {
                 String configuredServicePassword = this.servicePassword;
                 Assert.state(configuredServicePassword != null, "servicePassword must be specified");
@@ -192,6 +241,56 @@ public class SunJaasKerberosTicketValidator implements KerberosTicketValidator,
         this.holdOnToGSSContext = holdOnToGSSContext;
     }
 
+    /**
+     * Selects the implementation used to accept tokens. {@link AcceptorEngine#KERBY} decrypts the ticket once
+     * and skips JGSS entirely, but doesn't support credential delegation and ignores
+     * {@link #setHoldOnToGSSContext(boolean)} since no {@link GSSContext} is created.
+     *
+     * @param acceptorEngine acceptor implementation, {@link AcceptorEngine#JGSS} by default
+     * @since 0.5.1
+     */
+    public void setAcceptorEngine(AcceptorEngine acceptorEngine) {
+        this.acceptorEngine = acceptorEngine;
+    }
+
+    /**
+     * Cache of decrypted service tickets used by the {@link AcceptorEngine#KERBY} engine, so that a service ticket
+     * reused by the client is only decrypted once. Share the same instance with
+     * {@link com.kerb4j.server.spring.ExtractGroupsUserDetailsService} to reuse the parsed PAC as well.
+     *
+     * @param decryptedTicketCache ticket cache or {@code null} to decrypt every ticket
+     * @since 0.5.1
+     */
+    public void setDecryptedTicketCache(@Nullable DecryptedTicketCache decryptedTicketCache) {
+        this.decryptedTicketCache = decryptedTicketCache;
+        this.kerbyAcceptor = new KerbyAcceptor(replayCache, KerbyAcceptor.DEFAULT_CLOCK_SKEW, decryptedTicketCache);
+    }
+
+    /**
+     * Replay cache used by the {@link AcceptorEngine#KERBY} engine. Use a
+     * {@link com.kerb4j.server.replay.MappedReplayCache} when several JVMs on one host accept tickets for the same
+     * service principal.
+     *
+     * @param replayCache replay cache, an {@link InMemoryReplayCache} by default
+     * @since 0.5.1
+     */
+    public void setReplayCache(ReplayCache replayCache) {
+        this.replayCache = replayCache;
+        this.kerbyAcceptor = new KerbyAcceptor(replayCache, KerbyAcceptor.DEFAULT_CLOCK_SKEW, decryptedTicketCache);
+    }
+
+    /**
+     * Reload the keytab configured with {@link #setKeyTabLocation(Resource)} when it is rotated, without a restart.
+     * Use {@link com.kerb4j.server.spring.SimpleMultiPrincipalManager#setKeytabWatcher(KeytabWatcher)} with a
+     * multi-principal manager instead.
+     *
+     * @param keytabWatcher watcher to register the keytab with, or {@code null} to load it once
+     * @since 0.5.1
+     */
+    public void setKeytabWatcher(@Nullable KeytabWatcher keytabWatcher) {
+        this.keytabWatcher = keytabWatcher;
+    }
+
     /**
      * @since 0.1.3
      */
@@ -210,13 +309,14 @@ public class SunJaasKerberosTicketValidator implements KerberosTicketValidator,
         this.multiPrincipalManager = multiPrincipalManager;
     }
 
-    private @Nullable SpnegoClient resolveSpnegoClient(byte[] token) {
+    private @Nullable SpnegoClient resolveSpnegoClient(@Nullable SpnegoNegotiation negotiation) {
         MultiPrincipalManager configuredManager = multiPrincipalManager;
         if (configuredManager == null) {
             return spnegoClient;
         }
-        String targetSpn = extractTargetSpn(token);
-        SpnegoClient selectedClient = configuredManager.getSpnegoClientForSpn(targetSpn);
+        String targetSpn = null == negotiation ? null : negotiation.getServerPrincipalName();
+        LOG.debug("Extracted target SPN from token: " + targetSpn);
+        SpnegoClient selectedClient = configuredManager.getSpnegoClient(negotiation);
         if (selectedClient == null) {
             if (targetSpn == null) {
                 throw new BadCredentialsException(
@@ -227,15 +327,12 @@ public class SunJaasKerberosTicketValidator implements KerberosTicketValidator,
         return selectedClient;
     }
 
-    private @Nullable String extractTargetSpn(byte[] token) {
+    private @Nullable SpnegoNegotiation parseNegotiation(byte[] token) {
         try {
-            SpnegoInitToken spnegoInitToken = new SpnegoInitToken(token);
-            String targetSpn = spnegoInitToken.getServerPrincipalName();
-            LOG.debug("Extracted target SPN from token: " + targetSpn);
-            return targetSpn;
+            return SpnegoNegotiation.parse(token);
         } catch (Kerb4JException e) {
-            LOG.debug("Failed to extract SPN from token", e);
+            LOG.debug("Failed to parse spnego token", e);
             return null;
         }
     }
-}
\ No newline at end of file
+}
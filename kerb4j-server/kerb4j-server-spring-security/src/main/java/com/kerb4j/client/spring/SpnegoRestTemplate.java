@@ -1,18 +1,25 @@
 package com.kerb4j.client.spring;
 
+import com.kerb4j.client.NegotiateCapabilityCache;
 import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoTokenPool;
+import com.kerb4j.client.SpnResolver;
 import com.kerb4j.common.util.Constants;
 import org.ietf.jgss.GSSException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URL;
 import java.security.PrivilegedActionException;
 import java.util.List;
 
@@ -36,7 +43,11 @@ public class SpnegoRestTemplate extends RestTemplate {
 
     private final SpnegoClient spnegoClient;
 
-    // TODO: add URL to SPN mapper function, or cache
+    private SpnegoTokenPool tokenPool;
+
+    private SpnResolver spnResolver;
+
+    private NegotiateCapabilityCache capabilityCache;
 
     public SpnegoRestTemplate(SpnegoClient spnegoClient) {
         this.spnegoClient = spnegoClient;
@@ -52,19 +63,116 @@ public class SpnegoRestTemplate extends RestTemplate {
         this.spnegoClient = spnegoClient;
     }
 
+    /**
+     * Take authorization headers from a pool of pre-minted tokens instead of creating a context on each request.
+     *
+     * @param tokenPool pool created for the same {@link SpnegoClient}, or {@code null} to mint on each request
+     * @since 0.5.1
+     */
+    public void setTokenPool(SpnegoTokenPool tokenPool) {
+        this.tokenPool = tokenPool;
+    }
+
+    /**
+     * Map request URLs to service principal names with the given resolver instead of the one of the
+     * {@link SpnegoClient}.
+     *
+     * @param spnResolver resolver, or {@code null} to let the {@link SpnegoClient} resolve the URL
+     * @since 0.5.1
+     */
+    public void setSpnResolver(SpnResolver spnResolver) {
+        this.spnResolver = spnResolver;
+    }
+
+    /**
+     * Send a token up front only to resources the given cache knows to demand {@code Negotiate}. Other requests are
+     * sent without a token first, and once more with one if the server answers with a {@code Negotiate} challenge, so
+     * the request body must be repeatable.
+     *
+     * @param capabilityCache cache shared by the clients of an application, or {@code null} to send a token with
+     *                        every request
+     * @since 0.5.1
+     */
+    public void setCapabilityCache(NegotiateCapabilityCache capabilityCache) {
+        this.capabilityCache = capabilityCache;
+    }
+
     @Override
     protected <T> T doExecute(final URI uri, final String uriTemplate, final HttpMethod method, final RequestCallback requestCallback,
                               final ResponseExtractor<T> responseExtractor)
             throws RestClientException {
+        NegotiateCapabilityCache capabilityCache = this.capabilityCache;
+        if (null == capabilityCache) {
+            return doExecuteAuthenticated(uri, uriTemplate, method, requestCallback, responseExtractor);
+        }
+        URL url;
+        try {
+            url = uri.toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            throw new RestClientException("Cannot authenticate request to " + uri, e);
+        }
+        if (capabilityCache.isNegotiateRequired(url)) {
+            return doExecuteAuthenticated(uri, uriTemplate, method, requestCallback, responseExtractor);
+        }
+
+        try {
+            return super.doExecute(uri, uriTemplate, method, requestCallback, response -> {
+                // the default error handler throws on 401 before, custom ones may let it through
+                if (capabilityCache.recordResponse(url, response.getStatusCode().value(),
+                        response.getHeaders().get(Constants.AUTHN_HEADER))) {
+                    throw new NegotiateRequiredException();
+                }
+                return null == responseExtractor ? null : responseExtractor.extractData(response);
+            });
+        } catch (RestClientResponseException e) {
+            HttpHeaders headers = e.getResponseHeaders();
+            if (!capabilityCache.recordResponse(url, e.getStatusCode().value(),
+                    null == headers ? null : headers.get(Constants.AUTHN_HEADER))) {
+                throw e;
+            }
+        } catch (NegotiateRequiredException e) {
+            // repeated with a token below
+        }
+        return doExecuteAuthenticated(uri, uriTemplate, method, requestCallback, responseExtractor);
+    }
+
+    private <T> T doExecuteAuthenticated(final URI uri, final String uriTemplate, final HttpMethod method,
+                                         final RequestCallback requestCallback,
+                                         final ResponseExtractor<T> responseExtractor) {
         return super.doExecute(uri, uriTemplate, method, request -> {
             requestCallback.doWithRequest(request);
             // TODO: process response if required
             try {
-                request.getHeaders().add(Constants.AUTHZ_HEADER, spnegoClient.createAuthroizationHeader(uri.toURL()));
+                request.getHeaders().add(Constants.AUTHZ_HEADER, createAuthorizationHeader(uri.toURL()));
             } catch (PrivilegedActionException | GSSException | IOException e) {
                 throw new IOException(e);
             }
         }, responseExtractor);
     }
 
+    private String createAuthorizationHeader(URL url) throws PrivilegedActionException, GSSException, IOException {
+        SpnegoTokenPool tokenPool = this.tokenPool;
+        SpnResolver spnResolver = this.spnResolver;
+        if (null == spnResolver) {
+            return null == tokenPool
+                    ? spnegoClient.createAuthroizationHeader(url)
+                    : tokenPool.getAuthorizationHeader(url);
+        }
+        String spn = spnResolver.resolveSpn(url);
+        return null == tokenPool
+                ? spnegoClient.createAuthroizationHeaderForSPN(spn)
+                : tokenPool.getAuthorizationHeaderForSPN(spn);
+    }
+
+    /**
+     * Thrown from the response extractor to repeat a request with a token once a server demands one.
+     */
+    private static final class NegotiateRequiredException extends RestClientException {
+
+        private NegotiateRequiredException() {
+            super("Negotiate authentication required");
+        }
+
+    }
+
 }
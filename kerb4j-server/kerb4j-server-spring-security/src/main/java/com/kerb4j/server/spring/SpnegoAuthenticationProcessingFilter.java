@@ -1,6 +1,7 @@
 package com.kerb4j.server.spring;
 
 import com.kerb4j.common.util.Constants;
+import com.kerb4j.common.util.NegotiateTokenDecoder;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -23,7 +24,6 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 
 /**
  * Parses the SPNEGO authentication Header, which was generated by the browser
@@ -134,13 +134,12 @@ public class SpnegoAuthenticationProcessingFilter extends OncePerRequestFilter {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Received Negotiate Header for request " + request.getRequestURL() + ": " + header);
                 }
-                String base64Token = header.substring(negotiatePrefix.length()).trim();
-                if (base64Token.isEmpty()) {
+                byte[] kerberosTicket = NegotiateTokenDecoder.decode(header, negotiatePrefix.length(), header.length());
+                if (kerberosTicket.length == 0) {
                     response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                     response.flushBuffer();
                     return;
                 }
-                byte[] kerberosTicket = Base64.getDecoder().decode(base64Token.getBytes(StandardCharsets.UTF_8));
                 authenticationRequest = new SpnegoRequestToken(kerberosTicket);
 
             } else if (supportBasicAuthentication && header.startsWith(Constants.BASIC_HEADER)) {
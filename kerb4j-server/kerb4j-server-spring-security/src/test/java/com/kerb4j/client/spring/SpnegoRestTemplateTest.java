@@ -1,7 +1,9 @@
 package com.kerb4j.client.spring;
 
 import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.NegotiateCapabilityCache;
 import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.common.util.Constants;
 import org.apache.kerby.kerberos.kerb.server.SimpleKdcServer;
 import org.apache.kerby.kerberos.kerb.type.base.NameType;
 import org.junit.jupiter.api.AfterEach;
@@ -27,7 +29,10 @@ import javax.security.auth.kerberos.KeyTab;
 import java.io.File;
 import java.net.InetAddress;
 import java.net.URI;
+import java.net.URL;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -174,6 +179,58 @@ public class SpnegoRestTemplateTest extends KerberosSecurityTestcase {
         assertThat(response, is("home"));
     }
 
+    @Test
+    public void testCapabilityCache() throws Exception {
+
+        SimpleKdcServer kdc = getKdc();
+        File workDir = getWorkDir();
+        String host = "localhost";
+
+        String serverPrincipal = "HTTP/" + host;
+        File serverKeytab = new File(workDir, "server.keytab");
+        kdc.createAndExportPrincipals(serverKeytab, serverPrincipal);
+
+        String clientPrincipal = "client/" + host;
+        File clientKeytab = new File(workDir, "client.keytab");
+        kdc.createAndExportPrincipals(clientKeytab, clientPrincipal);
+
+        SpringApplication springApplication = new SpringApplicationBuilder(
+                WebSecurityConfig.class,
+                VanillaWebConfiguration.class,
+                TestAppConfiguration.class).application();
+        context = springApplication.run(
+                "--security.basic.enabled=true",
+                "--security.user.name=username",
+                "--security.user.password=password",
+                "--serverPrincipal=" + serverPrincipal,
+                "--serverKeytab=" + serverKeytab.getAbsolutePath()
+        );
+
+        PortInitListener portInitListener = context.getBean(PortInitListener.class);
+        assertThat(portInitListener.latch.await(10, TimeUnit.SECONDS), is(true));
+        int port = portInitListener.port;
+
+        SpnegoRestTemplate restTemplate = new SpnegoRestTemplate(SpnegoClient.loginWithKeyTab(clientPrincipal, clientKeytab.getAbsolutePath()));
+        NegotiateCapabilityCache capabilityCache = new NegotiateCapabilityCache();
+        restTemplate.setCapabilityCache(capabilityCache);
+        List<Boolean> authenticated = new CopyOnWriteArrayList<>();
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            authenticated.add(request.getHeaders().containsHeader(Constants.AUTHZ_HEADER));
+            return execution.execute(request, body);
+        });
+
+        String baseUrl = "http://" + host + ":" + port;
+        assertThat(restTemplate.getForObject(baseUrl + "/", String.class), is("home"));
+        assertThat(restTemplate.getForObject(baseUrl + "/hello", String.class), is("hello"));
+        assertThat(restTemplate.getForObject(baseUrl + "/hello", String.class), is("hello"));
+        assertThat(restTemplate.getForObject(baseUrl + "/", String.class), is("home"));
+
+        // the first request to /hello is challenged and repeated, then it is authenticated up front
+        assertEquals(List.of(false, false, true, true, false), authenticated);
+        assertTrue(capabilityCache.isNegotiateRequired(new URL(baseUrl + "/hello")));
+        assertFalse(capabilityCache.isNegotiateRequired(new URL(baseUrl + "/")));
+    }
+
     @Test
     public void testSpnegoWithPasswordOnServer() throws Exception {
 
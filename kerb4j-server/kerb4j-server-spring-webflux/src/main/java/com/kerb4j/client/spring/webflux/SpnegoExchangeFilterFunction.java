@@ -0,0 +1,247 @@
+package com.kerb4j.client.spring.webflux;
+
+import com.kerb4j.client.SpnResolver;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.client.SpnegoTokenPool;
+import com.kerb4j.common.util.Constants;
+import com.kerb4j.common.util.SpnegoProvider;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.security.PrivilegedActionException;
+
+/**
+ * {@link ExchangeFilterFunction} that makes Kerberos SPNEGO authenticated requests with a
+ * {@link org.springframework.web.reactive.function.client.WebClient WebClient}. This is the reactive counterpart of
+ * {@code com.kerb4j.client.spring.SpnegoRestTemplate}.
+ *
+ * <p>Creating a context may log in and request a service ticket from the KDC, so the {@code Negotiate} header is
+ * minted on a separate {@link Scheduler}, {@link Schedulers#boundedElastic() boundedElastic} by default, and never
+ * on an event loop thread. Processing the mutual authentication token of the server needs no round trip to the
+ * KDC and is done on the thread which receives the response.</p>
+ *
+ * <p>By default the header is sent with the first request. In challenge mode the request is sent without it first,
+ * and again with a header if the server answers {@code 401} with a {@code Negotiate} challenge.</p>
+ *
+ * <p>Each request gets a token of its own; a context is never reused. Pre-minted tokens of a
+ * {@link SpnegoTokenPool} are used for the first attempt only if mutual authentication is not required, since the
+ * context of a pooled token is gone by the time the response arrives. If the server rejects a pooled token, the
+ * request is sent once more with a freshly minted one.</p>
+ *
+ * @since 0.5.1
+ */
+public class SpnegoExchangeFilterFunction implements ExchangeFilterFunction {
+
+    private static final Log LOG = LogFactory.getLog(SpnegoExchangeFilterFunction.class);
+
+    private final SpnegoClient spnegoClient;
+
+    private final Scheduler scheduler;
+
+    private volatile SpnResolver spnResolver = SpnResolver.getDefault();
+
+    private volatile SpnegoTokenPool tokenPool;
+
+    private volatile boolean preemptive = true;
+
+    private volatile boolean requireMutualAuthentication = false;
+
+    /**
+     * Creates a filter minting headers on the {@link Schedulers#boundedElastic() boundedElastic} scheduler.
+     *
+     * @param spnegoClient client to mint {@code Negotiate} headers with
+     */
+    public SpnegoExchangeFilterFunction(SpnegoClient spnegoClient) {
+        this(spnegoClient, Schedulers.boundedElastic());
+    }
+
+    /**
+     * @param spnegoClient client to mint {@code Negotiate} headers with
+     * @param scheduler    scheduler to mint headers on; it should be bounded and allow blocking
+     */
+    public SpnegoExchangeFilterFunction(SpnegoClient spnegoClient, Scheduler scheduler) {
+        Assert.notNull(spnegoClient, "SpnegoClient cannot be null");
+        Assert.notNull(scheduler, "Scheduler cannot be null");
+        this.spnegoClient = spnegoClient;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets the resolver mapping request URLs to service principal names.
+     * Defaults to {@link SpnResolver#getDefault()}.
+     *
+     * @param spnResolver the resolver
+     */
+    public void setSpnResolver(SpnResolver spnResolver) {
+        Assert.notNull(spnResolver, "SpnResolver cannot be null");
+        this.spnResolver = spnResolver;
+    }
+
+    /**
+     * Sets a pool of pre-minted tokens to take the header of the first attempt from.
+     *
+     * @param tokenPool pool created for the same {@link SpnegoClient}, or {@code null} to mint on each request
+     */
+    public void setTokenPool(SpnegoTokenPool tokenPool) {
+        this.tokenPool = tokenPool;
+    }
+
+    /**
+     * Sets whether to send the header with the first request instead of waiting for a challenge.
+     * Defaults to {@code true}.
+     *
+     * @param preemptive whether to authenticate preemptively
+     */
+    public void setPreemptive(boolean preemptive) {
+        this.preemptive = preemptive;
+    }
+
+    /**
+     * Sets whether successful responses must carry a valid mutual authentication token. Defaults to
+     * {@code false}, in which case a token is verified only if the server sends one. Setting it disables the
+     * token pool.
+     *
+     * @param requireMutualAuthentication whether to require mutual authentication
+     */
+    public void setRequireMutualAuthentication(boolean requireMutualAuthentication) {
+        this.requireMutualAuthentication = requireMutualAuthentication;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!preemptive) {
+            return next.exchange(request).flatMap(response -> isNegotiateChallenge(response)
+                    ? response.releaseBody().then(exchangeAuthenticated(request, next))
+                    : Mono.just(response));
+        }
+        SpnegoTokenPool tokenPool = this.tokenPool;
+        if (null != tokenPool && !requireMutualAuthentication) {
+            return exchangeWithPooledToken(request, next, tokenPool);
+        }
+        return exchangeAuthenticated(request, next);
+    }
+
+    private Mono<ClientResponse> exchangeWithPooledToken(ClientRequest request, ExchangeFunction next,
+                                                         SpnegoTokenPool tokenPool) {
+        return Mono.fromCallable(() -> tokenPool.getAuthorizationHeaderForSPN(resolveSpn(request.url())))
+                .subscribeOn(scheduler)
+                .flatMap(header -> next.exchange(withAuthorization(request, header)))
+                .flatMap(response -> {
+                    if (isNegotiateChallenge(response)) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Pooled token was rejected by " + request.url() + ", retrying with a new one");
+                        }
+                        return response.releaseBody().then(exchangeAuthenticated(request, next));
+                    }
+                    return Mono.just(response);
+                });
+    }
+
+    private Mono<ClientResponse> exchangeAuthenticated(ClientRequest request, ExchangeFunction next) {
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> mint(request.url())).subscribeOn(scheduler),
+                minted -> next.exchange(withAuthorization(request, minted.header))
+                        .flatMap(response -> verifyMutualAuthentication(minted.context, response)),
+                minted -> Mono.fromRunnable(() -> close(minted.context)));
+    }
+
+    private MintedToken mint(URI uri) throws Exception {
+        SpnegoContext context = spnegoClient.createContextForSPN(resolveSpn(uri));
+        try {
+            return new MintedToken(context, context.createTokenAsAuthroizationHeader());
+        } catch (Exception e) {
+            close(context);
+            throw e;
+        }
+    }
+
+    private Mono<ClientResponse> verifyMutualAuthentication(SpnegoContext context, ClientResponse response) {
+        byte[] token;
+        try {
+            token = SpnegoProvider.getNegotiateToken(response.headers().header(Constants.AUTHN_HEADER));
+        } catch (IllegalArgumentException e) {
+            return mutualAuthenticationFailed(response, e);
+        }
+
+        if (null == token || 0 == token.length) {
+            return requireMutualAuthentication && response.statusCode().is2xxSuccessful()
+                    ? mutualAuthenticationFailed(response, null)
+                    : Mono.just(response);
+        }
+
+        try {
+            context.processMutualAuthorization(token, 0, token.length);
+        } catch (PrivilegedActionException e) {
+            return mutualAuthenticationFailed(response, e);
+        }
+        return context.isEstablished() ? Mono.just(response) : mutualAuthenticationFailed(response, null);
+    }
+
+    private static Mono<ClientResponse> mutualAuthenticationFailed(ClientResponse response, Exception cause) {
+        return response.releaseBody()
+                .then(Mono.error(new IOException("Mutual authentication of the server failed", cause)));
+    }
+
+    private static ClientRequest withAuthorization(ClientRequest request, String header) {
+        return ClientRequest.from(request)
+                .headers(headers -> headers.set(Constants.AUTHZ_HEADER, header))
+                .build();
+    }
+
+    private static boolean isNegotiateChallenge(ClientResponse response) {
+        if (!HttpStatus.UNAUTHORIZED.equals(response.statusCode())) {
+            return false;
+        }
+        for (String value : response.headers().header(Constants.AUTHN_HEADER)) {
+            if (SpnegoProvider.isNegotiateChallenge(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String resolveSpn(URI uri) {
+        URL url;
+        try {
+            url = uri.toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cannot authenticate request to " + uri, e);
+        }
+        return spnResolver.resolveSpn(url);
+    }
+
+    private static void close(SpnegoContext context) {
+        try {
+            context.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to dispose SPNEGO context", e);
+        }
+    }
+
+    private static final class MintedToken {
+
+        private final SpnegoContext context;
+        private final String header;
+
+        private MintedToken(SpnegoContext context, String header) {
+            this.context = context;
+            this.header = header;
+        }
+
+    }
+
+}
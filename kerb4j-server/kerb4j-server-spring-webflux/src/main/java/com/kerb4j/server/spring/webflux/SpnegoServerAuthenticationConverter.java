@@ -1,6 +1,7 @@
 package com.kerb4j.server.spring.webflux;
 
 import com.kerb4j.common.util.Constants;
+import com.kerb4j.common.util.NegotiateTokenDecoder;
 import com.kerb4j.server.spring.SpnegoRequestToken;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -76,22 +77,21 @@ public class SpnegoServerAuthenticationConverter implements ServerAuthentication
             return Mono.empty();
         }
 
-        String negotiateToken = extractAuthenticationToken(header, Constants.NEGOTIATE_HEADER);
-        if (negotiateToken != null) {
+        int negotiateTokenOffset = authenticationTokenOffset(header, Constants.NEGOTIATE_HEADER);
+        if (negotiateTokenOffset != -1) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Received Negotiate Authorization header for request " + exchange.getRequest().getURI());
             }
 
-            String base64Token = negotiateToken.trim();
-            if (base64Token.isEmpty()) {
-                return Mono.empty();
-            }
             byte[] kerberosTicket;
             try {
-                kerberosTicket = Base64.getDecoder().decode(base64Token);
+                kerberosTicket = NegotiateTokenDecoder.decode(header, negotiateTokenOffset, header.length());
             } catch (IllegalArgumentException e) {
                 return Mono.error(new BadCredentialsException("Failed to decode Negotiate token", e));
             }
+            if (kerberosTicket.length == 0) {
+                return Mono.empty();
+            }
             return Mono.just(new SpnegoRequestToken(kerberosTicket));
 
         }
@@ -123,16 +123,21 @@ public class SpnegoServerAuthenticationConverter implements ServerAuthentication
     }
 
     private String extractAuthenticationToken(String header, String scheme) {
+        int offset = authenticationTokenOffset(header, scheme);
+        return offset == -1 ? null : header.substring(offset).trim();
+    }
+
+    private int authenticationTokenOffset(String header, String scheme) {
         if (header.length() <= scheme.length()) {
-            return null;
+            return -1;
         }
         if (!header.regionMatches(true, 0, scheme, 0, scheme.length())) {
-            return null;
+            return -1;
         }
         if (!Character.isWhitespace(header.charAt(scheme.length()))) {
-            return null;
+            return -1;
         }
-        return header.substring(scheme.length()).trim();
+        return scheme.length();
     }
 
     /**
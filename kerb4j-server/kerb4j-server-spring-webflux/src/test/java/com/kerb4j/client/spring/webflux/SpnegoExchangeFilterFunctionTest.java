@@ -0,0 +1,143 @@
+package com.kerb4j.client.spring.webflux;
+
+import com.kerb4j.KerberosSecurityTestcase;
+import com.kerb4j.client.SpnegoClient;
+import com.kerb4j.client.SpnegoContext;
+import com.kerb4j.client.SpnegoTokenPool;
+import com.kerb4j.common.util.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link SpnegoExchangeFilterFunction}
+ */
+class SpnegoExchangeFilterFunctionTest extends KerberosSecurityTestcase {
+
+    private static final URI TARGET = URI.create("http://localhost:8080/hello");
+
+    private SpnegoClient initiator;
+    private SpnegoClient acceptor;
+
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final List<String> threads = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void login() throws Exception {
+        File clientKeytab = new File(getWorkDir(), "filter-client.keytab");
+        getKdc().createAndExportPrincipals(clientKeytab, "client/localhost");
+        File serverKeytab = new File(getWorkDir(), "filter-server.keytab");
+        getKdc().createAndExportPrincipals(serverKeytab, "HTTP/localhost");
+
+        initiator = SpnegoClient.loginWithKeyTab("client/localhost", clientKeytab.getAbsolutePath());
+        acceptor = SpnegoClient.loginWithKeyTab("HTTP/localhost", serverKeytab.getAbsolutePath(), true);
+    }
+
+    @Test
+    void testPreemptiveRequestWithMutualAuthentication() {
+        SpnegoExchangeFilterFunction filter = new SpnegoExchangeFilterFunction(initiator);
+        filter.setRequireMutualAuthentication(true);
+
+        StepVerifier.create(filter.filter(request(), server(null)))
+                .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.OK))
+                .expectComplete()
+                .verify();
+
+        assertThat(authorizations).hasSize(1);
+        assertThat(authorizations.get(0)).startsWith(Constants.NEGOTIATE_HEADER + " ");
+        assertThat(threads.get(0)).startsWith("boundedElastic");
+    }
+
+    @Test
+    void testChallengeIsAnsweredWithNegotiateHeader() {
+        SpnegoExchangeFilterFunction filter = new SpnegoExchangeFilterFunction(initiator);
+        filter.setPreemptive(false);
+
+        StepVerifier.create(filter.filter(request(), server(null)))
+                .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.OK))
+                .expectComplete()
+                .verify();
+
+        assertThat(authorizations).hasSize(2);
+        assertThat(authorizations.get(0)).isEqualTo("null");
+        assertThat(authorizations.get(1)).startsWith(Constants.NEGOTIATE_HEADER + " ");
+    }
+
+    @Test
+    void testInvalidMutualAuthenticationTokenIsRejected() {
+        SpnegoExchangeFilterFunction filter = new SpnegoExchangeFilterFunction(initiator);
+
+        StepVerifier.create(filter.filter(request(), server(Base64.getEncoder().encodeToString(new byte[]{1, 2, 3}))))
+                .expectErrorSatisfies(e -> assertThat(e)
+                        .isInstanceOf(IOException.class)
+                        .hasMessageContaining("Mutual authentication"))
+                .verify();
+    }
+
+    @Test
+    void testRejectedPooledTokenIsReplacedByNewOne() {
+        SpnegoExchangeFilterFunction filter = new SpnegoExchangeFilterFunction(initiator);
+        try (SpnegoTokenPool tokenPool = new SpnegoTokenPool(initiator)) {
+            filter.setTokenPool(tokenPool);
+            ExchangeFunction server = server(null);
+            ExchangeFunction rejectFirst = request -> authorizations.isEmpty()
+                    ? Mono.fromRunnable(() -> authorizations.add("rejected"))
+                    .then(Mono.just(ClientResponse.create(HttpStatus.UNAUTHORIZED)
+                            .header(Constants.AUTHN_HEADER, Constants.NEGOTIATE_HEADER)
+                            .build()))
+                    : server.exchange(request);
+
+            StepVerifier.create(filter.filter(request(), rejectFirst))
+                    .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.OK))
+                    .expectComplete()
+                    .verify();
+
+            assertThat(tokenPool.getMissCount()).isEqualTo(1);
+            assertThat(authorizations).hasSize(2);
+        }
+    }
+
+    private static ClientRequest request() {
+        return ClientRequest.create(HttpMethod.GET, TARGET).build();
+    }
+
+    /**
+     * @param mutualToken token to answer with instead of the one of the accepted context
+     */
+    private ExchangeFunction server(String mutualToken) {
+        return request -> Mono.fromCallable(() -> {
+            threads.add(Thread.currentThread().getName());
+            String authorization = request.headers().getFirst(Constants.AUTHZ_HEADER);
+            authorizations.add(String.valueOf(authorization));
+            if (null == authorization) {
+                return ClientResponse.create(HttpStatus.UNAUTHORIZED)
+                        .header(Constants.AUTHN_HEADER, Constants.NEGOTIATE_HEADER)
+                        .build();
+            }
+            try (SpnegoContext acceptContext = acceptor.createAcceptContext()) {
+                byte[] token = Base64.getDecoder().decode(authorization.substring(Constants.NEGOTIATE_HEADER.length() + 1));
+                byte[] responseToken = acceptContext.acceptToken(token);
+                return ClientResponse.create(HttpStatus.OK)
+                        .header(Constants.AUTHN_HEADER, Constants.NEGOTIATE_HEADER + " "
+                                + (null == mutualToken ? Base64.getEncoder().encodeToString(responseToken) : mutualToken))
+                        .build();
+            }
+        });
+    }
+
+}
@@ -1,16 +1,23 @@
 package com.kerb4j.server.tomcat;
 
+import com.kerb4j.client.KerberosKeyIndex;
 import com.kerb4j.client.SpnegoClient;
 import com.kerb4j.client.SpnegoContext;
 import com.kerb4j.common.util.Constants;
+import com.kerb4j.common.util.NegotiateTokenDecoder;
 import com.kerb4j.server.MultiPrincipalManager;
 import com.kerb4j.server.SpnegoTokenFixer;
+import com.kerb4j.server.acceptor.AcceptorEngine;
+import com.kerb4j.server.acceptor.KerbyAcceptResult;
+import com.kerb4j.server.acceptor.KerbyAcceptor;
 import com.kerb4j.server.marshall.Kerb4JException;
 import com.kerb4j.server.marshall.pac.Pac;
-import com.kerb4j.server.marshall.pac.PacLogonInfo;
 import com.kerb4j.server.marshall.pac.PacSid;
-import com.kerb4j.server.marshall.spnego.SpnegoInitToken;
-import com.kerb4j.server.marshall.spnego.SpnegoKerberosMechToken;
+import com.kerb4j.server.marshall.spnego.SpnegoNegotiation;
+import com.kerb4j.server.replay.InMemoryReplayCache;
+import com.kerb4j.server.replay.MappedReplayCache;
+import com.kerb4j.server.replay.ReplayCache;
+import com.kerb4j.server.ticket.DecryptedTicketCache;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -30,6 +37,7 @@ import org.jspecify.annotations.Nullable;
 
 import javax.security.auth.Subject;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.security.Principal;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
@@ -69,6 +77,15 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
     private String principalName = null;
     private boolean storeDelegatedCredential = true;
     private boolean applyJava8u40Fix = true;
+    private AcceptorEngine acceptorEngine = AcceptorEngine.JGSS;
+
+    private int decryptedTicketCacheSize = 0;
+    private @Nullable String replayCacheFile;
+    private int replayCacheSlots = 1 << 20;
+
+    private @Nullable DecryptedTicketCache decryptedTicketCache;
+    private @Nullable KerbyAcceptor kerbyAcceptor;
+    private @Nullable MappedReplayCache mappedReplayCache;
 
     public String getKeyTab() {
         return keyTab;
@@ -104,6 +121,75 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
         this.applyJava8u40Fix = applyJava8u40Fix;
     }
 
+    public String getAcceptorEngine() {
+        return acceptorEngine.name();
+    }
+
+    /**
+     * Selects the implementation used to accept tokens: {@code jgss} (default) or {@code kerby}.
+     * The Kerby engine skips JGSS entirely but doesn't support credential delegation, so
+     * {@link #setStoreDelegatedCredential(boolean)} has no effect with it.
+     *
+     * @param acceptorEngine case-insensitive name of an {@link AcceptorEngine}
+     * @since 0.5.1
+     */
+    public void setAcceptorEngine(String acceptorEngine) {
+        this.acceptorEngine = AcceptorEngine.fromName(acceptorEngine);
+        log.info("Using acceptor engine : " + this.acceptorEngine);
+    }
+
+    public int getDecryptedTicketCacheSize() {
+        return decryptedTicketCacheSize;
+    }
+
+    /**
+     * Number of decrypted service tickets (and their PACs) to keep across requests; {@code 0}, the default,
+     * decrypts the ticket on every request.
+     *
+     * @param decryptedTicketCacheSize maximum number of cached tickets
+     * @since 0.5.1
+     */
+    public void setDecryptedTicketCacheSize(int decryptedTicketCacheSize) {
+        this.decryptedTicketCacheSize = decryptedTicketCacheSize;
+    }
+
+    public @Nullable String getReplayCacheFile() {
+        return replayCacheFile;
+    }
+
+    /**
+     * Memory-mapped file holding the replay cache of the {@code kerby} acceptor engine, e.g.
+     * {@code /dev/shm/kerb4j-http.rcache}, shared by all Tomcat instances on the host serving the same principal.
+     * By default the replay cache is kept in the heap of this instance.
+     *
+     * @param replayCacheFile path of the replay cache file
+     * @since 0.5.1
+     */
+    public void setReplayCacheFile(@Nullable String replayCacheFile) {
+        this.replayCacheFile = replayCacheFile;
+    }
+
+    public int getReplayCacheSlots() {
+        return replayCacheSlots;
+    }
+
+    /**
+     * @param replayCacheSlots number of slots of the {@link #setReplayCacheFile(String) replay cache file}; must
+     *                         be the same for all instances sharing the file
+     * @since 0.5.1
+     */
+    public void setReplayCacheSlots(int replayCacheSlots) {
+        this.replayCacheSlots = replayCacheSlots;
+    }
+
+    /**
+     * @return decrypted ticket cache, e.g. to expose its hit and miss counters, or {@code null} if disabled
+     * @since 0.5.1
+     */
+    public @Nullable DecryptedTicketCache getDecryptedTicketCache() {
+        return decryptedTicketCache;
+    }
+
     /**
      * Set the multi-principal manager for handling multiple service principals.
      * When this is set, the authenticator will extract the target SPN from incoming tokens
@@ -119,6 +205,22 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
     protected void initInternal() throws LifecycleException {
         super.initInternal();
 
+        if (decryptedTicketCacheSize > 0) {
+            decryptedTicketCache = new DecryptedTicketCache(decryptedTicketCacheSize);
+        }
+        ReplayCache replayCache;
+        if (null == replayCacheFile) {
+            replayCache = new InMemoryReplayCache();
+        } else {
+            try {
+                mappedReplayCache = new MappedReplayCache(Paths.get(replayCacheFile), replayCacheSlots);
+            } catch (IOException e) {
+                throw new LifecycleException(e);
+            }
+            replayCache = mappedReplayCache;
+        }
+        kerbyAcceptor = new KerbyAcceptor(replayCache, KerbyAcceptor.DEFAULT_CLOCK_SKEW, decryptedTicketCache);
+
         boolean hasMultiPrincipal = multiPrincipalManager != null;
         boolean hasSinglePrincipal = principalName != null && keyTab != null;
 
@@ -147,6 +249,20 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
 
     }
 
+    @Override
+    protected void destroyInternal() throws LifecycleException {
+        MappedReplayCache replayCache = mappedReplayCache;
+        if (null != replayCache) {
+            try {
+                replayCache.close();
+            } catch (IOException e) {
+                log.warn("Failed to close replay cache " + replayCacheFile, e);
+            }
+            mappedReplayCache = null;
+        }
+        super.destroyInternal();
+    }
+
     @Override
     protected String getAuthMethod() {
         return HTTP_NEGOTIATE.toUpperCase(); // TODO: what does it mean ? should it be "SPNEGO" ?
@@ -206,16 +322,11 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
 
         authorizationBC.setStart(authorizationBC.getStart() + 10);
 
-        byte[] encoded = java.util.Arrays.copyOfRange(
+        byte[] decoded = NegotiateTokenDecoder.decode(
                 authorizationBC.getBuffer(),
                 authorizationBC.getStart(),
-                authorizationBC.getStart() + authorizationBC.getLength()
+                authorizationBC.getLength()
         );
-        byte[] decoded = Base64.getDecoder().decode(encoded);
-
-        if (getApplyJava8u40Fix()) {
-            SpnegoTokenFixer.fix(decoded);
-        }
 
         if (decoded.length == 0) {
             if (log.isDebugEnabled()) {
@@ -226,18 +337,38 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
             return false;
         }
 
+        SpnegoTokenFixer.Verdict verdict = getApplyJava8u40Fix()
+                ? SpnegoTokenFixer.validateAndFix(decoded)
+                : SpnegoTokenFixer.inspect(decoded);
+
+        if (SpnegoTokenFixer.Verdict.MALFORMED == verdict) {
+            // Don't hand obviously broken tokens over to JGSS
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("spnegoAuthenticator.ticketValidateFail"));
+            }
+            response.setHeader(AUTH_HEADER_NAME, Constants.NEGOTIATE_HEADER);
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return false;
+        }
+
         SpnegoContext acceptContext = null;
         Principal principal = null;
         byte[] outToken;
 
+        SpnegoNegotiation negotiation = parseNegotiation(decoded);
+
         try {
-            SpnegoClient clientToUse = resolveSpnegoClient(decoded);
+            SpnegoClient clientToUse = resolveSpnegoClient(negotiation);
             if (clientToUse == null) {
                 response.setHeader(AUTH_HEADER_NAME, Constants.NEGOTIATE_HEADER);
                 response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
                 return false;
             }
 
+            if (AcceptorEngine.KERBY == acceptorEngine) {
+                return authenticateWithKerby(request, response, negotiation, clientToUse);
+            }
+
             acceptContext = clientToUse.createAcceptContext();
             outToken = acceptContext.acceptToken(decoded);
 
@@ -254,18 +385,17 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
             Subject subject = clientToUse.getSubject();
 
             try {
-                SpnegoInitToken spnegoInitToken = new SpnegoInitToken(decoded);
-                SpnegoKerberosMechToken spnegoKerberosMechToken = spnegoInitToken.getSpnegoKerberosMechToken();
-                Pac pac = spnegoKerberosMechToken.getPac(clientToUse.getKerberosKeys());
+                if (null == negotiation) {
+                    throw new Kerb4JException("spnego.token.malformed", null, null);
+                }
+                DecryptedTicketCache ticketCache = decryptedTicketCache;
+                KerberosKeyIndex keyIndex = clientToUse.getKerberosKeyIndex();
+                Pac pac = null == ticketCache
+                        ? negotiation.getPac(keyIndex)
+                        : ticketCache.getPac(negotiation, keyIndex);
 
                 if (null != pac) {
-                    PacLogonInfo logonInfo = pac.getLogonInfo();
-                    PacSid[] groupSids = logonInfo.getGroupSids();
-                    List<String> roles = new ArrayList<>(groupSids.length);
-                    for (PacSid pacSid : groupSids) {
-                        roles.add(pacSid.toHumanReadableString());
-                    }
-                    principal = new SpnegoPrincipal(acceptContext.getSrcName().toString(), roles);
+                    principal = spnegoPrincipal(acceptContext.getSrcName().toString(), pac);
                 }
 
             } catch (Kerb4JException | KrbException e) {
@@ -340,13 +470,69 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
 
     }
 
-    private @Nullable SpnegoClient resolveSpnegoClient(byte[] token) {
+    private boolean authenticateWithKerby(Request request, HttpServletResponse response,
+                                          @Nullable SpnegoNegotiation negotiation, SpnegoClient clientToUse)
+            throws IOException {
+
+        KerbyAcceptResult result;
+        Pac pac;
+        try {
+            KerbyAcceptor acceptor = kerbyAcceptor;
+            if (null == negotiation || null == acceptor) {
+                throw new Kerb4JException("spnego.token.malformed", null, null);
+            }
+            result = acceptor.accept(negotiation, clientToUse.getKerberosKeyIndex());
+            pac = result.getPac();
+        } catch (Kerb4JException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("spnegoAuthenticator.ticketValidateFail"), e);
+            }
+            response.setHeader(AUTH_HEADER_NAME, Constants.NEGOTIATE_HEADER);
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return false;
+        }
+
+        Principal principal;
+        if (null != pac) {
+            principal = spnegoPrincipal(result.getClientPrincipalName(), pac);
+        } else {
+            principal = context.getRealm().authenticate(result.getClientPrincipalName());
+        }
+
+        response.setHeader(AUTH_HEADER_NAME,
+                Constants.NEGOTIATE_HEADER + " " + Base64.getEncoder().encodeToString(result.getResponseToken()));
+
+        if (principal != null) {
+            register(request, response, principal, HTTP_NEGOTIATE.toUpperCase(), principal.getName(), null);
+            return true;
+        }
+
+        response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+        return false;
+    }
+
+    /**
+     * @return principal with the group SIDs of the PAC as roles
+     */
+    private static SpnegoPrincipal spnegoPrincipal(String name, Pac pac) {
+        PacSid[] groupSids = pac.getLogonInfo().getGroupSids();
+        List<String> roles = new ArrayList<>(groupSids.length);
+        for (PacSid pacSid : groupSids) {
+            roles.add(pacSid.toHumanReadableString());
+        }
+        return new SpnegoPrincipal(name, roles);
+    }
+
+    private @Nullable SpnegoClient resolveSpnegoClient(@Nullable SpnegoNegotiation negotiation) {
         MultiPrincipalManager configuredManager = multiPrincipalManager;
         if (configuredManager == null) {
             return spnegoClient;
         }
-        String targetSpn = extractTargetSpn(token);
-        SpnegoClient selectedClient = configuredManager.getSpnegoClientForSpn(targetSpn);
+        String targetSpn = null == negotiation ? null : negotiation.getServerPrincipalName();
+        if (log.isDebugEnabled()) {
+            log.debug("Extracted target SPN from token: " + targetSpn);
+        }
+        SpnegoClient selectedClient = configuredManager.getSpnegoClient(negotiation);
         if (selectedClient == null && log.isDebugEnabled()) {
             if (targetSpn == null) {
                 log.debug("Failed to extract SPN from token and no matching/fallback principal is configured");
@@ -357,17 +543,12 @@ public class SpnegoAuthenticator extends AuthenticatorBase {
         return selectedClient;
     }
 
-    private @Nullable String extractTargetSpn(byte[] token) {
+    private @Nullable SpnegoNegotiation parseNegotiation(byte[] token) {
         try {
-            SpnegoInitToken spnegoInitToken = new SpnegoInitToken(token);
-            String targetSpn = spnegoInitToken.getServerPrincipalName();
-            if (log.isDebugEnabled()) {
-                log.debug("Extracted target SPN from token: " + targetSpn);
-            }
-            return targetSpn;
+            return SpnegoNegotiation.parse(token);
         } catch (Kerb4JException e) {
             if (log.isDebugEnabled()) {
-                log.debug("Failed to extract SPN from token", e);
+                log.debug("Failed to parse SPNEGO token", e);
             }
             return null;
         }